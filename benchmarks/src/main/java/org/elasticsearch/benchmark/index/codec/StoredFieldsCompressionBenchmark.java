@@ -0,0 +1,187 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.index.codec;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+import org.apache.lucene.codecs.lucene62.Lucene62Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.PathUtils;
+import org.elasticsearch.index.codec.DictionaryCompressionCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the stored fields compression of the <tt>default</tt>, <tt>best_compression</tt> and <tt>dictionary_compression</tt>
+ * codecs on JSON log lines as they are stored in <tt>_source</tt>. Each invocation fetches a batch of random documents, the size of
+ * the stored fields of each codec is reported as the <tt>storedFieldsBytes</tt> secondary result. The log lines are generated
+ * unless a file with one JSON document per line is passed with <tt>-p corpus=/path/to/logs.json</tt>.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class StoredFieldsCompressionBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({"default", "best_compression", "dictionary_compression"})
+    public String codec = "default";
+
+    @Param({"100000"})
+    public int numDocs = 100000;
+
+    @Param({""})
+    public String corpus = "";
+
+    private static final String[] HOSTS = {"web-01", "web-02", "web-03", "api-01", "api-02"};
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "WARN", "ERROR", "DEBUG"};
+    private static final String[] PATHS = {"/", "/login", "/logout", "/api/v1/orders", "/api/v1/users", "/static/app.js"};
+    private static final String[] AGENTS = {
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/56.0.2924.87 Safari/537.36",
+        "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_12_3) AppleWebKit/602.4.8 (KHTML, like Gecko) Version/10.0.3 Safari/602.4.8",
+        "curl/7.52.1"
+    };
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private int[] docIds;
+    private long storedFieldsBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        final List<String> lines;
+        if (corpus.isEmpty()) {
+            lines = null;
+        } else {
+            lines = Files.readAllLines(PathUtils.get(corpus), StandardCharsets.UTF_8).stream()
+                .filter(line -> line.isEmpty() == false).collect(Collectors.toList());
+        }
+        Random random = new Random(42);
+        directory = new RAMDirectory();
+        IndexWriterConfig iwc = new IndexWriterConfig(null);
+        iwc.setCodec(codec());
+        try (IndexWriter writer = new IndexWriter(directory, iwc)) {
+            for (int i = 0; i < numDocs; i++) {
+                final String source = lines == null ? logLine(random, i) : lines.get(i % lines.size());
+                Document doc = new Document();
+                doc.add(new StoredField("_source", new BytesRef(source)));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        storedFieldsBytes = 0;
+        for (String file : directory.listAll()) {
+            if (file.endsWith(".fdt") || file.endsWith(".fdx")) {
+                storedFieldsBytes += directory.fileLength(file);
+            }
+        }
+        reader = DirectoryReader.open(directory);
+        docIds = new int[1000];
+        for (int i = 0; i < docIds.length; i++) {
+            docIds[i] = random.nextInt(numDocs);
+        }
+    }
+
+    private Codec codec() {
+        switch (codec) {
+            case "default":
+                return new Lucene62Codec(Lucene50StoredFieldsFormat.Mode.BEST_SPEED);
+            case "best_compression":
+                return new Lucene62Codec(Lucene50StoredFieldsFormat.Mode.BEST_COMPRESSION);
+            case "dictionary_compression":
+                return new DictionaryCompressionCodec();
+            default:
+                throw new IllegalArgumentException("unknown codec [" + codec + "]");
+        }
+    }
+
+    private static String logLine(Random random, int i) {
+        final long timestamp = 1483228800000L + i * 17L + random.nextInt(17);
+        return "{\"@timestamp\":" + timestamp
+            + ",\"host\":\"" + HOSTS[random.nextInt(HOSTS.length)] + "\""
+            + ",\"level\":\"" + LEVELS[random.nextInt(LEVELS.length)] + "\""
+            + ",\"client_ip\":\"10.0." + random.nextInt(16) + "." + random.nextInt(256) + "\""
+            + ",\"request\":\"GET " + PATHS[random.nextInt(PATHS.length)] + "?id=" + random.nextInt(100000) + " HTTP/1.1\""
+            + ",\"status\":" + (random.nextInt(10) == 0 ? 404 : 200)
+            + ",\"bytes\":" + random.nextInt(50000)
+            + ",\"agent\":\"" + AGENTS[random.nextInt(AGENTS.length)] + "\""
+            + ",\"took_ms\":" + random.nextInt(500) + "}";
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    /**
+     * Reports the size of the stored fields of the index next to the timings of each iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class StoredFieldsSize {
+        public long storedFieldsBytes;
+
+        @Setup(Level.Iteration)
+        public void setUp(StoredFieldsCompressionBenchmark benchmark) {
+            storedFieldsBytes = benchmark.storedFieldsBytes;
+        }
+    }
+
+    @Benchmark
+    public long fetchRandomDocuments(StoredFieldsSize size) throws IOException {
+        long length = 0;
+        for (int docId : docIds) {
+            length += reader.document(docId).getBinaryValue("_source").length;
+        }
+        return length;
+    }
+}
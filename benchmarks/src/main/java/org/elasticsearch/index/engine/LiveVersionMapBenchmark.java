@@ -0,0 +1,93 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.index.mapper.UidFieldMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the concurrent hash map based {@link LiveVersionMap} with the paged one. Each invocation indexes a batch of uids, looks
+ * them up again as the engine does for updates and then refreshes. This benchmark lives in the engine package because the version
+ * map is package private.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class LiveVersionMapBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({"false", "true"})
+    public boolean paged = false;
+
+    @Param({"10000", "100000"})
+    public int numUids = 10000;
+
+    private BytesRef[] uids;
+    private Term[] terms;
+    private LiveVersionMap map;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        uids = new BytesRef[numUids];
+        terms = new Term[numUids];
+        for (int i = 0; i < numUids; i++) {
+            uids[i] = new BytesRef(Long.toString(random.nextLong(), Character.MAX_RADIX));
+            terms[i] = new Term(UidFieldMapper.NAME, uids[i]);
+        }
+        map = new LiveVersionMap(paged);
+    }
+
+    @Benchmark
+    public long indexLookupAndRefresh() throws IOException {
+        long versions = 0;
+        for (int i = 0; i < uids.length; i++) {
+            map.putUnderLock(uids[i], new VersionValue(i));
+        }
+        for (int i = 0; i < terms.length; i++) {
+            versions += map.getUnderLock(terms[i]).version();
+        }
+        versions += map.ramBytesUsedForRefresh();
+        map.beforeRefresh();
+        map.afterRefresh(true);
+        return versions;
+    }
+}
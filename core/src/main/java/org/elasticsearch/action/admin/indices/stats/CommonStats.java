@@ -214,6 +214,7 @@ public class CommonStats implements Writeable, ToXContent {
                     break;
                 case RequestCache:
                     requestCache = indexShard.requestCache().stats();
+                    requestCache.hitsCache(indexShard.hitsRequestCache().stats());
                     break;
                 case Recovery:
                     recoveryStats = indexShard.recoveryStats();
@@ -19,10 +19,13 @@
 
 package org.elasticsearch.action.bulk;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.index.mapper.ReplicatedDocument;
 
 import java.io.IOException;
 
@@ -32,6 +35,7 @@ public class BulkItemRequest implements Streamable {
     private DocWriteRequest request;
     private volatile BulkItemResponse primaryResponse;
     private volatile boolean ignoreOnReplica;
+    private volatile ReplicatedDocument replicatedDocument;
 
     BulkItemRequest() {
 
@@ -74,6 +78,19 @@ public class BulkItemRequest implements Streamable {
         return ignoreOnReplica;
     }
 
+    /**
+     * Sets the documents that the primary parsed from the index request of this item, which are indexed by the replicas
+     * instead of parsing the source again.
+     */
+    void setReplicatedDocument(ReplicatedDocument replicatedDocument) {
+        assert request instanceof IndexRequest : "only index requests can have replicated documents";
+        this.replicatedDocument = replicatedDocument;
+    }
+
+    ReplicatedDocument getReplicatedDocument() {
+        return replicatedDocument;
+    }
+
     public static BulkItemRequest readBulkItem(StreamInput in) throws IOException {
         BulkItemRequest item = new BulkItemRequest();
         item.readFrom(in);
@@ -88,6 +105,9 @@ public class BulkItemRequest implements Streamable {
             primaryResponse = BulkItemResponse.readBulkItem(in);
         }
         ignoreOnReplica = in.readBoolean();
+        if (in.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED) && in.readBoolean()) {
+            replicatedDocument = new ReplicatedDocument(in, ((IndexRequest) request).source());
+        }
     }
 
     @Override
@@ -96,5 +116,8 @@ public class BulkItemRequest implements Streamable {
         DocWriteRequest.writeDocumentRequest(out, request);
         out.writeOptionalStreamable(primaryResponse);
         out.writeBoolean(ignoreOnReplica);
+        if (out.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            out.writeOptionalWriteable(replicatedDocument);
+        }
     }
 }
@@ -39,17 +39,22 @@ import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.IndexingPressure;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.EngineClosedException;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.mapper.ParsedDocument;
+import org.elasticsearch.index.mapper.ReplicatedDocument;
 import org.elasticsearch.index.seqno.SequenceNumbersService;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardClosedException;
@@ -59,12 +64,15 @@ import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportRequestOptions;
 import org.elasticsearch.transport.TransportService;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static org.elasticsearch.action.delete.TransportDeleteAction.executeDeleteRequestOnPrimary;
 import static org.elasticsearch.action.delete.TransportDeleteAction.executeDeleteRequestOnReplica;
 import static org.elasticsearch.action.index.TransportIndexAction.executeIndexRequestOnPrimary;
 import static org.elasticsearch.action.index.TransportIndexAction.executeIndexRequestOnReplica;
+import static org.elasticsearch.action.index.TransportIndexAction.prepareIndexOperationOnPrimary;
 import static org.elasticsearch.action.support.replication.ReplicationOperation.ignoreReplicaException;
 import static org.elasticsearch.action.support.replication.ReplicationOperation.isConflictException;
 
@@ -76,17 +84,29 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
     private final UpdateHelper updateHelper;
     private final boolean allowIdGeneration;
     private final MappingUpdatedAction mappingUpdatedAction;
+    private final IndexingPressure indexingPressure;
 
     @Inject
     public TransportShardBulkAction(Settings settings, TransportService transportService, ClusterService clusterService,
                                     IndicesService indicesService, ThreadPool threadPool, ShardStateAction shardStateAction,
                                     MappingUpdatedAction mappingUpdatedAction, UpdateHelper updateHelper, ActionFilters actionFilters,
-                                    IndexNameExpressionResolver indexNameExpressionResolver) {
+                                    IndexNameExpressionResolver indexNameExpressionResolver, IndexingPressure indexingPressure) {
         super(settings, ACTION_NAME, transportService, clusterService, indicesService, threadPool, shardStateAction, actionFilters,
             indexNameExpressionResolver, BulkShardRequest::new, BulkShardRequest::new, ThreadPool.Names.BULK);
         this.updateHelper = updateHelper;
         this.allowIdGeneration = settings.getAsBoolean("action.allow_id_generation", true);
         this.mappingUpdatedAction = mappingUpdatedAction;
+        this.indexingPressure = indexingPressure;
+    }
+
+    @Override
+    protected Releasable checkPrimaryLimits(BulkShardRequest request, boolean localToCoordinatingNode) {
+        return indexingPressure.markPrimaryOperationStarted(request.estimatedSizeInBytes(), localToCoordinatingNode);
+    }
+
+    @Override
+    protected Releasable checkReplicaLimits(BulkShardRequest request) {
+        return indexingPressure.markReplicaOperationStarted(request.estimatedSizeInBytes());
     }
 
     @Override
@@ -110,9 +130,21 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
 
         long[] preVersions = new long[request.items().length];
         VersionType[] preVersionTypes = new VersionType[request.items().length];
+        // the documents parsed from index requests, which are sent to the replicas so that they don't need to parse them again
+        final ParsedDocument[] parsedDocs = primary.indexSettings().isReplicateParsedDocuments()
+            ? new ParsedDocument[request.items().length] : null;
+        // the operations that index requests were parsed into and the results of those that were executed as part of a batch
+        final Engine.Index[] preparedOperations = new Engine.Index[request.items().length];
+        final Engine.IndexResult[] appendOnlyResults = new Engine.IndexResult[request.items().length];
+        int batchedUpTo = 0;
         Translog.Location location = null;
         for (int requestIndex = 0; requestIndex < request.items().length; requestIndex++) {
-            location = executeBulkItemRequest(metaData, primary, request, preVersions, preVersionTypes, location, requestIndex);
+            if (requestIndex >= batchedUpTo) {
+                batchedUpTo = executeAppendOnlyIndexRequests(request, primary, requestIndex, preparedOperations, appendOnlyResults,
+                    parsedDocs);
+            }
+            location = executeBulkItemRequest(metaData, primary, request, preVersions, preVersionTypes, location, requestIndex,
+                preparedOperations[requestIndex], appendOnlyResults[requestIndex], parsedDocs);
         }
 
         BulkItemResponse[] responses = new BulkItemResponse[request.items().length];
@@ -124,11 +156,68 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         return new WritePrimaryResult(request, response, location, null, primary);
     }
 
-    /** Executes bulk item requests and handles request execution exceptions */
+    /**
+     * Executes the run of consecutive index requests starting at <code>from</code> that index documents with auto-generated
+     * ids, which can't conflict with existing documents, as a single batch on the engine, see {@link IndexShard#index(List)}.
+     * The run stops at the first request that is not such a request, that fails to parse or that needs a mapping update, so
+     * that items are still executed in the order of the bulk request. These requests are left to be executed on their own,
+     * reusing the operation they were parsed into if any.
+     *
+     * @param preparedOperations receives the operation that each request of the run was parsed into
+     * @param results receives the result of each request that was executed as part of the batch
+     * @param parsedDocs if not null, receives the parsed document of each executed request
+     * @return the index of the first request after the requests that were looked at
+     */
+    private int executeAppendOnlyIndexRequests(BulkShardRequest request, IndexShard primary, int from,
+                                               Engine.Index[] preparedOperations, Engine.IndexResult[] results,
+                                               @Nullable ParsedDocument[] parsedDocs) {
+        final BulkItemRequest[] items = request.items();
+        final List<Engine.Index> operations = new ArrayList<>();
+        int i = from;
+        for (; i < items.length; i++) {
+            final DocWriteRequest itemRequest = items[i].request();
+            if (itemRequest instanceof IndexRequest == false
+                    || ((IndexRequest) itemRequest).getAutoGeneratedTimestamp() == IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP
+                    || ((IndexRequest) itemRequest).isRetry()) {
+                break;
+            }
+            final Engine.Index operation;
+            try {
+                operation = prepareIndexOperationOnPrimary((IndexRequest) itemRequest, primary);
+            } catch (Exception e) {
+                break; // the failure is reported when the request is executed on its own
+            }
+            preparedOperations[i] = operation;
+            if (operation.parsedDoc().dynamicMappingsUpdate() != null) {
+                break;
+            }
+            operations.add(operation);
+        }
+        if (operations.isEmpty() == false) {
+            final List<Engine.IndexResult> operationResults = primary.index(operations);
+            for (int j = 0; j < operationResults.size(); j++) {
+                results[from + j] = operationResults.get(j);
+                if (parsedDocs != null) {
+                    parsedDocs[from + j] = operations.get(j).parsedDoc();
+                }
+            }
+        }
+        return i + 1;
+    }
+
+    /**
+     * Executes bulk item requests and handles request execution exceptions. Index requests that have already been parsed pass
+     * their operation as <code>preparedOperation</code>, those that have already been executed as part of a batch pass their
+     * result as <code>appendOnlyResult</code>. If <code>parsedDocs</code> is not null, the documents that index requests were
+     * parsed into are sent to the replicas.
+     */
     private Translog.Location executeBulkItemRequest(IndexMetaData metaData, IndexShard primary,
                                                      BulkShardRequest request,
                                                      long[] preVersions, VersionType[] preVersionTypes,
-                                                     Translog.Location location, int requestIndex) throws Exception {
+                                                     Translog.Location location, int requestIndex,
+                                                     @Nullable Engine.Index preparedOperation,
+                                                     @Nullable Engine.IndexResult appendOnlyResult,
+                                                     @Nullable ParsedDocument[] parsedDocs) throws Exception {
         final DocWriteRequest itemRequest = request.items()[requestIndex].request();
         preVersions[requestIndex] = itemRequest.version();
         preVersionTypes[requestIndex] = itemRequest.versionType();
@@ -142,10 +231,15 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
                 case CREATE:
                 case INDEX:
                     final IndexRequest indexRequest = (IndexRequest) itemRequest;
-                    Engine.IndexResult indexResult = executeIndexRequestOnPrimary(indexRequest, primary, mappingUpdatedAction);
+                    Engine.IndexResult indexResult = appendOnlyResult != null ? appendOnlyResult
+                        : executeIndexRequestOnPrimary(indexRequest, primary, mappingUpdatedAction, preparedOperation,
+                            parsedDocs == null ? null : doc -> parsedDocs[requestIndex] = doc);
                     if (indexResult.hasFailure()) {
                         response = null;
                     } else {
+                        if (parsedDocs != null && parsedDocs[requestIndex] != null) {
+                            request.items()[requestIndex].setReplicatedDocument(ReplicatedDocument.of(parsedDocs[requestIndex]));
+                        }
                         // update the version on request so it will happen on the replicas
                         final long version = indexResult.getVersion();
                         indexRequest.version(version);
@@ -364,7 +458,8 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
                     switch (docWriteRequest.opType()) {
                         case CREATE:
                         case INDEX:
-                            operationResult = executeIndexRequestOnReplica(((IndexRequest) docWriteRequest), replica);
+                            operationResult = executeIndexRequestOnReplica(((IndexRequest) docWriteRequest), item.getReplicatedDocument(),
+                                replica);
                             break;
                         case DELETE:
                             operationResult = executeDeleteRequestOnReplica(((DeleteRequest) docWriteRequest), replica);
@@ -36,11 +36,14 @@ import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.mapper.MapperParsingException;
 import org.elasticsearch.index.mapper.Mapping;
+import org.elasticsearch.index.mapper.ParsedDocument;
+import org.elasticsearch.index.mapper.ReplicatedDocument;
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
@@ -50,6 +53,8 @@ import org.elasticsearch.tasks.Task;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
 
+import java.util.function.Consumer;
+
 /**
  * Performs the index operation.
  *
@@ -169,13 +174,23 @@ public class TransportIndexAction extends TransportWriteAction<IndexRequest, Ind
      * {@link RetryOnReplicaException} if the operation needs to be re-tried.
      */
     public static Engine.IndexResult executeIndexRequestOnReplica(IndexRequest request, IndexShard replica) {
+        return executeIndexRequestOnReplica(request, null, replica);
+    }
+
+    /**
+     * Execute the given {@link IndexRequest} on a replica shard, indexing the documents that the primary parsed from the request
+     * if they are given. Throws a {@link RetryOnReplicaException} if the operation needs to be re-tried.
+     */
+    public static Engine.IndexResult executeIndexRequestOnReplica(IndexRequest request, @Nullable ReplicatedDocument replicatedDocument,
+                                                                  IndexShard replica) {
         final ShardId shardId = replica.shardId();
         SourceToParse sourceToParse = SourceToParse.source(SourceToParse.Origin.REPLICA, shardId.getIndexName(), request.type(), request.id(), request.source())
                 .routing(request.routing()).parent(request.parent());
 
         final Engine.Index operation;
         try {
-            operation = replica.prepareIndexOnReplica(sourceToParse, request.seqNo(), request.version(), request.versionType(), request.getAutoGeneratedTimestamp(), request.isRetry());
+            operation = replica.prepareIndexOnReplica(sourceToParse, replicatedDocument, request.seqNo(), request.version(),
+                request.versionType(), request.getAutoGeneratedTimestamp(), request.isRetry());
         } catch (MapperParsingException e) {
             return new Engine.IndexResult(e, request.version(), request.seqNo());
         }
@@ -187,7 +202,7 @@ public class TransportIndexAction extends TransportWriteAction<IndexRequest, Ind
     }
 
     /** Utility method to prepare an index operation on primary shards */
-    static Engine.Index prepareIndexOperationOnPrimary(IndexRequest request, IndexShard primary) {
+    public static Engine.Index prepareIndexOperationOnPrimary(IndexRequest request, IndexShard primary) {
         SourceToParse sourceToParse = SourceToParse.source(SourceToParse.Origin.PRIMARY, request.index(), request.type(), request.id(), request.source())
             .routing(request.routing()).parent(request.parent());
         return primary.prepareIndexOnPrimary(sourceToParse, request.version(), request.versionType(), request.getAutoGeneratedTimestamp(), request.isRetry());
@@ -195,11 +210,37 @@ public class TransportIndexAction extends TransportWriteAction<IndexRequest, Ind
 
     public static Engine.IndexResult executeIndexRequestOnPrimary(IndexRequest request, IndexShard primary,
             MappingUpdatedAction mappingUpdatedAction) throws Exception {
-        Engine.Index operation;
-        try {
-            operation = prepareIndexOperationOnPrimary(request, primary);
-        } catch (MapperParsingException | IllegalArgumentException e) {
-            return new Engine.IndexResult(e, request.version(), request.seqNo());
+        return executeIndexRequestOnPrimary(request, primary, mappingUpdatedAction, null);
+    }
+
+    /**
+     * Executes the given {@link IndexRequest} on the primary shard, updating the mapping on the master first if the document
+     * introduces new fields.
+     *
+     * @param parsedDocumentConsumer if not null, receives the parsed document that is indexed
+     */
+    public static Engine.IndexResult executeIndexRequestOnPrimary(IndexRequest request, IndexShard primary,
+            MappingUpdatedAction mappingUpdatedAction, @Nullable Consumer<ParsedDocument> parsedDocumentConsumer) throws Exception {
+        return executeIndexRequestOnPrimary(request, primary, mappingUpdatedAction, null, parsedDocumentConsumer);
+    }
+
+    /**
+     * Same as {@link #executeIndexRequestOnPrimary(IndexRequest, IndexShard, MappingUpdatedAction, Consumer)} but reuses the
+     * given operation, if not null, instead of parsing the request again.
+     *
+     * @param preparedOperation the operation returned by {@link #prepareIndexOperationOnPrimary(IndexRequest, IndexShard)}
+     *                          for this request, if any
+     */
+    public static Engine.IndexResult executeIndexRequestOnPrimary(IndexRequest request, IndexShard primary,
+            MappingUpdatedAction mappingUpdatedAction, @Nullable Engine.Index preparedOperation,
+            @Nullable Consumer<ParsedDocument> parsedDocumentConsumer) throws Exception {
+        Engine.Index operation = preparedOperation;
+        if (operation == null) {
+            try {
+                operation = prepareIndexOperationOnPrimary(request, primary);
+            } catch (MapperParsingException | IllegalArgumentException e) {
+                return new Engine.IndexResult(e, request.version(), request.seqNo());
+            }
         }
         Mapping update = operation.parsedDoc().dynamicMappingsUpdate();
         final ShardId shardId = primary.shardId();
@@ -224,6 +265,9 @@ public class TransportIndexAction extends TransportWriteAction<IndexRequest, Ind
             }
         }
 
+        if (parsedDocumentConsumer != null) {
+            parsedDocumentConsumer.accept(operation.parsedDoc());
+        }
         return primary.index(operation);
     }
 
@@ -339,6 +339,7 @@ abstract class AbstractSearchAsyncAction<FirstResult extends SearchPhaseResult>
 
     protected final void processFirstPhaseResult(int shardIndex, FirstResult result) {
         firstResults.set(shardIndex, result);
+        consumeFirstPhaseResult(shardIndex, result);
 
         if (logger.isTraceEnabled()) {
             logger.trace("got first-phase result from {}", result != null ? result.shardTarget() : null);
@@ -353,6 +354,13 @@ abstract class AbstractSearchAsyncAction<FirstResult extends SearchPhaseResult>
         }
     }
 
+    /**
+     * Called for every successful first phase result once it has been recorded. Subclasses can use this to incrementally
+     * reduce results as they arrive instead of waiting for all shards to respond.
+     */
+    protected void consumeFirstPhaseResult(int shardIndex, FirstResult result) {
+    }
+
     final void innerMoveToSecondPhase() throws Exception {
         if (logger.isTraceEnabled()) {
             StringBuilder sb = new StringBuilder();
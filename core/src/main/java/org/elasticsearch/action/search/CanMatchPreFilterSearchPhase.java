@@ -0,0 +1,152 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.search.internal.AliasFilter;
+import org.elasticsearch.search.internal.ShardSearchTransportRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * An initial search phase that pre-filters the shards of a search request based on query rewriting. A cheap <tt>can_match</tt>
+ * request is sent to one copy of each shard that rewrites the query against the shard, for instance against the min/max values of
+ * the fields of range queries. Shards that provably can't match any document are skipped by the actual search phases. Shards
+ * that fail to respond are never skipped, the actual search phase takes care of retrying and reporting them.
+ */
+final class CanMatchPreFilterSearchPhase {
+
+    /**
+     * Consumes the result of the pre-filter phase.
+     */
+    @FunctionalInterface
+    interface Listener {
+        /**
+         * @param shardsIts the shards that might match the query and need to be searched
+         * @param skippedShards the number of shards that can't match the query and were skipped
+         */
+        void onPreFilterDone(GroupShardsIterator shardsIts, int skippedShards);
+    }
+
+    private final Logger logger;
+    private final SearchTransportService searchTransportService;
+    private final Function<String, DiscoveryNode> nodeIdToDiscoveryNode;
+    private final Map<String, AliasFilter> aliasFilter;
+    private final SearchRequest request;
+    private final GroupShardsIterator shardsIts;
+    private final long startTime;
+    private final SearchTask task;
+    private final Listener listener;
+    private final ShardIterator[] iterators;
+    private final boolean[] possibleMatches;
+    private final AtomicInteger pendingShards;
+
+    CanMatchPreFilterSearchPhase(Logger logger, SearchTransportService searchTransportService,
+                                 Function<String, DiscoveryNode> nodeIdToDiscoveryNode, Map<String, AliasFilter> aliasFilter,
+                                 SearchRequest request, GroupShardsIterator shardsIts, long startTime, SearchTask task,
+                                 Listener listener) {
+        this.logger = logger;
+        this.searchTransportService = searchTransportService;
+        this.nodeIdToDiscoveryNode = nodeIdToDiscoveryNode;
+        this.aliasFilter = aliasFilter;
+        this.request = request;
+        this.shardsIts = shardsIts;
+        this.startTime = startTime;
+        this.task = task;
+        this.listener = listener;
+        this.iterators = new ShardIterator[shardsIts.size()];
+        this.possibleMatches = new boolean[shardsIts.size()];
+        this.pendingShards = new AtomicInteger(shardsIts.size());
+    }
+
+    public void start() {
+        if (iterators.length == 0) {
+            listener.onPreFilterDone(shardsIts, 0);
+            return;
+        }
+        int shardIndex = -1;
+        for (final ShardIterator shardIt : shardsIts) {
+            iterators[++shardIndex] = shardIt;
+        }
+        for (int i = 0; i < iterators.length; i++) {
+            performCanMatch(i, iterators[i], iterators[i].nextOrNull());
+        }
+    }
+
+    private void performCanMatch(final int shardIndex, final ShardIterator shardIt, final ShardRouting shard) {
+        if (shard == null) {
+            // no copy of this shard responded, let the search phase deal with it
+            onShardResult(shardIndex, true);
+            return;
+        }
+        final DiscoveryNode node = nodeIdToDiscoveryNode.apply(shard.currentNodeId());
+        if (node == null) {
+            performCanMatch(shardIndex, shardIt, shardIt.nextOrNull());
+            return;
+        }
+        final AliasFilter filter = aliasFilter.get(shard.index().getUUID());
+        assert filter != null;
+        ShardSearchTransportRequest transportRequest = new ShardSearchTransportRequest(request, shardIt.shardId(), shardsIts.size(),
+            filter, startTime);
+        searchTransportService.sendCanMatch(node, transportRequest, task,
+            new ActionListener<SearchTransportService.CanMatchResponse>() {
+                @Override
+                public void onResponse(SearchTransportService.CanMatchResponse response) {
+                    onShardResult(shardIndex, response.canMatch());
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    logger.trace((Supplier<?>) () -> new ParameterizedMessage("{}: failed to execute can_match on [{}]",
+                        shard.shortSummary(), node), e);
+                    performCanMatch(shardIndex, shardIt, shardIt.nextOrNull());
+                }
+            });
+    }
+
+    private void onShardResult(int shardIndex, boolean canMatch) {
+        possibleMatches[shardIndex] = canMatch;
+        if (pendingShards.decrementAndGet() == 0) {
+            final List<ShardIterator> matchingShards = new ArrayList<>(iterators.length);
+            for (int i = 0; i < iterators.length; i++) {
+                if (possibleMatches[i]) {
+                    iterators[i].reset();
+                    matchingShards.add(iterators[i]);
+                }
+            }
+            final int skippedShards = iterators.length - matchingShards.size();
+            if (logger.isTraceEnabled()) {
+                logger.trace("skipping [{}] out of [{}] shards that can't match the query", skippedShards, iterators.length);
+            }
+            listener.onPreFilterDone(new GroupShardsIterator(matchingShards), skippedShards);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.InnerHitBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.collapse.CollapseBuilder;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.sort.SortBuilder;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Expands the collapsed hits of a search response with the top hits of their group. Groups can span several shards so the
+ * expansion can't happen in the fetch phase of the shards. Instead, once the collapsed response is reduced, this phase sends a
+ * multi search request that holds one search request per hit, filtered on the collapse value of the hit, and sets the response of
+ * each request as the inner hits of its hit.
+ */
+final class ExpandSearchPhase implements ActionListener<SearchResponse> {
+
+    private final SearchTransportService searchTransportService;
+    private final DiscoveryNode localNode;
+    private final SearchTask task;
+    private final SearchRequest searchRequest;
+    private final ActionListener<SearchResponse> listener;
+
+    ExpandSearchPhase(SearchTransportService searchTransportService, DiscoveryNode localNode, SearchTask task,
+                      SearchRequest searchRequest, ActionListener<SearchResponse> listener) {
+        this.searchTransportService = searchTransportService;
+        this.localNode = localNode;
+        this.task = task;
+        this.searchRequest = searchRequest;
+        this.listener = listener;
+    }
+
+    /**
+     * Returns <code>true</code> iff the hits of the given request need to be expanded.
+     */
+    static boolean isCollapseRequest(SearchRequest searchRequest) {
+        return searchRequest.scroll() == null
+            && searchRequest.source() != null
+            && searchRequest.source().collapse() != null
+            && searchRequest.source().collapse().getInnerHit() != null;
+    }
+
+    @Override
+    public void onResponse(SearchResponse searchResponse) {
+        final SearchHit[] hits = searchResponse.getHits().getHits();
+        if (hits.length == 0) {
+            listener.onResponse(searchResponse);
+            return;
+        }
+        final CollapseBuilder collapseBuilder = searchRequest.source().collapse();
+        final String collapseField = collapseBuilder.getField();
+        final InnerHitBuilder innerHitBuilder = collapseBuilder.getInnerHit();
+        final MultiSearchRequest multiRequest = new MultiSearchRequest();
+        if (collapseBuilder.getMaxConcurrentGroupRequests() > 0) {
+            multiRequest.maxConcurrentSearchRequests(collapseBuilder.getMaxConcurrentGroupRequests());
+        }
+        for (SearchHit hit : hits) {
+            BoolQueryBuilder groupQuery = new BoolQueryBuilder();
+            SearchHitField hitField = hit.field(collapseField);
+            Object collapseValue = hitField == null ? null : hitField.getValue();
+            if (collapseValue != null) {
+                groupQuery.filter(QueryBuilders.termQuery(collapseField, collapseValue));
+            } else {
+                groupQuery.mustNot(QueryBuilders.existsQuery(collapseField));
+            }
+            QueryBuilder origQuery = searchRequest.source().query();
+            if (origQuery != null) {
+                groupQuery.must(origQuery);
+            }
+            SearchSourceBuilder sourceBuilder = buildExpandSearchSourceBuilder(innerHitBuilder).query(groupQuery);
+            SearchRequest groupRequest = new SearchRequest(searchRequest.indices())
+                .types(searchRequest.types())
+                .routing(searchRequest.routing())
+                .preference(searchRequest.preference())
+                .indicesOptions(searchRequest.indicesOptions())
+                .requestCache(searchRequest.requestCache())
+                .source(sourceBuilder);
+            multiRequest.add(groupRequest);
+        }
+        searchTransportService.sendExecuteMultiSearch(localNode, multiRequest, task, ActionListener.wrap(response -> {
+            Iterator<MultiSearchResponse.Item> it = response.iterator();
+            for (SearchHit hit : hits) {
+                MultiSearchResponse.Item item = it.next();
+                if (item.isFailure()) {
+                    listener.onFailure(item.getFailure());
+                    return;
+                }
+                InternalSearchHits innerHits = (InternalSearchHits) item.getResponse().getHits();
+                InternalSearchHit internalHit = (InternalSearchHit) hit;
+                Map<String, InternalSearchHits> hitsMap = new HashMap<>();
+                if (internalHit.getInnerHits() != null) {
+                    internalHit.getInnerHits().forEach((name, innerHit) -> hitsMap.put(name, (InternalSearchHits) innerHit));
+                }
+                hitsMap.put(innerHitBuilder.getName(), innerHits);
+                internalHit.setInnerHits(hitsMap);
+            }
+            listener.onResponse(searchResponse);
+        }, listener::onFailure));
+    }
+
+    @Override
+    public void onFailure(Exception e) {
+        listener.onFailure(e);
+    }
+
+    private static SearchSourceBuilder buildExpandSearchSourceBuilder(InnerHitBuilder options) {
+        SearchSourceBuilder groupSource = new SearchSourceBuilder();
+        groupSource.from(options.getFrom());
+        groupSource.size(options.getSize());
+        if (options.getSorts() != null) {
+            for (SortBuilder<?> sort : options.getSorts()) {
+                groupSource.sort(sort);
+            }
+        }
+        if (options.getFetchSourceContext() != null) {
+            groupSource.fetchSource(options.getFetchSourceContext());
+        }
+        if (options.getStoredFieldsContext() != null) {
+            groupSource.storedFields(options.getStoredFieldsContext());
+        }
+        if (options.getDocValueFields() != null) {
+            for (String field : options.getDocValueFields()) {
+                groupSource.docValueField(field);
+            }
+        }
+        if (options.getScriptFields() != null) {
+            for (SearchSourceBuilder.ScriptField field : options.getScriptFields()) {
+                groupSource.scriptField(field.fieldName(), field.script(), field.ignoreFailure());
+            }
+        }
+        if (options.getHighlightBuilder() != null) {
+            groupSource.highlighter(options.getHighlightBuilder());
+        }
+        groupSource.explain(options.isExplain());
+        groupSource.version(options.isVersion());
+        groupSource.trackScores(options.isTrackScores());
+        return groupSource;
+    }
+}
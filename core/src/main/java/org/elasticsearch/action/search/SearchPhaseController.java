@@ -30,13 +30,18 @@ import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermStatistics;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.grouping.CollapseTopFieldDocs;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.collect.HppcMaps;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.metrics.HistogramMetric;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
+import org.elasticsearch.index.search.stats.SearchLatencyStats;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
 import org.elasticsearch.search.aggregations.InternalAggregations;
@@ -82,11 +87,20 @@ public class SearchPhaseController extends AbstractComponent {
 
     private final BigArrays bigArrays;
     private final ScriptService scriptService;
+    private final HistogramMetric reduceLatency;
 
     public SearchPhaseController(Settings settings, BigArrays bigArrays, ScriptService scriptService) {
         super(settings);
         this.bigArrays = bigArrays;
         this.scriptService = scriptService;
+        this.reduceLatency = new HistogramMetric(SearchService.STATS_LATENCY_WINDOW_SETTING.get(settings).nanos(), System::nanoTime);
+    }
+
+    /**
+     * Returns the latency distribution of the final reduce phases executed by this node as the coordinating node.
+     */
+    public SearchLatencyStats latencyStats() {
+        return SearchLatencyStats.fromMetrics(Collections.singletonMap(SearchLatencyStats.REDUCE, reduceLatency));
     }
 
     public AggregatedDfs aggregateDfs(AtomicArray<DfsSearchResult> results) {
@@ -236,7 +250,25 @@ public class SearchPhaseController extends AbstractComponent {
         }
 
         final TopDocs mergedTopDocs;
-        if (firstResult.queryResult().topDocs() instanceof TopFieldDocs) {
+        if (firstResult.queryResult().topDocs() instanceof CollapseTopFieldDocs) {
+            CollapseTopFieldDocs firstTopDocs = (CollapseTopFieldDocs) firstResult.queryResult().topDocs();
+            final Sort sort = new Sort(firstTopDocs.fields);
+
+            final CollapseTopFieldDocs[] shardTopDocs = new CollapseTopFieldDocs[resultsArr.length()];
+            for (AtomicArray.Entry<? extends QuerySearchResultProvider> sortedResult : sortedResults) {
+                TopDocs topDocs = sortedResult.value.queryResult().topDocs();
+                // the 'index' field is the position in the resultsArr atomic array
+                shardTopDocs[sortedResult.index] = (CollapseTopFieldDocs) topDocs;
+            }
+            // CollapseTopFieldDocs#merge can't deal with null shard TopDocs
+            for (int i = 0; i < shardTopDocs.length; ++i) {
+                if (shardTopDocs[i] == null) {
+                    shardTopDocs[i] = new CollapseTopFieldDocs(firstTopDocs.field, 0, new FieldDoc[0],
+                        sort.getSort(), new Object[0], Float.NaN);
+                }
+            }
+            mergedTopDocs = CollapseTopFieldDocs.merge(sort, from, topN, shardTopDocs);
+        } else if (firstResult.queryResult().topDocs() instanceof TopFieldDocs) {
             TopFieldDocs firstTopDocs = (TopFieldDocs) firstResult.queryResult().topDocs();
             final Sort sort = new Sort(firstTopDocs.fields);
 
@@ -349,7 +381,27 @@ public class SearchPhaseController extends AbstractComponent {
     public InternalSearchResponse merge(boolean ignoreFrom, ScoreDoc[] sortedDocs,
                                         AtomicArray<? extends QuerySearchResultProvider> queryResultsArr,
                                         AtomicArray<? extends FetchSearchResultProvider> fetchResultsArr) {
+        return merge(ignoreFrom, sortedDocs, queryResultsArr, fetchResultsArr, null);
+    }
 
+    /**
+     * Same as {@link #merge(boolean, ScoreDoc[], AtomicArray, AtomicArray)} but takes the aggregations that haven't been reduced yet
+     * from the given {@link QueryPhaseResultConsumer} if the shard results were consumed in batches.
+     */
+    public InternalSearchResponse merge(boolean ignoreFrom, ScoreDoc[] sortedDocs,
+                                        AtomicArray<? extends QuerySearchResultProvider> queryResultsArr,
+                                        AtomicArray<? extends FetchSearchResultProvider> fetchResultsArr,
+                                        @Nullable QueryPhaseResultConsumer consumer) {
+        final long startTime = System.nanoTime();
+        final InternalSearchResponse response = doMerge(ignoreFrom, sortedDocs, queryResultsArr, fetchResultsArr, consumer);
+        reduceLatency.inc(System.nanoTime() - startTime);
+        return response;
+    }
+
+    private InternalSearchResponse doMerge(boolean ignoreFrom, ScoreDoc[] sortedDocs,
+                                           AtomicArray<? extends QuerySearchResultProvider> queryResultsArr,
+                                           AtomicArray<? extends FetchSearchResultProvider> fetchResultsArr,
+                                           @Nullable QueryPhaseResultConsumer consumer) {
         List<? extends AtomicArray.Entry<? extends QuerySearchResultProvider>> queryResults = queryResultsArr.asList();
         List<? extends AtomicArray.Entry<? extends FetchSearchResultProvider>> fetchResults = fetchResultsArr.asList();
 
@@ -477,12 +529,21 @@ public class SearchPhaseController extends AbstractComponent {
 
         // merge Aggregation
         InternalAggregations aggregations = null;
-        if (firstResult.aggregations() != null && firstResult.aggregations().asList() != null) {
-            List<InternalAggregations> aggregationsList = new ArrayList<>(queryResults.size());
+        List<InternalAggregations> aggregationsList = null;
+        int numReducePhases = 1;
+        if (consumer != null) {
+            numReducePhases += consumer.getNumReducePhases();
+            if (consumer.hasAggs()) {
+                aggregationsList = consumer.consumeAggs();
+            }
+        } else if (firstResult.aggregations() != null && firstResult.aggregations().asList() != null) {
+            aggregationsList = new ArrayList<>(queryResults.size());
             for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : queryResults) {
                 aggregationsList.add((InternalAggregations) entry.value.queryResult().aggregations());
             }
-            ReduceContext reduceContext = new ReduceContext(bigArrays, scriptService);
+        }
+        if (aggregationsList != null) {
+            ReduceContext reduceContext = new ReduceContext(bigArrays, scriptService, true);
             aggregations = InternalAggregations.reduce(aggregationsList, reduceContext);
             List<SiblingPipelineAggregator> pipelineAggregators = firstResult.pipelineAggregators();
             if (pipelineAggregators != null) {
@@ -510,7 +571,191 @@ public class SearchPhaseController extends AbstractComponent {
 
         InternalSearchHits searchHits = new InternalSearchHits(hits.toArray(new InternalSearchHit[hits.size()]), totalHits, maxScore);
 
-        return new InternalSearchResponse(searchHits, aggregations, suggest, shardResults, timedOut, terminatedEarly);
+        return new InternalSearchResponse(searchHits, aggregations, suggest, shardResults, timedOut, terminatedEarly,
+            numReducePhases);
+    }
+
+    /**
+     * Returns a new {@link QueryPhaseResultConsumer} that reduces shard query results in batches of
+     * {@link SearchRequest#getBatchedReduceSize()} as they arrive, or <code>null</code> if the number of shards
+     * is small enough to keep all shard results in memory until the final reduce phase.
+     */
+    QueryPhaseResultConsumer newQueryPhaseResultConsumer(SearchRequest request, int numShards) {
+        if (request.getBatchedReduceSize() >= numShards) {
+            return null;
+        }
+        return new QueryPhaseResultConsumer(numShards, request.getBatchedReduceSize(), request.scroll() != null);
+    }
+
+    /**
+     * Consumes shard level query results as they arrive on the coordinating node. Once <tt>bufferSize</tt> results have been
+     * buffered, their aggregations are partially reduced into a single result and the top docs of all shards seen so far
+     * are trimmed to the docs that can still make it into the global top docs. This bounds the memory held per search
+     * request by the batch size instead of the number of shards.
+     */
+    final class QueryPhaseResultConsumer {
+        private final QuerySearchResult[] results;
+        private final InternalAggregations[] aggsBuffer;
+        private final int bufferSize;
+        private final boolean ignoreFrom;
+        private int index;
+        private int numReducePhases = 0;
+        private boolean hasAggs = false;
+        private Exception failure;
+
+        QueryPhaseResultConsumer(int numShards, int bufferSize, boolean ignoreFrom) {
+            if (bufferSize < 2) {
+                throw new IllegalArgumentException("buffer size must be >= 2");
+            }
+            this.results = new QuerySearchResult[numShards];
+            this.aggsBuffer = new InternalAggregations[bufferSize];
+            this.bufferSize = bufferSize;
+            this.ignoreFrom = ignoreFrom;
+        }
+
+        /**
+         * Consumes the query result of the shard at the given index and triggers a partial reduce phase once the buffer is full.
+         * Failures during partial reduce phases are recorded and rethrown from {@link #ensureNoFailure()}.
+         */
+        synchronized void consumeResult(int shardIndex, QuerySearchResult result) {
+            if (failure != null) {
+                return;
+            }
+            results[shardIndex] = result;
+            if (result.hasAggs()) {
+                hasAggs = true;
+                aggsBuffer[index] = result.consumeAggs();
+            }
+            if (++index == bufferSize) {
+                try {
+                    partialReduce();
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }
+        }
+
+        private void partialReduce() throws IOException {
+            final List<InternalAggregations> aggs = new ArrayList<>(bufferSize);
+            for (InternalAggregations agg : aggsBuffer) {
+                if (agg != null) {
+                    aggs.add(agg);
+                }
+            }
+            Arrays.fill(aggsBuffer, null);
+            index = 0;
+            if (aggs.isEmpty() == false) {
+                ReduceContext reduceContext = new ReduceContext(bigArrays, scriptService, false);
+                aggsBuffer[index++] = InternalAggregations.reduce(aggs, reduceContext);
+            }
+            trimTopDocs();
+            numReducePhases++;
+        }
+
+        /**
+         * Merges the top docs of all shards seen so far and trims each of them to the docs that made it into the merged
+         * top docs since all other docs can't be part of the global top docs anymore.
+         */
+        private void trimTopDocs() throws IOException {
+            Sort sort = null;
+            int topN = -1;
+            for (QuerySearchResult result : results) {
+                if (result != null && result.topDocs() != null) {
+                    if (result.topDocs() instanceof CollapseTopFieldDocs) {
+                        // hits of different shards can belong to the same group, the final reduce needs all of them
+                        return;
+                    }
+                    topN = ignoreFrom ? result.size() : result.from() + result.size();
+                    if (result.topDocs() instanceof TopFieldDocs) {
+                        sort = new Sort(((TopFieldDocs) result.topDocs()).fields);
+                    }
+                    break;
+                }
+            }
+            if (topN <= 0) {
+                return;
+            }
+            final TopDocs mergedTopDocs;
+            if (sort != null) {
+                final TopFieldDocs[] shardTopDocs = new TopFieldDocs[results.length];
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i] == null || results[i].topDocs() == null) {
+                        // TopDocs#merge can't deal with null shard TopDocs
+                        shardTopDocs[i] = new TopFieldDocs(0, new FieldDoc[0], sort.getSort(), Float.NaN);
+                    } else {
+                        shardTopDocs[i] = (TopFieldDocs) results[i].topDocs();
+                    }
+                }
+                mergedTopDocs = TopDocs.merge(sort, 0, topN, shardTopDocs);
+            } else {
+                final TopDocs[] shardTopDocs = new TopDocs[results.length];
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i] == null || results[i].topDocs() == null) {
+                        shardTopDocs[i] = Lucene.EMPTY_TOP_DOCS;
+                    } else {
+                        shardTopDocs[i] = results[i].topDocs();
+                    }
+                }
+                mergedTopDocs = TopDocs.merge(0, topN, shardTopDocs);
+            }
+            // the merged top docs hold a prefix of the top docs of each shard, the shard index is set by TopDocs#merge
+            final int[] numDocsPerShard = new int[results.length];
+            for (ScoreDoc scoreDoc : mergedTopDocs.scoreDocs) {
+                numDocsPerShard[scoreDoc.shardIndex]++;
+            }
+            for (int i = 0; i < results.length; i++) {
+                final QuerySearchResult result = results[i];
+                if (result == null || result.topDocs() == null || result.topDocs().scoreDocs.length == numDocsPerShard[i]) {
+                    continue;
+                }
+                final TopDocs topDocs = result.topDocs();
+                final ScoreDoc[] scoreDocs = Arrays.copyOf(topDocs.scoreDocs, numDocsPerShard[i]);
+                if (topDocs instanceof TopFieldDocs) {
+                    result.trimTopDocs(new TopFieldDocs(topDocs.totalHits, scoreDocs, ((TopFieldDocs) topDocs).fields,
+                        topDocs.getMaxScore()));
+                } else {
+                    result.trimTopDocs(new TopDocs(topDocs.totalHits, scoreDocs, topDocs.getMaxScore()));
+                }
+            }
+        }
+
+        /**
+         * Rethrows the first failure that happened during a partial reduce phase, if any.
+         */
+        synchronized void ensureNoFailure() throws Exception {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        /**
+         * Returns <code>true</code> iff any of the consumed results carried aggregations.
+         */
+        synchronized boolean hasAggs() {
+            return hasAggs;
+        }
+
+        /**
+         * Returns the number of partial reduce phases that were executed so far.
+         */
+        synchronized int getNumReducePhases() {
+            return numReducePhases;
+        }
+
+        /**
+         * Returns the aggregations that still need to be reduced in the final reduce phase and clears the buffer.
+         */
+        synchronized List<InternalAggregations> consumeAggs() {
+            final List<InternalAggregations> aggs = new ArrayList<>(index);
+            for (int i = 0; i < index; i++) {
+                if (aggsBuffer[i] != null) {
+                    aggs.add(aggsBuffer[i]);
+                }
+            }
+            Arrays.fill(aggsBuffer, null);
+            index = 0;
+            return aggs;
+        }
     }
 
     /**
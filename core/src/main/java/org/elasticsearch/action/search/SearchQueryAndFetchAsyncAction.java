@@ -24,6 +24,7 @@ import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRunnable;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.search.fetch.QueryFetchSearchResult;
 import org.elasticsearch.search.internal.AliasFilter;
 import org.elasticsearch.search.internal.InternalSearchResponse;
@@ -37,6 +38,7 @@ import java.util.function.Function;
 class SearchQueryAndFetchAsyncAction extends AbstractSearchAsyncAction<QueryFetchSearchResult> {
 
     private final SearchPhaseController searchPhaseController;
+    private final ShardQueryBatch queryBatch;
 
     SearchQueryAndFetchAsyncAction(Logger logger, SearchTransportService searchTransportService,
                                    Function<String, DiscoveryNode> nodeIdToDiscoveryNode,
@@ -44,10 +46,11 @@ class SearchQueryAndFetchAsyncAction extends AbstractSearchAsyncAction<QueryFetc
                                    SearchPhaseController searchPhaseController, Executor executor,
                                    SearchRequest request, ActionListener<SearchResponse> listener,
                                    GroupShardsIterator shardsIts, long startTime, long clusterStateVersion,
-                                   SearchTask task) {
+                                   SearchTask task, @Nullable ShardQueryBatch queryBatch) {
         super(logger, searchTransportService, nodeIdToDiscoveryNode, aliasFilter, executor,
                 request, listener, shardsIts, startTime, clusterStateVersion, task);
         this.searchPhaseController = searchPhaseController;
+        this.queryBatch = queryBatch;
 
     }
 
@@ -59,7 +62,11 @@ class SearchQueryAndFetchAsyncAction extends AbstractSearchAsyncAction<QueryFetc
     @Override
     protected void sendExecuteFirstPhase(DiscoveryNode node, ShardSearchTransportRequest request,
                                          ActionListener<QueryFetchSearchResult> listener) {
-        searchTransportService.sendExecuteFetch(node, request, task, listener);
+        if (queryBatch != null) {
+            queryBatch.sendExecuteFetch(node, request, task, listener);
+        } else {
+            searchTransportService.sendExecuteFetch(node, request, task, listener);
+        }
     }
 
     @Override
@@ -28,6 +28,7 @@ import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRunnable;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.fetch.FetchSearchResult;
@@ -48,6 +49,8 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<QuerySea
     final AtomicArray<FetchSearchResult> fetchResults;
     final AtomicArray<IntArrayList> docIdsToLoad;
     private final SearchPhaseController searchPhaseController;
+    private final ShardQueryBatch queryBatch;
+    private final SearchPhaseController.QueryPhaseResultConsumer queryResultConsumer;
 
     SearchQueryThenFetchAsyncAction(Logger logger, SearchTransportService searchTransportService,
                                     Function<String, DiscoveryNode> nodeIdToDiscoveryNode, Map<String,
@@ -55,12 +58,14 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<QuerySea
                                     SearchPhaseController searchPhaseController, Executor executor,
                                     SearchRequest request, ActionListener<SearchResponse> listener,
                                     GroupShardsIterator shardsIts, long startTime, long clusterStateVersion,
-                                    SearchTask task) {
+                                    SearchTask task, @Nullable ShardQueryBatch queryBatch) {
         super(logger, searchTransportService, nodeIdToDiscoveryNode, aliasFilter, executor, request, listener,
             shardsIts, startTime, clusterStateVersion, task);
         this.searchPhaseController = searchPhaseController;
+        this.queryBatch = queryBatch;
         fetchResults = new AtomicArray<>(firstResults.length());
         docIdsToLoad = new AtomicArray<>(firstResults.length());
+        queryResultConsumer = searchPhaseController.newQueryPhaseResultConsumer(request, firstResults.length());
     }
 
     @Override
@@ -71,11 +76,25 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<QuerySea
     @Override
     protected void sendExecuteFirstPhase(DiscoveryNode node, ShardSearchTransportRequest request,
                                          ActionListener<QuerySearchResultProvider> listener) {
-        searchTransportService.sendExecuteQuery(node, request, task, listener);
+        if (queryBatch != null) {
+            queryBatch.sendExecuteQuery(node, request, task, listener);
+        } else {
+            searchTransportService.sendExecuteQuery(node, request, task, listener);
+        }
+    }
+
+    @Override
+    protected void consumeFirstPhaseResult(int shardIndex, QuerySearchResultProvider result) {
+        if (queryResultConsumer != null) {
+            queryResultConsumer.consumeResult(shardIndex, result.queryResult());
+        }
     }
 
     @Override
     protected void moveToSecondPhase() throws Exception {
+        if (queryResultConsumer != null) {
+            queryResultConsumer.ensureNoFailure();
+        }
         final boolean isScrollRequest = request.scroll() != null;
         sortedShardDocs = searchPhaseController.sortDocs(isScrollRequest, firstResults);
         searchPhaseController.fillDocIdsToLoad(docIdsToLoad, sortedShardDocs);
@@ -138,7 +157,7 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<QuerySea
             public void doRun() throws IOException {
                 final boolean isScrollRequest = request.scroll() != null;
                 final InternalSearchResponse internalResponse = searchPhaseController.merge(isScrollRequest, sortedShardDocs, firstResults,
-                    fetchResults);
+                    fetchResults, queryResultConsumer);
                 String scrollId = isScrollRequest ? TransportSearchHelper.buildScrollId(request.searchType(), firstResults) : null;
                 listener.onResponse(new SearchResponse(internalResponse, scrollId, expectedSuccessfulOps,
                     successfulOps.get(), buildTookInMillis(), buildShardFailures()));
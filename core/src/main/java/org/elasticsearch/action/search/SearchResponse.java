@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.search;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionResponse;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
@@ -54,6 +55,8 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
 
     private int successfulShards;
 
+    private int skippedShards;
+
     private ShardSearchFailure[] shardFailures;
 
     private long tookInMillis;
@@ -62,14 +65,24 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
     }
 
     public SearchResponse(InternalSearchResponse internalResponse, String scrollId, int totalShards, int successfulShards, long tookInMillis, ShardSearchFailure[] shardFailures) {
+        this(internalResponse, scrollId, totalShards, successfulShards, 0, tookInMillis, shardFailures);
+    }
+
+    public SearchResponse(InternalSearchResponse internalResponse, String scrollId, int totalShards, int successfulShards,
+                          int skippedShards, long tookInMillis, ShardSearchFailure[] shardFailures) {
         this.internalResponse = internalResponse;
         this.scrollId = scrollId;
         this.totalShards = totalShards;
         this.successfulShards = successfulShards;
+        this.skippedShards = skippedShards;
         this.tookInMillis = tookInMillis;
         this.shardFailures = shardFailures;
     }
 
+    InternalSearchResponse getInternalResponse() {
+        return internalResponse;
+    }
+
     @Override
     public RestStatus status() {
         return RestStatus.status(successfulShards, totalShards, shardFailures);
@@ -106,6 +119,14 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         return internalResponse.terminatedEarly();
     }
 
+    /**
+     * Returns the number of reduce phases applied to obtain this search response. This is <code>1</code> unless the shard results
+     * were reduced in batches on the coordinating node, see {@link SearchRequest#setBatchedReduceSize(int)}.
+     */
+    public int getNumReducePhases() {
+        return internalResponse.getNumReducePhases();
+    }
+
     /**
      * How long the search took.
      */
@@ -134,6 +155,14 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         return successfulShards;
     }
 
+    /**
+     * The number of shards that were skipped because the pre-filter phase determined that the query can't match any
+     * document on them. Skipped shards are also counted as successful shards.
+     */
+    public int getSkippedShards() {
+        return skippedShards;
+    }
+
     /**
      * The failed number of shards the search was executed on.
      */
@@ -177,6 +206,7 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         static final String TOOK = "took";
         static final String TIMED_OUT = "timed_out";
         static final String TERMINATED_EARLY = "terminated_early";
+        static final String NUM_REDUCE_PHASES = "num_reduce_phases";
     }
 
     @Override
@@ -189,7 +219,11 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         if (isTerminatedEarly() != null) {
             builder.field(Fields.TERMINATED_EARLY, isTerminatedEarly());
         }
-        RestActions.buildBroadcastShardsHeader(builder, params, getTotalShards(), getSuccessfulShards(), getFailedShards(), getShardFailures());
+        if (getNumReducePhases() != 1) {
+            builder.field(Fields.NUM_REDUCE_PHASES, getNumReducePhases());
+        }
+        RestActions.buildBroadcastShardsHeader(builder, params, getTotalShards(), getSuccessfulShards(), getSkippedShards(),
+            getFailedShards(), getShardFailures());
         internalResponse.toXContent(builder, params);
         return builder;
     }
@@ -211,6 +245,9 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         }
         scrollId = in.readOptionalString();
         tookInMillis = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            skippedShards = in.readVInt();
+        }
     }
 
     @Override
@@ -227,6 +264,9 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
 
         out.writeOptionalString(scrollId);
         out.writeVLong(tookInMillis);
+        if (out.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            out.writeVInt(skippedShards);
+        }
     }
 
     @Override
@@ -25,13 +25,20 @@ import org.elasticsearch.action.IndicesRequest;
 import org.elasticsearch.action.OriginalIndices;
 import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.CountDown;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.node.ResponseCollectorService;
 import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.fetch.FetchSearchResult;
+import org.elasticsearch.search.fetch.FetchSearchResultProvider;
 import org.elasticsearch.search.fetch.QueryFetchSearchResult;
 import org.elasticsearch.search.fetch.ScrollQueryFetchSearchResult;
 import org.elasticsearch.search.fetch.ShardFetchRequest;
@@ -43,6 +50,8 @@ import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.query.QuerySearchResultProvider;
 import org.elasticsearch.search.query.ScrollQuerySearchResult;
 import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskId;
+import org.elasticsearch.tasks.TaskManager;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TaskAwareTransportRequestHandler;
 import org.elasticsearch.transport.TransportChannel;
@@ -51,6 +60,12 @@ import org.elasticsearch.transport.TransportResponse;
 import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An encapsulation of {@link org.elasticsearch.search.SearchService} operations exposed through
@@ -63,6 +78,7 @@ public class SearchTransportService extends AbstractComponent {
     public static final String CLEAR_SCROLL_CONTEXTS_ACTION_NAME = "indices:data/read/search[clear_scroll_contexts]";
     public static final String DFS_ACTION_NAME = "indices:data/read/search[phase/dfs]";
     public static final String QUERY_ACTION_NAME = "indices:data/read/search[phase/query]";
+    public static final String QUERY_BATCH_ACTION_NAME = "indices:data/read/search[phase/query/batch]";
     public static final String QUERY_ID_ACTION_NAME = "indices:data/read/search[phase/query/id]";
     public static final String QUERY_SCROLL_ACTION_NAME = "indices:data/read/search[phase/query/scroll]";
     public static final String QUERY_FETCH_ACTION_NAME = "indices:data/read/search[phase/query+fetch]";
@@ -70,12 +86,16 @@ public class SearchTransportService extends AbstractComponent {
     public static final String QUERY_FETCH_SCROLL_ACTION_NAME = "indices:data/read/search[phase/query+fetch/scroll]";
     public static final String FETCH_ID_SCROLL_ACTION_NAME = "indices:data/read/search[phase/fetch/id/scroll]";
     public static final String FETCH_ID_ACTION_NAME = "indices:data/read/search[phase/fetch/id]";
+    public static final String QUERY_CAN_MATCH_NAME = "indices:data/read/search[can_match]";
 
     private final TransportService transportService;
+    private final ResponseCollectorService responseCollectorService;
 
-    public SearchTransportService(Settings settings, TransportService transportService) {
+    public SearchTransportService(Settings settings, TransportService transportService,
+                                  @Nullable ResponseCollectorService responseCollectorService) {
         super(settings);
         this.transportService = transportService;
+        this.responseCollectorService = responseCollectorService;
     }
 
     public void sendFreeContext(DiscoveryNode node, final long contextId, SearchRequest request) {
@@ -103,6 +123,12 @@ public class SearchTransportService extends AbstractComponent {
             new ActionListenerResponseHandler<>(listener, () -> TransportResponse.Empty.INSTANCE));
     }
 
+    public void sendCanMatch(DiscoveryNode node, final ShardSearchTransportRequest request, SearchTask task,
+                             final ActionListener<CanMatchResponse> listener) {
+        transportService.sendChildRequest(node, QUERY_CAN_MATCH_NAME, request, task,
+            new ActionListenerResponseHandler<>(listener, CanMatchResponse::new));
+    }
+
     public void sendExecuteDfs(DiscoveryNode node, final ShardSearchTransportRequest request, SearchTask task,
                                final ActionListener<DfsSearchResult> listener) {
         transportService.sendChildRequest(node, DFS_ACTION_NAME, request, task,
@@ -112,13 +138,73 @@ public class SearchTransportService extends AbstractComponent {
     public void sendExecuteQuery(DiscoveryNode node, final ShardSearchTransportRequest request, SearchTask task,
                                  final ActionListener<QuerySearchResultProvider> listener) {
         transportService.sendChildRequest(node, QUERY_ACTION_NAME, request, task,
-            new ActionListenerResponseHandler<>(listener, QuerySearchResult::new));
+            new ActionListenerResponseHandler<>(collectNodeStatistics(node, listener), QuerySearchResult::new));
     }
 
     public void sendExecuteQuery(DiscoveryNode node, final QuerySearchRequest request, SearchTask task,
                                  final ActionListener<QuerySearchResult> listener) {
         transportService.sendChildRequest(node, QUERY_ID_ACTION_NAME, request, task,
-            new ActionListenerResponseHandler<>(listener, QuerySearchResult::new));
+            new ActionListenerResponseHandler<>(collectNodeStatistics(node, listener), QuerySearchResult::new));
+    }
+
+    /**
+     * Wraps the given listener to record the response time of the node and the statistics it piggybacked on its query result,
+     * used to rank the copies of shards for adaptive replica selection.
+     */
+    private <T extends QuerySearchResultProvider> ActionListener<T> collectNodeStatistics(DiscoveryNode node, ActionListener<T> listener) {
+        if (responseCollectorService == null) {
+            return listener;
+        }
+        final String nodeId = node.getId();
+        final long startNanos = System.nanoTime();
+        onQueryRequestSent(nodeId);
+        return new ActionListener<T>() {
+            @Override
+            public void onResponse(T response) {
+                onQueryRequestDone(nodeId, response.queryResult(), System.nanoTime() - startNanos);
+                listener.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                onQueryRequestDone(nodeId, null, -1);
+                listener.onFailure(e);
+            }
+        };
+    }
+
+    /**
+     * Records that a query request was sent to the given node, used to rank the copies of shards for adaptive replica selection.
+     */
+    void onQueryRequestSent(String nodeId) {
+        if (responseCollectorService != null) {
+            responseCollectorService.onRequestSent(nodeId);
+        }
+    }
+
+    /**
+     * Records that a query request sent to the given node completed, with the statistics the node piggybacked on the query result
+     * unless the request failed.
+     */
+    void onQueryRequestDone(String nodeId, @Nullable QuerySearchResult queryResult, long responseTimeNanos) {
+        if (responseCollectorService == null) {
+            return;
+        }
+        responseCollectorService.onRequestDone(nodeId);
+        if (queryResult != null && queryResult.nodeQueueSize() >= 0 && queryResult.serviceTimeEWMA() >= 0) {
+            responseCollectorService.addNodeStatistics(nodeId, queryResult.nodeQueueSize(), responseTimeNanos,
+                queryResult.serviceTimeEWMA());
+        }
+    }
+
+    /**
+     * Sends the query phase requests of several searches that target the same shard copy as a single request, see
+     * {@link ShardQueryBatch}.
+     */
+    void sendExecuteQueryBatch(DiscoveryNode node, final ShardQueryBatchRequest request, Task parentTask,
+                               final ActionListener<ShardQueryBatchResponse> listener) {
+        transportService.sendChildRequest(node, QUERY_BATCH_ACTION_NAME, request, parentTask,
+            new ActionListenerResponseHandler<>(listener, () -> new ShardQueryBatchResponse(request.fetch())));
     }
 
     public void sendExecuteQuery(DiscoveryNode node, final InternalScrollSearchRequest request, SearchTask task,
@@ -161,6 +247,15 @@ public class SearchTransportService extends AbstractComponent {
             new ActionListenerResponseHandler<>(listener, FetchSearchResult::new));
     }
 
+    /**
+     * Used by {@link ExpandSearchPhase} to run the group searches of collapsed hits as a child of the given search task.
+     */
+    public void sendExecuteMultiSearch(DiscoveryNode node, final MultiSearchRequest request, SearchTask task,
+                                       final ActionListener<MultiSearchResponse> listener) {
+        transportService.sendChildRequest(node, MultiSearchAction.NAME, request, task,
+            new ActionListenerResponseHandler<>(listener, MultiSearchResponse::new));
+    }
+
     static class ScrollFreeContextRequest extends TransportRequest {
         private long id;
 
@@ -256,7 +351,331 @@ public class SearchTransportService extends AbstractComponent {
         }
     }
 
-    public static void registerRequestHandler(TransportService transportService, SearchService searchService) {
+    public static final class CanMatchResponse extends TransportResponse {
+
+        private boolean canMatch;
+
+        CanMatchResponse() {
+        }
+
+        CanMatchResponse(boolean canMatch) {
+            this.canMatch = canMatch;
+        }
+
+        /**
+         * Returns <code>false</code> iff the query can't match any document on the shard and the shard can be skipped.
+         */
+        public boolean canMatch() {
+            return canMatch;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            canMatch = in.readBoolean();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeBoolean(canMatch);
+        }
+    }
+
+    /**
+     * A batch of query phase requests that target the same shard. The requests are executed against the same searcher of the
+     * shard and each of them succeeds or fails on its own.
+     */
+    static final class ShardQueryBatchRequest extends TransportRequest implements IndicesRequest {
+
+        private boolean fetch;
+        private List<ShardSearchTransportRequest> requests;
+
+        ShardQueryBatchRequest() {
+        }
+
+        ShardQueryBatchRequest(boolean fetch, List<ShardSearchTransportRequest> requests) {
+            assert requests.isEmpty() == false;
+            this.fetch = fetch;
+            this.requests = requests;
+        }
+
+        /**
+         * Returns <code>true</code> iff the requests execute the query and the fetch phase, rather than only the query phase.
+         */
+        boolean fetch() {
+            return fetch;
+        }
+
+        List<ShardSearchTransportRequest> requests() {
+            return requests;
+        }
+
+        @Override
+        public String[] indices() {
+            Set<String> indices = new LinkedHashSet<>();
+            for (ShardSearchTransportRequest request : requests) {
+                if (request.indices() != null) {
+                    Collections.addAll(indices, request.indices());
+                }
+            }
+            return indices.toArray(new String[indices.size()]);
+        }
+
+        @Override
+        public IndicesOptions indicesOptions() {
+            return requests.get(0).indicesOptions();
+        }
+
+        @Override
+        public Task createTask(long id, String type, String action, TaskId parentTaskId) {
+            return new SearchTask(id, type, action, getDescription(), parentTaskId);
+        }
+
+        @Override
+        public String getDescription() {
+            return "shardId[" + requests.get(0).shardId() + "], requests[" + requests.size() + "]";
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            fetch = in.readBoolean();
+            int size = in.readVInt();
+            requests = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                ShardSearchTransportRequest request = new ShardSearchTransportRequest();
+                request.readFrom(in);
+                requests.add(request);
+            }
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeBoolean(fetch);
+            out.writeVInt(requests.size());
+            for (ShardSearchTransportRequest request : requests) {
+                request.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * The results of a {@link ShardQueryBatchRequest}, holding either the result or the failure of each request in the order
+     * of the requests. It also holds the time that each request took from the arrival of the batch on the shard to its
+     * completion, so that adaptive replica selection sees the response time of each request rather than of the whole batch.
+     */
+    static final class ShardQueryBatchResponse extends TransportResponse {
+
+        private final boolean fetch;
+        private QuerySearchResultProvider[] results;
+        private Exception[] failures;
+        private long[] tookInNanos;
+        private long batchTookInNanos;
+
+        ShardQueryBatchResponse(boolean fetch) {
+            this.fetch = fetch;
+        }
+
+        ShardQueryBatchResponse(boolean fetch, int size) {
+            this.fetch = fetch;
+            this.results = new QuerySearchResultProvider[size];
+            this.failures = new Exception[size];
+            this.tookInNanos = new long[size];
+        }
+
+        void set(int index, QuerySearchResultProvider result, Exception failure, long tookInNanos) {
+            assert (result == null) != (failure == null) : "either a result or a failure is expected";
+            results[index] = result;
+            failures[index] = failure;
+            this.tookInNanos[index] = tookInNanos;
+        }
+
+        void batchTookInNanos(long batchTookInNanos) {
+            this.batchTookInNanos = batchTookInNanos;
+        }
+
+        int size() {
+            return results.length;
+        }
+
+        QuerySearchResultProvider result(int index) {
+            return results[index];
+        }
+
+        Exception failure(int index) {
+            return failures[index];
+        }
+
+        /**
+         * The time from the arrival of the batch on the shard until the request at the given index completed.
+         */
+        long tookInNanos(int index) {
+            return tookInNanos[index];
+        }
+
+        /**
+         * The time from the arrival of the batch on the shard until all of its requests completed.
+         */
+        long batchTookInNanos() {
+            return batchTookInNanos;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            int size = in.readVInt();
+            results = new QuerySearchResultProvider[size];
+            failures = new Exception[size];
+            tookInNanos = new long[size];
+            for (int i = 0; i < size; i++) {
+                if (in.readBoolean()) {
+                    results[i] = fetch ? new QueryFetchSearchResult() : new QuerySearchResult();
+                    results[i].readFrom(in);
+                } else {
+                    failures[i] = in.readException();
+                }
+                tookInNanos[i] = in.readVLong();
+            }
+            batchTookInNanos = in.readVLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeVInt(results.length);
+            for (int i = 0; i < results.length; i++) {
+                if (failures[i] == null) {
+                    out.writeBoolean(true);
+                    results[i].writeTo(out);
+                } else {
+                    out.writeBoolean(false);
+                    out.writeException(failures[i]);
+                }
+                out.writeVLong(tookInNanos[i]);
+            }
+            out.writeVLong(batchTookInNanos);
+        }
+    }
+
+    /**
+     * Executes the requests of a {@link ShardQueryBatchRequest} against a searcher that they share. Each request is registered
+     * as its own task, a child of the search that sent it, so that cancelling a search cancels its request. Up to the size of
+     * the search thread pool requests run concurrently on the search thread pool so that a slow request doesn't hold up the
+     * others of the batch.
+     */
+    private static final class ShardQueryBatchExecution {
+
+        private final TransportService transportService;
+        private final ThreadPool threadPool;
+        private final SearchService searchService;
+        private final ShardQueryBatchRequest request;
+        private final TransportChannel channel;
+        private final ShardQueryBatchResponse response;
+        private final AtomicInteger nextRequest = new AtomicInteger();
+        private final CountDown pendingRequests;
+        private final long startNanos = System.nanoTime();
+        private SearchService.SharedSearcher searcher;
+
+        ShardQueryBatchExecution(TransportService transportService, ThreadPool threadPool, SearchService searchService,
+                                 ShardQueryBatchRequest request, TransportChannel channel) {
+            this.transportService = transportService;
+            this.threadPool = threadPool;
+            this.searchService = searchService;
+            this.request = request;
+            this.channel = channel;
+            this.response = new ShardQueryBatchResponse(request.fetch(), request.requests().size());
+            this.pendingRequests = new CountDown(request.requests().size());
+        }
+
+        void run() {
+            searcher = searchService.acquireSharedSearcher(request.requests().get(0).shardId());
+            final int maxConcurrentRequests = Math.min(request.requests().size(), threadPool.info(ThreadPool.Names.SEARCH).getMax());
+            for (int i = 1; i < maxConcurrentRequests; i++) {
+                try {
+                    threadPool.executor(ThreadPool.Names.SEARCH).execute(this::executeRequests);
+                } catch (EsRejectedExecutionException e) {
+                    // the threads that are already running take over the remaining requests
+                    break;
+                }
+            }
+            executeRequests();
+        }
+
+        private void executeRequests() {
+            int index;
+            while ((index = nextRequest.getAndIncrement()) < request.requests().size()) {
+                executeRequest(index);
+            }
+        }
+
+        private void executeRequest(int index) {
+            final ShardSearchTransportRequest shardRequest = request.requests().get(index);
+            assert shardRequest.shardId().equals(request.requests().get(0).shardId()) : "all requests must target the same shard";
+            final TaskManager taskManager = transportService.getTaskManager();
+            QuerySearchResultProvider result = null;
+            Exception failure = null;
+            try {
+                final SearchTask task = (SearchTask) taskManager.register("transport",
+                    request.fetch() ? QUERY_FETCH_ACTION_NAME : QUERY_ACTION_NAME, shardRequest);
+                try {
+                    result = searchService.executeQueryPhase(shardRequest, request.fetch(), task, searcher);
+                } finally {
+                    taskManager.unregister(task);
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+            response.set(index, result, failure, System.nanoTime() - startNanos);
+            if (pendingRequests.countDown()) {
+                searcher.close();
+                response.batchTookInNanos(System.nanoTime() - startNanos);
+                try {
+                    final List<FetchSearchResult> fetchResults = new ArrayList<>();
+                    for (int i = 0; i < response.size(); i++) {
+                        if (response.result(i) instanceof FetchSearchResultProvider) {
+                            fetchResults.add(((FetchSearchResultProvider) response.result(i)).fetchResult());
+                        }
+                    }
+                    sendFetchResponse(channel, response, fetchResults);
+                } catch (Exception e) {
+                    try {
+                        channel.sendResponse(e);
+                    } catch (Exception inner) {
+                        inner.addSuppressed(e);
+                        Loggers.getLogger(SearchTransportService.class).warn("failed to send response for a batch of shard queries",
+                            inner);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void sendFetchResponse(TransportChannel channel, TransportResponse response, FetchSearchResult fetchResult)
+        throws IOException {
+        sendFetchResponse(channel, response, Collections.singletonList(fetchResult));
+    }
+
+    /**
+     * Sends a response that holds fetched hits and releases the resources backing the hits once the response has been sent.
+     * Responses to the local node are handed over without being serialized so their hits are read beforehand.
+     */
+    private static void sendFetchResponse(TransportChannel channel, TransportResponse response, List<FetchSearchResult> fetchResults)
+        throws IOException {
+        try {
+            if ("direct".equals(channel.getChannelType())) {
+                for (FetchSearchResult fetchResult : fetchResults) {
+                    fetchResult.hits();
+                }
+            }
+            channel.sendResponse(response);
+        } finally {
+            Releasables.close(fetchResults);
+        }
+    }
+
+    public static void registerRequestHandler(TransportService transportService, ThreadPool threadPool, SearchService searchService) {
         transportService.registerRequestHandler(FREE_CONTEXT_SCROLL_ACTION_NAME, ScrollFreeContextRequest::new, ThreadPool.Names.SAME,
             new TaskAwareTransportRequestHandler<ScrollFreeContextRequest>() {
                 @Override
@@ -299,6 +718,13 @@ public class SearchTransportService extends AbstractComponent {
                     channel.sendResponse(result);
                 }
             });
+        transportService.registerRequestHandler(QUERY_BATCH_ACTION_NAME, ShardQueryBatchRequest::new, ThreadPool.Names.SEARCH,
+            new TaskAwareTransportRequestHandler<ShardQueryBatchRequest>() {
+                @Override
+                public void messageReceived(ShardQueryBatchRequest request, TransportChannel channel, Task task) throws Exception {
+                    new ShardQueryBatchExecution(transportService, threadPool, searchService, request, channel).run();
+                }
+            });
         transportService.registerRequestHandler(QUERY_ID_ACTION_NAME, QuerySearchRequest::new, ThreadPool.Names.SEARCH,
             new TaskAwareTransportRequestHandler<QuerySearchRequest>() {
                 @Override
@@ -320,7 +746,7 @@ public class SearchTransportService extends AbstractComponent {
                 @Override
                 public void messageReceived(ShardSearchTransportRequest request, TransportChannel channel, Task task) throws Exception {
                     QueryFetchSearchResult result = searchService.executeFetchPhase(request, (SearchTask)task);
-                    channel.sendResponse(result);
+                    sendFetchResponse(channel, result, result.fetchResult());
                 }
             });
         transportService.registerRequestHandler(QUERY_QUERY_FETCH_ACTION_NAME, QuerySearchRequest::new, ThreadPool.Names.SEARCH,
@@ -328,7 +754,7 @@ public class SearchTransportService extends AbstractComponent {
                 @Override
                 public void messageReceived(QuerySearchRequest request, TransportChannel channel, Task task) throws Exception {
                     QueryFetchSearchResult result = searchService.executeFetchPhase(request, (SearchTask)task);
-                    channel.sendResponse(result);
+                    sendFetchResponse(channel, result, result.fetchResult());
                 }
             });
         transportService.registerRequestHandler(QUERY_FETCH_SCROLL_ACTION_NAME, InternalScrollSearchRequest::new, ThreadPool.Names.SEARCH,
@@ -336,7 +762,7 @@ public class SearchTransportService extends AbstractComponent {
                 @Override
                 public void messageReceived(InternalScrollSearchRequest request, TransportChannel channel, Task task) throws Exception {
                     ScrollQueryFetchSearchResult result = searchService.executeFetchPhase(request, (SearchTask)task);
-                    channel.sendResponse(result);
+                    sendFetchResponse(channel, result, result.result().fetchResult());
                 }
             });
         transportService.registerRequestHandler(FETCH_ID_SCROLL_ACTION_NAME, ShardFetchRequest::new, ThreadPool.Names.SEARCH,
@@ -344,7 +770,7 @@ public class SearchTransportService extends AbstractComponent {
                 @Override
                 public void messageReceived(ShardFetchRequest request, TransportChannel channel, Task task) throws Exception {
                     FetchSearchResult result = searchService.executeFetchPhase(request, (SearchTask)task);
-                    channel.sendResponse(result);
+                    sendFetchResponse(channel, result, result);
                 }
             });
         transportService.registerRequestHandler(FETCH_ID_ACTION_NAME, ShardFetchSearchRequest::new, ThreadPool.Names.SEARCH,
@@ -352,7 +778,15 @@ public class SearchTransportService extends AbstractComponent {
                 @Override
                 public void messageReceived(ShardFetchSearchRequest request, TransportChannel channel, Task task) throws Exception {
                     FetchSearchResult result = searchService.executeFetchPhase(request, (SearchTask)task);
-                    channel.sendResponse(result);
+                    sendFetchResponse(channel, result, result);
+                }
+            });
+        transportService.registerRequestHandler(QUERY_CAN_MATCH_NAME, ShardSearchTransportRequest::new, ThreadPool.Names.SEARCH,
+            new TaskAwareTransportRequestHandler<ShardSearchTransportRequest>() {
+                @Override
+                public void messageReceived(ShardSearchTransportRequest request, TransportChannel channel, Task task) throws Exception {
+                    boolean canMatch = searchService.canMatch(request);
+                    channel.sendResponse(new CanMatchResponse(canMatch));
                 }
             });
 
@@ -0,0 +1,208 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.fetch.QueryFetchSearchResult;
+import org.elasticsearch.search.internal.ShardSearchTransportRequest;
+import org.elasticsearch.search.query.QuerySearchResultProvider;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskCancelledException;
+import org.elasticsearch.tasks.TaskManager;
+import org.elasticsearch.transport.TransportException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces the shard level requests of the first phase of the searches of a multi search request. The query requests that
+ * these searches send to the same shard copy while the batch is open are buffered and sent as a single request on
+ * {@link #flush()}, which executes all of them against the same searcher of the shard. Requests that are sent once the batch
+ * has been flushed, or to nodes that don't support batched requests, are sent on their own.
+ * <p>
+ * Each buffered request remains a child of the search that issued it, so cancelling a search cancels its requests on the
+ * shards even though they travel in a batch.
+ * <p>
+ * The batch is made available to the searches of the multi search request through the {@link #TRANSIENT_KEY} transient header
+ * of the thread context.
+ */
+final class ShardQueryBatch {
+
+    static final String TRANSIENT_KEY = "_shard_query_batch";
+
+    private final SearchTransportService searchTransportService;
+    private final TaskManager taskManager;
+    private final String localNodeId;
+    private final Task parentTask;
+    private final Map<Tuple<String, ShardId>, PendingRequests> pendingQueries = new HashMap<>();
+    private final Map<Tuple<String, ShardId>, PendingRequests> pendingQueryFetches = new HashMap<>();
+    private boolean flushed = false;
+
+    /**
+     * @param parentTask the task the batched requests are sent as a child of, since they serve several searches at once
+     */
+    ShardQueryBatch(SearchTransportService searchTransportService, TaskManager taskManager, String localNodeId, Task parentTask) {
+        this.searchTransportService = searchTransportService;
+        this.taskManager = taskManager;
+        this.localNodeId = localNodeId;
+        this.parentTask = parentTask;
+    }
+
+    /**
+     * Sends or buffers the query phase request of a query then fetch search.
+     */
+    void sendExecuteQuery(DiscoveryNode node, ShardSearchTransportRequest request, SearchTask task,
+                          ActionListener<QuerySearchResultProvider> listener) {
+        if (add(pendingQueries, node, request, task, listener) == false) {
+            searchTransportService.sendExecuteQuery(node, request, task, listener);
+        }
+    }
+
+    /**
+     * Sends or buffers the query and fetch phase request of a query and fetch search.
+     */
+    void sendExecuteFetch(DiscoveryNode node, ShardSearchTransportRequest request, SearchTask task,
+                          ActionListener<QueryFetchSearchResult> listener) {
+        final ActionListener<QuerySearchResultProvider> resultListener =
+            ActionListener.wrap(result -> listener.onResponse((QueryFetchSearchResult) result), listener::onFailure);
+        if (add(pendingQueryFetches, node, request, task, resultListener) == false) {
+            searchTransportService.sendExecuteFetch(node, request, task, listener);
+        }
+    }
+
+    private synchronized boolean add(Map<Tuple<String, ShardId>, PendingRequests> pending, DiscoveryNode node,
+                                     ShardSearchTransportRequest request, SearchTask task,
+                                     ActionListener<QuerySearchResultProvider> listener) {
+        if (flushed || node.getVersion().before(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            return false;
+        }
+        request.setParentTask(localNodeId, task.getId());
+        try {
+            taskManager.registerChildTask(task, node.getId());
+        } catch (TaskCancelledException e) {
+            // the search is already cancelled - just fail the request
+            listener.onFailure(new TransportException(e));
+            return true;
+        }
+        pending.computeIfAbsent(new Tuple<>(node.getId(), request.shardId()), k -> new PendingRequests(node))
+            .add(request, listener);
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> iff requests are still buffered rather than sent directly.
+     */
+    synchronized boolean isOpen() {
+        return flushed == false;
+    }
+
+    /**
+     * Sends all buffered requests, one request per shard copy. Requests that are added after this method has been called are
+     * sent directly.
+     */
+    void flush() {
+        final List<PendingRequests> queries;
+        final List<PendingRequests> queryFetches;
+        synchronized (this) {
+            if (flushed) {
+                return;
+            }
+            flushed = true;
+            queries = new ArrayList<>(pendingQueries.values());
+            queryFetches = new ArrayList<>(pendingQueryFetches.values());
+            pendingQueries.clear();
+            pendingQueryFetches.clear();
+        }
+        for (PendingRequests pending : queries) {
+            pending.send(false);
+        }
+        for (PendingRequests pending : queryFetches) {
+            pending.send(true);
+        }
+    }
+
+    private final class PendingRequests {
+        private final DiscoveryNode node;
+        private final List<ShardSearchTransportRequest> requests = new ArrayList<>();
+        private final List<ActionListener<QuerySearchResultProvider>> listeners = new ArrayList<>();
+
+        PendingRequests(DiscoveryNode node) {
+            this.node = node;
+        }
+
+        void add(ShardSearchTransportRequest request, ActionListener<QuerySearchResultProvider> listener) {
+            requests.add(request);
+            listeners.add(listener);
+        }
+
+        void send(boolean fetch) {
+            final SearchTransportService.ShardQueryBatchRequest request =
+                new SearchTransportService.ShardQueryBatchRequest(fetch, requests);
+            // only the query phase feeds adaptive replica selection, like requests that are sent on their own
+            final boolean collectNodeStatistics = fetch == false;
+            if (collectNodeStatistics) {
+                for (int i = 0; i < requests.size(); i++) {
+                    searchTransportService.onQueryRequestSent(node.getId());
+                }
+            }
+            final long startNanos = System.nanoTime();
+            searchTransportService.sendExecuteQueryBatch(node, request, parentTask,
+                new ActionListener<SearchTransportService.ShardQueryBatchResponse>() {
+                    @Override
+                    public void onResponse(SearchTransportService.ShardQueryBatchResponse response) {
+                        // the time the batch spent on the wire and in the queue, which every request of the batch waited for
+                        final long overheadNanos = Math.max(0L, System.nanoTime() - startNanos - response.batchTookInNanos());
+                        for (int i = 0; i < listeners.size(); i++) {
+                            final Exception failure = response.failure(i);
+                            if (failure == null) {
+                                final QuerySearchResultProvider result = response.result(i);
+                                if (collectNodeStatistics) {
+                                    searchTransportService.onQueryRequestDone(node.getId(), result.queryResult(),
+                                        overheadNanos + response.tookInNanos(i));
+                                }
+                                listeners.get(i).onResponse(result);
+                            } else {
+                                if (collectNodeStatistics) {
+                                    searchTransportService.onQueryRequestDone(node.getId(), null, -1);
+                                }
+                                listeners.get(i).onFailure(failure);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        for (ActionListener<QuerySearchResultProvider> listener : listeners) {
+                            if (collectNodeStatistics) {
+                                searchTransportService.onQueryRequestDone(node.getId(), null, -1);
+                            }
+                            listener.onFailure(e);
+                        }
+                    }
+                });
+        }
+    }
+}
@@ -28,9 +28,13 @@ import org.elasticsearch.cluster.block.ClusterBlockLevel;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.tasks.Task;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
 
@@ -40,32 +44,65 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public class TransportMultiSearchAction extends HandledTransportAction<MultiSearchRequest, MultiSearchResponse> {
 
+    /**
+     * Whether the shard level query requests that the searches of a multi search request send to the same shard copy should be
+     * sent as a single request which executes all of them against the same searcher.
+     */
+    public static final Setting<Boolean> COALESCE_SHARD_REQUESTS_SETTING =
+        Setting.boolSetting("action.search.multi.coalesce_shard_requests", true, Property.Dynamic, Property.NodeScope);
+
     private final int availableProcessors;
     private final ClusterService clusterService;
     private final TransportAction<SearchRequest, SearchResponse> searchAction;
+    private final SearchTransportService searchTransportService;
+    private volatile boolean coalesceShardRequests;
 
     @Inject
     public TransportMultiSearchAction(Settings settings, ThreadPool threadPool, TransportService transportService,
                                 ClusterService clusterService, TransportSearchAction searchAction,
+                                SearchTransportService searchTransportService,
                                 ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver) {
         super(settings, MultiSearchAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver, MultiSearchRequest::new);
         this.clusterService = clusterService;
         this.searchAction = searchAction;
+        this.searchTransportService = searchTransportService;
         this.availableProcessors = EsExecutors.numberOfProcessors(settings);
+        this.coalesceShardRequests = COALESCE_SHARD_REQUESTS_SETTING.get(settings);
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(COALESCE_SHARD_REQUESTS_SETTING, this::setCoalesceShardRequests);
+    }
+
+    // For testing only:
+    TransportMultiSearchAction(ThreadPool threadPool, ActionFilters actionFilters, TransportService transportService,
+                               ClusterService clusterService, TransportAction<SearchRequest, SearchResponse> searchAction,
+                               IndexNameExpressionResolver indexNameExpressionResolver, int availableProcessors) {
+        this(threadPool, actionFilters, transportService, clusterService, searchAction, null, false, indexNameExpressionResolver,
+            availableProcessors);
     }
 
     // For testing only:
     TransportMultiSearchAction(ThreadPool threadPool, ActionFilters actionFilters, TransportService transportService,
                                ClusterService clusterService, TransportAction<SearchRequest, SearchResponse> searchAction,
+                               SearchTransportService searchTransportService, boolean coalesceShardRequests,
                                IndexNameExpressionResolver indexNameExpressionResolver, int availableProcessors) {
         super(Settings.EMPTY, MultiSearchAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver, MultiSearchRequest::new);
         this.clusterService = clusterService;
         this.searchAction = searchAction;
+        this.searchTransportService = searchTransportService;
         this.availableProcessors = availableProcessors;
+        this.coalesceShardRequests = coalesceShardRequests;
+    }
+
+    private void setCoalesceShardRequests(boolean coalesceShardRequests) {
+        this.coalesceShardRequests = coalesceShardRequests;
+    }
+
+    @Override
+    protected final void doExecute(MultiSearchRequest request, ActionListener<MultiSearchResponse> listener) {
+        throw new UnsupportedOperationException("the task parameter is required");
     }
 
     @Override
-    protected void doExecute(MultiSearchRequest request, ActionListener<MultiSearchResponse> listener) {
+    protected void doExecute(Task task, MultiSearchRequest request, ActionListener<MultiSearchResponse> listener) {
         ClusterState clusterState = clusterService.state();
         clusterState.blocks().globalBlockedRaiseException(ClusterBlockLevel.READ);
 
@@ -84,8 +121,24 @@ public class TransportMultiSearchAction extends HandledTransportAction<MultiSear
         final AtomicArray<MultiSearchResponse.Item> responses = new AtomicArray<>(numRequests);
         final AtomicInteger responseCounter = new AtomicInteger(numRequests);
         int numConcurrentSearches = Math.min(numRequests, maxConcurrentSearches);
-        for (int i = 0; i < numConcurrentSearches; i++) {
-            executeSearch(searchRequestSlots, responses, responseCounter, listener);
+        final ThreadContext threadContext = threadPool.getThreadContext();
+        if (coalesceShardRequests && numConcurrentSearches > 1 && threadContext.getTransient(ShardQueryBatch.TRANSIENT_KEY) == null) {
+            // the searches that are started concurrently send their shard requests synchronously, these requests are buffered
+            // and sent per shard once all of them have been started. Searches that are started later on are not batched.
+            final ShardQueryBatch queryBatch = new ShardQueryBatch(searchTransportService, taskManager,
+                clusterService.localNode().getId(), task);
+            try (ThreadContext.StoredContext ignore = threadContext.newStoredContext()) {
+                threadContext.putTransient(ShardQueryBatch.TRANSIENT_KEY, queryBatch);
+                for (int i = 0; i < numConcurrentSearches; i++) {
+                    executeSearch(searchRequestSlots, responses, responseCounter, listener);
+                }
+            } finally {
+                queryBatch.flush();
+            }
+        } else {
+            for (int i = 0; i < numConcurrentSearches; i++) {
+                executeSearch(searchRequestSlots, responses, responseCounter, listener);
+            }
         }
     }
 
@@ -33,6 +33,7 @@ import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.Index;
+import org.elasticsearch.node.ResponseCollectorService;
 import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.internal.AliasFilter;
 import org.elasticsearch.tasks.Task;
@@ -59,18 +60,21 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
     private final SearchTransportService searchTransportService;
     private final SearchPhaseController searchPhaseController;
     private final SearchService searchService;
+    private final ResponseCollectorService responseCollectorService;
 
     @Inject
     public TransportSearchAction(Settings settings, ThreadPool threadPool, TransportService transportService, SearchService searchService,
                                  SearchTransportService searchTransportService, SearchPhaseController searchPhaseController,
                                  ClusterService clusterService, ActionFilters actionFilters,
-                                 IndexNameExpressionResolver indexNameExpressionResolver) {
+                                 IndexNameExpressionResolver indexNameExpressionResolver,
+                                 ResponseCollectorService responseCollectorService) {
         super(settings, SearchAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver, SearchRequest::new);
         this.searchPhaseController = searchPhaseController;
         this.searchTransportService = searchTransportService;
-        SearchTransportService.registerRequestHandler(transportService, searchService);
+        SearchTransportService.registerRequestHandler(transportService, threadPool, searchService);
         this.clusterService = clusterService;
         this.searchService = searchService;
+        this.responseCollectorService = responseCollectorService;
     }
 
     private Map<String, AliasFilter> buildPerIndexAliasFilter(SearchRequest request, ClusterState clusterState, Index[] concreteIndices) {
@@ -104,7 +108,7 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
             concreteIndices[i] = indices[i].getName();
         }
         GroupShardsIterator shardIterators = clusterService.operationRouting().searchShards(clusterState, concreteIndices, routingMap,
-            searchRequest.preference());
+            searchRequest.preference(), responseCollectorService);
         failIfOverShardCountLimit(clusterService, shardIterators.size());
 
         // optimize search type for cases where there is only one shard group to search on
@@ -124,8 +128,33 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
             }
         }
 
-        searchAsyncAction((SearchTask)task, searchRequest, shardIterators, startTimeInMillis, clusterState,
-            Collections.unmodifiableMap(aliasFilter), listener).start();
+        final Map<String, AliasFilter> unmodifiableAliasFilter = Collections.unmodifiableMap(aliasFilter);
+        if (shouldPreFilterSearchShards(searchRequest, shardIterators)) {
+            new CanMatchPreFilterSearchPhase(logger, searchTransportService, clusterState.nodes()::get, unmodifiableAliasFilter,
+                searchRequest, shardIterators, startTimeInMillis, (SearchTask) task, (matchingShards, skippedShards) -> {
+                    final ActionListener<SearchResponse> skippedShardsListener = skippedShards == 0 ? listener :
+                        ActionListener.wrap(response -> listener.onResponse(new SearchResponse(response.getInternalResponse(),
+                            response.getScrollId(), response.getTotalShards() + skippedShards,
+                            response.getSuccessfulShards() + skippedShards, skippedShards, response.getTookInMillis(),
+                            response.getShardFailures())), listener::onFailure);
+                    searchAsyncAction((SearchTask) task, searchRequest, matchingShards, startTimeInMillis, clusterState,
+                        unmodifiableAliasFilter, skippedShardsListener).start();
+                }).start();
+        } else {
+            searchAsyncAction((SearchTask) task, searchRequest, shardIterators, startTimeInMillis, clusterState,
+                unmodifiableAliasFilter, listener).start();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> iff the shards of the given request should be pre-filtered by a <tt>can_match</tt> round-trip
+     * before the query phase. This is only done for query-then-fetch requests that expand to more shards than
+     * {@link SearchRequest#getPreFilterShardSize()} and whose query might rewrite to a query that doesn't match any document.
+     */
+    static boolean shouldPreFilterSearchShards(SearchRequest searchRequest, GroupShardsIterator shardIterators) {
+        return searchRequest.searchType() == QUERY_THEN_FETCH // DFS needs to fan out to all shards to compute the term statistics
+            && searchRequest.getPreFilterShardSize() < shardIterators.size()
+            && SearchService.canRewriteToMatchNone(searchRequest.source());
     }
 
     @Override
@@ -136,8 +165,14 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
     private AbstractSearchAsyncAction searchAsyncAction(SearchTask task, SearchRequest searchRequest, GroupShardsIterator shardIterators,
                                                         long startTime, ClusterState state,  Map<String, AliasFilter> aliasFilter,
                                                         ActionListener<SearchResponse> listener) {
+        if (ExpandSearchPhase.isCollapseRequest(searchRequest)) {
+            // the collapsed hits are expanded with the top hits of their group once the response is reduced
+            listener = new ExpandSearchPhase(searchTransportService, state.nodes().getLocalNode(), task, searchRequest, listener);
+        }
         final Function<String, DiscoveryNode> nodesLookup = state.nodes()::get;
         final long clusterStateVersion = state.version();
+        // set by TransportMultiSearchAction if the shard requests of its searches should be coalesced
+        final ShardQueryBatch queryBatch = threadPool.getThreadContext().getTransient(ShardQueryBatch.TRANSIENT_KEY);
         Executor executor = threadPool.executor(ThreadPool.Names.SEARCH);
         AbstractSearchAsyncAction searchAsyncAction;
         switch(searchRequest.searchType()) {
@@ -149,7 +184,7 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
             case QUERY_THEN_FETCH:
                 searchAsyncAction = new SearchQueryThenFetchAsyncAction(logger, searchTransportService, nodesLookup,
                     aliasFilter, searchPhaseController, executor, searchRequest, listener, shardIterators, startTime,
-                    clusterStateVersion, task);
+                    clusterStateVersion, task, queryBatch);
                 break;
             case DFS_QUERY_AND_FETCH:
                 searchAsyncAction = new SearchDfsQueryAndFetchAsyncAction(logger, searchTransportService, nodesLookup,
@@ -159,7 +194,7 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
             case QUERY_AND_FETCH:
                 searchAsyncAction = new SearchQueryAndFetchAsyncAction(logger, searchTransportService, nodesLookup,
                     aliasFilter, searchPhaseController, executor, searchRequest, listener, shardIterators, startTime,
-                    clusterStateVersion, task);
+                    clusterStateVersion, task, queryBatch);
                 break;
             default:
                 throw new IllegalStateException("Unknown search type: [" + searchRequest.searchType() + "]");
@@ -63,6 +63,7 @@ import org.elasticsearch.tasks.Task;
 import org.elasticsearch.tasks.TaskId;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.ConnectTransportException;
+import org.elasticsearch.transport.DelegatingTransportChannel;
 import org.elasticsearch.transport.TransportChannel;
 import org.elasticsearch.transport.TransportChannelResponseHandler;
 import org.elasticsearch.transport.TransportException;
@@ -72,6 +73,7 @@ import org.elasticsearch.transport.TransportRequestOptions;
 import org.elasticsearch.transport.TransportResponse;
 import org.elasticsearch.transport.TransportResponse.Empty;
 import org.elasticsearch.transport.TransportResponseHandler;
+import org.elasticsearch.transport.TransportResponseOptions;
 import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
@@ -122,12 +124,14 @@ public abstract class TransportReplicationAction<
         this.transportPrimaryAction = actionName + "[p]";
         this.transportReplicaAction = actionName + "[r]";
         transportService.registerRequestHandler(actionName, request, ThreadPool.Names.SAME, new OperationTransportHandler());
-        transportService.registerRequestHandler(transportPrimaryAction, () -> new ConcreteShardRequest<>(request), executor,
+        // shard level requests are received on the transport thread so that their limits are checked before they wait in the queue
+        // of the executor, the handlers fork to the executor themselves
+        transportService.registerRequestHandler(transportPrimaryAction, () -> new ConcreteShardRequest<>(request), ThreadPool.Names.SAME,
             new PrimaryOperationTransportHandler());
         // we must never reject on because of thread pool capacity on replicas
         transportService.registerRequestHandler(transportReplicaAction,
             () -> new ConcreteShardRequest<>(replicaRequest),
-            executor, true, true,
+            ThreadPool.Names.SAME, true, true,
             new ReplicaOperationTransportHandler());
 
         this.transportOptions = transportOptions();
@@ -181,6 +185,26 @@ public abstract class TransportReplicationAction<
      */
     protected abstract ReplicaResult shardOperationOnReplica(ReplicaRequest shardRequest, IndexShard replica) throws Exception;
 
+    /**
+     * Called on the transport thread when a primary request is received on the node holding the primary shard, before it is queued
+     * for execution, so that the requests that wait in the queue count against the limits. The returned {@link Releasable} is
+     * released once the response to the request is sent, after the request was replicated. Throwing an exception rejects the
+     * request.
+     *
+     * @param localToCoordinatingNode true if the request was sent by this node
+     */
+    protected Releasable checkPrimaryLimits(Request request, boolean localToCoordinatingNode) {
+        return () -> {};
+    }
+
+    /**
+     * Called on the transport thread when a replica request is received, before it is queued for execution. The returned
+     * {@link Releasable} is released once the response to the request is sent. Throwing an exception rejects the request.
+     */
+    protected Releasable checkReplicaLimits(ReplicaRequest request) {
+        return () -> {};
+    }
+
     /**
      * Cluster level block to check before request execution
      */
@@ -251,8 +275,12 @@ public abstract class TransportReplicationAction<
         }
 
         @Override
-        public void messageReceived(ConcreteShardRequest<Request> request, TransportChannel channel, Task task) {
-            new AsyncPrimaryAction(request.request, request.targetAllocationID, channel, (ReplicationTask) task).run();
+        public void messageReceived(ConcreteShardRequest<Request> request, TransportChannel channel, Task task) throws Exception {
+            // requests sent by the local node go through the direct channel of the transport service
+            final Releasable releasable = checkPrimaryLimits(request.request, "direct".equals(channel.getChannelType()));
+            // a rejection of the executor fails the action, which responds on the channel and releases the limits
+            threadPool.executor(executor).execute(new AsyncPrimaryAction(request.request, request.targetAllocationID,
+                new ReleasingTransportChannel(channel, releasable), (ReplicationTask) task));
         }
     }
 
@@ -441,7 +469,73 @@ public abstract class TransportReplicationAction<
         @Override
         public void messageReceived(ConcreteShardRequest<ReplicaRequest> requestWithAID, TransportChannel channel, Task task)
             throws Exception {
-            new AsyncReplicaAction(requestWithAID.request, requestWithAID.targetAllocationID, channel, (ReplicationTask) task).run();
+            final Releasable releasable = checkReplicaLimits(requestWithAID.request);
+            final TransportChannel releasingChannel = new ReleasingTransportChannel(channel, releasable);
+            threadPool.executor(executor).execute(new AbstractRunnable() {
+                @Override
+                protected void doRun() throws Exception {
+                    new AsyncReplicaAction(requestWithAID.request, requestWithAID.targetAllocationID, releasingChannel,
+                        (ReplicationTask) task).run();
+                }
+
+                @Override
+                public boolean isForceExecution() {
+                    // we must never reject on because of thread pool capacity on replicas
+                    return true;
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    try {
+                        releasingChannel.sendResponse(e);
+                    } catch (IOException inner) {
+                        inner.addSuppressed(e);
+                        logger.warn(
+                            (org.apache.logging.log4j.util.Supplier<?>)
+                                () -> new ParameterizedMessage("failed to send error message back to client for action [{}]",
+                                    transportReplicaAction),
+                            inner);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * A channel that releases the given {@link Releasable} once a response is sent.
+     */
+    private static final class ReleasingTransportChannel extends DelegatingTransportChannel {
+
+        private final Releasable releasable;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleasingTransportChannel(TransportChannel channel, Releasable releasable) {
+            super(channel);
+            this.releasable = releasable;
+        }
+
+        @Override
+        public void sendResponse(TransportResponse response) throws IOException {
+            release();
+            super.sendResponse(response);
+        }
+
+        @Override
+        public void sendResponse(TransportResponse response, TransportResponseOptions options) throws IOException {
+            release();
+            super.sendResponse(response, options);
+        }
+
+        @Override
+        public void sendResponse(Exception exception) throws IOException {
+            release();
+            super.sendResponse(exception);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                releasable.close();
+            }
         }
     }
 
@@ -360,6 +360,11 @@ public class MetaDataCreateIndexService extends AbstractComponent {
                                 throw mpe;
                             }
 
+                            if (indexService.getIndexSettings().getIndexSortConfig().hasIndexSort()) {
+                                // validate the index sort against the mappings, this fails if a sort field is unmapped or unsupported
+                                indexService.getIndexSettings().getIndexSortConfig().buildIndexSort(mapperService::fullName);
+                            }
+
                             // the context is only used for validation so it's fine to pass fake values for the shard id and the current
                             // timestamp
                             final QueryShardContext queryShardContext = indexService.newQueryShardContext(0, null, () -> 0L);
@@ -43,6 +43,7 @@ import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.Index;
+import org.elasticsearch.index.IndexSortConfig;
 import org.elasticsearch.indices.IndicesService;
 
 import java.io.IOException;
@@ -165,6 +166,11 @@ public class MetaDataUpdateSettingsService extends AbstractComponent implements
                 listener.onFailure(new IllegalArgumentException("can't change the number of shards for an index"));
                 return;
             }
+            // the index sort is applied by the index writer and can't be changed once documents have been indexed
+            if (entry.getKey().startsWith(IndexSortConfig.INDEX_SORT_PREFIX)) {
+                listener.onFailure(new IllegalArgumentException("can't change the index sort of an index"));
+                return;
+            }
             Setting setting = indexScopedSettings.get(entry.getKey());
             assert setting != null; // we already validated the normalized settings
             settingsForClosedIndices.put(entry.getKey(), entry.getValue());
@@ -21,6 +21,7 @@ package org.elasticsearch.cluster.routing;
 
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Randomness;
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -28,17 +29,21 @@ import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.util.set.Sets;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.node.ResponseCollectorService;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import static java.util.Collections.emptyMap;
@@ -255,6 +260,62 @@ public class IndexShardRoutingTable implements Iterable<ShardRouting> {
         return new PlainShardIterator(shardId, ordered);
     }
 
+    /**
+     * Returns an iterator over active and initializing shards, ordered by the adaptive replica selection rank of the nodes
+     * holding them, where copies on the best ranked node come first. Copies on nodes with the same rank are returned in random
+     * order, and initializing shards are the last to iterate through.
+     */
+    public ShardIterator activeInitializingShardsRankedIt(@Nullable ResponseCollectorService collector, int clientNum) {
+        final int seed = shuffler.nextSeed();
+        if (collector == null || activeShards.size() <= 1) {
+            return activeInitializingShardsIt(seed);
+        }
+        List<ShardRouting> rankedActiveShards = rankShardsAndUpdateStats(shuffler.shuffle(activeShards, seed), collector, clientNum);
+        if (allInitializingShards.isEmpty()) {
+            return new PlainShardIterator(shardId, rankedActiveShards);
+        }
+        ArrayList<ShardRouting> ordered = new ArrayList<>(activeShards.size() + allInitializingShards.size());
+        ordered.addAll(rankedActiveShards);
+        ordered.addAll(allInitializingShards);
+        return new PlainShardIterator(shardId, ordered);
+    }
+
+    private static List<ShardRouting> rankShardsAndUpdateStats(List<ShardRouting> shards, ResponseCollectorService collector,
+                                                               int clientNum) {
+        final Map<String, Optional<ResponseCollectorService.ComputedNodeStats>> nodeStats = new HashMap<>();
+        final Map<String, Double> nodeRanks = new HashMap<>();
+        for (ShardRouting shard : shards) {
+            final String nodeId = shard.currentNodeId();
+            if (nodeRanks.containsKey(nodeId) == false) {
+                Optional<ResponseCollectorService.ComputedNodeStats> stats = collector.getNodeStatistics(nodeId, clientNum);
+                nodeStats.put(nodeId, stats);
+                // nodes we don't have statistics for yet are preferred so that we start collecting statistics about them
+                nodeRanks.put(nodeId, stats.map(s -> s.rank(collector.getOutstandingRequests(nodeId))).orElse(0.0));
+            }
+        }
+        // the sort is stable, copies on equally ranked nodes keep their random order
+        final List<ShardRouting> sortedShards = new ArrayList<>(shards);
+        sortedShards.sort(Comparator.comparingDouble(shard -> nodeRanks.get(shard.currentNodeId())));
+
+        // move the statistics of the nodes that lost towards the ones of the winner, otherwise a node that was slow once would
+        // never receive requests again and we would never notice that it recovered
+        final String winnerNodeId = sortedShards.get(0).currentNodeId();
+        final Optional<ResponseCollectorService.ComputedNodeStats> maybeWinnerStats = nodeStats.get(winnerNodeId);
+        if (maybeWinnerStats.isPresent()) {
+            final ResponseCollectorService.ComputedNodeStats winnerStats = maybeWinnerStats.get();
+            for (Map.Entry<String, Optional<ResponseCollectorService.ComputedNodeStats>> entry : nodeStats.entrySet()) {
+                if (entry.getKey().equals(winnerNodeId) == false && entry.getValue().isPresent()) {
+                    final ResponseCollectorService.ComputedNodeStats stats = entry.getValue().get();
+                    final int updatedQueue = (winnerStats.queueSize + stats.queueSize) / 2;
+                    final long updatedResponse = (long) (winnerStats.responseTime + stats.responseTime) / 2;
+                    final long updatedService = (long) (winnerStats.serviceTime + stats.serviceTime) / 2;
+                    collector.addNodeStatistics(entry.getKey(), updatedQueue, updatedResponse, updatedService);
+                }
+            }
+        }
+        return sortedShards;
+    }
+
     /**
      * Returns true if no primaries are active or initializing for this shard
      */
@@ -56,6 +56,7 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TwoPhaseIterator;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.grouping.CollapseTopFieldDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
@@ -280,23 +281,23 @@ public class Lucene {
     }
 
     public static TopDocs readTopDocs(StreamInput in) throws IOException {
-        if (in.readBoolean()) {
+        byte type = in.readByte();
+        if (type == 0) {
+            int totalHits = in.readVInt();
+            float maxScore = in.readFloat();
+
+            ScoreDoc[] scoreDocs = new ScoreDoc[in.readVInt()];
+            for (int i = 0; i < scoreDocs.length; i++) {
+                scoreDocs[i] = new ScoreDoc(in.readVInt(), in.readFloat());
+            }
+            return new TopDocs(totalHits, scoreDocs, maxScore);
+        } else if (type == 1) {
             int totalHits = in.readVInt();
             float maxScore = in.readFloat();
 
             SortField[] fields = new SortField[in.readVInt()];
             for (int i = 0; i < fields.length; i++) {
-                String field = null;
-                if (in.readBoolean()) {
-                    field = in.readString();
-                }
-                SortField.Type sortType = readSortType(in);
-                Object missingValue = readMissingValue(in);
-                boolean reverse = in.readBoolean();
-                fields[i] = new SortField(field, sortType, reverse);
-                if (missingValue != null) {
-                    fields[i].setMissingValue(missingValue);
-                }
+                fields[i] = readSortField(in);
             }
 
             FieldDoc[] fieldDocs = new FieldDoc[in.readVInt()];
@@ -304,49 +305,63 @@ public class Lucene {
                 fieldDocs[i] = readFieldDoc(in);
             }
             return new TopFieldDocs(totalHits, fieldDocs, fields, maxScore);
-        } else {
+        } else if (type == 2) {
             int totalHits = in.readVInt();
             float maxScore = in.readFloat();
 
-            ScoreDoc[] scoreDocs = new ScoreDoc[in.readVInt()];
-            for (int i = 0; i < scoreDocs.length; i++) {
-                scoreDocs[i] = new ScoreDoc(in.readVInt(), in.readFloat());
+            String field = in.readString();
+            SortField[] fields = new SortField[in.readVInt()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = readSortField(in);
             }
-            return new TopDocs(totalHits, scoreDocs, maxScore);
+            int size = in.readVInt();
+            Object[] collapseValues = new Object[size];
+            FieldDoc[] fieldDocs = new FieldDoc[size];
+            for (int i = 0; i < fieldDocs.length; i++) {
+                fieldDocs[i] = readFieldDoc(in);
+                collapseValues[i] = readSortValue(in);
+            }
+            return new CollapseTopFieldDocs(field, totalHits, fieldDocs, fields, collapseValues, maxScore);
+        } else {
+            throw new IllegalStateException("Unknown type " + type);
         }
     }
 
     public static FieldDoc readFieldDoc(StreamInput in) throws IOException {
         Comparable[] cFields = new Comparable[in.readVInt()];
         for (int j = 0; j < cFields.length; j++) {
-            byte type = in.readByte();
-            if (type == 0) {
-                cFields[j] = null;
-            } else if (type == 1) {
-                cFields[j] = in.readString();
-            } else if (type == 2) {
-                cFields[j] = in.readInt();
-            } else if (type == 3) {
-                cFields[j] = in.readLong();
-            } else if (type == 4) {
-                cFields[j] = in.readFloat();
-            } else if (type == 5) {
-                cFields[j] = in.readDouble();
-            } else if (type == 6) {
-                cFields[j] = in.readByte();
-            } else if (type == 7) {
-                cFields[j] = in.readShort();
-            } else if (type == 8) {
-                cFields[j] = in.readBoolean();
-            } else if (type == 9) {
-                cFields[j] = in.readBytesRef();
-            } else {
-                throw new IOException("Can't match type [" + type + "]");
-            }
+            cFields[j] = readSortValue(in);
         }
         return new FieldDoc(in.readVInt(), in.readFloat(), cFields);
     }
 
+    private static Comparable readSortValue(StreamInput in) throws IOException {
+        byte type = in.readByte();
+        if (type == 0) {
+            return null;
+        } else if (type == 1) {
+            return in.readString();
+        } else if (type == 2) {
+            return in.readInt();
+        } else if (type == 3) {
+            return in.readLong();
+        } else if (type == 4) {
+            return in.readFloat();
+        } else if (type == 5) {
+            return in.readDouble();
+        } else if (type == 6) {
+            return in.readByte();
+        } else if (type == 7) {
+            return in.readShort();
+        } else if (type == 8) {
+            return in.readBoolean();
+        } else if (type == 9) {
+            return in.readBytesRef();
+        } else {
+            throw new IOException("Can't match type [" + type + "]");
+        }
+    }
+
     public static ScoreDoc readScoreDoc(StreamInput in) throws IOException {
         return new ScoreDoc(in.readVInt(), in.readFloat());
     }
@@ -354,8 +369,28 @@ public class Lucene {
     private static final Class<?> GEO_DISTANCE_SORT_TYPE_CLASS = LatLonDocValuesField.newDistanceSort("some_geo_field", 0, 0).getClass();
 
     public static void writeTopDocs(StreamOutput out, TopDocs topDocs) throws IOException {
-        if (topDocs instanceof TopFieldDocs) {
-            out.writeBoolean(true);
+        if (topDocs instanceof CollapseTopFieldDocs) {
+            out.writeByte((byte) 2);
+            CollapseTopFieldDocs collapseDocs = (CollapseTopFieldDocs) topDocs;
+
+            out.writeVInt(topDocs.totalHits);
+            out.writeFloat(topDocs.getMaxScore());
+
+            out.writeString(collapseDocs.field);
+
+            out.writeVInt(collapseDocs.fields.length);
+            for (SortField sortField : collapseDocs.fields) {
+                writeSortField(out, sortField);
+            }
+
+            out.writeVInt(topDocs.scoreDocs.length);
+            for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+                ScoreDoc doc = collapseDocs.scoreDocs[i];
+                writeFieldDoc(out, (FieldDoc) doc);
+                writeSortValue(out, collapseDocs.collapseValues[i]);
+            }
+        } else if (topDocs instanceof TopFieldDocs) {
+            out.writeByte((byte) 1);
             TopFieldDocs topFieldDocs = (TopFieldDocs) topDocs;
 
             out.writeVInt(topDocs.totalHits);
@@ -363,31 +398,7 @@ public class Lucene {
 
             out.writeVInt(topFieldDocs.fields.length);
             for (SortField sortField : topFieldDocs.fields) {
-                if (sortField.getClass() == GEO_DISTANCE_SORT_TYPE_CLASS) {
-                    // for geo sorting, we replace the SortField with a SortField that assumes a double field.
-                    // this works since the SortField is only used for merging top docs
-                    SortField newSortField = new SortField(sortField.getField(), SortField.Type.DOUBLE);
-                    newSortField.setMissingValue(sortField.getMissingValue());
-                    sortField = newSortField;
-                }
-                if (sortField.getClass() != SortField.class) {
-                    throw new IllegalArgumentException("Cannot serialize SortField impl [" + sortField + "]");
-                }
-                if (sortField.getField() == null) {
-                    out.writeBoolean(false);
-                } else {
-                    out.writeBoolean(true);
-                    out.writeString(sortField.getField());
-                }
-                if (sortField.getComparatorSource() != null) {
-                    IndexFieldData.XFieldComparatorSource comparatorSource = (IndexFieldData.XFieldComparatorSource) sortField.getComparatorSource();
-                    writeSortType(out, comparatorSource.reducedType());
-                    writeMissingValue(out, comparatorSource.missingValue(sortField.getReverse()));
-                } else {
-                    writeSortType(out, sortField.getType());
-                    writeMissingValue(out, sortField.getMissingValue());
-                }
-                out.writeBoolean(sortField.getReverse());
+                writeSortField(out, sortField);
             }
 
             out.writeVInt(topDocs.scoreDocs.length);
@@ -395,7 +406,7 @@ public class Lucene {
                 writeFieldDoc(out, (FieldDoc) doc);
             }
         } else {
-            out.writeBoolean(false);
+            out.writeByte((byte) 0);
             out.writeVInt(topDocs.totalHits);
             out.writeFloat(topDocs.getMaxScore());
 
@@ -431,44 +442,48 @@ public class Lucene {
         }
     }
 
+    private static void writeSortValue(StreamOutput out, Object field) throws IOException {
+        if (field == null) {
+            out.writeByte((byte) 0);
+        } else {
+            Class type = field.getClass();
+            if (type == String.class) {
+                out.writeByte((byte) 1);
+                out.writeString((String) field);
+            } else if (type == Integer.class) {
+                out.writeByte((byte) 2);
+                out.writeInt((Integer) field);
+            } else if (type == Long.class) {
+                out.writeByte((byte) 3);
+                out.writeLong((Long) field);
+            } else if (type == Float.class) {
+                out.writeByte((byte) 4);
+                out.writeFloat((Float) field);
+            } else if (type == Double.class) {
+                out.writeByte((byte) 5);
+                out.writeDouble((Double) field);
+            } else if (type == Byte.class) {
+                out.writeByte((byte) 6);
+                out.writeByte((Byte) field);
+            } else if (type == Short.class) {
+                out.writeByte((byte) 7);
+                out.writeShort((Short) field);
+            } else if (type == Boolean.class) {
+                out.writeByte((byte) 8);
+                out.writeBoolean((Boolean) field);
+            } else if (type == BytesRef.class) {
+                out.writeByte((byte) 9);
+                out.writeBytesRef((BytesRef) field);
+            } else {
+                throw new IOException("Can't handle sort field value of type [" + type + "]");
+            }
+        }
+    }
+
     public static void writeFieldDoc(StreamOutput out, FieldDoc fieldDoc) throws IOException {
         out.writeVInt(fieldDoc.fields.length);
         for (Object field : fieldDoc.fields) {
-            if (field == null) {
-                out.writeByte((byte) 0);
-            } else {
-                Class type = field.getClass();
-                if (type == String.class) {
-                    out.writeByte((byte) 1);
-                    out.writeString((String) field);
-                } else if (type == Integer.class) {
-                    out.writeByte((byte) 2);
-                    out.writeInt((Integer) field);
-                } else if (type == Long.class) {
-                    out.writeByte((byte) 3);
-                    out.writeLong((Long) field);
-                } else if (type == Float.class) {
-                    out.writeByte((byte) 4);
-                    out.writeFloat((Float) field);
-                } else if (type == Double.class) {
-                    out.writeByte((byte) 5);
-                    out.writeDouble((Double) field);
-                } else if (type == Byte.class) {
-                    out.writeByte((byte) 6);
-                    out.writeByte((Byte) field);
-                } else if (type == Short.class) {
-                    out.writeByte((byte) 7);
-                    out.writeShort((Short) field);
-                } else if (type == Boolean.class) {
-                    out.writeByte((byte) 8);
-                    out.writeBoolean((Boolean) field);
-                } else if (type == BytesRef.class) {
-                    out.writeByte((byte) 9);
-                    out.writeBytesRef((BytesRef) field);
-                } else {
-                    throw new IOException("Can't handle sort field value of type [" + type + "]");
-                }
-            }
+            writeSortValue(out, field);
         }
         out.writeVInt(fieldDoc.doc);
         out.writeFloat(fieldDoc.score);
@@ -482,6 +497,50 @@ public class Lucene {
         out.writeFloat(scoreDoc.score);
     }
 
+    private static SortField readSortField(StreamInput in) throws IOException {
+        String field = null;
+        if (in.readBoolean()) {
+            field = in.readString();
+        }
+        SortField.Type sortType = readSortType(in);
+        Object missingValue = readMissingValue(in);
+        boolean reverse = in.readBoolean();
+        SortField sortField = new SortField(field, sortType, reverse);
+        if (missingValue != null) {
+            sortField.setMissingValue(missingValue);
+        }
+        return sortField;
+    }
+
+    private static void writeSortField(StreamOutput out, SortField sortField) throws IOException {
+        if (sortField.getClass() == GEO_DISTANCE_SORT_TYPE_CLASS) {
+            // for geo sorting, we replace the SortField with a SortField that assumes a double field.
+            // this works since the SortField is only used for merging top docs
+            SortField newSortField = new SortField(sortField.getField(), SortField.Type.DOUBLE);
+            newSortField.setMissingValue(sortField.getMissingValue());
+            sortField = newSortField;
+        }
+        if (sortField.getClass() != SortField.class) {
+            throw new IllegalArgumentException("Cannot serialize SortField impl [" + sortField + "]");
+        }
+        if (sortField.getField() == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeString(sortField.getField());
+        }
+        if (sortField.getComparatorSource() != null) {
+            IndexFieldData.XFieldComparatorSource comparatorSource =
+                (IndexFieldData.XFieldComparatorSource) sortField.getComparatorSource();
+            writeSortType(out, comparatorSource.reducedType());
+            writeMissingValue(out, comparatorSource.missingValue(sortField.getReverse()));
+        } else {
+            writeSortType(out, sortField.getType());
+            writeMissingValue(out, sortField.getMissingValue());
+        }
+        out.writeBoolean(sortField.getReverse());
+    }
+
     // LUCENE 4 UPGRADE: We might want to maintain our own ordinal, instead of Lucene's ordinal
     public static SortField.Type readSortType(StreamInput in) throws IOException {
         return SortField.Type.values()[in.readVInt()];
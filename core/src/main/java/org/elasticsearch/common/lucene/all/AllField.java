@@ -33,6 +33,13 @@ public class AllField extends Field {
         this.boost = boost;
     }
 
+    /**
+     * Returns the boost of the all entry that this field was created from, which is indexed as a payload of its tokens.
+     */
+    public float getEntryBoost() {
+        return boost;
+    }
+
     @Override
     public TokenStream tokenStream(Analyzer analyzer, TokenStream previous) {
         TokenStream ts = analyzer.tokenStream(name(), stringValue());
@@ -29,7 +29,10 @@ import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.lucene.uid.Versions.BloomFilterStats;
 import org.elasticsearch.common.lucene.uid.Versions.DocIdAndVersion;
+import org.elasticsearch.index.codec.BloomFilterPostingsFormat.BloomFilteredTerms;
 import org.elasticsearch.index.mapper.UidFieldMapper;
 import org.elasticsearch.index.mapper.VersionFieldMapper;
 
@@ -49,6 +52,8 @@ final class PerThreadIDAndVersionLookup {
 
     /** terms enum for uid field */
     private final TermsEnum termsEnum;
+    /** the uid terms if the segment was written with a bloom filter, null otherwise */
+    private final BloomFilteredTerms bloomFilteredTerms;
     /** _version data */
     private final NumericDocValues versions;
     /** Reused for iteration (when the term exists) */
@@ -60,11 +65,17 @@ final class PerThreadIDAndVersionLookup {
     public PerThreadIDAndVersionLookup(LeafReader reader) throws IOException {
         TermsEnum termsEnum = null;
         NumericDocValues versions = null;
+        BloomFilteredTerms bloomFilteredTerms = null;
 
         Fields fields = reader.fields();
         if (fields != null) {
             Terms terms = fields.terms(UidFieldMapper.NAME);
             if (terms != null) {
+                if (terms instanceof BloomFilteredTerms) {
+                    // we consult the bloom filter on our own to keep track of how often it saves us from seeking
+                    bloomFilteredTerms = (BloomFilteredTerms) terms;
+                    terms = bloomFilteredTerms.getDelegate();
+                }
                 termsEnum = terms.iterator();
                 assert termsEnum != null;
                 versions = reader.getNumericDocValues(VersionFieldMapper.NAME);
@@ -74,10 +85,26 @@ final class PerThreadIDAndVersionLookup {
 
         this.versions = versions;
         this.termsEnum = termsEnum;
+        this.bloomFilteredTerms = bloomFilteredTerms;
     }
 
     /** Return null if id is not found. */
     public DocIdAndVersion lookup(BytesRef id, Bits liveDocs, LeafReaderContext context) throws IOException {
+        return lookup(id, liveDocs, context, null);
+    }
+
+    /** Return null if id is not found, recording the outcome of the bloom filter check in the given stats. */
+    public DocIdAndVersion lookup(BytesRef id, Bits liveDocs, LeafReaderContext context,
+                                  @Nullable BloomFilterStats bloomFilterStats) throws IOException {
+        if (bloomFilteredTerms != null) {
+            final boolean mightContain = bloomFilteredTerms.mightContain(id);
+            if (bloomFilterStats != null) {
+                bloomFilterStats.onLookup(mightContain);
+            }
+            if (mightContain == false) {
+                return null;
+            }
+        }
         if (termsEnum.seekExact(id)) {
             // there may be more than one matching docID, in the case of nested docs, so we want the last one:
             docsEnum = termsEnum.postings(docsEnum, 0);
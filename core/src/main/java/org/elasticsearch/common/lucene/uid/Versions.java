@@ -25,6 +25,8 @@ import org.apache.lucene.index.LeafReader.CoreClosedListener;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.util.CloseableThreadLocal;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.mapper.UidFieldMapper;
 
@@ -107,6 +109,33 @@ public class Versions {
         }
     }
 
+    /**
+     * Counts how often the bloom filters of the <code>_uid</code> field ruled out a segment such that the lookup didn't have to seek
+     * its terms dictionary (hits), and how often they couldn't (misses).
+     *
+     * @see org.elasticsearch.index.codec.CodecService#INDEX_UID_BLOOM_FILTER_SETTING
+     */
+    public static final class BloomFilterStats {
+        private final CounterMetric hits = new CounterMetric();
+        private final CounterMetric misses = new CounterMetric();
+
+        void onLookup(boolean mightContain) {
+            if (mightContain) {
+                misses.inc();
+            } else {
+                hits.inc();
+            }
+        }
+
+        public long hits() {
+            return hits.count();
+        }
+
+        public long misses() {
+            return misses.count();
+        }
+    }
+
     /**
      * Load the internal doc ID and version for the uid from the reader, returning<ul>
      * <li>null if the uid wasn't found,
@@ -114,6 +143,14 @@ public class Versions {
      * </ul>
      */
     public static DocIdAndVersion loadDocIdAndVersion(IndexReader reader, Term term) throws IOException {
+        return loadDocIdAndVersion(reader, term, null);
+    }
+
+    /**
+     * Like {@link #loadDocIdAndVersion(IndexReader, Term)} but records the bloom filter checks of the lookup in the given stats.
+     */
+    public static DocIdAndVersion loadDocIdAndVersion(IndexReader reader, Term term,
+                                                      @Nullable BloomFilterStats bloomFilterStats) throws IOException {
         assert term.field().equals(UidFieldMapper.NAME);
         List<LeafReaderContext> leaves = reader.leaves();
         if (leaves.isEmpty()) {
@@ -125,7 +162,7 @@ public class Versions {
             LeafReaderContext context = leaves.get(i);
             LeafReader leaf = context.reader();
             PerThreadIDAndVersionLookup lookup = getLookupState(leaf);
-            DocIdAndVersion result = lookup.lookup(term.bytes(), leaf.getLiveDocs(), context);
+            DocIdAndVersion result = lookup.lookup(term.bytes(), leaf.getLiveDocs(), context, bloomFilterStats);
             if (result != null) {
                 return result;
             }
@@ -140,7 +177,14 @@ public class Versions {
      * </ul>
      */
     public static long loadVersion(IndexReader reader, Term term) throws IOException {
-        final DocIdAndVersion docIdAndVersion = loadDocIdAndVersion(reader, term);
+        return loadVersion(reader, term, null);
+    }
+
+    /**
+     * Like {@link #loadVersion(IndexReader, Term)} but records the bloom filter checks of the lookup in the given stats.
+     */
+    public static long loadVersion(IndexReader reader, Term term, @Nullable BloomFilterStats bloomFilterStats) throws IOException {
+        final DocIdAndVersion docIdAndVersion = loadDocIdAndVersion(reader, term, bloomFilterStats);
         return docIdAndVersion == null ? NOT_FOUND : docIdAndVersion.version;
     }
 }
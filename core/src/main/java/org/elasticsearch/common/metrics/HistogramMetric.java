@@ -0,0 +1,135 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A metric that records the distribution of latencies in microseconds in a HDR histogram. Recording goes through a
+ * {@link Recorder} and doesn't block. If a window is configured the histogram only reflects the latencies recorded during
+ * the current and the previous window, older latencies are dropped when the windows rotate. The rotation is done by the
+ * single recording that moves the start of the window, which is the only recording that may wait for a concurrent
+ * {@link #snapshot()}.
+ */
+public class HistogramMetric implements Metric {
+
+    static final int SIGNIFICANT_VALUE_DIGITS = 2;
+
+    private final long windowInNanos;
+    private final LongSupplier relativeNanoTime;
+    private final Recorder recorder = new Recorder(SIGNIFICANT_VALUE_DIGITS);
+    private final AtomicLong windowStartNanos = new AtomicLong();
+    private Histogram current = new Histogram(SIGNIFICANT_VALUE_DIGITS);
+    private Histogram previous = null;
+    private Histogram recycled = null;
+
+    /**
+     * Creates a metric that keeps all the recorded latencies.
+     */
+    public HistogramMetric() {
+        this(0, System::nanoTime);
+    }
+
+    /**
+     * @param windowInNanos the length of a window, or <code>0</code> to keep all the recorded latencies
+     * @param relativeNanoTime the clock used to rotate the windows
+     */
+    public HistogramMetric(long windowInNanos, LongSupplier relativeNanoTime) {
+        if (windowInNanos < 0) {
+            throw new IllegalArgumentException("window must be positive or 0 but was [" + windowInNanos + "]");
+        }
+        this.windowInNanos = windowInNanos;
+        this.relativeNanoTime = relativeNanoTime;
+        this.windowStartNanos.set(relativeNanoTime.getAsLong());
+    }
+
+    /**
+     * Records a latency.
+     */
+    public void inc(long tookInNanos) {
+        maybeRotate();
+        recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(tookInNanos)));
+    }
+
+    /**
+     * Returns a copy of the histogram of the latencies recorded in the current and the previous window.
+     */
+    public synchronized Histogram snapshot() {
+        maybeRotate();
+        pullRecordedValues();
+        Histogram snapshot = current.copy();
+        snapshot.setAutoResize(true);
+        if (previous != null) {
+            snapshot.add(previous);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops all the recorded latencies, see {@link org.elasticsearch.index.search.stats.ShardSearchStats#clear()}. No API
+     * resets the latencies of the search stats, they only expire as the windows rotate.
+     */
+    public synchronized void clear() {
+        recorder.reset();
+        current.reset();
+        previous = null;
+        windowStartNanos.set(relativeNanoTime.getAsLong());
+    }
+
+    /**
+     * Rotates the windows if the current window is over. Only the caller that moves the start of the window rotates, the
+     * others go on with the current window.
+     */
+    private void maybeRotate() {
+        if (windowInNanos == 0) {
+            return;
+        }
+        final long windowStart = windowStartNanos.get();
+        final long now = relativeNanoTime.getAsLong();
+        if (now - windowStart >= windowInNanos && windowStartNanos.compareAndSet(windowStart, now)) {
+            rotate(now - windowStart);
+        }
+    }
+
+    private synchronized void rotate(long elapsed) {
+        pullRecordedValues();
+        if (elapsed >= 2 * windowInNanos) {
+            // nothing has been recorded during the last complete window
+            current.reset();
+            previous = null;
+        } else {
+            Histogram next = previous == null ? new Histogram(SIGNIFICANT_VALUE_DIGITS) : previous;
+            next.reset();
+            previous = current;
+            current = next;
+        }
+    }
+
+    private void pullRecordedValues() {
+        assert Thread.holdsLock(this);
+        recycled = recorder.getIntervalHistogram(recycled);
+        current.add(recycled);
+    }
+}
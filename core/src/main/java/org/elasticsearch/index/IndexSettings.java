@@ -62,6 +62,12 @@ public final class IndexSettings {
     public static final Setting<TimeValue> INDEX_TRANSLOG_SYNC_INTERVAL_SETTING =
         Setting.timeSetting("index.translog.sync_interval", TimeValue.timeValueSeconds(5), TimeValue.timeValueMillis(100),
             Property.IndexScope);
+    /**
+     * The number of threads that replay the translog during a local shard recovery. Operations are partitioned by uid across the
+     * threads so that all operations on the same document are still replayed in order.
+     */
+    public static final Setting<Integer> INDEX_TRANSLOG_RECOVERY_THREADS_SETTING =
+        Setting.intSetting("index.translog.recovery_threads", 1, 1, Property.IndexScope);
     public static final Setting<Translog.Durability> INDEX_TRANSLOG_DURABILITY_SETTING =
         new Setting<>("index.translog.durability", Translog.Durability.REQUEST.name(),
             (value) -> Translog.Durability.valueOf(value.toUpperCase(Locale.ROOT)), Property.Dynamic, Property.IndexScope);
@@ -101,6 +107,14 @@ public final class IndexSettings {
     public static final Setting<TimeValue> INDEX_REFRESH_INTERVAL_SETTING =
         Setting.timeSetting("index.refresh_interval", DEFAULT_REFRESH_INTERVAL, new TimeValue(-1, TimeUnit.MILLISECONDS),
             Property.Dynamic, Property.IndexScope);
+    /**
+     * The time after which a shard that didn't receive any search requests is considered search idle. Search idle shards skip
+     * their scheduled refreshes and are refreshed when the next search request arrives instead. Defaults to <code>-1</code>
+     * which disables this and refreshes all shards on every refresh interval.
+     */
+    public static final Setting<TimeValue> INDEX_SEARCH_IDLE_AFTER =
+        Setting.timeSetting("index.search.idle.after", new TimeValue(-1, TimeUnit.MILLISECONDS), new TimeValue(-1, TimeUnit.MILLISECONDS),
+            Property.Dynamic, Property.IndexScope);
     public static final Setting<ByteSizeValue> INDEX_TRANSLOG_FLUSH_THRESHOLD_SIZE_SETTING =
         Setting.byteSizeSetting("index.translog.flush_threshold_size", new ByteSizeValue(512, ByteSizeUnit.MB), Property.Dynamic,
             Property.IndexScope);
@@ -129,6 +143,20 @@ public final class IndexSettings {
     public static final Setting<Integer> MAX_SLICES_PER_SCROLL = Setting.intSetting("index.max_slices_per_scroll",
         1024, 1, Property.Dynamic, Property.IndexScope);
 
+    /**
+     * The maximum number of slices the segments of a shard are partitioned into in order to execute the query phase concurrently.
+     * Defaults to <code>1</code> which means that all segments are searched sequentially on the search thread.
+     */
+    public static final Setting<Integer> MAX_CONCURRENT_SEARCH_SLICES = Setting.intSetting("index.max_concurrent_search_slices",
+        1, 1, Property.Dynamic, Property.IndexScope);
+
+    /**
+     * Whether the primary sends the Lucene documents that it parsed from bulk items to the replicas along with their source, so
+     * that replicas don't need to parse and map the source again. This trades network bandwidth for CPU on the replicas.
+     */
+    public static final Setting<Boolean> INDEX_REPLICATE_PARSED_DOCUMENTS_SETTING =
+        Setting.boolSetting("index.replicate_parsed_documents", false, Property.Dynamic, Property.IndexScope);
+
     private final Index index;
     private final Version version;
     private final Logger logger;
@@ -147,11 +175,14 @@ public final class IndexSettings {
     private final boolean defaultAllowUnmappedFields;
     private volatile Translog.Durability durability;
     private final TimeValue syncInterval;
+    private final int translogRecoveryThreads;
     private volatile TimeValue refreshInterval;
+    private volatile TimeValue searchIdleAfter;
     private final TimeValue globalCheckpointInterval;
     private volatile ByteSizeValue flushThresholdSize;
     private final MergeSchedulerConfig mergeSchedulerConfig;
     private final MergePolicyConfig mergePolicyConfig;
+    private final IndexSortConfig indexSortConfig;
     private final IndexScopedSettings scopedSettings;
     private long gcDeletesInMillis = DEFAULT_GC_DELETES.millis();
     private volatile boolean warmerEnabled;
@@ -166,6 +197,8 @@ public final class IndexSettings {
      * The maximum number of slices allowed in a scroll request.
      */
     private volatile int maxSlicesPerScroll;
+    private volatile int maxConcurrentSearchSlices;
+    private volatile boolean replicateParsedDocuments;
 
 
     /**
@@ -241,7 +274,9 @@ public final class IndexSettings {
         this.defaultAllowUnmappedFields = scopedSettings.get(ALLOW_UNMAPPED);
         this.durability = scopedSettings.get(INDEX_TRANSLOG_DURABILITY_SETTING);
         syncInterval = INDEX_TRANSLOG_SYNC_INTERVAL_SETTING.get(settings);
+        translogRecoveryThreads = INDEX_TRANSLOG_RECOVERY_THREADS_SETTING.get(settings);
         refreshInterval = scopedSettings.get(INDEX_REFRESH_INTERVAL_SETTING);
+        searchIdleAfter = scopedSettings.get(INDEX_SEARCH_IDLE_AFTER);
         globalCheckpointInterval = scopedSettings.get(INDEX_SEQ_NO_CHECKPOINT_SYNC_INTERVAL);
         flushThresholdSize = scopedSettings.get(INDEX_TRANSLOG_FLUSH_THRESHOLD_SIZE_SETTING);
         mergeSchedulerConfig = new MergeSchedulerConfig(this);
@@ -252,7 +287,10 @@ public final class IndexSettings {
         TTLPurgeDisabled = scopedSettings.get(INDEX_TTL_DISABLE_PURGE_SETTING);
         maxRefreshListeners = scopedSettings.get(MAX_REFRESH_LISTENERS_PER_SHARD);
         maxSlicesPerScroll = scopedSettings.get(MAX_SLICES_PER_SCROLL);
+        maxConcurrentSearchSlices = scopedSettings.get(MAX_CONCURRENT_SEARCH_SLICES);
+        replicateParsedDocuments = scopedSettings.get(INDEX_REPLICATE_PARSED_DOCUMENTS_SETTING);
         this.mergePolicyConfig = new MergePolicyConfig(logger, this);
+        this.indexSortConfig = new IndexSortConfig(this);
 
         scopedSettings.addSettingsUpdateConsumer(MergePolicyConfig.INDEX_COMPOUND_FORMAT_SETTING, mergePolicyConfig::setNoCFSRatio);
         scopedSettings.addSettingsUpdateConsumer(MergePolicyConfig.INDEX_MERGE_POLICY_EXPUNGE_DELETES_ALLOWED_SETTING, mergePolicyConfig::setExpungeDeletesAllowed);
@@ -274,8 +312,11 @@ public final class IndexSettings {
         scopedSettings.addSettingsUpdateConsumer(INDEX_GC_DELETES_SETTING, this::setGCDeletes);
         scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_FLUSH_THRESHOLD_SIZE_SETTING, this::setTranslogFlushThresholdSize);
         scopedSettings.addSettingsUpdateConsumer(INDEX_REFRESH_INTERVAL_SETTING, this::setRefreshInterval);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_SEARCH_IDLE_AFTER, this::setSearchIdleAfter);
         scopedSettings.addSettingsUpdateConsumer(MAX_REFRESH_LISTENERS_PER_SHARD, this::setMaxRefreshListeners);
         scopedSettings.addSettingsUpdateConsumer(MAX_SLICES_PER_SCROLL, this::setMaxSlicesPerScroll);
+        scopedSettings.addSettingsUpdateConsumer(MAX_CONCURRENT_SEARCH_SLICES, this::setMaxConcurrentSearchSlices);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_REPLICATE_PARSED_DOCUMENTS_SETTING, this::setReplicateParsedDocuments);
     }
 
     private void setTranslogFlushThresholdSize(ByteSizeValue byteSizeValue) {
@@ -290,6 +331,10 @@ public final class IndexSettings {
         this.refreshInterval = timeValue;
     }
 
+    private void setSearchIdleAfter(TimeValue searchIdleAfter) {
+        this.searchIdleAfter = searchIdleAfter;
+    }
+
     /**
      * Returns the settings for this index. These settings contain the node and index level settings where
      * settings that are specified on both index and node level are overwritten by the index settings.
@@ -448,6 +493,13 @@ public final class IndexSettings {
         return syncInterval;
     }
 
+    /**
+     * Returns the number of threads that replay the translog during a local shard recovery.
+     */
+    public int getTranslogRecoveryThreads() {
+        return translogRecoveryThreads;
+    }
+
     /**
      * Returns this interval in which the shards of this index are asynchronously refreshed. <tt>-1</tt> means async refresh is disabled.
      */
@@ -455,6 +507,14 @@ public final class IndexSettings {
         return refreshInterval;
     }
 
+    /**
+     * Returns the time after which a shard without search requests is considered search idle, or a negative value if shards
+     * are never considered search idle.
+     */
+    public TimeValue getSearchIdleAfter() {
+        return searchIdleAfter;
+    }
+
     /**
      * Returns this interval in which the primary shards of this index should check and advance the global checkpoint
      */
@@ -508,6 +568,13 @@ public final class IndexSettings {
         return mergePolicyConfig.getMergePolicy();
     }
 
+    /**
+     * Returns the index sort config that should be used for this index.
+     */
+    public IndexSortConfig getIndexSortConfig() {
+        return indexSortConfig;
+    }
+
     /**
      * Returns <code>true</code> if the TTL purge is disabled for this index. Default is <code>false</code>
      */
@@ -546,5 +613,27 @@ public final class IndexSettings {
         this.maxSlicesPerScroll = value;
     }
 
+    /**
+     * The maximum number of slices the segments of a shard are partitioned into to execute the query phase concurrently.
+     */
+    public int getMaxConcurrentSearchSlices() {
+        return maxConcurrentSearchSlices;
+    }
+
+    private void setMaxConcurrentSearchSlices(int value) {
+        this.maxConcurrentSearchSlices = value;
+    }
+
+    /**
+     * Returns <code>true</code> if the primary should send the documents it parsed to the replicas.
+     */
+    public boolean isReplicateParsedDocuments() {
+        return replicateParsedDocuments;
+    }
+
+    private void setReplicateParsedDocuments(boolean replicateParsedDocuments) {
+        this.replicateParsedDocuments = replicateParsedDocuments;
+    }
+
     public IndexScopedSettings getScopedSettings() { return scopedSettings;}
 }
@@ -0,0 +1,301 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index;
+
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSelector;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.search.SortedSetSelector;
+import org.apache.lucene.search.SortedSetSortField;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.search.MultiValueMode;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Holds all the information that is used to build the sort order of an index.
+ *
+ * The index sort settings are <b>final</b> and can only be set at index creation time. Segments are sorted according to this order
+ * by the {@link org.apache.lucene.index.IndexWriter} which allows sorted queries that use the same order (or a prefix of it) to
+ * terminate the collection of each segment early:
+ * <ul>
+ *     <li><code>index.sort.field</code>: the fields to sort on, only fields with doc values are supported.</li>
+ *     <li><code>index.sort.order</code>: the order of each field, <code>asc</code> or <code>desc</code>. Defaults to <code>asc</code>.</li>
+ *     <li><code>index.sort.mode</code>: the value that is picked for multi-valued fields, <code>min</code> or <code>max</code>.
+ *     Defaults to <code>min</code> for ascending and <code>max</code> for descending orders.</li>
+ *     <li><code>index.sort.missing</code>: how documents without a value are sorted, <code>_last</code> or <code>_first</code>.
+ *     Defaults to <code>_last</code>.</li>
+ * </ul>
+ */
+public final class IndexSortConfig {
+
+    public static final String INDEX_SORT_PREFIX = "index.sort.";
+
+    /**
+     * The list of field names
+     */
+    public static final Setting<List<String>> INDEX_SORT_FIELD_SETTING =
+        Setting.listSetting(INDEX_SORT_PREFIX + "field", Collections.emptyList(), Function.identity(), Property.IndexScope);
+
+    /**
+     * The {@link SortOrder} for each specified sort field (ie. <b>asc</b> or <b>desc</b>).
+     */
+    public static final Setting<List<SortOrder>> INDEX_SORT_ORDER_SETTING =
+        Setting.listSetting(INDEX_SORT_PREFIX + "order", Collections.emptyList(), IndexSortConfig::parseOrderMode, Property.IndexScope);
+
+    /**
+     * The {@link MultiValueMode} for each specified sort field (ie. <b>max</b> or <b>min</b>).
+     */
+    public static final Setting<List<MultiValueMode>> INDEX_SORT_MODE_SETTING =
+        Setting.listSetting(INDEX_SORT_PREFIX + "mode", Collections.emptyList(), IndexSortConfig::parseMultiValueMode, Property.IndexScope);
+
+    /**
+     * The missing value for each specified sort field (ie. <b>_first</b> or <b>_last</b>)
+     */
+    public static final Setting<List<String>> INDEX_SORT_MISSING_SETTING =
+        Setting.listSetting(INDEX_SORT_PREFIX + "missing", Collections.emptyList(), IndexSortConfig::validateMissingValue,
+            Property.IndexScope);
+
+    private final FieldSortSpec[] sortSpecs;
+
+    public IndexSortConfig(IndexSettings indexSettings) {
+        this(indexSettings.getSettings());
+    }
+
+    IndexSortConfig(Settings settings) {
+        final List<String> fields = INDEX_SORT_FIELD_SETTING.get(settings);
+        this.sortSpecs = new FieldSortSpec[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            sortSpecs[i] = new FieldSortSpec(fields.get(i));
+        }
+
+        if (INDEX_SORT_ORDER_SETTING.exists(settings)) {
+            List<SortOrder> orders = INDEX_SORT_ORDER_SETTING.get(settings);
+            if (orders.size() != sortSpecs.length) {
+                throw new IllegalArgumentException("index.sort.field:" + fields +
+                    " index.sort.order:" + orders.toString() + ", size mismatch");
+            }
+            for (int i = 0; i < sortSpecs.length; i++) {
+                sortSpecs[i].order = orders.get(i);
+            }
+        }
+
+        if (INDEX_SORT_MODE_SETTING.exists(settings)) {
+            List<MultiValueMode> modes = INDEX_SORT_MODE_SETTING.get(settings);
+            if (modes.size() != sortSpecs.length) {
+                throw new IllegalArgumentException("index.sort.field:" + fields +
+                    " index.sort.mode:" + modes + ", size mismatch");
+            }
+            for (int i = 0; i < sortSpecs.length; i++) {
+                sortSpecs[i].mode = modes.get(i);
+            }
+        }
+
+        if (INDEX_SORT_MISSING_SETTING.exists(settings)) {
+            List<String> missingValues = INDEX_SORT_MISSING_SETTING.get(settings);
+            if (missingValues.size() != sortSpecs.length) {
+                throw new IllegalArgumentException("index.sort.field:" + fields +
+                    " index.sort.missing:" + missingValues + ", size mismatch");
+            }
+            for (int i = 0; i < sortSpecs.length; i++) {
+                sortSpecs[i].missingValue = missingValues.get(i);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the index should be sorted
+     */
+    public boolean hasIndexSort() {
+        return sortSpecs.length > 0;
+    }
+
+    /**
+     * Builds the {@link Sort} order from the settings for this index
+     * or returns null if this index has no sort.
+     *
+     * @param fieldTypeLookup resolves a field name to its {@link MappedFieldType}
+     * @throws IllegalArgumentException if a sort field is not mapped, has no doc values or has an unsupported type
+     */
+    public Sort buildIndexSort(Function<String, MappedFieldType> fieldTypeLookup) {
+        if (hasIndexSort() == false) {
+            return null;
+        }
+        final SortField[] sortFields = new SortField[sortSpecs.length];
+        for (int i = 0; i < sortSpecs.length; i++) {
+            final FieldSortSpec sortSpec = sortSpecs[i];
+            final MappedFieldType ft = fieldTypeLookup.apply(sortSpec.field);
+            if (ft == null) {
+                throw new IllegalArgumentException("unknown index sort field:[" + sortSpec.field + "]");
+            }
+            if (ft.hasDocValues() == false) {
+                throw new IllegalArgumentException("docvalues not found for index sort field:[" + sortSpec.field + "]");
+            }
+            sortFields[i] = sortSpec.buildSortField(ft);
+        }
+        return new Sort(sortFields);
+    }
+
+    /**
+     * Returns <code>true</code> if the provided search sort is equal to or a prefix of the sort of this index. Documents of
+     * an index segment that is sorted by this order are then visited in the same order as they would be ranked by the search sort,
+     * which allows to terminate the collection of each segment once enough documents have been collected.
+     */
+    public boolean canEarlyTerminate(Sort searchSort) {
+        if (searchSort == null || hasIndexSort() == false) {
+            return false;
+        }
+        final SortField[] fields = searchSort.getSort();
+        if (fields.length > sortSpecs.length) {
+            return false;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (sortSpecs[i].matches(fields[i]) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static SortOrder parseOrderMode(String value) {
+        try {
+            return SortOrder.fromString(value);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Illegal sort order:" + value);
+        }
+    }
+
+    private static MultiValueMode parseMultiValueMode(String value) {
+        MultiValueMode mode = MultiValueMode.fromString(value);
+        if (mode != MultiValueMode.MAX && mode != MultiValueMode.MIN) {
+            throw new IllegalArgumentException("Illegal index sort mode:[" + mode + "], " +
+                "must be one of [" + MultiValueMode.MAX + ", " + MultiValueMode.MIN + "]");
+        }
+        return mode;
+    }
+
+    private static String validateMissingValue(String missing) {
+        if ("_last".equals(missing) == false && "_first".equals(missing) == false) {
+            throw new IllegalArgumentException("Illegal missing value:[" + missing + "], " +
+                "must be one of [_last, _first]");
+        }
+        return missing;
+    }
+
+    private static final class FieldSortSpec {
+        final String field;
+        SortOrder order = SortOrder.ASC;
+        MultiValueMode mode;
+        String missingValue = "_last";
+
+        FieldSortSpec(String field) {
+            this.field = field;
+        }
+
+        boolean reverse() {
+            return order == SortOrder.DESC;
+        }
+
+        MultiValueMode mode() {
+            if (mode != null) {
+                return mode;
+            }
+            return reverse() ? MultiValueMode.MAX : MultiValueMode.MIN;
+        }
+
+        boolean missingFirst() {
+            return "_first".equals(missingValue);
+        }
+
+        SortField buildSortField(MappedFieldType fieldType) {
+            final boolean reverse = reverse();
+            // the value that sorts documents without a value first or last, depending on the order
+            final boolean useMin = missingFirst() ^ reverse;
+            switch (fieldType.typeName()) {
+                case "long":
+                case "integer":
+                case "short":
+                case "byte":
+                case "half_float":
+                case "date":
+                case "boolean": {
+                    SortedNumericSortField sortField = new SortedNumericSortField(field, SortField.Type.LONG, reverse, numericSelector());
+                    sortField.setMissingValue(useMin ? Long.MIN_VALUE : Long.MAX_VALUE);
+                    return sortField;
+                }
+                case "float": {
+                    SortedNumericSortField sortField = new SortedNumericSortField(field, SortField.Type.FLOAT, reverse, numericSelector());
+                    sortField.setMissingValue(useMin ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY);
+                    return sortField;
+                }
+                case "double": {
+                    SortedNumericSortField sortField = new SortedNumericSortField(field, SortField.Type.DOUBLE, reverse, numericSelector());
+                    sortField.setMissingValue(useMin ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+                    return sortField;
+                }
+                case "keyword": {
+                    SortedSetSortField sortField = new SortedSetSortField(field, reverse,
+                        mode() == MultiValueMode.MAX ? SortedSetSelector.Type.MAX : SortedSetSelector.Type.MIN);
+                    sortField.setMissingValue(useMin ? SortField.STRING_FIRST : SortField.STRING_LAST);
+                    return sortField;
+                }
+                default:
+                    throw new IllegalArgumentException("invalid index sort field:[" + field + "] of type ["
+                        + fieldType.typeName() + "]");
+            }
+        }
+
+        private SortedNumericSelector.Type numericSelector() {
+            return mode() == MultiValueMode.MAX ? SortedNumericSelector.Type.MAX : SortedNumericSelector.Type.MIN;
+        }
+
+        /**
+         * Returns true if the provided search sort field ranks documents the same way as this index sort field.
+         */
+        boolean matches(SortField searchField) {
+            if (field.equals(searchField.getField()) == false || reverse() != searchField.getReverse()) {
+                return false;
+            }
+            if (searchField.getComparatorSource() instanceof IndexFieldData.XFieldComparatorSource == false) {
+                return false;
+            }
+            IndexFieldData.XFieldComparatorSource source = (IndexFieldData.XFieldComparatorSource) searchField.getComparatorSource();
+            if (source.nested() != null || source.sortMode() != mode()) {
+                return false;
+            }
+            final Object missing = source.missingValue();
+            if (missing == null || "_last".equals(missing)) {
+                return missingFirst() == false;
+            } else if ("_first".equals(missing)) {
+                return missingFirst();
+            }
+            // a custom missing value ranks documents without a value differently than the index sort
+            return false;
+        }
+    }
+}
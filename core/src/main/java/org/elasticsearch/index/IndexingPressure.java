@@ -0,0 +1,153 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index;
+
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounts for the bytes of indexing requests that are in flight on this node, on the coordinating node, on the primary and on
+ * the replicas, and rejects new requests once the bytes in flight exceed a memory limit. Coordinating and primary bytes share the
+ * limit, since both hold requests that a client is still waiting for. Replicas are allowed to go over the limit by half of it
+ * because rejecting a replica operation fails the replica.
+ */
+public class IndexingPressure extends AbstractComponent {
+
+    public static final Setting<ByteSizeValue> MAX_INDEXING_BYTES =
+        Setting.memorySizeSetting("indexing_pressure.memory.limit", "10%", Property.NodeScope);
+
+    private final AtomicLong currentCombinedCoordinatingAndPrimaryBytes = new AtomicLong(0);
+    private final AtomicLong currentCoordinatingBytes = new AtomicLong(0);
+    private final AtomicLong currentPrimaryBytes = new AtomicLong(0);
+    private final AtomicLong currentReplicaBytes = new AtomicLong(0);
+
+    private final AtomicLong totalCombinedCoordinatingAndPrimaryBytes = new AtomicLong(0);
+    private final AtomicLong totalCoordinatingBytes = new AtomicLong(0);
+    private final AtomicLong totalPrimaryBytes = new AtomicLong(0);
+    private final AtomicLong totalReplicaBytes = new AtomicLong(0);
+
+    private final AtomicLong coordinatingRejections = new AtomicLong(0);
+    private final AtomicLong primaryRejections = new AtomicLong(0);
+    private final AtomicLong replicaRejections = new AtomicLong(0);
+
+    private final long primaryAndCoordinatingLimits;
+    private final long replicaLimits;
+
+    public IndexingPressure(Settings settings) {
+        super(settings);
+        this.primaryAndCoordinatingLimits = MAX_INDEXING_BYTES.get(settings).getBytes();
+        this.replicaLimits = (long) (this.primaryAndCoordinatingLimits * 1.5);
+    }
+
+    /**
+     * Accounts for a request that this node coordinates, until the returned {@link Releasable} is closed.
+     *
+     * @throws EsRejectedExecutionException if accepting the request would exceed the memory limit
+     */
+    public Releasable markCoordinatingOperationStarted(long bytes) {
+        final long combinedBytes = currentCombinedCoordinatingAndPrimaryBytes.addAndGet(bytes);
+        if (combinedBytes > primaryAndCoordinatingLimits) {
+            currentCombinedCoordinatingAndPrimaryBytes.getAndAdd(-bytes);
+            coordinatingRejections.getAndIncrement();
+            throw rejection("coordinating", bytes, combinedBytes - bytes, primaryAndCoordinatingLimits);
+        }
+        currentCoordinatingBytes.getAndAdd(bytes);
+        totalCombinedCoordinatingAndPrimaryBytes.getAndAdd(bytes);
+        totalCoordinatingBytes.getAndAdd(bytes);
+        return releasable(() -> {
+            currentCombinedCoordinatingAndPrimaryBytes.getAndAdd(-bytes);
+            currentCoordinatingBytes.getAndAdd(-bytes);
+        });
+    }
+
+    /**
+     * Accounts for a primary operation executed on this node, until the returned {@link Releasable} is closed.
+     *
+     * @param localToCoordinatingNode <code>true</code> if this node also coordinates the request, in which case its bytes are
+     *                                already accounted for and the operation is never rejected
+     * @throws EsRejectedExecutionException if accepting the operation would exceed the memory limit
+     */
+    public Releasable markPrimaryOperationStarted(long bytes, boolean localToCoordinatingNode) {
+        if (localToCoordinatingNode) {
+            currentPrimaryBytes.getAndAdd(bytes);
+            totalPrimaryBytes.getAndAdd(bytes);
+            return releasable(() -> currentPrimaryBytes.getAndAdd(-bytes));
+        }
+        final long combinedBytes = currentCombinedCoordinatingAndPrimaryBytes.addAndGet(bytes);
+        if (combinedBytes > primaryAndCoordinatingLimits) {
+            currentCombinedCoordinatingAndPrimaryBytes.getAndAdd(-bytes);
+            primaryRejections.getAndIncrement();
+            throw rejection("primary", bytes, combinedBytes - bytes, primaryAndCoordinatingLimits);
+        }
+        currentPrimaryBytes.getAndAdd(bytes);
+        totalCombinedCoordinatingAndPrimaryBytes.getAndAdd(bytes);
+        totalPrimaryBytes.getAndAdd(bytes);
+        return releasable(() -> {
+            currentCombinedCoordinatingAndPrimaryBytes.getAndAdd(-bytes);
+            currentPrimaryBytes.getAndAdd(-bytes);
+        });
+    }
+
+    /**
+     * Accounts for a replica operation executed on this node, until the returned {@link Releasable} is closed.
+     *
+     * @throws EsRejectedExecutionException if accepting the operation would exceed the replica memory limit
+     */
+    public Releasable markReplicaOperationStarted(long bytes) {
+        final long replicaBytes = currentReplicaBytes.addAndGet(bytes);
+        if (replicaBytes > replicaLimits) {
+            currentReplicaBytes.getAndAdd(-bytes);
+            replicaRejections.getAndIncrement();
+            throw rejection("replica", bytes, replicaBytes - bytes, replicaLimits);
+        }
+        totalReplicaBytes.getAndAdd(bytes);
+        return releasable(() -> currentReplicaBytes.getAndAdd(-bytes));
+    }
+
+    public IndexingPressureStats stats() {
+        return new IndexingPressureStats(currentCombinedCoordinatingAndPrimaryBytes.get(), currentCoordinatingBytes.get(),
+            currentPrimaryBytes.get(), currentReplicaBytes.get(), totalCombinedCoordinatingAndPrimaryBytes.get(),
+            totalCoordinatingBytes.get(), totalPrimaryBytes.get(), totalReplicaBytes.get(), coordinatingRejections.get(),
+            primaryRejections.get(), replicaRejections.get(), primaryAndCoordinatingLimits);
+    }
+
+    private static EsRejectedExecutionException rejection(String stage, long bytes, long currentBytes, long limit) {
+        return new EsRejectedExecutionException("rejected execution of " + stage + " operation [operation_bytes=" + bytes
+            + ", current_bytes=" + currentBytes + ", max_bytes=" + limit + "]");
+    }
+
+    /** returns a releasable that runs the given action on its first release only */
+    private static Releasable releasable(Runnable onRelease) {
+        final AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                onRelease.run();
+            }
+        };
+    }
+}
@@ -19,6 +19,8 @@
 
 package org.elasticsearch.index.cache.request;
 
+import org.elasticsearch.Version;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -34,6 +36,8 @@ public class RequestCacheStats implements Streamable, ToXContent {
     long evictions;
     long hitCount;
     long missCount;
+    @Nullable
+    RequestCacheStats hitsCache;
 
     public RequestCacheStats() {
     }
@@ -50,6 +54,28 @@ public class RequestCacheStats implements Streamable, ToXContent {
         this.evictions += stats.evictions;
         this.hitCount += stats.hitCount;
         this.missCount += stats.missCount;
+        if (stats.hitsCache != null) {
+            if (hitsCache == null) {
+                hitsCache = new RequestCacheStats();
+            }
+            hitsCache.add(stats.hitsCache);
+        }
+    }
+
+    /**
+     * Sets the stats of the portion of the cache that holds the query and fetch results of requests with hits.
+     */
+    public void hitsCache(RequestCacheStats hitsCache) {
+        this.hitsCache = hitsCache;
+    }
+
+    /**
+     * Returns the stats of the portion of the cache that holds the query and fetch results of requests with hits or
+     * <code>null</code> if they were not computed.
+     */
+    @Nullable
+    public RequestCacheStats getHitsCache() {
+        return hitsCache;
     }
 
     public long getMemorySizeInBytes() {
@@ -78,6 +104,9 @@ public class RequestCacheStats implements Streamable, ToXContent {
         evictions = in.readVLong();
         hitCount = in.readVLong();
         missCount = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            hitsCache = in.readOptionalStreamable(RequestCacheStats::new);
+        }
     }
 
     @Override
@@ -86,21 +115,34 @@ public class RequestCacheStats implements Streamable, ToXContent {
         out.writeVLong(evictions);
         out.writeVLong(hitCount);
         out.writeVLong(missCount);
+        if (out.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            out.writeOptionalStreamable(hitsCache);
+        }
     }
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         builder.startObject(Fields.REQUEST_CACHE_STATS);
+        innerToXContent(builder);
+        if (hitsCache != null) {
+            builder.startObject(Fields.HITS_CACHE_STATS);
+            hitsCache.innerToXContent(builder);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    private void innerToXContent(XContentBuilder builder) throws IOException {
         builder.byteSizeField(Fields.MEMORY_SIZE_IN_BYTES, Fields.MEMORY_SIZE, memorySize);
         builder.field(Fields.EVICTIONS, getEvictions());
         builder.field(Fields.HIT_COUNT, getHitCount());
         builder.field(Fields.MISS_COUNT, getMissCount());
-        builder.endObject();
-        return builder;
     }
 
     static final class Fields {
         static final String REQUEST_CACHE_STATS = "request_cache";
+        static final String HITS_CACHE_STATS = "hits";
         static final String MEMORY_SIZE = "memory_size";
         static final String MEMORY_SIZE_IN_BYTES = "memory_size_in_bytes";
         static final String EVICTIONS = "evictions";
@@ -0,0 +1,353 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.codec;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.FieldsConsumer;
+import org.apache.lucene.codecs.FieldsProducer;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Accountables;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.hash.MurmurHash3;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link PostingsFormat} that writes a bloom filter of the terms of each field next to the postings of a delegate format. Seeking a
+ * term that the bloom filter rules out returns <code>false</code> without touching the terms dictionary, which makes lookups of
+ * primary keys that don't exist in a segment cheap. This is used for the <code>_uid</code> field if
+ * {@link CodecService#INDEX_UID_BLOOM_FILTER_SETTING} is enabled.
+ */
+public final class BloomFilterPostingsFormat extends PostingsFormat {
+
+    public static final String NAME = "ESBloomFilter";
+    static final String BLOOM_CODEC_NAME = "ESBloomFilter";
+    static final int VERSION_START = 0;
+    static final int VERSION_CURRENT = VERSION_START;
+    static final String BLOOM_EXTENSION = "blm";
+
+    private final PostingsFormat delegate;
+
+    /**
+     * Only used to read segments, the delegate format is read from the segment
+     */
+    public BloomFilterPostingsFormat() {
+        this(null);
+    }
+
+    public BloomFilterPostingsFormat(PostingsFormat delegate) {
+        super(NAME);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public FieldsConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+        if (delegate == null) {
+            throw new UnsupportedOperationException("the [" + NAME + "] postings format can only be used to read segments");
+        }
+        return new BloomFilteredFieldsConsumer(delegate.fieldsConsumer(state), state, delegate);
+    }
+
+    @Override
+    public FieldsProducer fieldsProducer(SegmentReadState state) throws IOException {
+        final String bloomFileName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, BLOOM_EXTENSION);
+        final Map<String, BloomFilter> bloomFilters = new HashMap<>();
+        final PostingsFormat delegateFormat;
+        try (ChecksumIndexInput in = state.directory.openChecksumInput(bloomFileName, state.context)) {
+            CodecUtil.checkIndexHeader(in, BLOOM_CODEC_NAME, VERSION_START, VERSION_CURRENT, state.segmentInfo.getId(),
+                state.segmentSuffix);
+            delegateFormat = PostingsFormat.forName(in.readString());
+            final int numFields = in.readVInt();
+            for (int i = 0; i < numFields; i++) {
+                final FieldInfo fieldInfo = state.fieldInfos.fieldInfo(in.readVInt());
+                bloomFilters.put(fieldInfo.name, BloomFilter.readFrom(in));
+            }
+            CodecUtil.checkFooter(in);
+        }
+        return new BloomFilteredFieldsProducer(delegateFormat.fieldsProducer(state), bloomFilters);
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilterPostingsFormat(" + delegate + ")";
+    }
+
+    private static final class BloomFilteredFieldsConsumer extends FieldsConsumer {
+        private final FieldsConsumer delegateConsumer;
+        private final SegmentWriteState state;
+        private final PostingsFormat delegateFormat;
+        private final Map<FieldInfo, BloomFilter> bloomFilters = new HashMap<>();
+
+        BloomFilteredFieldsConsumer(FieldsConsumer delegateConsumer, SegmentWriteState state, PostingsFormat delegateFormat) {
+            this.delegateConsumer = delegateConsumer;
+            this.state = state;
+            this.delegateFormat = delegateFormat;
+        }
+
+        @Override
+        public void write(Fields fields) throws IOException {
+            delegateConsumer.write(fields);
+            for (String field : fields) {
+                final Terms terms = fields.terms(field);
+                if (terms == null) {
+                    continue;
+                }
+                // every document holds at most one term of a primary key field, so the number of documents bounds the number of terms
+                final BloomFilter bloomFilter = BloomFilter.create(state.segmentInfo.maxDoc());
+                final TermsEnum termsEnum = terms.iterator();
+                PostingsEnum postings = null;
+                for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                    // terms may only point to deleted documents when merging
+                    postings = termsEnum.postings(postings, PostingsEnum.NONE);
+                    if (postings.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                        bloomFilter.put(term);
+                    }
+                }
+                bloomFilters.put(state.fieldInfos.fieldInfo(field), bloomFilter);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            boolean success = false;
+            try {
+                delegateConsumer.close();
+                final String bloomFileName =
+                    IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, BLOOM_EXTENSION);
+                try (IndexOutput out = state.directory.createOutput(bloomFileName, state.context)) {
+                    CodecUtil.writeIndexHeader(out, BLOOM_CODEC_NAME, VERSION_CURRENT, state.segmentInfo.getId(), state.segmentSuffix);
+                    out.writeString(delegateFormat.getName());
+                    out.writeVInt(bloomFilters.size());
+                    for (Map.Entry<FieldInfo, BloomFilter> entry : bloomFilters.entrySet()) {
+                        out.writeVInt(entry.getKey().number);
+                        entry.getValue().writeTo(out);
+                    }
+                    CodecUtil.writeFooter(out);
+                }
+                success = true;
+            } finally {
+                if (success == false) {
+                    IOUtils.closeWhileHandlingException(delegateConsumer);
+                }
+            }
+        }
+    }
+
+    private static final class BloomFilteredFieldsProducer extends FieldsProducer {
+        private final FieldsProducer delegate;
+        private final Map<String, BloomFilter> bloomFilters;
+
+        BloomFilteredFieldsProducer(FieldsProducer delegate, Map<String, BloomFilter> bloomFilters) {
+            this.delegate = delegate;
+            this.bloomFilters = bloomFilters;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return delegate.iterator();
+        }
+
+        @Override
+        public Terms terms(String field) throws IOException {
+            final Terms terms = delegate.terms(field);
+            final BloomFilter bloomFilter = bloomFilters.get(field);
+            if (terms == null || bloomFilter == null) {
+                return terms;
+            }
+            return new BloomFilteredTerms(terms, bloomFilter);
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public void checkIntegrity() throws IOException {
+            // the bloom filters were verified against their checksum when they were loaded
+            delegate.checkIntegrity();
+        }
+
+        @Override
+        public FieldsProducer getMergeInstance() throws IOException {
+            // merges iterate over all terms, the bloom filters would only slow them down
+            return delegate.getMergeInstance();
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            long ramBytesUsed = delegate.ramBytesUsed();
+            for (BloomFilter bloomFilter : bloomFilters.values()) {
+                ramBytesUsed += bloomFilter.ramBytesUsed();
+            }
+            return ramBytesUsed;
+        }
+
+        @Override
+        public Collection<Accountable> getChildResources() {
+            final List<Accountable> resources = new ArrayList<>();
+            resources.addAll(Accountables.namedAccountables("bloom_filter", bloomFilters));
+            resources.add(Accountables.namedAccountable("delegate", delegate));
+            return Collections.unmodifiableList(resources);
+        }
+
+        @Override
+        public String toString() {
+            return "BloomFilteredFieldsProducer(fields=" + bloomFilters.keySet() + ",delegate=" + delegate + ")";
+        }
+    }
+
+    /**
+     * The {@link Terms} of a field that has a bloom filter. Seeking terms that are ruled out by the bloom filter is cheap.
+     */
+    public static final class BloomFilteredTerms extends FilterLeafReader.FilterTerms {
+        private final BloomFilter bloomFilter;
+
+        BloomFilteredTerms(Terms in, BloomFilter bloomFilter) {
+            super(in);
+            this.bloomFilter = bloomFilter;
+        }
+
+        /**
+         * Returns <code>false</code> if the given term definitely doesn't exist in this field, <code>true</code> if it might exist.
+         */
+        public boolean mightContain(BytesRef term) {
+            return bloomFilter.mightContain(term);
+        }
+
+        /**
+         * The terms of the field without consulting the bloom filter on seeks, for callers that check {@link #mightContain(BytesRef)}
+         * on their own.
+         */
+        public Terms getDelegate() {
+            return in;
+        }
+
+        @Override
+        public TermsEnum iterator() throws IOException {
+            return new FilterLeafReader.FilterTermsEnum(in.iterator()) {
+                @Override
+                public boolean seekExact(BytesRef text) throws IOException {
+                    return bloomFilter.mightContain(text) && in.seekExact(text);
+                }
+            };
+        }
+    }
+
+    /**
+     * A bloom filter that uses {@link MurmurHash3} and double hashing to derive its hash functions. It is sized for a false positive
+     * probability of about one percent at the expected number of entries.
+     */
+    static final class BloomFilter implements Accountable {
+
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(BloomFilter.class);
+        private static final int BITS_PER_ENTRY = 10;
+        private static final int NUM_HASH_FUNCTIONS = 7;
+
+        private final long[] bits;
+        private final long numBits;
+        private final int numHashFunctions;
+
+        private BloomFilter(long[] bits, int numHashFunctions) {
+            this.bits = bits;
+            this.numBits = (long) bits.length * Long.SIZE;
+            this.numHashFunctions = numHashFunctions;
+        }
+
+        static BloomFilter create(int expectedEntries) {
+            final long numBits = Math.max(Long.SIZE, (long) expectedEntries * BITS_PER_ENTRY);
+            return new BloomFilter(new long[Math.toIntExact((numBits + Long.SIZE - 1) / Long.SIZE)], NUM_HASH_FUNCTIONS);
+        }
+
+        static BloomFilter readFrom(DataInput in) throws IOException {
+            final int numHashFunctions = in.readVInt();
+            final long[] bits = new long[in.readVInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            return new BloomFilter(bits, numHashFunctions);
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeVInt(numHashFunctions);
+            out.writeVInt(bits.length);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        }
+
+        void put(BytesRef term) {
+            final MurmurHash3.Hash128 hash = MurmurHash3.hash128(term.bytes, term.offset, term.length, 0, new MurmurHash3.Hash128());
+            long combinedHash = hash.h1;
+            for (int i = 0; i < numHashFunctions; i++) {
+                final long bit = (combinedHash & Long.MAX_VALUE) % numBits;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+                combinedHash += hash.h2;
+            }
+        }
+
+        boolean mightContain(BytesRef term) {
+            final MurmurHash3.Hash128 hash = MurmurHash3.hash128(term.bytes, term.offset, term.length, 0, new MurmurHash3.Hash128());
+            long combinedHash = hash.h1;
+            for (int i = 0; i < numHashFunctions; i++) {
+                final long bit = (combinedHash & Long.MAX_VALUE) % numBits;
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+                combinedHash += hash.h2;
+            }
+            return true;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bits);
+        }
+    }
+}
@@ -25,6 +25,8 @@ import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat.Mode;
 import org.apache.lucene.codecs.lucene62.Lucene62Codec;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.collect.MapBuilder;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.index.mapper.MapperService;
 
 import java.util.Map;
@@ -41,19 +43,32 @@ public class CodecService {
 
     public static final String DEFAULT_CODEC = "default";
     public static final String BEST_COMPRESSION_CODEC = "best_compression";
+    /** compresses stored fields in large chunks with a preset dictionary, see {@link DictionaryCompressionCodec} */
+    public static final String DICTIONARY_COMPRESSION_CODEC = "dictionary_compression";
     /** the raw unfiltered lucene default. useful for testing */
     public static final String LUCENE_DEFAULT_CODEC = "lucene_default";
 
+    /**
+     * Whether the <code>_uid</code> field is written with a {@link BloomFilterPostingsFormat bloom filter}. Version lookups of
+     * updates and deletes then skip the segments that don't hold the document without seeking their terms dictionary.
+     */
+    public static final Setting<Boolean> INDEX_UID_BLOOM_FILTER_SETTING =
+        Setting.boolSetting("index.uid_bloom_filter", false, Property.IndexScope);
+
     public CodecService(@Nullable MapperService mapperService, Logger logger) {
         final MapBuilder<String, Codec> codecs = MapBuilder.<String, Codec>newMapBuilder();
         if (mapperService == null) {
             codecs.put(DEFAULT_CODEC, new Lucene62Codec());
             codecs.put(BEST_COMPRESSION_CODEC, new Lucene62Codec(Mode.BEST_COMPRESSION));
+            codecs.put(DICTIONARY_COMPRESSION_CODEC, new DictionaryCompressionCodec());
         } else {
+            final boolean uidBloomFilter = mapperService.getIndexSettings().getValue(INDEX_UID_BLOOM_FILTER_SETTING);
             codecs.put(DEFAULT_CODEC,
-                    new PerFieldMappingPostingFormatCodec(Mode.BEST_SPEED, mapperService, logger));
+                    new PerFieldMappingPostingFormatCodec(Mode.BEST_SPEED, mapperService, uidBloomFilter, logger));
             codecs.put(BEST_COMPRESSION_CODEC,
-                    new PerFieldMappingPostingFormatCodec(Mode.BEST_COMPRESSION, mapperService, logger));
+                    new PerFieldMappingPostingFormatCodec(Mode.BEST_COMPRESSION, mapperService, uidBloomFilter, logger));
+            codecs.put(DICTIONARY_COMPRESSION_CODEC, new DictionaryCompressionCodec(
+                    new PerFieldMappingPostingFormatCodec(Mode.BEST_SPEED, mapperService, uidBloomFilter, logger)));
         }
         codecs.put(LUCENE_DEFAULT_CODEC, Codec.getDefault());
         for (String codec : Codec.availableCodecs()) {
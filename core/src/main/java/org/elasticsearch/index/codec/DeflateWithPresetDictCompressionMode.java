@@ -0,0 +1,209 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.codec;
+
+import org.apache.lucene.codecs.compressing.CompressionMode;
+import org.apache.lucene.codecs.compressing.Compressor;
+import org.apache.lucene.codecs.compressing.Decompressor;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link CompressionMode} that compresses large chunks of stored fields with DEFLATE and a preset dictionary. Documents such as
+ * small log lines are very repetitive across documents but too small to compress well on their own, so a chunk is split into a
+ * dictionary, which is the first slice of the chunk, and sub blocks that are each compressed with that dictionary. Retrieving a
+ * document only needs to decompress the dictionary and the sub blocks that hold the document rather than the whole chunk, which
+ * allows much larger chunks than {@link CompressionMode#HIGH_COMPRESSION} at a similar retrieval cost.
+ */
+final class DeflateWithPresetDictCompressionMode extends CompressionMode {
+
+    /** the number of sub blocks each chunk is split into */
+    static final int NUM_SUB_BLOCKS = 10;
+    /** the dictionary is a sixth of the size of a sub block */
+    static final int DICT_SIZE_FACTOR = 6;
+
+    private final int level;
+
+    DeflateWithPresetDictCompressionMode(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public Compressor newCompressor() {
+        return new DeflateWithPresetDictCompressor(level);
+    }
+
+    @Override
+    public Decompressor newDecompressor() {
+        return new DeflateWithPresetDictDecompressor();
+    }
+
+    @Override
+    public String toString() {
+        return "DEFLATE_WITH_PRESET_DICT(level=" + level + ")";
+    }
+
+    private static final class DeflateWithPresetDictCompressor extends Compressor {
+
+        private final Deflater compressor;
+        private byte[] compressed = new byte[64];
+
+        DeflateWithPresetDictCompressor(int level) {
+            // raw deflate without zlib headers, the lengths are written by ourselves
+            this.compressor = new Deflater(level, true);
+        }
+
+        @Override
+        public void compress(byte[] bytes, int off, int len, DataOutput out) throws IOException {
+            final int dictLength = len / (NUM_SUB_BLOCKS * DICT_SIZE_FACTOR);
+            final int blockLength = (len - dictLength + NUM_SUB_BLOCKS - 1) / NUM_SUB_BLOCKS;
+            out.writeVInt(dictLength);
+            out.writeVInt(blockLength);
+            final int end = off + len;
+
+            // the dictionary is compressed on its own
+            compressor.reset();
+            doCompress(bytes, off, dictLength, out);
+
+            // and each sub block with the dictionary
+            for (int start = off + dictLength; start < end; start += blockLength) {
+                compressor.reset();
+                if (dictLength > 0) {
+                    compressor.setDictionary(bytes, off, dictLength);
+                }
+                doCompress(bytes, start, Math.min(blockLength, end - start), out);
+            }
+        }
+
+        private void doCompress(byte[] bytes, int off, int len, DataOutput out) throws IOException {
+            if (len == 0) {
+                out.writeVInt(0);
+                return;
+            }
+            compressor.setInput(bytes, off, len);
+            compressor.finish();
+            int totalCount = 0;
+            while (true) {
+                totalCount += compressor.deflate(compressed, totalCount, compressed.length - totalCount);
+                assert totalCount <= compressed.length;
+                if (compressor.finished()) {
+                    break;
+                }
+                compressed = ArrayUtil.grow(compressed);
+            }
+            out.writeVInt(totalCount);
+            out.writeBytes(compressed, totalCount);
+        }
+    }
+
+    private static final class DeflateWithPresetDictDecompressor extends Decompressor {
+
+        private byte[] compressed = new byte[0];
+
+        @Override
+        public void decompress(DataInput in, int originalLength, int offset, int length, BytesRef bytes) throws IOException {
+            assert offset + length <= originalLength;
+            if (length == 0) {
+                bytes.length = 0;
+                return;
+            }
+            final int dictLength = in.readVInt();
+            final int blockLength = in.readVInt();
+            bytes.bytes = ArrayUtil.grow(bytes.bytes, dictLength);
+            bytes.offset = bytes.length = 0;
+
+            final Inflater decompressor = new Inflater(true);
+            try {
+                // read the dictionary first
+                if (doDecompress(in, decompressor, bytes, dictLength) != dictLength) {
+                    throw new CorruptIndexException("Unexpected dictionary length", in);
+                }
+
+                // skip the sub blocks before the requested range
+                int offsetInBlock = dictLength;
+                int offsetInBytesRef = offset;
+                while (offsetInBlock + blockLength <= offset) {
+                    final int compressedLength = in.readVInt();
+                    in.skipBytes(compressedLength);
+                    offsetInBlock += blockLength;
+                    offsetInBytesRef -= blockLength;
+                }
+
+                // and decompress the ones that intersect with it, they are appended after the dictionary
+                while (offsetInBlock < offset + length) {
+                    bytes.bytes = ArrayUtil.grow(bytes.bytes, bytes.length + blockLength);
+                    decompressor.reset();
+                    if (dictLength > 0) {
+                        decompressor.setDictionary(bytes.bytes, 0, dictLength);
+                    }
+                    final int decompressed = doDecompress(in, decompressor, bytes, blockLength);
+                    if (decompressed == 0) {
+                        throw new CorruptIndexException("Unexpected empty sub block", in);
+                    }
+                    offsetInBlock += decompressed;
+                }
+
+                bytes.offset = offsetInBytesRef;
+                bytes.length = length;
+                assert bytes.isValid();
+            } finally {
+                decompressor.end();
+            }
+        }
+
+        private int doDecompress(DataInput in, Inflater decompressor, BytesRef bytes, int maxLength) throws IOException {
+            final int compressedLength = in.readVInt();
+            if (compressedLength == 0) {
+                return 0;
+            }
+            // pad with an extra "dummy byte", see the javadocs of Inflater(boolean)
+            final int paddedLength = compressedLength + 1;
+            compressed = ArrayUtil.grow(compressed, paddedLength);
+            in.readBytes(compressed, 0, compressedLength);
+            compressed[compressedLength] = 0;
+            decompressor.setInput(compressed, 0, paddedLength);
+            final int decompressed;
+            try {
+                decompressed = decompressor.inflate(bytes.bytes, bytes.length, maxLength);
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+            if (decompressor.finished() == false) {
+                throw new CorruptIndexException("Invalid decoder state: needsInput=" + decompressor.needsInput()
+                    + ", needsDict=" + decompressor.needsDictionary(), in);
+            }
+            bytes.length += decompressed;
+            return decompressed;
+        }
+
+        @Override
+        public Decompressor clone() {
+            return new DeflateWithPresetDictDecompressor();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.codec;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.FilterCodec;
+import org.apache.lucene.codecs.StoredFieldsFormat;
+import org.apache.lucene.codecs.compressing.CompressingStoredFieldsFormat;
+import org.apache.lucene.codecs.lucene62.Lucene62Codec;
+
+/**
+ * A {@link Codec} that writes stored fields, and thus mainly <tt>_source</tt>, in large chunks that are compressed with a preset
+ * dictionary, see {@link DeflateWithPresetDictCompressionMode}. This compresses small and repetitive documents such as log lines
+ * much better than <tt>best_compression</tt>. All other formats are delegated to the wrapped codec. The codec is registered
+ * through SPI so that segments written with it can be read without the {@link org.elasticsearch.index.mapper.MapperService}.
+ */
+// LUCENE UPGRADE: make sure to move to a new codec name and delegate depending on the lucene version
+public final class DictionaryCompressionCodec extends FilterCodec {
+
+    public static final String CODEC_NAME = "ESDictionaryCompression62";
+
+    /** Shoot for ten sub blocks of 48kB each */
+    static final int CHUNK_SIZE = DeflateWithPresetDictCompressionMode.NUM_SUB_BLOCKS * 48 * 1024;
+
+    private static final StoredFieldsFormat STORED_FIELDS_FORMAT = new CompressingStoredFieldsFormat("ESDictionaryStoredFields",
+        new DeflateWithPresetDictCompressionMode(6), CHUNK_SIZE, 4096, 1024);
+
+    /** Used by SPI to read segments */
+    public DictionaryCompressionCodec() {
+        this(new Lucene62Codec());
+    }
+
+    /**
+     * @param delegate the codec that all other formats than stored fields are delegated to when writing segments
+     */
+    public DictionaryCompressionCodec(Codec delegate) {
+        super(CODEC_NAME, delegate);
+    }
+
+    @Override
+    public StoredFieldsFormat storedFieldsFormat() {
+        return STORED_FIELDS_FORMAT;
+    }
+}
@@ -28,6 +28,7 @@ import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.index.mapper.CompletionFieldMapper;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.UidFieldMapper;
 
 /**
  * {@link PerFieldMappingPostingFormatCodec This postings format} is the default
@@ -41,19 +42,30 @@ import org.elasticsearch.index.mapper.MapperService;
 public class PerFieldMappingPostingFormatCodec extends Lucene62Codec {
     private final Logger logger;
     private final MapperService mapperService;
+    private final PostingsFormat uidPostingsFormat;
 
     static {
         assert Codec.forName(Lucene.LATEST_CODEC).getClass().isAssignableFrom(PerFieldMappingPostingFormatCodec.class) : "PerFieldMappingPostingFormatCodec must subclass the latest lucene codec: " + Lucene.LATEST_CODEC;
     }
 
     public PerFieldMappingPostingFormatCodec(Lucene50StoredFieldsFormat.Mode compressionMode, MapperService mapperService, Logger logger) {
+        this(compressionMode, mapperService, false, logger);
+    }
+
+    public PerFieldMappingPostingFormatCodec(Lucene50StoredFieldsFormat.Mode compressionMode, MapperService mapperService,
+                                             boolean uidBloomFilter, Logger logger) {
         super(compressionMode);
         this.mapperService = mapperService;
         this.logger = logger;
+        this.uidPostingsFormat =
+            uidBloomFilter ? new BloomFilterPostingsFormat(super.getPostingsFormatForField(UidFieldMapper.NAME)) : null;
     }
 
     @Override
     public PostingsFormat getPostingsFormatForField(String field) {
+        if (uidPostingsFormat != null && UidFieldMapper.NAME.equals(field)) {
+            return uidPostingsFormat;
+        }
         final MappedFieldType fieldType = mapperService.fullName(field);
         if (fieldType == null) {
             logger.warn("no index mapper found for field: [{}] returning default postings format", field);
@@ -73,6 +73,7 @@ import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Comparator;
@@ -285,6 +286,23 @@ public abstract class Engine implements Closeable {
      */
     public abstract IndexResult index(final Index index);
 
+    /**
+     * Perform several document index operations on the engine, for instance the index operations of a bulk request. The
+     * default implementation performs the operations one by one, engines can override it to amortize the cost of the
+     * operations across the batch.
+     * @param operations the operations to perform
+     * @return an {@link IndexResult} per operation, in the order of the operations
+     *
+     * Note: engine level failures (i.e. persistent engine failures) are thrown
+     */
+    public List<IndexResult> index(final List<Index> operations) {
+        final List<IndexResult> results = new ArrayList<>(operations.size());
+        for (Index operation : operations) {
+            results.add(index(operation));
+        }
+        return results;
+    }
+
     /**
      * Perform document delete operation on the engine
      * @param delete operation to perform
@@ -1194,6 +1212,24 @@ public abstract class Engine implements Closeable {
 
     protected abstract SearcherManager getSearcherManager();
 
+    /**
+     * Acquires the read lock of this engine for a thread that helps replaying the translog while {@link #recoverFromTranslog()}
+     * holds the read lock on the recovering thread. Unlike the read lock taken by operations, it is acquired even if a
+     * {@link #close()} already waits for the write lock: new readers queue up behind a waiting writer, so the helper threads
+     * would never finish and the recovering thread, and with it the close, would wait forever. Operations that the calling
+     * thread performs while holding this lock re-enter the read lock without blocking.
+     *
+     * @throws EngineClosedException if the engine is closed
+     */
+    public Releasable acquireTranslogReplayLock() {
+        final Lock lock = rwl.readLock();
+        // barges in front of a pending close, which can't make progress while the recovering thread holds the read lock anyway
+        if (lock.tryLock() == false) {
+            throw new EngineClosedException(shardId, failedEngine.get());
+        }
+        return lock::unlock;
+    }
+
     /**
      * Method to close the engine while the write lock is held.
      */
@@ -25,6 +25,7 @@ import org.apache.lucene.index.SnapshotDeletionPolicy;
 import org.apache.lucene.search.QueryCache;
 import org.apache.lucene.search.QueryCachingPolicy;
 import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.similarities.Similarity;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.Nullable;
@@ -69,6 +70,8 @@ public final class EngineConfig {
     private final long maxUnsafeAutoIdTimestamp;
     @Nullable
     private final ReferenceManager.RefreshListener refreshListeners;
+    @Nullable
+    private final Sort indexSort;
 
     /**
      * Index setting to change the low level lucene codec used for writing new segments.
@@ -80,12 +83,13 @@ public final class EngineConfig {
         switch (s) {
             case "default":
             case "best_compression":
+            case "dictionary_compression":
             case "lucene_default":
                 return s;
             default:
                 if (Codec.availableCodecs().contains(s) == false) { // we don't error message the not officially supported ones
                     throw new IllegalArgumentException(
-                        "unknown value for [index.codec] must be one of [default, best_compression] but was: " + s);
+                        "unknown value for [index.codec] must be one of [default, best_compression, dictionary_compression] but was: " + s);
                 }
                 return s;
         }
@@ -101,6 +105,14 @@ public final class EngineConfig {
     public static final Setting<Boolean> INDEX_OPTIMIZE_AUTO_GENERATED_IDS = Setting.boolSetting("index.optimize_auto_generated_id", true,
         Property.IndexScope, Property.Dynamic);
 
+    /**
+     * Configures the engine to keep the versions of documents that were indexed since the last refresh in paged arrays rather than in
+     * a concurrent hash map. This reduces heap usage and garbage collection for update heavy indices at the cost of slightly slower
+     * lookups. This setting is only read when the engine is opened. The default is <code>false</code>
+     */
+    public static final Setting<Boolean> INDEX_PAGED_VERSION_MAP_SETTING = Setting.boolSetting("index.paged_version_map", false,
+        Property.IndexScope);
+
     private final TranslogConfig translogConfig;
     private final OpenMode openMode;
 
@@ -113,7 +125,7 @@ public final class EngineConfig {
                         Similarity similarity, CodecService codecService, Engine.EventListener eventListener,
                         TranslogRecoveryPerformer translogRecoveryPerformer, QueryCache queryCache, QueryCachingPolicy queryCachingPolicy,
                         TranslogConfig translogConfig, TimeValue flushMergesAfter, ReferenceManager.RefreshListener refreshListeners,
-                        long maxUnsafeAutoIdTimestamp) {
+                        long maxUnsafeAutoIdTimestamp, @Nullable Sort indexSort) {
         if (openMode == null) {
             throw new IllegalArgumentException("openMode must not be null");
         }
@@ -143,6 +155,7 @@ public final class EngineConfig {
         assert maxUnsafeAutoIdTimestamp >= IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP :
             "maxUnsafeAutoIdTimestamp must be >= -1 but was " + maxUnsafeAutoIdTimestamp;
         this.maxUnsafeAutoIdTimestamp = maxUnsafeAutoIdTimestamp;
+        this.indexSort = indexSort;
     }
 
     /**
@@ -335,4 +348,20 @@ public final class EngineConfig {
     public long getMaxUnsafeAutoIdTimestamp() {
         return indexSettings.getValue(INDEX_OPTIMIZE_AUTO_GENERATED_IDS) ? maxUnsafeAutoIdTimestamp : Long.MAX_VALUE;
     }
+
+    /**
+     * Returns <code>true</code> iff the versions of recently indexed documents should be kept in paged arrays.
+     * See {@link #INDEX_PAGED_VERSION_MAP_SETTING}
+     */
+    public boolean isPagedVersionMap() {
+        return indexSettings.getValue(INDEX_PAGED_VERSION_MAP_SETTING);
+    }
+
+    /**
+     * Return the sort order of this index, or null if the index has no sort.
+     */
+    @Nullable
+    public Sort getIndexSort() {
+        return indexSort;
+    }
 }
@@ -47,6 +47,7 @@ import org.elasticsearch.Version;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.lucene.LoggerInfoStream;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
@@ -74,6 +75,7 @@ import org.elasticsearch.index.translog.TranslogCorruptedException;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -130,6 +132,7 @@ public class InternalEngine extends Engine {
     private final AtomicLong maxUnsafeAutoIdTimestamp = new AtomicLong(-1);
     private final CounterMetric numVersionLookups = new CounterMetric();
     private final CounterMetric numIndexVersionsLookups = new CounterMetric();
+    private final Versions.BloomFilterStats uidBloomFilterStats = new Versions.BloomFilterStats();
 
     public InternalEngine(EngineConfig engineConfig) throws EngineException {
         super(engineConfig);
@@ -140,7 +143,7 @@ public class InternalEngine extends Engine {
         } else {
             maxUnsafeAutoIdTimestamp.set(engineConfig.getMaxUnsafeAutoIdTimestamp());
         }
-        this.versionMap = new LiveVersionMap();
+        this.versionMap = new LiveVersionMap(engineConfig.isPagedVersionMap());
         store.incRef();
         IndexWriter writer = null;
         Translog translog = null;
@@ -389,15 +392,15 @@ public class InternalEngine extends Engine {
         try (ReleasableLock lock = readLock.acquire()) {
             ensureOpen();
             if (get.realtime()) {
-                VersionValue versionValue = versionMap.getUnderLock(get.uid());
-                if (versionValue != null) {
-                    if (versionValue.delete()) {
+                final long version = versionMap.getVersionUnderLock(get.uid());
+                if (version != Versions.NOT_FOUND) {
+                    if (version == LiveVersionMap.DELETED) {
                         return GetResult.NOT_EXISTS;
                     }
-                    if (get.versionType().isVersionConflictForReads(versionValue.version(), get.version())) {
+                    if (get.versionType().isVersionConflictForReads(version, get.version())) {
                         Uid uid = Uid.createUid(get.uid().text());
                         throw new VersionConflictEngineException(shardId, uid.type(), uid.id(),
-                                get.versionType().explainConflictForReads(versionValue.version(), get.version()));
+                                get.versionType().explainConflictForReads(version, get.version()));
                     }
                     refresh("realtime_get");
                 }
@@ -465,6 +468,132 @@ public class InternalEngine extends Engine {
         return result;
     }
 
+    /**
+     * Performs runs of consecutive append-only operations, i.e. operations on documents with auto-generated ids that are not
+     * retries, as a batch: their documents are added to the index writer as a group and the operations are added to the
+     * translog with a single write. All other operations are performed one by one through {@link #index(Index)}.
+     */
+    @Override
+    public List<IndexResult> index(List<Index> operations) {
+        final IndexResult[] results = new IndexResult[operations.size()];
+        int from = 0;
+        while (from < operations.size()) {
+            int to = from;
+            while (to < operations.size() && isAppendOnly(operations.get(to))) {
+                to++;
+            }
+            if (to - from > 1) {
+                indexAppendOnly(operations, from, to, results);
+                from = to;
+            } else {
+                results[from] = index(operations.get(from));
+                from++;
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private boolean isAppendOnly(Index index) {
+        return index.origin().isRecovery() == false && index.isRetry() == false && canOptimizeAddDocument(index);
+    }
+
+    private void indexAppendOnly(List<Index> operations, int from, int to, IndexResult[] results) {
+        final List<Releasable> locks = new ArrayList<>(to - from);
+        final List<Index> batch = new ArrayList<>(to - from);
+        final List<Integer> slots = new ArrayList<>(to - from);
+        try (ReleasableLock lock = readLock.acquire(); Releasable throttled = throttle.acquireThrottle()) {
+            ensureOpen();
+            for (int i = from; i < to; i++) {
+                final Index index = operations.get(i);
+                assert assertSequenceNumber(index.origin(), index.seqNo());
+                locks.add(acquireLock(index.uid()));
+                // documents that might have been indexed by a retry already are performed one by one, see #innerIndex
+                if (maxUnsafeAutoIdTimestamp.get() < index.getAutoGeneratedIdTimestamp()) {
+                    batch.add(index);
+                    slots.add(i);
+                }
+            }
+            innerIndexAppendOnly(batch, slots, results);
+        } catch (Exception e) {
+            // the operations that didn't fail on their own didn't make it into the translog
+            for (int i = 0; i < batch.size(); i++) {
+                final Index index = batch.get(i);
+                if (results[slots.get(i)] == null || results[slots.get(i)].hasFailure() == false) {
+                    results[slots.get(i)] = new IndexResult(checkIfDocumentFailureOrThrow(index, e), index.version(),
+                        SequenceNumbersService.UNASSIGNED_SEQ_NO);
+                }
+            }
+        } finally {
+            Releasables.close(locks);
+        }
+        for (int i = from; i < to; i++) {
+            if (results[i] == null) {
+                results[i] = index(operations.get(i));
+            }
+        }
+    }
+
+    private void innerIndexAppendOnly(List<Index> batch, List<Integer> slots, IndexResult[] results) throws IOException {
+        final long[] seqNos = new long[batch.size()];
+        final long[] versions = new long[batch.size()];
+        final List<ParseContext.Document> docs = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            final Index index = batch.get(i);
+            lastWriteNanos = index.startTime();
+            seqNos[i] = index.origin() == Operation.Origin.PRIMARY ? seqNoService.generateSeqNo() : index.seqNo();
+            versions[i] = index.versionType().updateVersion(Versions.NOT_FOUND, index.version());
+            index.parsedDoc().version().setLongValue(versions[i]);
+            assert assertDocDoesNotExist(index, false);
+            docs.addAll(index.docs());
+        }
+        final Exception[] failures = new Exception[batch.size()];
+        try {
+            indexWriter.addDocuments(docs);
+        } catch (Exception e) {
+            // lucene marks the documents of a failed group as deleted, unless the failure is tragic we index the documents one by
+            // one to find out which of them caused the failure
+            checkIfDocumentFailureOrThrow(batch.get(0), e);
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    index(batch.get(i).docs(), indexWriter);
+                } catch (Exception inner) {
+                    failures[i] = checkIfDocumentFailureOrThrow(batch.get(i), inner);
+                }
+            }
+        }
+        final List<Translog.Operation> translogOperations = new ArrayList<>(batch.size());
+        final List<IndexResult> indexResults = new ArrayList<>(batch.size());
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                final Index index = batch.get(i);
+                if (failures[i] != null) {
+                    results[slots.get(i)] = new IndexResult(failures[i], index.version(), SequenceNumbersService.UNASSIGNED_SEQ_NO);
+                } else {
+                    final IndexResult indexResult = new IndexResult(versions[i], seqNos[i], true);
+                    indexResults.add(indexResult);
+                    translogOperations.add(new Translog.Index(index, indexResult));
+                    results[slots.get(i)] = indexResult;
+                }
+            }
+            final List<Translog.Location> locations = translog.add(translogOperations);
+            for (int i = 0, j = 0; i < batch.size(); i++) {
+                if (failures[i] == null) {
+                    final Index index = batch.get(i);
+                    final IndexResult indexResult = indexResults.get(j);
+                    versionMap.putUnderLock(index.uid().bytes(), new VersionValue(versions[i]));
+                    indexResult.setTranslogLocation(locations.get(j));
+                    indexResult.setTook(System.nanoTime() - index.startTime());
+                    indexResult.freeze();
+                    j++;
+                }
+            }
+        } finally {
+            for (IndexResult indexResult : indexResults) {
+                seqNoService.markSeqNoAsCompleted(indexResult.getSeqNo());
+            }
+        }
+    }
+
     /**
      * Inspects exception thrown when executing index or delete operations
      *
@@ -601,14 +730,20 @@ public class InternalEngine extends Engine {
             } else {
                 // update the document
                 forceUpdateDocument = false; // we don't force it - it depends on the version
-                final VersionValue versionValue = versionMap.getUnderLock(index.uid());
+                final long liveVersion = versionMap.getVersionUnderLock(index.uid());
                 assert incrementVersionLookup();
-                if (versionValue == null) {
+                // only deletes need a version value, to check whether they were garbage collected
+                final VersionValue deleteValue = liveVersion == LiveVersionMap.DELETED ? versionMap.getUnderLock(index.uid()) : null;
+                if (liveVersion != Versions.NOT_FOUND && liveVersion != LiveVersionMap.DELETED) {
+                    currentVersion = liveVersion;
+                    deleted = false;
+                } else if (deleteValue != null) {
+                    currentVersion = checkDeletedAndGCed(deleteValue);
+                    deleted = true;
+                } else {
+                    // not in the version map, or the delete was refreshed and pruned since it was looked up
                     currentVersion = loadCurrentVersionFromIndex(index.uid());
                     deleted = currentVersion == Versions.NOT_FOUND;
-                } else {
-                    currentVersion = checkDeletedAndGCed(versionValue);
-                    deleted = versionValue.delete();
                 }
             }
             final long expectedVersion = index.version();
@@ -717,14 +852,20 @@ public class InternalEngine extends Engine {
             lastWriteNanos = delete.startTime();
             final long currentVersion;
             final boolean deleted;
-            final VersionValue versionValue = versionMap.getUnderLock(delete.uid());
+            final long liveVersion = versionMap.getVersionUnderLock(delete.uid());
             assert incrementVersionLookup();
-            if (versionValue == null) {
+            // only deletes need a version value, to check whether they were garbage collected
+            final VersionValue deleteValue = liveVersion == LiveVersionMap.DELETED ? versionMap.getUnderLock(delete.uid()) : null;
+            if (liveVersion != Versions.NOT_FOUND && liveVersion != LiveVersionMap.DELETED) {
+                currentVersion = liveVersion;
+                deleted = false;
+            } else if (deleteValue != null) {
+                currentVersion = checkDeletedAndGCed(deleteValue);
+                deleted = true;
+            } else {
+                // not in the version map, or the delete was refreshed and pruned since it was looked up
                 currentVersion = loadCurrentVersionFromIndex(delete.uid());
                 deleted = currentVersion == Versions.NOT_FOUND;
-            } else {
-                currentVersion = checkDeletedAndGCed(versionValue);
-                deleted = versionValue.delete();
             }
 
             final long expectedVersion = delete.version();
@@ -1154,6 +1295,7 @@ public class InternalEngine extends Engine {
         stats.addVersionMapMemoryInBytes(versionMap.ramBytesUsed());
         stats.addIndexWriterMemoryInBytes(indexWriter.ramBytesUsed());
         stats.updateMaxUnsafeAutoIdTimestamp(maxUnsafeAutoIdTimestamp.get());
+        stats.addUidBloomFilterLookups(uidBloomFilterStats.hits(), uidBloomFilterStats.misses());
     }
 
     @Override
@@ -1238,7 +1380,7 @@ public class InternalEngine extends Engine {
     private long loadCurrentVersionFromIndex(Term uid) throws IOException {
         assert incrementIndexVersionLookup();
         try (final Searcher searcher = acquireSearcher("load_version")) {
-            return Versions.loadVersion(searcher.reader(), uid);
+            return Versions.loadVersion(searcher.reader(), uid, uidBloomFilterStats);
         }
     }
 
@@ -1266,6 +1408,9 @@ public class InternalEngine extends Engine {
             iwc.setRAMBufferSizeMB(engineConfig.getIndexingBufferSize().getMbFrac());
             iwc.setCodec(engineConfig.getCodec());
             iwc.setUseCompoundFile(true); // always use compound on flush - reduces # of file-handles on refresh
+            if (engineConfig.getIndexSort() != null) {
+                iwc.setIndexSort(engineConfig.getIndexSort());
+            }
             return new IndexWriter(store.directory(), iwc);
         } catch (LockObtainFailedException ex) {
             logger.warn("could not lock IndexWriter", ex);
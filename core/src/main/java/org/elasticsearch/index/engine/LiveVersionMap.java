@@ -24,6 +24,7 @@ import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 
 import java.io.IOException;
@@ -35,29 +36,72 @@ import java.util.concurrent.atomic.AtomicLong;
 /** Maps _uid value to its version information. */
 class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
 
+    /** Returned by {@link #getVersionUnderLock} for uids whose last write was a delete. */
+    static final long DELETED = Long.MIN_VALUE;
+
+    /**
+     * Holds the versions of the uids that were written since a refresh. Entries are only ever added or replaced, the whole map is
+     * dropped once a refresh made its entries visible. Implementations must be safe for concurrent use.
+     */
+    interface UidVersionMap {
+
+        /** Returns the version of the given uid, or null if the uid wasn't written since the refresh. */
+        VersionValue get(BytesRef uid);
+
+        /**
+         * Returns the version of the given uid if it was last indexed, {@link #DELETED} if it was last deleted or
+         * {@link Versions#NOT_FOUND} if the uid wasn't written since the refresh.
+         */
+        long getVersion(BytesRef uid);
+
+        /** Sets the version of the given uid and returns the previous version, or null if the uid wasn't written since the refresh. */
+        VersionValue put(BytesRef uid, VersionValue version);
+    }
+
+    private static final class ConcurrentUidVersionMap implements UidVersionMap {
+        private final Map<BytesRef, VersionValue> map = ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
+
+        @Override
+        public VersionValue get(BytesRef uid) {
+            return map.get(uid);
+        }
+
+        @Override
+        public long getVersion(BytesRef uid) {
+            final VersionValue value = map.get(uid);
+            if (value == null) {
+                return Versions.NOT_FOUND;
+            }
+            return value.delete() ? DELETED : value.version();
+        }
+
+        @Override
+        public VersionValue put(BytesRef uid, VersionValue version) {
+            return map.put(uid, version);
+        }
+    }
+
     private static class Maps {
 
         // All writes (adds and deletes) go into here:
-        final Map<BytesRef,VersionValue> current;
+        final UidVersionMap current;
 
         // Used while refresh is running, and to hold adds/deletes until refresh finishes.  We read from both current and old on lookup:
-        final Map<BytesRef,VersionValue> old;
+        final UidVersionMap old;
 
-        public Maps(Map<BytesRef,VersionValue> current, Map<BytesRef,VersionValue> old) {
+        public Maps(UidVersionMap current, UidVersionMap old) {
            this.current = current;
            this.old = old;
         }
-
-        public Maps() {
-            this(ConcurrentCollections.<BytesRef,VersionValue>newConcurrentMapWithAggressiveConcurrency(),
-                 ConcurrentCollections.<BytesRef,VersionValue>newConcurrentMapWithAggressiveConcurrency());
-        }
     }
 
     // All deletes also go here, and delete "tombstones" are retained after refresh:
     private final Map<BytesRef,VersionValue> tombstones = ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
 
-    private volatile Maps maps = new Maps();
+    /** Whether the uids since the last refresh are kept in {@link PagedUidVersionMap}s, which account for their own memory. */
+    private final boolean paged;
+
+    private volatile Maps maps;
 
     private ReferenceManager<?> mgr;
 
@@ -98,6 +142,27 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
     /** Tracks bytes used by tombstones (deletes) */
     final AtomicLong ramBytesUsedTombstones = new AtomicLong();
 
+    LiveVersionMap() {
+        this(false);
+    }
+
+    /**
+     * @param paged whether to keep the uids since the last refresh in paged arrays rather than in concurrent hash maps, which
+     *              saves heap and garbage collection for indices with a high rate of updates
+     */
+    LiveVersionMap(boolean paged) {
+        this.paged = paged;
+        this.maps = newMaps();
+    }
+
+    private Maps newMaps() {
+        return new Maps(newUidVersionMap(), newUidVersionMap());
+    }
+
+    private UidVersionMap newUidVersionMap() {
+        return paged ? new PagedUidVersionMap() : new ConcurrentUidVersionMap();
+    }
+
     /** Sync'd because we replace old mgr. */
     synchronized void setManager(ReferenceManager<?> newMgr) {
         if (mgr != null) {
@@ -107,7 +172,7 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
 
         // In case InternalEngine closes & opens a new IndexWriter/SearcherManager, all deletes are made visible, so we clear old and
         // current here.  This is safe because caller holds writeLock here (so no concurrent adds/deletes can be happeninge):
-        maps = new Maps();
+        maps = newMaps();
 
         // So we are notified when reopen starts and finishes
         mgr.addListener(this);
@@ -119,7 +184,7 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
         // map.  While reopen is running, any lookup will first
         // try this new map, then fallback to old, then to the
         // current searcher:
-        maps = new Maps(ConcurrentCollections.<BytesRef,VersionValue>newConcurrentMapWithAggressiveConcurrency(), maps.current);
+        maps = new Maps(newUidVersionMap(), maps.current);
 
         // This is not 100% correct, since concurrent indexing ops can change these counters in between our execution of the previous
         // line and this one, but that should be minor, and the error won't accumulate over time:
@@ -134,7 +199,7 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
         // case.  This is because we assign new maps (in beforeRefresh) slightly before Lucene actually flushes any segments for the
         // reopen, and so any concurrent indexing requests can still sneak in a few additions to that current map that are in fact reflected
         // in the previous reader.   We don't touch tombstones here: they expire on their own index.gc_deletes timeframe:
-        maps = new Maps(maps.current, ConcurrentCollections.<BytesRef,VersionValue>newConcurrentMapWithAggressiveConcurrency());
+        maps = new Maps(maps.current, newUidVersionMap());
     }
 
     /** Returns the live version (add or delete) for this uid. */
@@ -155,12 +220,39 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
         return tombstones.get(uid.bytes());
     }
 
+    /**
+     * Returns the live version of this uid if it was last indexed, {@link #DELETED} if it was last deleted or
+     * {@link Versions#NOT_FOUND} if it isn't in the map. Unlike {@link #getUnderLock} this doesn't need a {@link VersionValue}
+     * per lookup, the delete time of deleted uids has to be read with {@link #getUnderLock}.
+     */
+    long getVersionUnderLock(final Term uid) {
+        Maps currentMaps = maps;
+
+        // First try to get the "live" value:
+        long version = currentMaps.current.getVersion(uid.bytes());
+        if (version != Versions.NOT_FOUND) {
+            return version;
+        }
+
+        version = currentMaps.old.getVersion(uid.bytes());
+        if (version != Versions.NOT_FOUND) {
+            return version;
+        }
+
+        return tombstones.containsKey(uid.bytes()) ? DELETED : Versions.NOT_FOUND;
+    }
+
     /** Adds this uid/version to the pending adds map. */
     void putUnderLock(BytesRef uid, VersionValue version) {
         assert uid.bytes.length == uid.length : "Oversized _uid! UID length: " + uid.length + ", bytes length: " + uid.bytes.length;
         long uidRAMBytesUsed = BASE_BYTES_PER_BYTESREF + uid.bytes.length;
 
         final VersionValue prev = maps.current.put(uid, version);
+        if (paged) {
+            // the paged maps account for their own memory, we only need to keep track of the tombstones
+            putTombstoneUnderLock(uid, version, uidRAMBytesUsed);
+            return;
+        }
         if (prev != null) {
             // Deduct RAM for the version we just replaced:
             long prevBytes = BASE_BYTES_PER_CHM_ENTRY;
@@ -215,6 +307,9 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
             long v = ramBytesUsedTombstones.addAndGet(-(BASE_BYTES_PER_CHM_ENTRY + prev.ramBytesUsed() + uidRAMBytesUsed));
             assert v >= 0: "bytes=" + v;
         }
+        if (paged) {
+            return;
+        }
         final VersionValue curVersion = maps.current.get(uid);
         if (curVersion != null && curVersion.delete()) {
             // We now shift accounting of the BytesRef from tombstones to current, because a refresh would clear this RAM.  This should be
@@ -224,6 +319,20 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
         }
     }
 
+    private void putTombstoneUnderLock(BytesRef uid, VersionValue version, long uidRAMBytesUsed) {
+        final VersionValue prevTombstone;
+        if (version.delete()) {
+            prevTombstone = tombstones.put(uid, version);
+            ramBytesUsedTombstones.addAndGet(BASE_BYTES_PER_CHM_ENTRY + version.ramBytesUsed() + uidRAMBytesUsed);
+        } else {
+            prevTombstone = tombstones.remove(uid);
+        }
+        if (prevTombstone != null) {
+            long v = ramBytesUsedTombstones.addAndGet(-(BASE_BYTES_PER_CHM_ENTRY + prevTombstone.ramBytesUsed() + uidRAMBytesUsed));
+            assert v >= 0: "bytes=" + v;
+        }
+    }
+
     /** Caller has a lock, so that this uid will not be concurrently added/deleted by another thread. */
     VersionValue getTombstoneUnderLock(BytesRef uid) {
         return tombstones.get(uid);
@@ -236,7 +345,7 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
 
     /** Called when this index is closed. */
     synchronized void clear() {
-        maps = new Maps();
+        maps = newMaps();
         tombstones.clear();
         ramBytesUsedCurrent.set(0);
 
@@ -253,12 +362,15 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
 
     @Override
     public long ramBytesUsed() {
-        return ramBytesUsedCurrent.get() + ramBytesUsedTombstones.get();
+        return ramBytesUsedForRefresh() + ramBytesUsedTombstones.get();
     }
 
     /** Returns how much RAM would be freed up by refreshing. This is {@link #ramBytesUsed} except does not include tombstones because they
      *  don't clear on refresh. */
     long ramBytesUsedForRefresh() {
+        if (paged) {
+            return ((PagedUidVersionMap) maps.current).ramBytesUsed();
+        }
         return ramBytesUsedCurrent.get();
     }
 
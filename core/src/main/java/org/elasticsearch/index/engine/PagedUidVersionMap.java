@@ -0,0 +1,150 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.BytesRefHash;
+import org.elasticsearch.common.util.LongArray;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A {@link LiveVersionMap.UidVersionMap} that stores the uids and their versions in paged arrays instead of one map entry,
+ * {@link BytesRef} and {@link VersionValue} per uid. It is split into segments that are locked independently so that writes
+ * to different uids don't contend on a single lock.
+ *
+ * Readers may still look up uids in a map after it was swapped out on refresh, so the pages can't safely be recycled and are
+ * left to the garbage collector instead, which only has to deal with a few large pages rather than several objects per uid.
+ */
+final class PagedUidVersionMap implements LiveVersionMap.UidVersionMap, Accountable {
+
+    private static final BigArrays BIG_ARRAYS = BigArrays.NON_RECYCLING_INSTANCE;
+    private static final int NUM_SEGMENTS = 16;
+    /** stored as delete time of index operations */
+    private static final long NOT_DELETED = -1L;
+    private static final long SEGMENT_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Segment.class);
+
+    private final Segment[] segments = new Segment[NUM_SEGMENTS];
+
+    PagedUidVersionMap() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public VersionValue get(BytesRef uid) {
+        final int code = uid.hashCode();
+        return segment(code).get(uid, code);
+    }
+
+    @Override
+    public long getVersion(BytesRef uid) {
+        final int code = uid.hashCode();
+        return segment(code).getVersion(uid, code);
+    }
+
+    @Override
+    public VersionValue put(BytesRef uid, VersionValue version) {
+        final int code = uid.hashCode();
+        return segment(code).put(uid, code, version);
+    }
+
+    private Segment segment(int code) {
+        // the hash table of the segment mixes the hash code again, so we can use its low bits here
+        return segments[code & (NUM_SEGMENTS - 1)];
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long ramBytesUsed = RamUsageEstimator.shallowSizeOf(segments);
+        for (Segment segment : segments) {
+            ramBytesUsed += segment.ramBytesUsed;
+        }
+        return ramBytesUsed;
+    }
+
+    @Override
+    public Collection<Accountable> getChildResources() {
+        return Collections.emptyList();
+    }
+
+    private static final class Segment {
+        private final BytesRefHash uids = new BytesRefHash(16, BIG_ARRAYS);
+        private LongArray versions = BIG_ARRAYS.newLongArray(16, false);
+        private LongArray deleteTimes = BIG_ARRAYS.newLongArray(16, false);
+        private long uidBytes;
+        private volatile long ramBytesUsed;
+
+        Segment() {
+            updateRamBytesUsed();
+        }
+
+        synchronized VersionValue get(BytesRef uid, int code) {
+            final long id = uids.find(uid, code);
+            return id < 0 ? null : versionValue(id);
+        }
+
+        synchronized long getVersion(BytesRef uid, int code) {
+            final long id = uids.find(uid, code);
+            if (id < 0) {
+                return Versions.NOT_FOUND;
+            }
+            return deleteTimes.get(id) == NOT_DELETED ? versions.get(id) : LiveVersionMap.DELETED;
+        }
+
+        synchronized VersionValue put(BytesRef uid, int code, VersionValue version) {
+            long id = uids.add(uid, code);
+            final VersionValue prev;
+            if (id < 0) {
+                id = -1 - id;
+                prev = versionValue(id);
+            } else {
+                prev = null;
+                uidBytes += uid.length;
+                versions = BIG_ARRAYS.grow(versions, id + 1);
+                deleteTimes = BIG_ARRAYS.grow(deleteTimes, id + 1);
+            }
+            versions.set(id, version.version());
+            deleteTimes.set(id, version.delete() ? version.time() : NOT_DELETED);
+            updateRamBytesUsed();
+            return prev;
+        }
+
+        private VersionValue versionValue(long id) {
+            final long deleteTime = deleteTimes.get(id);
+            if (deleteTime == NOT_DELETED) {
+                return new VersionValue(versions.get(id));
+            }
+            return new DeleteVersionValue(versions.get(id), deleteTime);
+        }
+
+        private void updateRamBytesUsed() {
+            // the hash table holds an id per slot, and per uid its bytes, their start offset and hash code
+            final long hashBytes = uids.capacity() * Long.BYTES + uids.size() * (Long.BYTES + Integer.BYTES) + uidBytes;
+            ramBytesUsed = SEGMENT_RAM_BYTES_USED + hashBytes + versions.ramBytesUsed() + deleteTimes.ramBytesUsed();
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.elasticsearch.index.engine;
 
 import com.carrotsearch.hppc.cursors.ObjectObjectCursor;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -46,6 +47,8 @@ public class SegmentsStats implements Streamable, ToXContent {
     private long versionMapMemoryInBytes;
     private long maxUnsafeAutoIdTimestamp = Long.MIN_VALUE;
     private long bitsetMemoryInBytes;
+    private long uidBloomFilterHits;
+    private long uidBloomFilterMisses;
     private ImmutableOpenMap<String, Long> fileSizes = ImmutableOpenMap.of();
 
     /*
@@ -74,6 +77,7 @@ public class SegmentsStats implements Streamable, ToXContent {
             .fPut("tvd", "Term Vector Documents")
             .fPut("tvf", "Term Vector Fields")
             .fPut("liv", "Live Documents")
+            .fPut("blm", "Bloom Filter")
             .build();
 
     public SegmentsStats() {}
@@ -123,6 +127,11 @@ public class SegmentsStats implements Streamable, ToXContent {
         this.bitsetMemoryInBytes += bitsetMemoryInBytes;
     }
 
+    public void addUidBloomFilterLookups(long hits, long misses) {
+        this.uidBloomFilterHits += hits;
+        this.uidBloomFilterMisses += misses;
+    }
+
     public void addFileSizes(ImmutableOpenMap<String, Long> fileSizes) {
         ImmutableOpenMap.Builder<String, Long> map = ImmutableOpenMap.builder(this.fileSizes);
 
@@ -154,6 +163,7 @@ public class SegmentsStats implements Streamable, ToXContent {
         addIndexWriterMemoryInBytes(mergeStats.indexWriterMemoryInBytes);
         addVersionMapMemoryInBytes(mergeStats.versionMapMemoryInBytes);
         addBitsetMemoryInBytes(mergeStats.bitsetMemoryInBytes);
+        addUidBloomFilterLookups(mergeStats.uidBloomFilterHits, mergeStats.uidBloomFilterMisses);
         addFileSizes(mergeStats.fileSizes);
     }
 
@@ -274,6 +284,22 @@ public class SegmentsStats implements Streamable, ToXContent {
         return new ByteSizeValue(bitsetMemoryInBytes);
     }
 
+    /**
+     * The number of segments that version lookups skipped because the bloom filter of their <code>_uid</code> field ruled out the
+     * looked up document.
+     */
+    public long getUidBloomFilterHits() {
+        return uidBloomFilterHits;
+    }
+
+    /**
+     * The number of segments whose <code>_uid</code> bloom filter couldn't rule out the looked up document, so that version lookups
+     * had to seek their terms dictionary.
+     */
+    public long getUidBloomFilterMisses() {
+        return uidBloomFilterMisses;
+    }
+
     public ImmutableOpenMap<String, Long> getFileSizes() {
         return fileSizes;
     }
@@ -307,6 +333,8 @@ public class SegmentsStats implements Streamable, ToXContent {
         builder.byteSizeField(Fields.VERSION_MAP_MEMORY_IN_BYTES, Fields.VERSION_MAP_MEMORY, versionMapMemoryInBytes);
         builder.byteSizeField(Fields.FIXED_BIT_SET_MEMORY_IN_BYTES, Fields.FIXED_BIT_SET, bitsetMemoryInBytes);
         builder.field(Fields.MAX_UNSAFE_AUTO_ID_TIMESTAMP, maxUnsafeAutoIdTimestamp);
+        builder.field(Fields.UID_BLOOM_FILTER_HITS, uidBloomFilterHits);
+        builder.field(Fields.UID_BLOOM_FILTER_MISSES, uidBloomFilterMisses);
         builder.startObject(Fields.FILE_SIZES);
         for (Iterator<ObjectObjectCursor<String, Long>> it = fileSizes.iterator(); it.hasNext();) {
             ObjectObjectCursor<String, Long> entry = it.next();
@@ -344,6 +372,8 @@ public class SegmentsStats implements Streamable, ToXContent {
         static final String MAX_UNSAFE_AUTO_ID_TIMESTAMP = "max_unsafe_auto_id_timestamp";
         static final String FIXED_BIT_SET = "fixed_bit_set";
         static final String FIXED_BIT_SET_MEMORY_IN_BYTES = "fixed_bit_set_memory_in_bytes";
+        static final String UID_BLOOM_FILTER_HITS = "uid_bloom_filter_hits";
+        static final String UID_BLOOM_FILTER_MISSES = "uid_bloom_filter_misses";
         static final String FILE_SIZES = "file_sizes";
         static final String SIZE = "size";
         static final String SIZE_IN_BYTES = "size_in_bytes";
@@ -364,6 +394,10 @@ public class SegmentsStats implements Streamable, ToXContent {
         versionMapMemoryInBytes = in.readLong();
         bitsetMemoryInBytes = in.readLong();
         maxUnsafeAutoIdTimestamp = in.readLong();
+        if (in.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            uidBloomFilterHits = in.readVLong();
+            uidBloomFilterMisses = in.readVLong();
+        }
 
         int size = in.readVInt();
         ImmutableOpenMap.Builder<String, Long> map = ImmutableOpenMap.builder(size);
@@ -389,6 +423,10 @@ public class SegmentsStats implements Streamable, ToXContent {
         out.writeLong(versionMapMemoryInBytes);
         out.writeLong(bitsetMemoryInBytes);
         out.writeLong(maxUnsafeAutoIdTimestamp);
+        if (out.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            out.writeVLong(uidBloomFilterHits);
+            out.writeVLong(uidBloomFilterMisses);
+        }
 
         out.writeVInt(fileSizes.size());
         for (Iterator<ObjectObjectCursor<String, Long>> it = fileSizes.iterator(); it.hasNext();) {
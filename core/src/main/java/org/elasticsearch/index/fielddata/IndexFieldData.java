@@ -135,6 +135,29 @@ public interface IndexFieldData<FD extends AtomicFieldData> extends IndexCompone
             }
         }
 
+        protected final MultiValueMode sortMode;
+        protected final Object missingValue;
+        protected final Nested nested;
+
+        public XFieldComparatorSource(Object missingValue, MultiValueMode sortMode, Nested nested) {
+            this.sortMode = sortMode;
+            this.missingValue = missingValue;
+            this.nested = nested;
+        }
+
+        public MultiValueMode sortMode() {
+            return this.sortMode;
+        }
+
+        /** The value used for documents that don't have a value, either a concrete value, <code>_first</code> or <code>_last</code>. */
+        public Object missingValue() {
+            return this.missingValue;
+        }
+
+        public Nested nested() {
+            return this.nested;
+        }
+
         /** Whether missing values should be sorted first. */
         protected final boolean sortMissingFirst(Object missingValue) {
             return "_first".equals(missingValue);
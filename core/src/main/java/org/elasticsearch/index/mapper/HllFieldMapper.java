@@ -0,0 +1,250 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.mapper;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.plain.BytesBinaryDVIndexFieldData;
+import org.elasticsearch.index.mapper.BinaryFieldMapper.CustomBinaryDocValuesField;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.query.QueryShardException;
+import org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.index.mapper.TypeParsers.parseField;
+
+/**
+ * A {@link FieldMapper} for pre-aggregated {@link HyperLogLogPlusPlus} sketches, as serialized by
+ * {@link HyperLogLogPlusPlus#writeTo}. Sketches are sent base64 encoded and stored in binary doc values
+ * so that the <code>cardinality</code> aggregation can merge them instead of hashing raw values.
+ */
+public class HllFieldMapper extends FieldMapper {
+
+    public static final String CONTENT_TYPE = "hll";
+
+    public static class Defaults {
+        public static final MappedFieldType FIELD_TYPE = new HllFieldType();
+
+        static {
+            FIELD_TYPE.setIndexOptions(IndexOptions.NONE);
+            FIELD_TYPE.freeze();
+        }
+    }
+
+    public static class Builder extends FieldMapper.Builder<Builder, HllFieldMapper> {
+
+        public Builder(String name) {
+            super(name, Defaults.FIELD_TYPE, Defaults.FIELD_TYPE);
+            builder = this;
+        }
+
+        public Builder precision(int precision) {
+            if (precision < HyperLogLogPlusPlus.MIN_PRECISION || precision > HyperLogLogPlusPlus.MAX_PRECISION) {
+                throw new IllegalArgumentException("[precision] must be between " + HyperLogLogPlusPlus.MIN_PRECISION + " and "
+                        + HyperLogLogPlusPlus.MAX_PRECISION + " but was [" + precision + "] for field [" + name + "]");
+            }
+            ((HllFieldType) fieldType).setPrecision(precision);
+            return this;
+        }
+
+        @Override
+        public HllFieldMapper build(BuilderContext context) {
+            setupFieldType(context);
+            return new HllFieldMapper(name, fieldType, defaultFieldType,
+                    context.indexSettings(), multiFieldsBuilder.build(this, context), copyTo);
+        }
+    }
+
+    public static class TypeParser implements Mapper.TypeParser {
+        @Override
+        public Mapper.Builder parse(String name, Map<String, Object> node, ParserContext parserContext) throws MapperParsingException {
+            HllFieldMapper.Builder builder = new HllFieldMapper.Builder(name);
+            parseField(builder, name, node, parserContext);
+            for (Iterator<Map.Entry<String, Object>> iterator = node.entrySet().iterator(); iterator.hasNext();) {
+                Map.Entry<String, Object> entry = iterator.next();
+                if (entry.getKey().equals("precision")) {
+                    builder.precision(XContentMapValues.nodeIntegerValue(entry.getValue()));
+                    iterator.remove();
+                }
+            }
+            return builder;
+        }
+    }
+
+    public static final class HllFieldType extends MappedFieldType {
+
+        private int precision = HyperLogLogPlusPlus.DEFAULT_PRECISION;
+
+        public HllFieldType() {
+            setTokenized(false);
+            setOmitNorms(true);
+        }
+
+        protected HllFieldType(HllFieldType ref) {
+            super(ref);
+            this.precision = ref.precision;
+        }
+
+        @Override
+        public MappedFieldType clone() {
+            return new HllFieldType(this);
+        }
+
+        @Override
+        public String typeName() {
+            return CONTENT_TYPE;
+        }
+
+        /**
+         * The precision of the sketches of this field, the cardinality aggregation uses it instead of its
+         * <code>precision_threshold</code> since only sketches of the same precision can be merged.
+         */
+        public int precision() {
+            return precision;
+        }
+
+        public void setPrecision(int precision) {
+            checkIfFrozen();
+            this.precision = precision;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (super.equals(o) == false) {
+                return false;
+            }
+            return precision == ((HllFieldType) o).precision;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + Integer.hashCode(precision);
+        }
+
+        @Override
+        public void checkCompatibility(MappedFieldType other, List<String> conflicts, boolean strict) {
+            super.checkCompatibility(other, conflicts, strict);
+            if (precision != ((HllFieldType) other).precision()) {
+                conflicts.add("mapper [" + name() + "] has different [precision] values");
+            }
+        }
+
+        @Override
+        public BytesReference valueForDisplay(Object value) {
+            if (value == null) {
+                return null;
+            }
+
+            BytesReference bytes;
+            if (value instanceof BytesRef) {
+                bytes = new BytesArray((BytesRef) value);
+            } else if (value instanceof BytesReference) {
+                bytes = (BytesReference) value;
+            } else if (value instanceof byte[]) {
+                bytes = new BytesArray((byte[]) value);
+            } else {
+                bytes = new BytesArray(Base64.getDecoder().decode(value.toString()));
+            }
+            return bytes;
+        }
+
+        @Override
+        public IndexFieldData.Builder fielddataBuilder() {
+            failIfNoDocValues();
+            return new BytesBinaryDVIndexFieldData.Builder();
+        }
+
+        @Override
+        public Query termQuery(Object value, QueryShardContext context) {
+            throw new QueryShardException(context, "Hll fields do not support searching");
+        }
+    }
+
+    protected HllFieldMapper(String simpleName, MappedFieldType fieldType, MappedFieldType defaultFieldType,
+                             Settings indexSettings, MultiFields multiFields, CopyTo copyTo) {
+        super(simpleName, fieldType, defaultFieldType, indexSettings, multiFields, copyTo);
+    }
+
+    @Override
+    public HllFieldType fieldType() {
+        return (HllFieldType) super.fieldType();
+    }
+
+    @Override
+    protected void parseCreateField(ParseContext context, List<IndexableField> fields) throws IOException {
+        if (!fieldType().stored() && !fieldType().hasDocValues()) {
+            return;
+        }
+        byte[] value = context.parseExternalValue(byte[].class);
+        if (value == null) {
+            if (context.parser().currentToken() == XContentParser.Token.VALUE_NULL) {
+                return;
+            } else {
+                value = context.parser().binaryValue();
+            }
+        }
+        if (value == null) {
+            return;
+        }
+        HyperLogLogPlusPlus.validate(StreamInput.wrap(value), fieldType().precision());
+        if (fieldType().stored()) {
+            fields.add(new Field(fieldType().name(), value, fieldType()));
+        }
+
+        if (fieldType().hasDocValues()) {
+            CustomBinaryDocValuesField field = (CustomBinaryDocValuesField) context.doc().getByKey(fieldType().name());
+            if (field == null) {
+                field = new CustomBinaryDocValuesField(fieldType().name(), value);
+                context.doc().addWithKey(fieldType().name(), field);
+            } else {
+                field.add(value);
+            }
+        }
+    }
+
+    @Override
+    protected void doXContentBody(XContentBuilder builder, boolean includeDefaults, Params params) throws IOException {
+        super.doXContentBody(builder, includeDefaults, params);
+        if (includeDefaults || fieldType().precision() != HyperLogLogPlusPlus.DEFAULT_PRECISION) {
+            builder.field("precision", fieldType().precision());
+        }
+    }
+
+    @Override
+    protected String contentType() {
+        return CONTENT_TYPE;
+    }
+}
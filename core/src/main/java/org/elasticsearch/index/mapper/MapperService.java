@@ -348,6 +348,10 @@ public class MapperService extends AbstractIndexComponent implements Closeable {
             checkNestedFieldsLimit(fullPathObjectMappers);
             checkTotalFieldsLimit(objectMappers.size() + fieldMappers.size());
             checkDepthLimit(fullPathObjectMappers.keySet());
+            if (hasNested && indexSettings.getIndexSortConfig().hasIndexSort()) {
+                // sorting segments would break the contiguous blocks of nested documents and their parent
+                throw new IllegalArgumentException("cannot have nested fields when index sort is activated");
+            }
         }
 
         Set<String> parentTypes = this.parentTypes;
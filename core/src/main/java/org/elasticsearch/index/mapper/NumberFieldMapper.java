@@ -775,6 +775,10 @@ public class NumberFieldMapper extends FieldMapper {
             return new NumberFieldType(this);
         }
 
+        public NumberType numberType() {
+            return type;
+        }
+
         @Override
         public String typeName() {
             return type.name;
@@ -0,0 +1,324 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.mapper;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.DoubleRangeField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.FloatRangeField;
+import org.apache.lucene.document.HalfFloatPoint;
+import org.apache.lucene.document.InetAddressPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.IntRangeField;
+import org.apache.lucene.document.LatLonDocValuesField;
+import org.apache.lucene.document.LatLonPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.LongRangeField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.IndexableFieldType;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.lucene.all.AllField;
+import org.elasticsearch.index.mapper.ParseContext.Document;
+import org.elasticsearch.index.mapper.internal.SeqNoFieldMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The Lucene documents of a {@link ParsedDocument} in a form that can be sent from the primary to the replicas, so that the
+ * replicas can index the document as it was parsed on the primary instead of parsing and mapping its source again.
+ *
+ * Only documents that consist of plain fields, whose tokens are entirely defined by their value, their field type and the
+ * analyzer of the index, can be replicated this way. Documents with fields that produce their own tokens, like completion
+ * fields, are parsed again on the replicas.
+ */
+public final class ReplicatedDocument implements Writeable {
+
+    /** field classes whose content is fully described by their name, field type, boost and value */
+    private static final Set<Class<? extends IndexableField>> PLAIN_FIELDS =
+        Collections.unmodifiableSet(new HashSet<>(Arrays.<Class<? extends IndexableField>>asList(
+        Field.class, StringField.class, TextField.class, StoredField.class,
+        IntPoint.class, LongPoint.class, HalfFloatPoint.class, FloatPoint.class, DoublePoint.class, InetAddressPoint.class,
+        IntRangeField.class, LongRangeField.class, FloatRangeField.class, DoubleRangeField.class,
+        LatLonPoint.class, LatLonDocValuesField.class,
+        NumericDocValuesField.class, SortedNumericDocValuesField.class, SortedDocValuesField.class, SortedSetDocValuesField.class,
+        BinaryDocValuesField.class, BinaryFieldMapper.CustomBinaryDocValuesField.class)));
+
+    private static final byte STRING_VALUE = 0;
+    private static final byte BINARY_VALUE = 1;
+    /** the binary value of the _source field that is identical to the source of the document and not sent again */
+    private static final byte SOURCE_VALUE = 2;
+    private static final byte INT_VALUE = 3;
+    private static final byte LONG_VALUE = 4;
+    private static final byte FLOAT_VALUE = 5;
+    private static final byte DOUBLE_VALUE = 6;
+
+    private static final int STORED = 1;
+    private static final int TOKENIZED = 1 << 1;
+    private static final int STORE_TERM_VECTORS = 1 << 2;
+    private static final int STORE_TERM_VECTOR_OFFSETS = 1 << 3;
+    private static final int STORE_TERM_VECTOR_POSITIONS = 1 << 4;
+    private static final int STORE_TERM_VECTOR_PAYLOADS = 1 << 5;
+    private static final int OMIT_NORMS = 1 << 6;
+
+    private final List<Document> docs;
+    private final BytesReference source;
+
+    private ReplicatedDocument(List<Document> docs, BytesReference source) {
+        this.docs = docs;
+        this.source = source;
+    }
+
+    /**
+     * Reads the documents of a replicated document.
+     *
+     * @param source the source of the document, which is sent separately
+     */
+    public ReplicatedDocument(StreamInput in, BytesReference source) throws IOException {
+        this.source = source;
+        final int numDocs = in.readVInt();
+        docs = new ArrayList<>(numDocs);
+        for (int i = 0; i < numDocs; i++) {
+            final Document doc = new Document();
+            final int numFields = in.readVInt();
+            for (int j = 0; j < numFields; j++) {
+                doc.add(readField(in));
+            }
+            docs.add(doc);
+        }
+    }
+
+    /**
+     * Returns the replicated form of the given parsed document or <code>null</code> if the document has fields that can't be
+     * replicated and needs to be parsed again on the replicas.
+     */
+    @Nullable
+    public static ReplicatedDocument of(ParsedDocument doc) {
+        for (Document luceneDoc : doc.docs()) {
+            for (IndexableField field : luceneDoc) {
+                if (isPlainField(field) == false) {
+                    return null;
+                }
+            }
+        }
+        return new ReplicatedDocument(doc.docs(), doc.source());
+    }
+
+    private static boolean isPlainField(IndexableField field) {
+        if (field.getClass() == AllField.class) {
+            return field.stringValue() != null;
+        }
+        if (PLAIN_FIELDS.contains(field.getClass()) == false || field.readerValue() != null) {
+            return false;
+        }
+        if (field instanceof Field && ((Field) field).tokenStreamValue() != null) {
+            return false;
+        }
+        final Number number = field.numericValue();
+        if (number != null) {
+            return number instanceof Integer || number instanceof Long || number instanceof Float || number instanceof Double;
+        }
+        return field.binaryValue() != null || field.stringValue() != null;
+    }
+
+    /**
+     * Returns <code>true</code> if all fields of the documents are mapped by the given mapper service. Tokenized fields are analyzed
+     * with the analyzer of their mapping when they are indexed, so documents with fields that the replica doesn't know about yet
+     * need to be parsed again, which waits for the mapping update to reach the replica.
+     */
+    public boolean isMapped(MapperService mapperService) {
+        for (Document doc : docs) {
+            for (IndexableField field : doc) {
+                if (mapperService.fullName(field.name()) == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the parsed document of the replicated documents. The fields of the documents are modified when they are indexed,
+     * so this method must only be called once.
+     */
+    public ParsedDocument toParsedDocument(SourceToParse source) {
+        final Document rootDoc = docs.get(docs.size() - 1);
+        return new ParsedDocument((Field) rootDoc.getField(VersionFieldMapper.NAME), (Field) rootDoc.getField(SeqNoFieldMapper.NAME),
+            source.id(), source.type(), source.routing(), docs, source.source(), null).parent(source.parent());
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(docs.size());
+        for (Document doc : docs) {
+            out.writeVInt(doc.getFields().size());
+            for (IndexableField field : doc) {
+                writeField(out, field);
+            }
+        }
+    }
+
+    private void writeField(StreamOutput out, IndexableField field) throws IOException {
+        out.writeString(field.name());
+        writeFieldType(out, field.fieldType());
+        out.writeFloat(field.boost());
+        if (field instanceof AllField) {
+            out.writeBoolean(true);
+            out.writeFloat(((AllField) field).getEntryBoost());
+        } else {
+            out.writeBoolean(false);
+        }
+        final Number number = field.numericValue();
+        final BytesRef binary = field.binaryValue();
+        if (number instanceof Integer) {
+            out.writeByte(INT_VALUE);
+            out.writeInt(number.intValue());
+        } else if (number instanceof Long) {
+            out.writeByte(LONG_VALUE);
+            out.writeLong(number.longValue());
+        } else if (number instanceof Float) {
+            out.writeByte(FLOAT_VALUE);
+            out.writeFloat(number.floatValue());
+        } else if (number instanceof Double) {
+            out.writeByte(DOUBLE_VALUE);
+            out.writeDouble(number.doubleValue());
+        } else if (binary != null) {
+            if (source != null && field.name().equals(SourceFieldMapper.NAME) && new BytesArray(binary).equals(source)) {
+                out.writeByte(SOURCE_VALUE);
+            } else {
+                out.writeByte(BINARY_VALUE);
+                out.writeBytesRef(binary);
+            }
+        } else {
+            assert field.stringValue() != null : "unexpected value of field [" + field.name() + "]";
+            out.writeByte(STRING_VALUE);
+            out.writeString(field.stringValue());
+        }
+    }
+
+    private IndexableField readField(StreamInput in) throws IOException {
+        final String name = in.readString();
+        final FieldType fieldType = readFieldType(in);
+        final float boost = in.readFloat();
+        final boolean allField = in.readBoolean();
+        final float entryBoost = allField ? in.readFloat() : 1f;
+        final byte valueType = in.readByte();
+        final Object value;
+        switch (valueType) {
+            case STRING_VALUE:
+                value = in.readString();
+                break;
+            case BINARY_VALUE:
+                value = in.readBytesRef();
+                break;
+            case SOURCE_VALUE:
+                value = source.toBytesRef();
+                break;
+            case INT_VALUE:
+                value = in.readInt();
+                break;
+            case LONG_VALUE:
+                value = in.readLong();
+                break;
+            case FLOAT_VALUE:
+                value = in.readFloat();
+                break;
+            case DOUBLE_VALUE:
+                value = in.readDouble();
+                break;
+            default:
+                throw new IllegalStateException("unknown value type [" + valueType + "] of field [" + name + "]");
+        }
+        final Field field = allField ? new AllField(name, (String) value, entryBoost, fieldType) : new PlainField(name, fieldType, value);
+        if (boost != 1f) {
+            field.setBoost(boost);
+        }
+        return field;
+    }
+
+    private static void writeFieldType(StreamOutput out, IndexableFieldType fieldType) throws IOException {
+        int flags = 0;
+        flags |= fieldType.stored() ? STORED : 0;
+        flags |= fieldType.tokenized() ? TOKENIZED : 0;
+        flags |= fieldType.storeTermVectors() ? STORE_TERM_VECTORS : 0;
+        flags |= fieldType.storeTermVectorOffsets() ? STORE_TERM_VECTOR_OFFSETS : 0;
+        flags |= fieldType.storeTermVectorPositions() ? STORE_TERM_VECTOR_POSITIONS : 0;
+        flags |= fieldType.storeTermVectorPayloads() ? STORE_TERM_VECTOR_PAYLOADS : 0;
+        flags |= fieldType.omitNorms() ? OMIT_NORMS : 0;
+        out.writeVInt(flags);
+        out.writeVInt(fieldType.indexOptions().ordinal());
+        out.writeVInt(fieldType.docValuesType().ordinal());
+        out.writeVInt(fieldType.pointDimensionCount());
+        out.writeVInt(fieldType.pointNumBytes());
+    }
+
+    private static FieldType readFieldType(StreamInput in) throws IOException {
+        final int flags = in.readVInt();
+        final FieldType fieldType = new FieldType();
+        fieldType.setStored((flags & STORED) != 0);
+        fieldType.setTokenized((flags & TOKENIZED) != 0);
+        fieldType.setStoreTermVectors((flags & STORE_TERM_VECTORS) != 0);
+        fieldType.setStoreTermVectorOffsets((flags & STORE_TERM_VECTOR_OFFSETS) != 0);
+        fieldType.setStoreTermVectorPositions((flags & STORE_TERM_VECTOR_POSITIONS) != 0);
+        fieldType.setStoreTermVectorPayloads((flags & STORE_TERM_VECTOR_PAYLOADS) != 0);
+        fieldType.setOmitNorms((flags & OMIT_NORMS) != 0);
+        fieldType.setIndexOptions(IndexOptions.values()[in.readVInt()]);
+        fieldType.setDocValuesType(DocValuesType.values()[in.readVInt()]);
+        final int dimensionCount = in.readVInt();
+        final int dimensionNumBytes = in.readVInt();
+        fieldType.setDimensions(dimensionCount, dimensionNumBytes);
+        fieldType.freeze();
+        return fieldType;
+    }
+
+    /**
+     * A field that was read from a replicated document and holds its value as is.
+     */
+    private static final class PlainField extends Field {
+
+        PlainField(String name, FieldType fieldType, Object value) {
+            super(name, fieldType);
+            this.fieldsData = value;
+        }
+    }
+}
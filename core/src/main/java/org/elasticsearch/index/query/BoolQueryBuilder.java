@@ -472,6 +472,11 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
         changed |= rewriteClauses(queryRewriteContext, mustNotClauses, newBuilder::mustNot);
         changed |= rewriteClauses(queryRewriteContext, filterClauses, newBuilder::filter);
         changed |= rewriteClauses(queryRewriteContext, shouldClauses, newBuilder::should);
+        // early terminate when must or filter clauses can't match any documents on this shard
+        if (newBuilder.must().stream().anyMatch(b -> b instanceof MatchNoneQueryBuilder) ||
+            newBuilder.filter().stream().anyMatch(b -> b instanceof MatchNoneQueryBuilder)) {
+            return new MatchNoneQueryBuilder();
+        }
 
         if (changed) {
             newBuilder.adjustPureNegative = adjustPureNegative;
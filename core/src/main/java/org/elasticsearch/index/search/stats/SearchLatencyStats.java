@@ -0,0 +1,183 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.search.stats;
+
+import org.HdrHistogram.Histogram;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.metrics.HistogramMetric;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+
+/**
+ * The latency distribution of the phases of search requests, in microseconds. The histograms of several shards or
+ * nodes can be merged with {@link #add(SearchLatencyStats)}, the percentiles are only computed when the stats are rendered.
+ */
+public class SearchLatencyStats implements Writeable, ToXContent {
+
+    public static final String CAN_MATCH = "can_match";
+    public static final String QUERY = "query";
+    public static final String FETCH = "fetch";
+    public static final String REDUCE = "reduce";
+
+    /**
+     * The name of the request parameter that lists the percentiles to render.
+     */
+    public static final String PERCENTILES_PARAM = "latency_percentiles";
+    private static final double[] DEFAULT_PERCENTILES = new double[] { 50, 90, 99, 99.9 };
+
+    private final Map<String, Histogram> phases;
+
+    public SearchLatencyStats() {
+        this.phases = new TreeMap<>();
+    }
+
+    /**
+     * Creates the stats from the snapshots of the given metrics, per phase name.
+     */
+    public static SearchLatencyStats fromMetrics(Map<String, HistogramMetric> metrics) {
+        SearchLatencyStats stats = new SearchLatencyStats();
+        for (Map.Entry<String, HistogramMetric> entry : metrics.entrySet()) {
+            stats.phases.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return stats;
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public SearchLatencyStats(StreamInput in) throws IOException {
+        int size = in.readVInt();
+        this.phases = new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+            String phase = in.readString();
+            final int serializedLen = in.readVInt();
+            byte[] bytes = new byte[serializedLen];
+            in.readBytes(bytes, 0, serializedLen);
+            final Histogram histogram;
+            try {
+                histogram = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 0);
+            } catch (DataFormatException e) {
+                throw new IOException("Failed to decode latency histogram of phase [" + phase + "]", e);
+            }
+            // the histograms of other shards might contain higher values
+            histogram.setAutoResize(true);
+            phases.put(phase, histogram);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(phases.size());
+        for (Map.Entry<String, Histogram> entry : phases.entrySet()) {
+            out.writeString(entry.getKey());
+            Histogram histogram = entry.getValue();
+            ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+            final int serializedLen = histogram.encodeIntoCompressedByteBuffer(buffer);
+            out.writeVInt(serializedLen);
+            out.writeBytes(buffer.array(), 0, serializedLen);
+        }
+    }
+
+    /**
+     * Merges the latencies of the given stats into these stats.
+     */
+    public void add(@Nullable SearchLatencyStats other) {
+        if (other == null) {
+            return;
+        }
+        for (Map.Entry<String, Histogram> entry : other.phases.entrySet()) {
+            Histogram histogram = phases.get(entry.getKey());
+            if (histogram == null) {
+                histogram = entry.getValue().copy();
+                histogram.setAutoResize(true);
+                phases.put(entry.getKey(), histogram);
+            } else {
+                histogram.add(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the latency histogram of the given phase in microseconds, or <code>null</code> if the phase isn't tracked.
+     */
+    @Nullable
+    public Histogram getHistogram(String phase) {
+        return phases.get(phase);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        final double[] percentiles = parsePercentiles(params.param(PERCENTILES_PARAM));
+        builder.startObject(Fields.LATENCY);
+        for (Map.Entry<String, Histogram> entry : phases.entrySet()) {
+            Histogram histogram = entry.getValue();
+            builder.startObject(entry.getKey());
+            builder.field(Fields.COUNT, histogram.getTotalCount());
+            builder.startObject(Fields.PERCENTILES_IN_MICROS);
+            for (double percentile : percentiles) {
+                builder.field(Double.toString(percentile), histogram.getValueAtPercentile(percentile));
+            }
+            builder.endObject();
+            builder.field(Fields.MAX_IN_MICROS, histogram.getMaxValue());
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    /**
+     * Parses a comma separated list of percentiles, returns the default percentiles if the list is <code>null</code>.
+     */
+    public static double[] parsePercentiles(@Nullable String value) {
+        if (value == null) {
+            return DEFAULT_PERCENTILES;
+        }
+        String[] values = Strings.splitStringByCommaToArray(value);
+        double[] percentiles = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            try {
+                percentiles[i] = Double.parseDouble(values[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("[" + PERCENTILES_PARAM + "] must be a list of numbers but got [" + value + "]", e);
+            }
+            if (percentiles[i] < 0 || percentiles[i] > 100) {
+                throw new IllegalArgumentException("[" + PERCENTILES_PARAM + "] must be between 0 and 100 but got [" + values[i] + "]");
+            }
+        }
+        return percentiles;
+    }
+
+    static final class Fields {
+        static final String LATENCY = "latency";
+        static final String COUNT = "count";
+        static final String PERCENTILES_IN_MICROS = "percentiles_in_micros";
+        static final String MAX_IN_MICROS = "max_in_micros";
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index.search.stats;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -243,14 +244,23 @@ public class SearchStats implements Streamable, ToXContent {
     @Nullable
     Map<String, Stats> groupStats;
 
+    @Nullable
+    SearchLatencyStats latencyStats;
+
     public SearchStats() {
         totalStats = new Stats();
     }
 
     public SearchStats(Stats totalStats, long openContexts, @Nullable Map<String, Stats> groupStats) {
+        this(totalStats, openContexts, groupStats, null);
+    }
+
+    public SearchStats(Stats totalStats, long openContexts, @Nullable Map<String, Stats> groupStats,
+                       @Nullable SearchLatencyStats latencyStats) {
         this.totalStats = totalStats;
         this.openContexts = openContexts;
         this.groupStats = groupStats;
+        this.latencyStats = latencyStats;
     }
 
     public void add(SearchStats searchStats) {
@@ -283,6 +293,20 @@ public class SearchStats implements Streamable, ToXContent {
             return;
         }
         totalStats.add(searchStats.totalStats);
+        addLatency(searchStats.latencyStats);
+    }
+
+    /**
+     * Merges the given latency distributions into the latency distributions of these stats.
+     */
+    public void addLatency(@Nullable SearchLatencyStats latency) {
+        if (latency == null) {
+            return;
+        }
+        if (latencyStats == null) {
+            latencyStats = new SearchLatencyStats();
+        }
+        latencyStats.add(latency);
     }
 
     public Stats getTotal() {
@@ -298,11 +322,22 @@ public class SearchStats implements Streamable, ToXContent {
         return this.groupStats;
     }
 
+    /**
+     * Returns the latency distribution of the search phases, or <code>null</code> if it is not available.
+     */
+    @Nullable
+    public SearchLatencyStats getLatency() {
+        return this.latencyStats;
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject(Fields.SEARCH);
         builder.field(Fields.OPEN_CONTEXTS, openContexts);
         totalStats.toXContent(builder, params);
+        if (latencyStats != null) {
+            latencyStats.toXContent(builder, params);
+        }
         if (groupStats != null && !groupStats.isEmpty()) {
             builder.startObject(Fields.GROUPS);
             for (Map.Entry<String, Stats> entry : groupStats.entrySet()) {
@@ -355,6 +390,9 @@ public class SearchStats implements Streamable, ToXContent {
                 groupStats.put(in.readString(), Stats.readStats(in));
             }
         }
+        if (in.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            latencyStats = in.readOptionalWriteable(SearchLatencyStats::new);
+        }
     }
 
     @Override
@@ -371,6 +409,9 @@ public class SearchStats implements Streamable, ToXContent {
                 entry.getValue().writeTo(out);
             }
         }
+        if (out.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            out.writeOptionalWriteable(latencyStats);
+        }
     }
 
     @Override
@@ -21,8 +21,10 @@ package org.elasticsearch.index.search.stats;
 
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.metrics.HistogramMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.shard.SearchOperationListener;
 import org.elasticsearch.search.internal.SearchContext;
 
@@ -32,12 +34,32 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.unmodifiableMap;
 
 public final class ShardSearchStats implements SearchOperationListener {
 
     private final StatsHolder totalStats = new StatsHolder();
     private final CounterMetric openContexts = new CounterMetric();
     private volatile Map<String, StatsHolder> groupsStats = emptyMap();
+    private final Map<String, HistogramMetric> latencyMetrics;
+    private final HistogramMetric canMatchLatency;
+    private final HistogramMetric queryLatency;
+    private final HistogramMetric fetchLatency;
+
+    /**
+     * @param latencyWindow the window of the latency histograms of the search phases,
+     *                      see {@link org.elasticsearch.search.SearchService#STATS_LATENCY_WINDOW_SETTING}
+     */
+    public ShardSearchStats(TimeValue latencyWindow) {
+        Map<String, HistogramMetric> latencyMetrics = new HashMap<>();
+        canMatchLatency = new HistogramMetric(latencyWindow.nanos(), System::nanoTime);
+        latencyMetrics.put(SearchLatencyStats.CAN_MATCH, canMatchLatency);
+        queryLatency = new HistogramMetric(latencyWindow.nanos(), System::nanoTime);
+        latencyMetrics.put(SearchLatencyStats.QUERY, queryLatency);
+        fetchLatency = new HistogramMetric(latencyWindow.nanos(), System::nanoTime);
+        latencyMetrics.put(SearchLatencyStats.FETCH, fetchLatency);
+        this.latencyMetrics = unmodifiableMap(latencyMetrics);
+    }
 
     /**
      * Returns the stats, including group specific stats. If the groups are null/0 length, then nothing
@@ -61,7 +83,7 @@ public final class ShardSearchStats implements SearchOperationListener {
                 }
             }
         }
-        return new SearchStats(total, openContexts.count(), groupsSt);
+        return new SearchStats(total, openContexts.count(), groupsSt, SearchLatencyStats.fromMetrics(latencyMetrics));
     }
 
     @Override
@@ -97,6 +119,9 @@ public final class ShardSearchStats implements SearchOperationListener {
                 statsHolder.queryCurrent.dec();
             }
         });
+        if (searchContext.hasOnlySuggest() == false) {
+            queryLatency.inc(tookInNanos);
+        }
     }
 
     @Override
@@ -115,10 +140,19 @@ public final class ShardSearchStats implements SearchOperationListener {
             statsHolder.fetchMetric.inc(tookInNanos);
             statsHolder.fetchCurrent.dec();
         });
+        fetchLatency.inc(tookInNanos);
+    }
+
+    @Override
+    public void onCanMatchPhase(SearchContext searchContext, long tookInNanos) {
+        canMatchLatency.inc(tookInNanos);
     }
 
     public void clear() {
         totalStats.clear();
+        for (HistogramMetric metric : latencyMetrics.values()) {
+            metric.clear();
+        }
         synchronized (this) {
             if (!groupsStats.isEmpty()) {
                 MapBuilder<String, StatsHolder> typesStatsBuilder = MapBuilder.newMapBuilder();
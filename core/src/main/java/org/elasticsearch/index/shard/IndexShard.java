@@ -31,6 +31,7 @@ import org.apache.lucene.index.SnapshotDeletionPolicy;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Lock;
@@ -55,6 +56,7 @@ import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.logging.LoggerMessageFormat;
 import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeValue;
@@ -94,6 +96,7 @@ import org.elasticsearch.index.mapper.DocumentMapperForType;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.mapper.ParsedDocument;
+import org.elasticsearch.index.mapper.ReplicatedDocument;
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.merge.MergeStats;
@@ -122,6 +125,7 @@ import org.elasticsearch.indices.recovery.RecoveryFailedException;
 import org.elasticsearch.indices.recovery.RecoveryState;
 import org.elasticsearch.repositories.RepositoriesService;
 import org.elasticsearch.repositories.Repository;
+import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.suggest.completion.CompletionFieldStats;
 import org.elasticsearch.search.suggest.completion.CompletionStats;
 import org.elasticsearch.threadpool.ThreadPool;
@@ -139,11 +143,13 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -155,10 +161,11 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     private final IndexCache indexCache;
     private final Store store;
     private final InternalIndexingStats internalIndexingStats;
-    private final ShardSearchStats searchStats = new ShardSearchStats();
+    private final ShardSearchStats searchStats;
     private final ShardGetService getService;
     private final ShardIndexWarmerService shardWarmerService;
     private final ShardRequestCache requestCacheStats;
+    private final ShardRequestCache hitsRequestCacheStats;
     private final ShardFieldData shardFieldData;
     private final IndexFieldDataService indexFieldDataService;
     private final ShardBitsetFilterCache shardBitsetFilterCache;
@@ -179,6 +186,11 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
      * being indexed/deleted.
      */
     private final AtomicLong writingBytes = new AtomicLong();
+    /**
+     * The share of the node's indexing buffer that {@link IndexingMemoryController} apportioned to this shard based on its recent
+     * indexing rate, reported in the indexing stats.
+     */
+    private volatile long indexBufferShareInBytes;
     private final SearchOperationListener searchOperationListener;
 
     protected volatile ShardRouting shardRouting;
@@ -194,7 +206,16 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
 
     private final RecoveryStats recoveryStats = new RecoveryStats();
     private final MeanMetric refreshMetric = new MeanMetric();
+    private final CounterMetric skippedRefreshMetric = new CounterMetric();
+    /** the estimated time in millis of the last search on this shard, see {@link #awaitShardSearchActive()} */
+    private final AtomicLong lastSearcherAccess = new AtomicLong();
+    /** whether scheduled refreshes were skipped since the last search because the shard is search idle */
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    /** held while the first search after the shard was search idle refreshes it, see {@link #awaitShardSearchActive()} */
+    private final ReentrantLock searchIdleRefreshLock = new ReentrantLock();
     private final MeanMetric flushMetric = new MeanMetric();
+    /** the sort of the segments of this shard, built lazily, see {@link #getIndexSort()} */
+    private volatile Sort indexSort;
 
     private final ShardEventListener shardEventListener = new ShardEventListener();
 
@@ -246,12 +267,14 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         this.store = store;
         this.indexEventListener = indexEventListener;
         this.threadPool = threadPool;
+        this.lastSearcherAccess.set(threadPool.estimatedTimeInMillis());
         this.mapperService = mapperService;
         this.indexCache = indexCache;
         this.internalIndexingStats = new InternalIndexingStats();
         final List<IndexingOperationListener> listenersList = new ArrayList<>(listeners);
         listenersList.add(internalIndexingStats);
         this.indexingOperationListeners = new IndexingOperationListener.CompositeListener(listenersList, logger);
+        this.searchStats = new ShardSearchStats(SearchService.STATS_LATENCY_WINDOW_SETTING.get(indexSettings.getNodeSettings()));
         final List<SearchOperationListener> searchListenersList = new ArrayList<>(searchOperationListener);
         searchListenersList.add(searchStats);
         this.searchOperationListener = new SearchOperationListener.CompositeListener(searchListenersList, logger);
@@ -259,6 +282,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         this.getService = new ShardGetService(indexSettings, this, mapperService);
         this.shardWarmerService = new ShardIndexWarmerService(shardId, indexSettings);
         this.requestCacheStats = new ShardRequestCache();
+        this.hitsRequestCacheStats = new ShardRequestCache();
         this.shardFieldData = new ShardFieldData();
         this.indexFieldDataService = indexFieldDataService;
         this.shardBitsetFilterCache = new ShardBitsetFilterCache(shardId, indexSettings);
@@ -327,6 +351,13 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return this.requestCacheStats;
     }
 
+    /**
+     * Tracks the portion of the request cache that holds the query and fetch results of requests with hits.
+     */
+    public ShardRequestCache hitsRequestCache() {
+        return this.hitsRequestCacheStats;
+    }
+
     public ShardFieldData fieldData() {
         return this.shardFieldData;
     }
@@ -520,9 +551,24 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
 
     public Engine.Index prepareIndexOnReplica(SourceToParse source, long seqNo, long version, VersionType versionType, long autoGeneratedIdTimestamp,
                                               boolean isRetry) {
+        return prepareIndexOnReplica(source, null, seqNo, version, versionType, autoGeneratedIdTimestamp, isRetry);
+    }
+
+    /**
+     * Prepares an index operation on a replica. If the primary sent the documents it parsed and all their fields are mapped on
+     * this shard, these documents are indexed as they are, otherwise the source is parsed.
+     */
+    public Engine.Index prepareIndexOnReplica(SourceToParse source, @Nullable ReplicatedDocument replicatedDocument, long seqNo,
+                                              long version, VersionType versionType, long autoGeneratedIdTimestamp, boolean isRetry) {
         try {
             verifyReplicationTarget();
-            return prepareIndex(docMapper(source.type()), source, seqNo, version, versionType, Engine.Operation.Origin.REPLICA, autoGeneratedIdTimestamp,
+            final DocumentMapperForType docMapper = docMapper(source.type());
+            if (replicatedDocument != null && docMapper.getMapping() == null && replicatedDocument.isMapped(mapperService)) {
+                long startTime = System.nanoTime();
+                return prepareIndex(docMapper, replicatedDocument.toParsedDocument(source), seqNo, version, versionType,
+                    Engine.Operation.Origin.REPLICA, startTime, autoGeneratedIdTimestamp, isRetry);
+            }
+            return prepareIndex(docMapper, source, seqNo, version, versionType, Engine.Operation.Origin.REPLICA, autoGeneratedIdTimestamp,
                 isRetry);
         } catch (Exception e) {
             verifyNotClosed(e);
@@ -537,6 +583,12 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         if (docMapper.getMapping() != null) {
             doc.addDynamicMappingsUpdate(docMapper.getMapping());
         }
+        return prepareIndex(docMapper, doc, seqNo, version, versionType, origin, startTime, autoGeneratedIdTimestamp, isRetry);
+    }
+
+    private static Engine.Index prepareIndex(DocumentMapperForType docMapper, ParsedDocument doc, long seqNo, long version,
+                                             VersionType versionType, Engine.Operation.Origin origin, long startTime,
+                                             long autoGeneratedIdTimestamp, boolean isRetry) {
         MappedFieldType uidFieldType = docMapper.getDocumentMapper().uidMapper().fieldType();
         Query uidQuery = uidFieldType.termQuery(doc.uid(), null);
         Term uid = MappedFieldType.extractTerm(uidQuery);
@@ -567,6 +619,39 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return result;
     }
 
+    /**
+     * Performs the given index operations as a batch, see {@link Engine#index(List)}.
+     *
+     * @return the result of each operation, in the order of the operations
+     */
+    public List<Engine.IndexResult> index(List<Engine.Index> operations) {
+        for (Engine.Index index : operations) {
+            ensureWriteAllowed(index);
+        }
+        Engine engine = getEngine();
+        active.set(true);
+        final List<Engine.Index> preparedOperations = new ArrayList<>(operations.size());
+        for (Engine.Index index : operations) {
+            preparedOperations.add(indexingOperationListeners.preIndex(index));
+        }
+        final List<Engine.IndexResult> results;
+        try {
+            if (logger.isTraceEnabled()) {
+                logger.trace("index [{}] operations", preparedOperations.size());
+            }
+            results = engine.index(preparedOperations);
+        } catch (Exception e) {
+            for (Engine.Index index : preparedOperations) {
+                indexingOperationListeners.postIndex(index, e);
+            }
+            throw e;
+        }
+        for (int i = 0; i < preparedOperations.size(); i++) {
+            indexingOperationListeners.postIndex(preparedOperations.get(i), results.get(i));
+        }
+        return results;
+    }
+
     public Engine.Delete prepareDeleteOnPrimary(String type, String id, long version, VersionType versionType) {
         verifyPrimary();
         final DocumentMapper documentMapper = docMapper(type).getDocumentMapper();
@@ -657,8 +742,22 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return writingBytes.get();
     }
 
+    /**
+     * Returns the estimated number of bytes of all index and delete operations this shard executed so far
+     */
+    public long getIndexedBytes() {
+        return internalIndexingStats.indexedBytes();
+    }
+
+    /**
+     * Called by {@link IndexingMemoryController} to record the share of the node's indexing buffer this shard is entitled to
+     */
+    public void setIndexBufferShare(long indexBufferShareInBytes) {
+        this.indexBufferShareInBytes = indexBufferShareInBytes;
+    }
+
     public RefreshStats refreshStats() {
-        return new RefreshStats(refreshMetric.count(), TimeUnit.NANOSECONDS.toMillis(refreshMetric.sum()));
+        return new RefreshStats(refreshMetric.count(), TimeUnit.NANOSECONDS.toMillis(refreshMetric.sum()), skippedRefreshMetric.count());
     }
 
     public FlushStats flushStats() {
@@ -700,7 +799,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
             throttled = engine.isThrottled();
             throttleTimeInMillis = engine.getIndexThrottleTimeInMillis();
         }
-        return internalIndexingStats.stats(throttled, throttleTimeInMillis, types);
+        return internalIndexingStats.stats(throttled, throttleTimeInMillis, indexBufferShareInBytes, types);
     }
 
     public SearchStats searchStats(String... groups) {
@@ -1709,12 +1808,30 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     }
 
     private EngineConfig newEngineConfig(EngineConfig.OpenMode openMode, long maxUnsafeAutoIdTimestamp) {
-        final IndexShardRecoveryPerformer translogRecoveryPerformer = new IndexShardRecoveryPerformer(shardId, mapperService, logger);
+        final IndexShardRecoveryPerformer translogRecoveryPerformer = new IndexShardRecoveryPerformer(shardId, mapperService, logger,
+            indexSettings.getTranslogRecoveryThreads(), threadPool.generic());
         return new EngineConfig(openMode, shardId,
             threadPool, indexSettings, warmer, store, deletionPolicy, indexSettings.getMergePolicy(),
             mapperService.indexAnalyzer(), similarityService.similarity(mapperService), codecService, shardEventListener, translogRecoveryPerformer, indexCache.query(), cachingPolicy, translogConfig,
             IndexingMemoryController.SHARD_INACTIVE_TIME_SETTING.get(indexSettings.getSettings()), refreshListeners,
-            maxUnsafeAutoIdTimestamp);
+            maxUnsafeAutoIdTimestamp, getIndexSort());
+    }
+
+    /**
+     * Return the sort order of this index, or null if the index has no sort.
+     */
+    @Nullable
+    public Sort getIndexSort() {
+        if (indexSettings.getIndexSortConfig().hasIndexSort() == false) {
+            return null;
+        }
+        Sort sort = indexSort;
+        if (sort == null) {
+            // the sort fields are checked against the mappings when the index is created and their types can't change afterwards,
+            // so the sort is built once. Racing threads build equal sorts.
+            sort = indexSort = indexSettings.getIndexSortConfig().buildIndexSort(mapperService::fullName);
+        }
+        return sort;
     }
 
     /**
@@ -1877,6 +1994,64 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return getEngine().refreshNeeded() || (refreshListeners != null && refreshListeners.refreshNeeded());
     }
 
+    /**
+     * Executes a scheduled refresh if one is needed. The refresh is skipped if this shard is search idle and no refresh listener
+     * is waiting for it, in which case the next search refreshes the shard, see {@link #awaitShardSearchActive()}.
+     *
+     * @return <code>true</code> if the shard was refreshed
+     */
+    public boolean scheduledRefresh() {
+        final boolean listenerNeedsRefresh = refreshListeners != null && refreshListeners.refreshNeeded();
+        if (listenerNeedsRefresh || getEngine().refreshNeeded()) {
+            if (listenerNeedsRefresh == false && isSearchIdle()) {
+                skippedRefreshMetric.inc();
+                refreshPending.set(true);
+                return false;
+            }
+            refresh("schedule");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if this shard wasn't searched for longer than {@link IndexSettings#getSearchIdleAfter()}.
+     */
+    public boolean isSearchIdle() {
+        final long searchIdleAfter = indexSettings.getSearchIdleAfter().millis();
+        return searchIdleAfter >= 0 && threadPool.estimatedTimeInMillis() - lastSearcherAccess.get() >= searchIdleAfter;
+    }
+
+    /**
+     * Marks this shard as search active. If scheduled refreshes were skipped while the shard was search idle, the shard is
+     * refreshed before returning so that the search sees all operations that were indexed before it arrived. Searches that
+     * arrive while this refresh is running wait for it rather than refreshing again.
+     */
+    public void awaitShardSearchActive() {
+        lastSearcherAccess.set(threadPool.estimatedTimeInMillis());
+        // the lock is taken before the pending flag is cleared, a search that sees the flag cleared while the refresh runs
+        // sees the lock held and waits for the refresh
+        if (refreshPending.get() || searchIdleRefreshLock.isLocked()) {
+            searchIdleRefreshLock.lock();
+            try {
+                // cleared before refreshing so that a refresh that is skipped concurrently stays pending
+                if (refreshPending.compareAndSet(true, false)) {
+                    boolean success = false;
+                    try {
+                        refresh("search_idle");
+                        success = true;
+                    } finally {
+                        if (success == false) {
+                            refreshPending.set(true);
+                        }
+                    }
+                }
+            } finally {
+                searchIdleRefreshLock.unlock();
+            }
+        }
+    }
+
     /**
      * Add a listener for refreshes.
      *
@@ -1890,8 +2065,9 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
 
     private class IndexShardRecoveryPerformer extends TranslogRecoveryPerformer {
 
-        protected IndexShardRecoveryPerformer(ShardId shardId, MapperService mapperService, Logger logger) {
-            super(shardId, mapperService, logger);
+        protected IndexShardRecoveryPerformer(ShardId shardId, MapperService mapperService, Logger logger, int replayThreads,
+                                              Executor replayExecutor) {
+            super(shardId, mapperService, logger, replayThreads, replayExecutor);
         }
 
         @Override
@@ -24,6 +24,7 @@ import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -46,10 +47,18 @@ public class IndexingStats implements Streamable, ToXContent {
         private long noopUpdateCount;
         private long throttleTimeInMillis;
         private boolean isThrottled;
+        private long indexBufferShareInBytes;
 
         Stats() {}
 
         public Stats(long indexCount, long indexTimeInMillis, long indexCurrent, long indexFailedCount, long deleteCount, long deleteTimeInMillis, long deleteCurrent, long noopUpdateCount, boolean isThrottled, long throttleTimeInMillis) {
+            this(indexCount, indexTimeInMillis, indexCurrent, indexFailedCount, deleteCount, deleteTimeInMillis, deleteCurrent,
+                noopUpdateCount, isThrottled, throttleTimeInMillis, 0);
+        }
+
+        public Stats(long indexCount, long indexTimeInMillis, long indexCurrent, long indexFailedCount, long deleteCount,
+                     long deleteTimeInMillis, long deleteCurrent, long noopUpdateCount, boolean isThrottled, long throttleTimeInMillis,
+                     long indexBufferShareInBytes) {
             this.indexCount = indexCount;
             this.indexTimeInMillis = indexTimeInMillis;
             this.indexCurrent = indexCurrent;
@@ -60,6 +69,7 @@ public class IndexingStats implements Streamable, ToXContent {
             this.noopUpdateCount = noopUpdateCount;
             this.isThrottled = isThrottled;
             this.throttleTimeInMillis = throttleTimeInMillis;
+            this.indexBufferShareInBytes = indexBufferShareInBytes;
         }
 
         public void add(Stats stats) {
@@ -74,6 +84,7 @@ public class IndexingStats implements Streamable, ToXContent {
 
             noopUpdateCount += stats.noopUpdateCount;
             throttleTimeInMillis += stats.throttleTimeInMillis;
+            indexBufferShareInBytes += stats.indexBufferShareInBytes;
             if (isThrottled != stats.isThrottled) {
                 isThrottled = true; //When combining if one is throttled set result to throttled.
             }
@@ -116,6 +127,12 @@ public class IndexingStats implements Streamable, ToXContent {
          */
         public TimeValue getThrottleTime() { return new TimeValue(throttleTimeInMillis); }
 
+        /**
+         * Returns the share of the node's indexing buffer that the rate aware indexing memory controller apportioned to the shard(s)
+         * based on their recent indexing rate, or <tt>0</tt> if rate aware apportioning is disabled.
+         */
+        public ByteSizeValue getIndexBufferShare() { return new ByteSizeValue(indexBufferShareInBytes); }
+
         /**
          * The total amount of time spend on executing delete operations.
          */
@@ -154,6 +171,9 @@ public class IndexingStats implements Streamable, ToXContent {
             noopUpdateCount = in.readVLong();
             isThrottled = in.readBoolean();
             throttleTimeInMillis = in.readLong();
+            if (in.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+                indexBufferShareInBytes = in.readVLong();
+            }
         }
 
         @Override
@@ -172,7 +192,9 @@ public class IndexingStats implements Streamable, ToXContent {
             out.writeVLong(noopUpdateCount);
             out.writeBoolean(isThrottled);
             out.writeLong(throttleTimeInMillis);
-
+            if (out.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+                out.writeVLong(indexBufferShareInBytes);
+            }
         }
 
         @Override
@@ -190,6 +212,7 @@ public class IndexingStats implements Streamable, ToXContent {
 
             builder.field(Fields.IS_THROTTLED, isThrottled);
             builder.timeValueField(Fields.THROTTLED_TIME_IN_MILLIS, Fields.THROTTLED_TIME, throttleTimeInMillis);
+            builder.byteSizeField(Fields.INDEX_BUFFER_SHARE_IN_BYTES, Fields.INDEX_BUFFER_SHARE, indexBufferShareInBytes);
             return builder;
         }
     }
@@ -281,6 +304,8 @@ public class IndexingStats implements Streamable, ToXContent {
         static final String IS_THROTTLED = "is_throttled";
         static final String THROTTLED_TIME_IN_MILLIS = "throttle_time_in_millis";
         static final String THROTTLED_TIME = "throttle_time";
+        static final String INDEX_BUFFER_SHARE = "index_buffer_share";
+        static final String INDEX_BUFFER_SHARE_IN_BYTES = "index_buffer_share_in_bytes";
     }
 
     public static IndexingStats readIndexingStats(StreamInput in) throws IOException {
@@ -37,6 +37,7 @@ import static java.util.Collections.emptyMap;
  */
 final class InternalIndexingStats implements IndexingOperationListener {
     private final StatsHolder totalStats = new StatsHolder();
+    private final CounterMetric indexedBytes = new CounterMetric();
     private volatile Map<String, StatsHolder> typesStats = emptyMap();
 
     /**
@@ -44,19 +45,19 @@ final class InternalIndexingStats implements IndexingOperationListener {
      * is returned for them. If they are set, then only types provided will be returned, or
      * <tt>_all</tt> for all types.
      */
-    IndexingStats stats(boolean isThrottled, long currentThrottleInMillis, String... types) {
-        IndexingStats.Stats total = totalStats.stats(isThrottled, currentThrottleInMillis);
+    IndexingStats stats(boolean isThrottled, long currentThrottleInMillis, long indexBufferShareInBytes, String... types) {
+        IndexingStats.Stats total = totalStats.stats(isThrottled, currentThrottleInMillis, indexBufferShareInBytes);
         Map<String, IndexingStats.Stats> typesSt = null;
         if (types != null && types.length > 0) {
             typesSt = new HashMap<>(typesStats.size());
             if (types.length == 1 && types[0].equals("_all")) {
                 for (Map.Entry<String, StatsHolder> entry : typesStats.entrySet()) {
-                    typesSt.put(entry.getKey(), entry.getValue().stats(isThrottled, currentThrottleInMillis));
+                    typesSt.put(entry.getKey(), entry.getValue().stats(isThrottled, currentThrottleInMillis, 0));
                 }
             } else {
                 for (Map.Entry<String, StatsHolder> entry : typesStats.entrySet()) {
                     if (Regex.simpleMatch(types, entry.getKey())) {
-                        typesSt.put(entry.getKey(), entry.getValue().stats(isThrottled, currentThrottleInMillis));
+                        typesSt.put(entry.getKey(), entry.getValue().stats(isThrottled, currentThrottleInMillis, 0));
                     }
                 }
             }
@@ -64,6 +65,14 @@ final class InternalIndexingStats implements IndexingOperationListener {
         return new IndexingStats(total, typesSt);
     }
 
+    /**
+     * Returns the estimated number of bytes of all successful index and delete operations, including operations that were
+     * replayed during recovery since they fill the indexing buffer as well.
+     */
+    long indexedBytes() {
+        return indexedBytes.count();
+    }
+
     @Override
     public Engine.Index preIndex(Engine.Index operation) {
         if (!operation.origin().isRecovery()) {
@@ -76,6 +85,7 @@ final class InternalIndexingStats implements IndexingOperationListener {
     @Override
     public void postIndex(Engine.Index index, Engine.IndexResult result) {
         if (result.hasFailure() == false) {
+            indexedBytes.inc(index.estimatedSizeInBytes());
             if (!index.origin().isRecovery()) {
                 long took = result.getTook();
                 totalStats.indexMetric.inc(took);
@@ -112,6 +122,7 @@ final class InternalIndexingStats implements IndexingOperationListener {
     @Override
     public void postDelete(Engine.Delete delete, Engine.DeleteResult result) {
         if (result.hasFailure() == false) {
+            indexedBytes.inc(delete.estimatedSizeInBytes());
             if (!delete.origin().isRecovery()) {
                 long took = result.getTook();
                 totalStats.deleteMetric.inc(took);
@@ -160,11 +171,11 @@ final class InternalIndexingStats implements IndexingOperationListener {
         private final CounterMetric deleteCurrent = new CounterMetric();
         private final CounterMetric noopUpdates = new CounterMetric();
 
-        IndexingStats.Stats stats(boolean isThrottled, long currentThrottleMillis) {
+        IndexingStats.Stats stats(boolean isThrottled, long currentThrottleMillis, long indexBufferShareInBytes) {
             return new IndexingStats.Stats(
                 indexMetric.count(), TimeUnit.NANOSECONDS.toMillis(indexMetric.sum()), indexCurrent.count(), indexFailed.count(),
                 deleteMetric.count(), TimeUnit.NANOSECONDS.toMillis(deleteMetric.sum()), deleteCurrent.count(),
-                noopUpdates.count(), isThrottled, TimeUnit.MILLISECONDS.toMillis(currentThrottleMillis));
+                noopUpdates.count(), isThrottled, TimeUnit.MILLISECONDS.toMillis(currentThrottleMillis), indexBufferShareInBytes);
         }
 
         void clear() {
@@ -74,6 +74,13 @@ public interface SearchOperationListener {
      */
     default void onFetchPhase(SearchContext searchContext, long tookInNanos) {};
 
+    /**
+     * Executed after a shard checked whether the query of a request can match any of its documents.
+     * @param searchContext the current search context
+     * @param tookInNanos the number of nanoseconds the check took
+     */
+    default void onCanMatchPhase(SearchContext searchContext, long tookInNanos) {}
+
     /**
      * Executed when a new search context was created
      * @param context the created context
@@ -182,6 +189,17 @@ public interface SearchOperationListener {
             }
         }
 
+        @Override
+        public void onCanMatchPhase(SearchContext searchContext, long tookInNanos) {
+            for (SearchOperationListener listener : listeners) {
+                try {
+                    listener.onCanMatchPhase(searchContext, tookInNanos);
+                } catch (Exception e) {
+                    logger.warn((Supplier<?>) () -> new ParameterizedMessage("onCanMatchPhase listener [{}] failed", listener), e);
+                }
+            }
+        }
+
         @Override
         public void onNewContext(SearchContext context) {
             for (SearchOperationListener listener : listeners) {
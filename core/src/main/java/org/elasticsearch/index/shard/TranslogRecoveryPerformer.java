@@ -19,9 +19,14 @@
 package org.elasticsearch.index.shard;
 
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.IgnoreOnRecoveryEngineException;
 import org.elasticsearch.index.mapper.DocumentMapperForType;
@@ -29,12 +34,19 @@ import org.elasticsearch.index.mapper.MapperException;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.mapper.Mapping;
 import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.index.mapper.UidFieldMapper;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.rest.RestStatus;
 
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.elasticsearch.index.mapper.SourceToParse.source;
 
@@ -43,15 +55,37 @@ import static org.elasticsearch.index.mapper.SourceToParse.source;
  * indexing operation including source parsing and field creation from the source.
  */
 public class TranslogRecoveryPerformer {
+    /** marker that tells a replay worker that the snapshot is exhausted */
+    private static final Translog.Operation END_OF_SNAPSHOT = new Translog.Delete(new Term(UidFieldMapper.NAME, "_end_of_snapshot"));
+
     private final MapperService mapperService;
     private final Logger logger;
     private final Map<String, Mapping> recoveredTypes = new HashMap<>();
     private final ShardId shardId;
+    private final int replayThreads;
+    private final Executor replayExecutor;
 
     protected TranslogRecoveryPerformer(ShardId shardId, MapperService mapperService, Logger logger) {
+        this(shardId, mapperService, logger, 1, null);
+    }
+
+    /**
+     * @param replayThreads  the number of threads that replay a snapshot in {@link #recoveryFromSnapshot(Engine, Translog.Snapshot)}
+     * @param replayExecutor the executor that runs the replay workers, only required if more than one replay thread is used
+     */
+    protected TranslogRecoveryPerformer(ShardId shardId, MapperService mapperService, Logger logger, int replayThreads,
+                                        @Nullable Executor replayExecutor) {
+        if (replayThreads < 1) {
+            throw new IllegalArgumentException("replay threads must be at least 1 but was [" + replayThreads + "]");
+        }
+        if (replayThreads > 1 && replayExecutor == null) {
+            throw new IllegalArgumentException("an executor is required to replay the translog with [" + replayThreads + "] threads");
+        }
         this.shardId = shardId;
         this.mapperService = mapperService;
         this.logger = logger;
+        this.replayThreads = replayThreads;
+        this.replayExecutor = replayExecutor;
     }
 
     protected DocumentMapperForType docMapper(String type) {
@@ -78,25 +112,175 @@ public class TranslogRecoveryPerformer {
         return numOps;
     }
 
+    /**
+     * Replays all operations of the snapshot against the engine and returns the number of operations recovered. If more than one
+     * replay thread is configured the operations are partitioned by uid across the replay threads, which preserves the order of
+     * all operations on the same document while operations on different documents are applied concurrently.
+     */
     public int recoveryFromSnapshot(Engine engine, Translog.Snapshot snapshot) throws IOException {
+        if (replayThreads > 1) {
+            return parallelRecoveryFromSnapshot(engine, snapshot);
+        }
         Translog.Operation operation;
         int opsRecovered = 0;
         while ((operation = snapshot.next()) != null) {
-            try {
-                performRecoveryOperation(engine, operation, true, Engine.Operation.Origin.LOCAL_TRANSLOG_RECOVERY);
+            if (recoverOperation(engine, operation)) {
                 opsRecovered++;
-            } catch (ElasticsearchException e) {
-                if (e.status() == RestStatus.BAD_REQUEST) {
-                    // mainly for MapperParsingException and Failure to detect xcontent
-                    logger.info("ignoring recovery of a corrupt translog entry", e);
+            }
+        }
+        return opsRecovered;
+    }
+
+    /**
+     * Replays a single operation from the local translog. Returns <code>false</code> if the operation is a corrupt entry that was
+     * skipped.
+     */
+    private boolean recoverOperation(Engine engine, Translog.Operation operation) {
+        try {
+            performRecoveryOperation(engine, operation, true, Engine.Operation.Origin.LOCAL_TRANSLOG_RECOVERY);
+            return true;
+        } catch (ElasticsearchException e) {
+            if (e.status() == RestStatus.BAD_REQUEST) {
+                // mainly for MapperParsingException and Failure to detect xcontent
+                logger.info("ignoring recovery of a corrupt translog entry", e);
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private int parallelRecoveryFromSnapshot(Engine engine, Translog.Snapshot snapshot) throws IOException {
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(replayThreads);
+        final ReplayWorker[] workers = new ReplayWorker[replayThreads];
+        int started = 0;
+        try {
+            for (; started < workers.length; started++) {
+                workers[started] = new ReplayWorker(engine, failure, latch);
+                replayExecutor.execute(workers[started]);
+            }
+            Translog.Operation operation;
+            while (failure.get() == null && (operation = snapshot.next()) != null) {
+                workers[partition(operation, workers.length)].add(operation);
+            }
+        } catch (Exception e) {
+            onReplayFailure(failure, e);
+        } finally {
+            for (int i = 0; i < workers.length; i++) {
+                if (i < started) {
+                    workers[i].add(END_OF_SNAPSHOT);
                 } else {
-                    throw e;
+                    latch.countDown();
                 }
             }
         }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            onReplayFailure(failure, e);
+        }
+        final Exception e = failure.get();
+        if (e != null) {
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            throw ExceptionsHelper.convertToRuntime(e);
+        }
+        int opsRecovered = 0;
+        for (ReplayWorker worker : workers) {
+            opsRecovered += worker.opsRecovered;
+        }
         return opsRecovered;
     }
 
+    private static void onReplayFailure(AtomicReference<Exception> failure, Exception e) {
+        if (failure.compareAndSet(null, e) == false) {
+            failure.get().addSuppressed(e);
+        }
+    }
+
+    /**
+     * Returns the replay partition of the given operation. All operations on the same uid end up in the same partition.
+     */
+    static int partition(Translog.Operation operation, int partitions) {
+        final BytesRef uid;
+        switch (operation.opType()) {
+            case INDEX:
+                Translog.Index index = (Translog.Index) operation;
+                uid = Uid.createUidAsBytes(index.type(), index.id());
+                break;
+            case DELETE:
+                uid = ((Translog.Delete) operation).uid().bytes();
+                break;
+            default:
+                // let the worker fail on the unknown operation
+                return 0;
+        }
+        return Math.floorMod(uid.hashCode(), partitions);
+    }
+
+    /**
+     * Replays the operations of a single partition in the order they were added. After a failure the worker keeps draining its
+     * queue without applying operations so that the thread reading the snapshot never blocks on it. The worker holds the engine's
+     * read lock through {@link Engine#acquireTranslogReplayLock()} so that its operations never queue up behind a pending close
+     * of the engine, which waits for the replay to finish.
+     */
+    private final class ReplayWorker implements Runnable {
+
+        static final int QUEUE_SIZE = 1024;
+
+        private final Engine engine;
+        private final AtomicReference<Exception> failure;
+        private final CountDownLatch latch;
+        private final BlockingQueue<Translog.Operation> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private volatile boolean done = false;
+        private int opsRecovered = 0;
+
+        ReplayWorker(Engine engine, AtomicReference<Exception> failure, CountDownLatch latch) {
+            this.engine = engine;
+            this.failure = failure;
+            this.latch = latch;
+        }
+
+        void add(Translog.Operation operation) {
+            try {
+                while (done == false && queue.offer(operation, 100, TimeUnit.MILLISECONDS) == false) {
+                    // the worker is busy, retry until it makes room or stops
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                onReplayFailure(failure, e);
+            }
+        }
+
+        @Override
+        public void run() {
+            try (Releasable ignored = engine.acquireTranslogReplayLock()) {
+                Translog.Operation operation;
+                while ((operation = queue.take()) != END_OF_SNAPSHOT) {
+                    if (failure.get() == null) {
+                        try {
+                            if (recoverOperation(engine, operation)) {
+                                opsRecovered++;
+                            }
+                        } catch (Exception e) {
+                            onReplayFailure(failure, e);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                onReplayFailure(failure, e);
+            } catch (Exception e) {
+                onReplayFailure(failure, e);
+            } finally {
+                done = true;
+                latch.countDown();
+            }
+        }
+    }
+
     public static class BatchOperationException extends ElasticsearchException {
 
         private final int completedOperations;
@@ -124,7 +308,7 @@ public class TranslogRecoveryPerformer {
         }
     }
 
-    private void maybeAddMappingUpdate(String type, Mapping update, String docId, boolean allowMappingUpdates) {
+    private synchronized void maybeAddMappingUpdate(String type, Mapping update, String docId, boolean allowMappingUpdates) {
         if (update == null) {
             return;
         }
@@ -54,6 +54,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -127,6 +128,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     private final TranslogConfig config;
     private final LongSupplier globalCheckpointSupplier;
     private final String translogUUID;
+    private final TranslogSyncMetrics syncMetrics = new TranslogSyncMetrics();
 
     /**
      * Creates a new Translog instance. This method will create a new transaction log unless the given {@link TranslogGeneration} is
@@ -392,7 +394,8 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
                 location.resolve(getFilename(fileGeneration)),
                 getChannelFactory(),
                 config.getBufferSize(),
-                globalCheckpointSupplier);
+                globalCheckpointSupplier,
+                syncMetrics);
         } catch (final IOException e) {
             throw new TranslogException(shardId, "failed to create new translog file", e);
         }
@@ -409,15 +412,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     public Location add(Operation operation) throws IOException {
         final ReleasableBytesStreamOutput out = new ReleasableBytesStreamOutput(bigArrays);
         try {
-            final BufferedChecksumStreamOutput checksumStreamOutput = new BufferedChecksumStreamOutput(out);
-            final long start = out.position();
-            out.skip(Integer.BYTES);
-            writeOperationNoSize(checksumStreamOutput, operation);
-            final long end = out.position();
-            final int operationSize = (int) (end - Integer.BYTES - start);
-            out.seek(start);
-            out.writeInt(operationSize);
-            out.seek(end);
+            writeOperationWithSize(out, operation);
             final ReleasablePagedBytesReference bytes = out.bytes();
             try (ReleasableLock lock = readLock.acquire()) {
                 ensureOpen();
@@ -443,6 +438,59 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
         }
     }
 
+    /**
+     * Adds several delete / index operations to the transaction log with a single write to the current translog file. The
+     * returned locations are in the order of the given operations.
+     *
+     * @see #add(Operation)
+     */
+    public List<Location> add(List<? extends Operation> operations) throws IOException {
+        final ReleasableBytesStreamOutput out = new ReleasableBytesStreamOutput(bigArrays);
+        try {
+            final int[] operationSizes = new int[operations.size()];
+            for (int i = 0; i < operationSizes.length; i++) {
+                operationSizes[i] = writeOperationWithSize(out, operations.get(i));
+            }
+            final ReleasablePagedBytesReference bytes = out.bytes();
+            try (ReleasableLock lock = readLock.acquire()) {
+                ensureOpen();
+                return Arrays.asList(current.add(bytes, operationSizes));
+            }
+        } catch (AlreadyClosedException | IOException ex) {
+            try {
+                closeOnTragicEvent(ex);
+            } catch (Exception inner) {
+                ex.addSuppressed(inner);
+            }
+            throw ex;
+        } catch (Exception e) {
+            try {
+                closeOnTragicEvent(e);
+            } catch (Exception inner) {
+                e.addSuppressed(inner);
+            }
+            throw new TranslogException(shardId, "Failed to write [" + operations.size() + "] operations", e);
+        } finally {
+            Releasables.close(out.bytes());
+        }
+    }
+
+    /**
+     * Writes the given operation prefixed with its size to the given stream and returns the number of bytes that were written.
+     */
+    private static int writeOperationWithSize(ReleasableBytesStreamOutput out, Operation operation) throws IOException {
+        final BufferedChecksumStreamOutput checksumStreamOutput = new BufferedChecksumStreamOutput(out);
+        final long start = out.position();
+        out.skip(Integer.BYTES);
+        writeOperationNoSize(checksumStreamOutput, operation);
+        final long end = out.position();
+        final int operationSize = (int) (end - Integer.BYTES - start);
+        out.seek(start);
+        out.writeInt(operationSize);
+        out.seek(end);
+        return (int) (end - start);
+    }
+
     /**
      * The a {@linkplain Location} that will sort after the {@linkplain Location} returned by the last write but before any locations which
      * can be returned by the next write.
@@ -594,7 +642,8 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     public TranslogStats stats() {
         // acquire lock to make the two numbers roughly consistent (no file change half way)
         try (ReleasableLock lock = readLock.acquire()) {
-            return new TranslogStats(totalOperations(), sizeInBytes());
+            return new TranslogStats(totalOperations(), sizeInBytes(), syncMetrics.syncCount(), syncMetrics.syncedOperations(),
+                syncMetrics.syncTimeInMillis(), syncMetrics.syncWaitTimeInMillis());
         }
     }
 
@@ -18,6 +18,7 @@
  */
 package org.elasticsearch.index.translog;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.support.ToXContentToBytes;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -30,11 +31,20 @@ public class TranslogStats extends ToXContentToBytes implements Streamable {
 
     private long translogSizeInBytes;
     private int numberOfOperations;
+    private long syncCount;
+    private long syncedOperations;
+    private long syncTimeInMillis;
+    private long syncWaitTimeInMillis;
 
     public TranslogStats() {
     }
 
     public TranslogStats(int numberOfOperations, long translogSizeInBytes) {
+        this(numberOfOperations, translogSizeInBytes, 0, 0, 0, 0);
+    }
+
+    public TranslogStats(int numberOfOperations, long translogSizeInBytes, long syncCount, long syncedOperations,
+                         long syncTimeInMillis, long syncWaitTimeInMillis) {
         if (numberOfOperations < 0) {
             throw new IllegalArgumentException("numberOfOperations must be >= 0");
         }
@@ -44,6 +54,10 @@ public class TranslogStats extends ToXContentToBytes implements Streamable {
         assert translogSizeInBytes >= 0 : "translogSizeInBytes must be >= 0, got [" + translogSizeInBytes + "]";
         this.numberOfOperations = numberOfOperations;
         this.translogSizeInBytes = translogSizeInBytes;
+        this.syncCount = syncCount;
+        this.syncedOperations = syncedOperations;
+        this.syncTimeInMillis = syncTimeInMillis;
+        this.syncWaitTimeInMillis = syncWaitTimeInMillis;
     }
 
     public void add(TranslogStats translogStats) {
@@ -53,6 +67,10 @@ public class TranslogStats extends ToXContentToBytes implements Streamable {
 
         this.numberOfOperations += translogStats.numberOfOperations;
         this.translogSizeInBytes += translogStats.translogSizeInBytes;
+        this.syncCount += translogStats.syncCount;
+        this.syncedOperations += translogStats.syncedOperations;
+        this.syncTimeInMillis += translogStats.syncTimeInMillis;
+        this.syncWaitTimeInMillis += translogStats.syncWaitTimeInMillis;
     }
 
     public long getTranslogSizeInBytes() {
@@ -63,11 +81,46 @@ public class TranslogStats extends ToXContentToBytes implements Streamable {
         return numberOfOperations;
     }
 
+    /**
+     * The number of times the translog was fsynced. Concurrent writes are synced together, see {@link #getSyncedOperations()}.
+     */
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * The total number of operations that were fsynced. Divided by {@link #getSyncCount()} this is the mean number of
+     * operations per fsync.
+     */
+    public long getSyncedOperations() {
+        return syncedOperations;
+    }
+
+    /**
+     * The total time spent fsyncing the translog and writing its checkpoints.
+     */
+    public long getSyncTimeInMillis() {
+        return syncTimeInMillis;
+    }
+
+    /**
+     * The total time writes waited for other writes to finish syncing before they could sync.
+     */
+    public long getSyncWaitTimeInMillis() {
+        return syncWaitTimeInMillis;
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         builder.startObject(Fields.TRANSLOG);
         builder.field(Fields.OPERATIONS, numberOfOperations);
         builder.byteSizeField(Fields.SIZE_IN_BYTES, Fields.SIZE, translogSizeInBytes);
+        builder.startObject(Fields.SYNC);
+        builder.field(Fields.TOTAL, syncCount);
+        builder.field(Fields.OPERATIONS, syncedOperations);
+        builder.timeValueField(Fields.TOTAL_TIME_IN_MILLIS, Fields.TOTAL_TIME, syncTimeInMillis);
+        builder.timeValueField(Fields.TOTAL_WAIT_TIME_IN_MILLIS, Fields.TOTAL_WAIT_TIME, syncWaitTimeInMillis);
+        builder.endObject();
         builder.endObject();
         return builder;
     }
@@ -77,17 +130,35 @@ public class TranslogStats extends ToXContentToBytes implements Streamable {
         static final String OPERATIONS = "operations";
         static final String SIZE = "size";
         static final String SIZE_IN_BYTES = "size_in_bytes";
+        static final String SYNC = "sync";
+        static final String TOTAL = "total";
+        static final String TOTAL_TIME = "total_time";
+        static final String TOTAL_TIME_IN_MILLIS = "total_time_in_millis";
+        static final String TOTAL_WAIT_TIME = "total_wait_time";
+        static final String TOTAL_WAIT_TIME_IN_MILLIS = "total_wait_time_in_millis";
     }
 
     @Override
     public void readFrom(StreamInput in) throws IOException {
         numberOfOperations = in.readVInt();
         translogSizeInBytes = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            syncCount = in.readVLong();
+            syncedOperations = in.readVLong();
+            syncTimeInMillis = in.readVLong();
+            syncWaitTimeInMillis = in.readVLong();
+        }
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeVInt(numberOfOperations);
         out.writeVLong(translogSizeInBytes);
+        if (out.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            out.writeVLong(syncCount);
+            out.writeVLong(syncedOperations);
+            out.writeVLong(syncTimeInMillis);
+            out.writeVLong(syncWaitTimeInMillis);
+        }
     }
 }
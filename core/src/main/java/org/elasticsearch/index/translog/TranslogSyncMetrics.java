@@ -0,0 +1,63 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog;
+
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.metrics.MeanMetric;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the group commits of the translog across all of its generations: how many operations each fsync covered, how long
+ * writers waited for their turn to sync and how long the fsyncs took.
+ */
+final class TranslogSyncMetrics {
+
+    private final MeanMetric syncedOperations = new MeanMetric();
+    private final CounterMetric syncTimeInNanos = new CounterMetric();
+    private final CounterMetric syncWaitTimeInNanos = new CounterMetric();
+
+    void onWait(long waitTimeInNanos) {
+        syncWaitTimeInNanos.inc(waitTimeInNanos);
+    }
+
+    void onSync(int numOperations, long syncTimeInNanos) {
+        syncedOperations.inc(numOperations);
+        this.syncTimeInNanos.inc(syncTimeInNanos);
+    }
+
+    /** the number of fsyncs */
+    long syncCount() {
+        return syncedOperations.count();
+    }
+
+    /** the total number of operations that were fsynced, divided by {@link #syncCount()} this is the mean group commit size */
+    long syncedOperations() {
+        return syncedOperations.sum();
+    }
+
+    long syncTimeInMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(syncTimeInNanos.count());
+    }
+
+    long syncWaitTimeInMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(syncWaitTimeInNanos.count());
+    }
+}
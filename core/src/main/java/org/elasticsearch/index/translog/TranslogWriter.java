@@ -23,21 +23,24 @@ import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.OutputStreamDataOutput;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefIterator;
 import org.apache.lucene.util.IOUtils;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.Channels;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.index.shard.ShardId;
 
-import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.LongSupplier;
 
 public class TranslogWriter extends BaseTranslogReader implements Closeable {
@@ -52,18 +55,24 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
     // the last checkpoint that was written when the translog was last synced
     private volatile Checkpoint lastSyncedCheckpoint;
     /* the number of translog operations written to this file */
-    private volatile int operationCounter;
+    private final AtomicInteger operationCounter = new AtomicInteger();
     /* if we hit an exception that we can't recover from we assign it to this var and ship it with every AlreadyClosedException we throw */
     private volatile Exception tragedy;
-    /* A buffered outputstream what writes to the writers channel */
-    private final OutputStream outputStream;
-    /* the total offset of this file including the bytes written to the file as well as into the buffer */
-    private volatile long totalOffset;
+    /* a direct buffer that writers concurrently copy their operations into before it is written to the writers channel */
+    private final ByteBuffer buffer;
+    /* the offset in this file the first byte of the buffer is written at, only changes while the buffer lock is held exclusively */
+    private volatile long bufferOffset;
+    /* the total offset of this file including the bytes written to the file as well as reserved in the buffer */
+    private final AtomicLong totalOffset;
 
     private final LongSupplier globalCheckpointSupplier;
+    private final TranslogSyncMetrics syncMetrics;
 
     protected final AtomicBoolean closed = new AtomicBoolean(false);
-    // lock order synchronized(syncLock) -> synchronized(this)
+    // writers reserve space and copy into the buffer while holding the shared lock, writing the buffer to the channel
+    // requires the exclusive lock
+    private final ReentrantReadWriteLock bufferLock = new ReentrantReadWriteLock();
+    // lock order synchronized(syncLock) -> bufferLock.writeLock()
     private final Object syncLock = new Object();
 
     public TranslogWriter(
@@ -73,14 +82,19 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
         final FileChannel channel,
         final Path path,
         final ByteSizeValue bufferSize,
-        final LongSupplier globalCheckpointSupplier) throws IOException {
+        final LongSupplier globalCheckpointSupplier,
+        final TranslogSyncMetrics syncMetrics) throws IOException {
         super(initialCheckpoint.generation, channel, path, channel.position());
+        assert initialCheckpoint.offset == channel.position() :
+            "checkpoint offset [" + initialCheckpoint.offset + "] doesn't match the channel position [" + channel.position() + "]";
         this.shardId = shardId;
         this.channelFactory = channelFactory;
-        this.outputStream = new BufferedChannelOutputStream(java.nio.channels.Channels.newOutputStream(channel), bufferSize.bytesAsInt());
+        this.buffer = ByteBuffer.allocateDirect(bufferSize.bytesAsInt());
         this.lastSyncedCheckpoint = initialCheckpoint;
-        this.totalOffset = initialCheckpoint.offset;
+        this.bufferOffset = initialCheckpoint.offset;
+        this.totalOffset = new AtomicLong(initialCheckpoint.offset);
         this.globalCheckpointSupplier = globalCheckpointSupplier;
+        this.syncMetrics = syncMetrics;
     }
 
     static int getHeaderLength(String translogUUID) {
@@ -104,7 +118,8 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
         Path file,
         ChannelFactory channelFactory,
         ByteSizeValue bufferSize,
-        final LongSupplier globalCheckpointSupplier) throws IOException {
+        final LongSupplier globalCheckpointSupplier,
+        final TranslogSyncMetrics syncMetrics) throws IOException {
         final BytesRef ref = new BytesRef(translogUUID);
         final int headerLength = getHeaderLength(ref.length);
         final FileChannel channel = channelFactory.open(file);
@@ -117,7 +132,7 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
             final Checkpoint checkpoint =
                 writeCheckpoint(channelFactory, headerLength, 0, globalCheckpointSupplier.getAsLong(), file.getParent(), fileGeneration);
             final TranslogWriter writer =
-                new TranslogWriter(channelFactory, shardId, checkpoint, channel, file, bufferSize, globalCheckpointSupplier);
+                new TranslogWriter(channelFactory, shardId, checkpoint, channel, file, bufferSize, globalCheckpointSupplier, syncMetrics);
             return writer;
         } catch (Exception exception) {
             // if we fail to bake the file-generation into the checkpoint we stick with the file and once we recover and that
@@ -151,11 +166,113 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
     /**
      * add the given bytes to the translog and return the location they were written at
      */
-    public synchronized Translog.Location add(BytesReference data) throws IOException {
+    public Translog.Location add(BytesReference data) throws IOException {
+        final long offset = write(data, 1);
+        return new Translog.Location(generation, offset, data.length());
+    }
+
+    /**
+     * add the given bytes, which hold several operations of the given sizes, to the translog with a single write and return the
+     * locations the operations were written at
+     */
+    public Translog.Location[] add(BytesReference data, int[] operationSizes) throws IOException {
+        final long offset = write(data, operationSizes.length);
+        final Translog.Location[] locations = new Translog.Location[operationSizes.length];
+        long operationOffset = offset;
+        for (int i = 0; i < operationSizes.length; i++) {
+            locations[i] = new Translog.Location(generation, operationOffset, operationSizes[i]);
+            operationOffset += operationSizes[i];
+        }
+        assert operationOffset == offset + data.length() : "operation sizes don't add up to the written bytes";
+        return locations;
+    }
+
+    /**
+     * Reserves space for the given bytes at the end of this file and copies them into the buffer. Concurrent writers only
+     * share the buffer lock and race on the total offset, the buffer is only locked exclusively once it is full.
+     *
+     * @return the offset the bytes were written at
+     */
+    private long write(BytesReference data, int numOperations) throws IOException {
+        final int length = data.length();
+        while (true) {
+            ensureOpen();
+            final Lock readLock = bufferLock.readLock();
+            readLock.lock();
+            try {
+                final long offset = reserve(length);
+                if (offset >= 0) {
+                    copyToBuffer(data, Math.toIntExact(offset - bufferOffset));
+                    operationCounter.addAndGet(numOperations);
+                    return offset;
+                }
+            } catch (Exception ex) {
+                // we reserved space that is now garbage, this file can't be used anymore
+                try {
+                    closeWithTragicEvent(ex);
+                } catch (Exception inner) {
+                    ex.addSuppressed(inner);
+                }
+                throw ex;
+            } finally {
+                readLock.unlock();
+            }
+            // the buffer is full, write it to the channel and retry
+            final Lock writeLock = bufferLock.writeLock();
+            writeLock.lock();
+            try {
+                flushBuffer();
+                if (length > buffer.capacity()) {
+                    // the bytes will never fit, write them through to the channel
+                    return writeThrough(data, numOperations);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Reserves the given number of bytes in the buffer, the caller must hold the shared buffer lock such that the buffer
+     * offset can't change.
+     *
+     * @return the offset of the reserved space or <code>-1</code> if it doesn't fit in the remaining space of the buffer
+     */
+    private long reserve(int length) {
+        final long limit = bufferOffset + buffer.capacity();
+        while (true) {
+            final long offset = totalOffset.get();
+            if (offset + length > limit) {
+                return -1;
+            }
+            if (totalOffset.compareAndSet(offset, offset + length)) {
+                return offset;
+            }
+        }
+    }
+
+    private void copyToBuffer(BytesReference data, int position) throws IOException {
+        // every writer copies into its own view of the buffer, the reserved regions never overlap
+        final ByteBuffer target = buffer.duplicate();
+        target.position(position);
+        final BytesRefIterator iterator = data.iterator();
+        BytesRef ref;
+        while ((ref = iterator.next()) != null) {
+            target.put(ref.bytes, ref.offset, ref.length);
+        }
+    }
+
+    private long writeThrough(BytesReference data, int numOperations) throws IOException {
+        assert bufferLock.isWriteLockedByCurrentThread();
+        assert totalOffset.get() == bufferOffset : "buffer must be empty before writing through";
         ensureOpen();
-        final long offset = totalOffset;
+        final long offset = bufferOffset;
         try {
-            data.writeTo(outputStream);
+            final BytesRefIterator iterator = data.iterator();
+            BytesRef ref;
+            while ((ref = iterator.next()) != null) {
+                Channels.writeToChannel(ref.bytes, ref.offset, ref.length, channel);
+            }
         } catch (Exception ex) {
             try {
                 closeWithTragicEvent(ex);
@@ -164,9 +281,34 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
             }
             throw ex;
         }
-        totalOffset += data.length();
-        operationCounter++;
-        return new Translog.Location(generation, offset, data.length());
+        bufferOffset = totalOffset.addAndGet(data.length());
+        operationCounter.addAndGet(numOperations);
+        return offset;
+    }
+
+    /**
+     * Writes the bytes that were copied into the buffer to the channel, the caller must hold the exclusive buffer lock.
+     */
+    private void flushBuffer() throws IOException {
+        assert bufferLock.isWriteLockedByCurrentThread();
+        final int length = Math.toIntExact(totalOffset.get() - bufferOffset);
+        if (length > 0) {
+            ensureOpen();
+            try {
+                final ByteBuffer source = buffer.duplicate();
+                source.position(0);
+                source.limit(length);
+                Channels.writeToChannel(source, channel);
+            } catch (Exception ex) {
+                try {
+                    closeWithTragicEvent(ex);
+                } catch (Exception inner) {
+                    ex.addSuppressed(inner);
+                }
+                throw ex;
+            }
+            bufferOffset += length;
+        }
     }
 
     /**
@@ -183,17 +325,18 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
      * returns true if there are buffered ops
      */
     public boolean syncNeeded() {
-        return totalOffset != lastSyncedCheckpoint.offset || globalCheckpointSupplier.getAsLong() != lastSyncedCheckpoint.globalCheckpoint;
+        return totalOffset.get() != lastSyncedCheckpoint.offset
+            || globalCheckpointSupplier.getAsLong() != lastSyncedCheckpoint.globalCheckpoint;
     }
 
     @Override
     public int totalOperations() {
-        return operationCounter;
+        return operationCounter.get();
     }
 
     @Override
     public long sizeInBytes() {
-        return totalOffset;
+        return totalOffset.get();
     }
 
     /**
@@ -201,12 +344,14 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
      */
     public TranslogReader closeIntoReader() throws IOException {
         // make sure to acquire the sync lock first, to prevent dead locks with threads calling
-        // syncUpTo() , where the sync lock is acquired first, following by the synchronize(this)
+        // syncUpTo() , where the sync lock is acquired first, following by the exclusive buffer lock
         //
         // Note: While this is not strictly needed as this method is called while blocking all ops on the translog,
         //       we do this to for correctness and preventing future issues.
         synchronized (syncLock) {
-            synchronized (this) {
+            final Lock writeLock = bufferLock.writeLock();
+            writeLock.lock();
+            try {
                 try {
                     sync(); // sync before we close..
                 } catch (IOException e) {
@@ -220,8 +365,8 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
                 if (closed.compareAndSet(false, true)) {
                     boolean success = false;
                     try {
-                        final TranslogReader reader =
-                            new TranslogReader(generation, channel, path, firstOperationOffset, getWrittenOffset(), operationCounter);
+                        final TranslogReader reader = new TranslogReader(generation, channel, path, firstOperationOffset,
+                            getWrittenOffset(), operationCounter.get());
                         success = true;
                         return reader;
                     } finally {
@@ -233,6 +378,8 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
                 } else {
                     throw new AlreadyClosedException("translog [" + getGeneration() + "] is already closed (path [" + path + "]", tragedy);
                 }
+            } finally {
+                writeLock.unlock();
             }
         }
     }
@@ -241,9 +388,11 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
     @Override
     public Translog.Snapshot newSnapshot() {
         // make sure to acquire the sync lock first, to prevent dead locks with threads calling
-        // syncUpTo() , where the sync lock is acquired first, following by the synchronize(this)
+        // syncUpTo() , where the sync lock is acquired first, following by the exclusive buffer lock
         synchronized (syncLock) {
-            synchronized (this) {
+            final Lock writeLock = bufferLock.writeLock();
+            writeLock.lock();
+            try {
                 ensureOpen();
                 try {
                     sync();
@@ -251,6 +400,8 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
                     throw new TranslogException(shardId, "exception while syncing before creating a snapshot", e);
                 }
                 return super.newSnapshot();
+            } finally {
+                writeLock.unlock();
             }
         }
     }
@@ -260,42 +411,43 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
     }
 
     /**
-     * Syncs the translog up to at least the given offset unless already synced
+     * Syncs the translog up to at least the given offset unless already synced. Concurrent callers are group committed: only one
+     * of them syncs at a time, covering everything that was written so far, while the others wait and most likely find their
+     * offset synced once they get their turn.
      *
      * @return <code>true</code> if this call caused an actual sync operation
      */
     public boolean syncUpTo(long offset) throws IOException {
         if (lastSyncedCheckpoint.offset < offset && syncNeeded()) {
+            final long waitStartTime = System.nanoTime();
             synchronized (syncLock) { // only one sync/checkpoint should happen concurrently but we wait
+                syncMetrics.onWait(System.nanoTime() - waitStartTime);
                 if (lastSyncedCheckpoint.offset < offset && syncNeeded()) {
                     // double checked locking - we don't want to fsync unless we have to and now that we have
                     // the lock we should check again since if this code is busy we might have fsynced enough already
                     final long offsetToSync;
                     final int opsCounter;
                     final long globalCheckpoint;
-                    synchronized (this) {
+                    final Lock writeLock = bufferLock.writeLock();
+                    writeLock.lock();
+                    try {
                         ensureOpen();
-                        try {
-                            outputStream.flush();
-                            offsetToSync = totalOffset;
-                            opsCounter = operationCounter;
-                            globalCheckpoint = globalCheckpointSupplier.getAsLong();
-                        } catch (Exception ex) {
-                            try {
-                                closeWithTragicEvent(ex);
-                            } catch (Exception inner) {
-                                ex.addSuppressed(inner);
-                            }
-                            throw ex;
-                        }
+                        flushBuffer();
+                        offsetToSync = totalOffset.get();
+                        opsCounter = operationCounter.get();
+                        globalCheckpoint = globalCheckpointSupplier.getAsLong();
+                    } finally {
+                        writeLock.unlock();
                     }
-                    // now do the actual fsync outside of the synchronized block such that
+                    // now do the actual fsync outside of the buffer lock such that
                     // we can continue writing to the buffer etc.
                     final Checkpoint checkpoint;
                     try {
+                        final long syncStartTime = System.nanoTime();
                         channel.force(false);
                         checkpoint =
                             writeCheckpoint(channelFactory, offsetToSync, opsCounter, globalCheckpoint, path.getParent(), generation);
+                        syncMetrics.onSync(opsCounter - lastSyncedCheckpoint.numOps, System.nanoTime() - syncStartTime);
                     } catch (Exception ex) {
                         try {
                             closeWithTragicEvent(ex);
@@ -317,14 +469,18 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
     @Override
     protected void readBytes(ByteBuffer targetBuffer, long position) throws IOException {
         if (position + targetBuffer.remaining() > getWrittenOffset()) {
-            synchronized (this) {
+            final Lock writeLock = bufferLock.writeLock();
+            writeLock.lock();
+            try {
                 // we only flush here if it's really really needed - try to minimize the impact of the read operation
                 // in some cases ie. a tragic event we might still be able to read the relevant value
                 // which is not really important in production but some test can make most strict assumptions
                 // if we don't fail in this call unless absolutely necessary.
                 if (position + targetBuffer.remaining() > getWrittenOffset()) {
-                    outputStream.flush();
+                    flushBuffer();
                 }
+            } finally {
+                writeLock.unlock();
             }
         }
         // we don't have to have a lock here because we only write ahead to the file, so all writes has been complete
@@ -370,36 +526,4 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
     protected final boolean isClosed() {
         return closed.get();
     }
-
-
-    private final class BufferedChannelOutputStream extends BufferedOutputStream {
-
-        public BufferedChannelOutputStream(OutputStream out, int size) throws IOException {
-            super(out, size);
-        }
-
-        @Override
-        public synchronized void flush() throws IOException {
-            if (count > 0) {
-                try {
-                    ensureOpen();
-                    super.flush();
-                } catch (Exception ex) {
-                    try {
-                        closeWithTragicEvent(ex);
-                    } catch (Exception inner) {
-                        ex.addSuppressed(inner);
-                    }
-                    throw ex;
-                }
-            }
-        }
-
-        @Override
-        public void close() throws IOException {
-            // the stream is intentionally not closed because
-            // closing it will close the FileChannel
-            throw new IllegalStateException("never close this stream");
-        }
-    }
 }
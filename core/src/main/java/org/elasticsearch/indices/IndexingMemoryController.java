@@ -22,6 +22,7 @@ package org.elasticsearch.indices;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.logging.log4j.util.Supplier;
 import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.metrics.ExponentiallyWeightedMovingAverage;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
@@ -41,10 +42,13 @@ import org.elasticsearch.threadpool.ThreadPool.Names;
 import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -74,6 +78,18 @@ public class IndexingMemoryController extends AbstractComponent implements Index
     /** How frequently we check indexing memory usage (default: 5 seconds). */
     public static final Setting<TimeValue> SHARD_MEMORY_INTERVAL_TIME_SETTING = Setting.positiveTimeSetting("indices.memory.interval", TimeValue.timeValueSeconds(5), Property.NodeScope);
 
+    /**
+     * If enabled, the indexing buffer is apportioned across shards by their recent indexing rate, and shards that use more than their
+     * share are written to disk before the whole budget is exhausted (default: false).
+     */
+    public static final Setting<Boolean> RATE_AWARE_SETTING = Setting.boolSetting("indices.memory.rate_aware", false, Property.NodeScope);
+
+    /** With {@link #RATE_AWARE_SETTING} enabled we start writing shards that exceed their share once this fraction of the budget is used */
+    static final double PROACTIVE_WRITE_RATIO = 0.9;
+
+    /** Weight of the latest observed indexing rate in a shard's moving average indexing rate */
+    static final double RATE_ALPHA = 0.3;
+
     private final ThreadPool threadPool;
 
     private final Iterable<IndexShard> indexShards;
@@ -82,6 +98,10 @@ public class IndexingMemoryController extends AbstractComponent implements Index
 
     private final TimeValue inactiveTime;
     private final TimeValue interval;
+    private final boolean rateAware;
+
+    /** Recent indexing rate of each available shard, only maintained if {@link #RATE_AWARE_SETTING} is enabled */
+    private final Map<IndexShard, ShardIndexingRate> indexingRates = new HashMap<>();
 
     /** Contains shards currently being throttled because we can't write segments quickly enough */
     private final Set<IndexShard> throttled = new HashSet<>();
@@ -117,13 +137,15 @@ public class IndexingMemoryController extends AbstractComponent implements Index
         this.inactiveTime = SHARD_INACTIVE_TIME_SETTING.get(this.settings);
         // we need to have this relatively small to free up heap quickly enough
         this.interval = SHARD_MEMORY_INTERVAL_TIME_SETTING.get(this.settings);
+        this.rateAware = RATE_AWARE_SETTING.get(this.settings);
 
         this.statusChecker = new ShardsIndicesStatusChecker();
 
-        logger.debug("using indexing buffer size [{}] with {} [{}], {} [{}]",
+        logger.debug("using indexing buffer size [{}] with {} [{}], {} [{}], {} [{}]",
                      this.indexingBuffer,
                      SHARD_INACTIVE_TIME_SETTING.getKey(), this.inactiveTime,
-                     SHARD_MEMORY_INTERVAL_TIME_SETTING.getKey(), this.interval);
+                     SHARD_MEMORY_INTERVAL_TIME_SETTING.getKey(), this.interval,
+                     RATE_AWARE_SETTING.getKey(), this.rateAware);
         this.scheduler = scheduleTask(threadPool);
 
         // Need to save this so we can later launch async "write indexing buffer to disk" on shards:
@@ -169,6 +191,21 @@ public class IndexingMemoryController extends AbstractComponent implements Index
         return shard.getWritingBytes();
     }
 
+    /** returns the estimated number of bytes this shard indexed so far */
+    protected long getShardIndexedBytes(IndexShard shard) {
+        return shard.getIndexedBytes();
+    }
+
+    /** tells this shard which share of the indexing buffer it was apportioned */
+    protected void setIndexBufferShare(IndexShard shard, long shareInBytes) {
+        shard.setIndexBufferShare(shareInBytes);
+    }
+
+    /** returns the current relative time in nanoseconds, used to compute indexing rates */
+    protected long currentTimeInNanos() {
+        return System.nanoTime();
+    }
+
     /** ask this shard to refresh, in the background, to free up heap */
     protected void writeIndexingBufferAsync(IndexShard shard) {
         threadPool.executor(ThreadPool.Names.REFRESH).execute(new AbstractRunnable() {
@@ -218,17 +255,74 @@ public class IndexingMemoryController extends AbstractComponent implements Index
 
     private static final class ShardAndBytesUsed implements Comparable<ShardAndBytesUsed> {
         final long bytesUsed;
+        /** how far this shard exceeds its share of the budget, or just its bytes used if we don't apportion by indexing rate */
+        final long bytesOverShare;
         final IndexShard shard;
 
-        public ShardAndBytesUsed(long bytesUsed, IndexShard shard) {
+        public ShardAndBytesUsed(long bytesUsed, long bytesOverShare, IndexShard shard) {
             this.bytesUsed = bytesUsed;
+            this.bytesOverShare = bytesOverShare;
             this.shard = shard;
         }
 
         @Override
         public int compareTo(ShardAndBytesUsed other) {
-            // Sort larger shards first:
-            return Long.compare(other.bytesUsed, bytesUsed);
+            // Sort shards that exceed their share the most first:
+            return Long.compare(other.bytesOverShare, bytesOverShare);
+        }
+    }
+
+    /** Tracks the moving average of the bytes per second a shard indexed between two checks */
+    private static final class ShardIndexingRate {
+        final ExponentiallyWeightedMovingAverage bytesPerSecond = new ExponentiallyWeightedMovingAverage(RATE_ALPHA, 0);
+        long lastIndexedBytes;
+        long lastTimeInNanos;
+        long shareInBytes;
+
+        ShardIndexingRate(long indexedBytes, long timeInNanos) {
+            this.lastIndexedBytes = indexedBytes;
+            this.lastTimeInNanos = timeInNanos;
+        }
+
+        void update(long indexedBytes, long timeInNanos) {
+            final long elapsedNanos = timeInNanos - lastTimeInNanos;
+            if (elapsedNanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+                // checks triggered by indexing can run back to back, wait for a meaningful interval
+                return;
+            }
+            final long bytes = Math.max(0, indexedBytes - lastIndexedBytes);
+            bytesPerSecond.addValue(bytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+            lastIndexedBytes = indexedBytes;
+            lastTimeInNanos = timeInNanos;
+        }
+    }
+
+    /**
+     * Recomputes the indexing rate of all given shards and apportions the indexing buffer by these rates. Shards that did not index
+     * anything recently get no share, if no shard indexed anything recently the buffer is split evenly.
+     */
+    private void apportionIndexingBuffer(List<IndexShard> shards) {
+        final long now = currentTimeInNanos();
+        indexingRates.keySet().retainAll(shards);
+        double totalRate = 0;
+        for (IndexShard shard : shards) {
+            final long indexedBytes = getShardIndexedBytes(shard);
+            ShardIndexingRate rate = indexingRates.get(shard);
+            if (rate == null) {
+                indexingRates.put(shard, new ShardIndexingRate(indexedBytes, now));
+            } else {
+                rate.update(indexedBytes, now);
+                totalRate += rate.bytesPerSecond.getAverage();
+            }
+        }
+        for (IndexShard shard : shards) {
+            final ShardIndexingRate rate = indexingRates.get(shard);
+            if (totalRate > 0) {
+                rate.shareInBytes = (long) (indexingBuffer.getBytes() * (rate.bytesPerSecond.getAverage() / totalRate));
+            } else {
+                rate.shareInBytes = indexingBuffer.getBytes() / shards.size();
+            }
+            setIndexBufferShare(shard, rate.shareInBytes);
         }
     }
 
@@ -287,7 +381,11 @@ public class IndexingMemoryController extends AbstractComponent implements Index
             // to disk:
             long totalBytesUsed = 0;
             long totalBytesWriting = 0;
-            for (IndexShard shard : availableShards()) {
+            final List<IndexShard> availableShards = availableShards();
+            if (rateAware) {
+                apportionIndexingBuffer(availableShards);
+            }
+            for (IndexShard shard : availableShards) {
 
                 // Give shard a chance to transition to inactive so sync'd flush can happen:
                 checkIdle(shard, inactiveTime.nanos());
@@ -319,11 +417,16 @@ public class IndexingMemoryController extends AbstractComponent implements Index
             // throttle the top shards to send back-pressure to ongoing indexing:
             boolean doThrottle = (totalBytesWriting + totalBytesUsed) > 1.5 * indexingBuffer.getBytes();
 
-            if (totalBytesUsed > indexingBuffer.getBytes()) {
-                // OK we are now over-budget; fill the priority queue and ask largest shard(s) to refresh:
+            // When apportioning by indexing rate we write the shards that exceed their share before the whole budget is used up, so that
+            // hot shards keep a large buffer and don't need to be throttled:
+            final long writeThreshold = rateAware ? (long) (PROACTIVE_WRITE_RATIO * indexingBuffer.getBytes()) : indexingBuffer.getBytes();
+
+            if (totalBytesUsed > writeThreshold) {
+                // OK we are now over-budget; fill the priority queue and ask largest shard(s), or those that exceed their share of the
+                // budget the most, to refresh:
                 PriorityQueue<ShardAndBytesUsed> queue = new PriorityQueue<>();
 
-                for (IndexShard shard : availableShards()) {
+                for (IndexShard shard : availableShards) {
                     // How many bytes this shard is currently (async'd) moving from heap to disk:
                     long shardWritingBytes = getShardWritingBytes(shard);
 
@@ -347,14 +450,24 @@ public class IndexingMemoryController extends AbstractComponent implements Index
                                 logger.trace("shard [{}] is using [{}] heap, not writing any bytes", shard.shardId(), shardBytesUsed);
                             }
                         }
-                        queue.add(new ShardAndBytesUsed(shardBytesUsed, shard));
+                        final long bytesOverShare;
+                        if (rateAware) {
+                            bytesOverShare = shardBytesUsed - indexingRates.get(shard).shareInBytes;
+                            if (bytesOverShare <= 0) {
+                                // this shard is within its share, let it keep buffering
+                                continue;
+                            }
+                        } else {
+                            bytesOverShare = shardBytesUsed;
+                        }
+                        queue.add(new ShardAndBytesUsed(shardBytesUsed, bytesOverShare, shard));
                     }
                 }
 
                 logger.debug("now write some indexing buffers: total indexing heap bytes used [{}] vs {} [{}], currently writing bytes [{}], [{}] shards with non-zero indexing buffer",
                              new ByteSizeValue(totalBytesUsed), INDEX_BUFFER_SIZE_SETTING.getKey(), indexingBuffer, new ByteSizeValue(totalBytesWriting), queue.size());
 
-                while (totalBytesUsed > indexingBuffer.getBytes() && queue.isEmpty() == false) {
+                while (totalBytesUsed > writeThreshold && queue.isEmpty() == false) {
                     ShardAndBytesUsed largest = queue.poll();
                     logger.debug("write indexing buffer to disk for shard [{}] to free up its [{}] indexing buffer", largest.shard.shardId(), new ByteSizeValue(largest.bytesUsed));
                     writeIndexingBufferAsync(largest.shard);
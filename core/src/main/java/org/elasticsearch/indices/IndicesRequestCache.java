@@ -55,8 +55,9 @@ import java.util.function.Supplier;
  * eviction to evict old reader associated cache entries as well as scheduler reaper to clean readers that
  * are no longer used or closed shards.
  * <p>
- * Currently, the cache is only enabled for count requests, and can only be opted in on an index
- * level setting that can be dynamically changed and defaults to false.
+ * By default, the cache is only enabled for requests that don't return hits. The query and fetch results of requests
+ * with hits can be opted in on an index level setting that can be dynamically changed and defaults to false, they are held
+ * in a dedicated instance of this cache with its own size limit.
  * <p>
  * There are still several TODOs left in this class, some easily addressable, some more complex, but the support
  * is functional.
@@ -74,6 +75,17 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
         Setting.memorySizeSetting("indices.requests.cache.size", "1%", Property.NodeScope);
     public static final Setting<TimeValue> INDICES_CACHE_QUERY_EXPIRE =
         Setting.positiveTimeSetting("indices.requests.cache.expire", new TimeValue(0), Property.NodeScope);
+    /**
+     * A setting to enable the caching of the query and fetch results of requests with hits, ie. <code>size &gt; 0</code>,
+     * on an index level. These results are held in a dedicated cache so that large hits don't evict the aggregation and
+     * count results of the request cache.
+     */
+    public static final Setting<Boolean> INDEX_CACHE_REQUEST_HITS_ENABLED_SETTING =
+        Setting.boolSetting("index.requests.cache.hits.enable", false, Property.Dynamic, Property.IndexScope);
+    public static final Setting<ByteSizeValue> INDICES_CACHE_HITS_SIZE =
+        Setting.memorySizeSetting("indices.requests.cache.hits.size", "1%", Property.NodeScope);
+    public static final Setting<TimeValue> INDICES_CACHE_HITS_EXPIRE =
+        Setting.positiveTimeSetting("indices.requests.cache.hits.expire", new TimeValue(0), Property.NodeScope);
 
     private final ConcurrentMap<CleanupKey, Boolean> registeredClosedListeners = ConcurrentCollections.newConcurrentMap();
     private final Set<CleanupKey> keysToClean = ConcurrentCollections.newConcurrentSet();
@@ -82,9 +94,13 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
     private final Cache<Key, BytesReference> cache;
 
     IndicesRequestCache(Settings settings) {
+        this(settings, INDICES_CACHE_QUERY_SIZE, INDICES_CACHE_QUERY_EXPIRE);
+    }
+
+    IndicesRequestCache(Settings settings, Setting<ByteSizeValue> sizeSetting, Setting<TimeValue> expireSetting) {
         super(settings);
-        this.size = INDICES_CACHE_QUERY_SIZE.get(settings);
-        this.expire = INDICES_CACHE_QUERY_EXPIRE.exists(settings) ? INDICES_CACHE_QUERY_EXPIRE.get(settings) : null;
+        this.size = sizeSetting.get(settings);
+        this.expire = expireSetting.exists(settings) ? expireSetting.get(settings) : null;
         long sizeInBytes = size.getBytes();
         CacheBuilder<Key, BytesReference> cacheBuilder = CacheBuilder.<Key, BytesReference>builder()
             .setMaximumWeight(sizeInBytes).weigher((k, v) -> k.ramBytesUsed() + v.ramBytesUsed()).removalListener(this);
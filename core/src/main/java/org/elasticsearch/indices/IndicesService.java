@@ -109,6 +109,7 @@ import org.elasticsearch.indices.recovery.RecoveryState;
 import org.elasticsearch.plugins.PluginsService;
 import org.elasticsearch.repositories.RepositoriesService;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.fetch.FetchPhase;
 import org.elasticsearch.search.internal.AliasFilter;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.ShardSearchRequest;
@@ -173,6 +174,7 @@ public class IndicesService extends AbstractLifecycleComponent
     private final IndexingMemoryController indexingMemoryController;
     private final TimeValue cleanInterval;
     private final IndicesRequestCache indicesRequestCache;
+    private final IndicesRequestCache indicesHitsRequestCache;
     private final IndicesQueryCache indicesQueryCache;
     private final MetaStateService metaStateService;
 
@@ -198,6 +200,8 @@ public class IndicesService extends AbstractLifecycleComponent
         this.indicesQueriesRegistry = indicesQueriesRegistry;
         this.indexNameExpressionResolver = indexNameExpressionResolver;
         this.indicesRequestCache = new IndicesRequestCache(settings);
+        this.indicesHitsRequestCache = new IndicesRequestCache(settings, IndicesRequestCache.INDICES_CACHE_HITS_SIZE,
+            IndicesRequestCache.INDICES_CACHE_HITS_EXPIRE);
         this.indicesQueryCache = new IndicesQueryCache(settings);
         this.mapperRegistry = mapperRegistry;
         this.namedWriteableRegistry = namedWriteableRegistry;
@@ -218,7 +222,8 @@ public class IndicesService extends AbstractLifecycleComponent
             }
         });
         this.cleanInterval = INDICES_CACHE_CLEAN_INTERVAL_SETTING.get(settings);
-        this.cacheCleaner = new CacheCleaner(indicesFieldDataCache, indicesRequestCache,  logger, threadPool, this.cleanInterval);
+        this.cacheCleaner = new CacheCleaner(indicesFieldDataCache, indicesRequestCache, indicesHitsRequestCache, logger, threadPool,
+            this.cleanInterval);
         this.metaStateService = metaStateService;
     }
 
@@ -253,7 +258,8 @@ public class IndicesService extends AbstractLifecycleComponent
 
     @Override
     protected void doClose() {
-        IOUtils.closeWhileHandlingException(analysisRegistry, indexingMemoryController, indicesFieldDataCache, cacheCleaner, indicesRequestCache, indicesQueryCache);
+        IOUtils.closeWhileHandlingException(analysisRegistry, indexingMemoryController, indicesFieldDataCache, cacheCleaner, indicesRequestCache,
+            indicesHitsRequestCache, indicesQueryCache);
     }
 
     /**
@@ -604,7 +610,8 @@ public class IndicesService extends AbstractLifecycleComponent
             if (indexShard != null) {
                 getStats.addTotals(indexShard.getStats());
                 indexingStats.addTotals(indexShard.indexingStats());
-                searchStats.addTotals(indexShard.searchStats());
+                // the latency histograms are windowed, the ones of closed shards would never expire
+                searchStats.getTotal().add(indexShard.searchStats().getTotal());
                 mergeStats.addTotals(indexShard.mergeStats());
                 refreshStats.addTotals(indexShard.refreshStats());
                 flushStats.addTotals(indexShard.flushStats());
@@ -1079,10 +1086,13 @@ public class IndicesService extends AbstractLifecycleComponent
         private final TimeValue interval;
         private final AtomicBoolean closed = new AtomicBoolean(false);
         private final IndicesRequestCache requestCache;
+        private final IndicesRequestCache hitsRequestCache;
 
-        public CacheCleaner(IndicesFieldDataCache cache, IndicesRequestCache requestCache, Logger logger, ThreadPool threadPool, TimeValue interval) {
+        public CacheCleaner(IndicesFieldDataCache cache, IndicesRequestCache requestCache, IndicesRequestCache hitsRequestCache,
+                            Logger logger, ThreadPool threadPool, TimeValue interval) {
             this.cache = cache;
             this.requestCache = requestCache;
+            this.hitsRequestCache = hitsRequestCache;
             this.logger = logger;
             this.threadPool = threadPool;
             this.interval = interval;
@@ -1105,6 +1115,7 @@ public class IndicesService extends AbstractLifecycleComponent
 
             try {
                 this.requestCache.cleanCache();
+                this.hitsRequestCache.cleanCache();
             } catch (Exception e) {
                 logger.warn("Exception during periodic request cache cleanup:", e);
             }
@@ -1140,14 +1151,19 @@ public class IndicesService extends AbstractLifecycleComponent
         if (request.requestCache() == null) {
             if (settings.getValue(IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING) == false) {
                 return false;
-            } else if (context.size() != 0) {
+            } else if (context.size() != 0 && settings.getValue(IndicesRequestCache.INDEX_CACHE_REQUEST_HITS_ENABLED_SETTING) == false) {
                 // If no request cache query parameter and shard request cache
                 // is enabled in settings don't cache for requests with size > 0
+                // unless the hits cache is enabled as well
                 return false;
             }
         } else if (request.requestCache() == false) {
             return false;
         }
+        // the state of a scroll is kept in the search context, it can't be restored from a cached result
+        if (request.scroll() != null) {
+            return false;
+        }
         // if the reader is not a directory reader, we can't get the version from it
         if ((context.searcher().getIndexReader() instanceof DirectoryReader) == false) {
             return false;
@@ -1165,7 +1181,8 @@ public class IndicesService extends AbstractLifecycleComponent
         if (shard == null) {
             return;
         }
-        indicesRequestCache.clear(new IndexShardCacheEntity(shard));
+        indicesRequestCache.clear(new IndexShardCacheEntity(shard, false));
+        indicesHitsRequestCache.clear(new IndexShardCacheEntity(shard, true));
         logger.trace("{} explicit cache clear", shard.shardId());
     }
 
@@ -1180,7 +1197,8 @@ public class IndicesService extends AbstractLifecycleComponent
         final DirectoryReader directoryReader = context.searcher().getDirectoryReader();
 
         boolean[] loadedFromCache = new boolean[] { true };
-        BytesReference bytesReference = cacheShardLevelResult(context.indexShard(), directoryReader, request.cacheKey(), out -> {
+        final boolean hitsCache = useHitsCache(context);
+        BytesReference bytesReference = cacheShardLevelResult(context.indexShard(), hitsCache, directoryReader, request.cacheKey(), out -> {
             queryPhase.execute(context);
             try {
                 context.queryResult().writeToNoId(out);
@@ -1198,6 +1216,68 @@ public class IndicesService extends AbstractLifecycleComponent
         }
     }
 
+    /**
+     * Returns <code>true</code> iff the query and fetch results of the given request are held in the hits cache, that is if
+     * the request returns hits and the index opted in caching them.
+     */
+    private static boolean useHitsCache(SearchContext context) {
+        return context.size() != 0
+            && context.indexShard().indexSettings().getValue(IndicesRequestCache.INDEX_CACHE_REQUEST_HITS_ENABLED_SETTING);
+    }
+
+    /**
+     * Can the fetch results of the shard request be cached? This is the case if the query results were cached in the hits cache.
+     */
+    public boolean canCacheFetch(ShardSearchRequest request, SearchContext context) {
+        return useHitsCache(context) && canCache(request, context);
+    }
+
+    /**
+     * Loads the hits of the {@link SearchContext#docIdsToLoad() docs to load} from the hits cache into the
+     * {@link SearchContext#fetchResult() context's fetch result}, executing the fetch phase if they are not cached yet. The docs
+     * to load are part of the cache key, they are stable since the cache key also holds the version of the reader.
+     */
+    public void loadFetchIntoContext(ShardSearchRequest request, SearchContext context, FetchPhase fetchPhase) throws Exception {
+        assert canCacheFetch(request, context);
+        final DirectoryReader directoryReader = context.searcher().getDirectoryReader();
+        final BytesReference cacheKey;
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.writeString("fetch");
+            out.writeBytesReference(request.cacheKey());
+            out.writeVInt(context.docIdsToLoadSize());
+            for (int i = 0; i < context.docIdsToLoadSize(); i++) {
+                out.writeVInt(context.docIdsToLoad()[context.docIdsToLoadFrom() + i]);
+            }
+            cacheKey = out.bytes();
+        }
+
+        boolean[] loadedFromCache = new boolean[] { true };
+        BytesReference bytesReference = cacheShardLevelResult(context.indexShard(), true, directoryReader, cacheKey, out -> {
+            fetchPhase.execute(context);
+            try {
+                // streamed hits are cached as they are rather than read back into objects
+                final BytesReference serializedHits = context.fetchResult().serializedHits();
+                if (serializedHits != null) {
+                    serializedHits.writeTo(out);
+                } else {
+                    context.fetchResult().hits().writeTo(out);
+                }
+            } catch (IOException e) {
+                throw new AssertionError("Could not serialize response", e);
+            }
+            loadedFromCache[0] = false;
+        });
+        if (loadedFromCache[0]) {
+            // the cached hits are only read if they are returned to the local node or to a node on a different version,
+            // they stay accounted in the request breaker like fetched hits until the result has been sent
+            final CircuitBreaker breaker = circuitBreakerService.getBreaker(CircuitBreaker.REQUEST);
+            final long bytes = bytesReference.length();
+            breaker.addEstimateBytesAndMaybeBreak(bytes, "<fetch>");
+            context.fetchResult().serializedHits(bytesReference);
+            context.fetchResult().addReleasable(() -> breaker.addWithoutBreaking(-bytes));
+        }
+    }
+
     /**
      * Fetch {@linkplain FieldStats} for a field. These stats are cached until the shard changes.
      * @param shard the shard to use with the cache key
@@ -1214,7 +1294,7 @@ public class IndicesService extends AbstractLifecycleComponent
             return fieldType.stats(searcher.reader());
         }
         BytesReference cacheKey = new BytesArray("fieldstats:" + field);
-        BytesReference statsRef = cacheShardLevelResult(shard, searcher.getDirectoryReader(), cacheKey, out -> {
+        BytesReference statsRef = cacheShardLevelResult(shard, false, searcher.getDirectoryReader(), cacheKey, out -> {
             try {
                 out.writeOptionalWriteable(fieldType.stats(searcher.reader()));
             } catch (IOException e) {
@@ -1233,14 +1313,15 @@ public class IndicesService extends AbstractLifecycleComponent
     /**
      * Cache something calculated at the shard level.
      * @param shard the shard this item is part of
+     * @param hitsCache whether the item is cached in the hits cache rather than in the request cache
      * @param reader a reader for this shard. Used to invalidate the cache when there are changes.
      * @param cacheKey key for the thing being cached within this shard
      * @param loader loads the data into the cache if needed
      * @return the contents of the cache or the result of calling the loader
      */
-    private BytesReference cacheShardLevelResult(IndexShard shard, DirectoryReader reader, BytesReference cacheKey, Consumer<StreamOutput> loader)
-            throws Exception {
-        IndexShardCacheEntity cacheEntity = new IndexShardCacheEntity(shard);
+    private BytesReference cacheShardLevelResult(IndexShard shard, boolean hitsCache, DirectoryReader reader, BytesReference cacheKey,
+                                                 Consumer<StreamOutput> loader) throws Exception {
+        IndexShardCacheEntity cacheEntity = new IndexShardCacheEntity(shard, hitsCache);
         Supplier<BytesReference> supplier = () -> {
             /* BytesStreamOutput allows to pass the expected size but by default uses
              * BigArrays.PAGE_SIZE_IN_BYTES which is 16k. A common cached result ie.
@@ -1257,20 +1338,23 @@ public class IndicesService extends AbstractLifecycleComponent
                 return out.bytes();
             }
         };
-        return indicesRequestCache.getOrCompute(cacheEntity, supplier, reader, cacheKey);
+        final IndicesRequestCache cache = hitsCache ? indicesHitsRequestCache : indicesRequestCache;
+        return cache.getOrCompute(cacheEntity, supplier, reader, cacheKey);
     }
 
     static final class IndexShardCacheEntity extends AbstractIndexShardCacheEntity {
         private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(IndexShardCacheEntity.class);
         private final IndexShard indexShard;
+        private final boolean hitsCache;
 
-        protected IndexShardCacheEntity(IndexShard indexShard) {
+        protected IndexShardCacheEntity(IndexShard indexShard, boolean hitsCache) {
             this.indexShard = indexShard;
+            this.hitsCache = hitsCache;
         }
 
         @Override
         protected ShardRequestCache stats() {
-            return indexShard.requestCache();
+            return hitsCache ? indexShard.hitsRequestCache() : indexShard.requestCache();
         }
 
         @Override
@@ -323,6 +323,7 @@ public class RecoveryState implements ToXContent, Streamable {
         static final String INDEX = "index";
         static final String TRANSLOG = "translog";
         static final String TOTAL_ON_START = "total_on_start";
+        static final String OPERATIONS_PER_SECOND = "operations_per_second";
         static final String VERIFY_INDEX = "verify_index";
         static final String RECOVERED = "recovered";
         static final String RECOVERED_IN_BYTES = "recovered_in_bytes";
@@ -520,6 +521,18 @@ public class RecoveryState implements ToXContent, Streamable {
             return recovered * 100.0f / total;
         }
 
+        /**
+         * returns the number of translog operations recovered per second since the translog recovery started, or 0 if it hasn't
+         * started yet.
+         */
+        public synchronized double recoveredOperationsPerSecond() {
+            final long time = time();
+            if (time == 0) {
+                return 0;
+            }
+            return recovered * 1000.0 / time;
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             super.readFrom(in);
@@ -542,6 +555,7 @@ public class RecoveryState implements ToXContent, Streamable {
             builder.field(Fields.TOTAL, total);
             builder.field(Fields.PERCENT, String.format(Locale.ROOT, "%1.1f%%", recoveredPercent()));
             builder.field(Fields.TOTAL_ON_START, totalOnStart);
+            builder.field(Fields.OPERATIONS_PER_SECOND, recoveredOperationsPerSecond());
             builder.timeValueField(Fields.TOTAL_TIME_IN_MILLIS, Fields.TOTAL_TIME, time());
             return builder;
         }
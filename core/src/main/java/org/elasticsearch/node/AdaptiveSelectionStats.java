@@ -0,0 +1,127 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.node;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class representing statistics about adaptive replica selection. This includes the number of outgoing search requests of
+ * this node to other nodes, and the {@link ResponseCollectorService.ComputedNodeStats} of those nodes.
+ */
+public class AdaptiveSelectionStats implements Writeable, ToXContent {
+
+    private final Map<String, Long> clientOutgoingConnections;
+    private final Map<String, ResponseCollectorService.ComputedNodeStats> nodeComputedStats;
+
+    public AdaptiveSelectionStats(Map<String, Long> clientConnections,
+                                  Map<String, ResponseCollectorService.ComputedNodeStats> nodeComputedStats) {
+        this.clientOutgoingConnections = clientConnections;
+        this.nodeComputedStats = nodeComputedStats;
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public AdaptiveSelectionStats(StreamInput in) throws IOException {
+        int size = in.readVInt();
+        this.clientOutgoingConnections = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            clientOutgoingConnections.put(in.readString(), in.readVLong());
+        }
+        size = in.readVInt();
+        this.nodeComputedStats = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            nodeComputedStats.put(in.readString(), new ResponseCollectorService.ComputedNodeStats(in));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(clientOutgoingConnections.size());
+        for (Map.Entry<String, Long> entry : clientOutgoingConnections.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeVLong(entry.getValue());
+        }
+        out.writeVInt(nodeComputedStats.size());
+        for (Map.Entry<String, ResponseCollectorService.ComputedNodeStats> entry : nodeComputedStats.entrySet()) {
+            out.writeString(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    /**
+     * @return the number of outstanding search requests of this node, per target node
+     */
+    public Map<String, Long> getOutgoingConnections() {
+        return clientOutgoingConnections;
+    }
+
+    /**
+     * @return the statistics collected from the responses of other nodes, per node
+     */
+    public Map<String, ResponseCollectorService.ComputedNodeStats> getComputedStats() {
+        return nodeComputedStats;
+    }
+
+    /**
+     * @return the rank of each node, a lower rank is better
+     */
+    public Map<String, Double> getRanks() {
+        Map<String, Double> ranks = new HashMap<>(nodeComputedStats.size());
+        for (Map.Entry<String, ResponseCollectorService.ComputedNodeStats> entry : nodeComputedStats.entrySet()) {
+            ranks.put(entry.getKey(), entry.getValue().rank(clientOutgoingConnections.getOrDefault(entry.getKey(), 0L)));
+        }
+        return ranks;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("adaptive_selection");
+        Set<String> allNodeIds = new HashSet<>(clientOutgoingConnections.keySet());
+        allNodeIds.addAll(nodeComputedStats.keySet());
+        for (String nodeId : allNodeIds) {
+            builder.startObject(nodeId);
+            long outgoing = clientOutgoingConnections.getOrDefault(nodeId, 0L);
+            builder.field("outgoing_searches", outgoing);
+            ResponseCollectorService.ComputedNodeStats stats = nodeComputedStats.get(nodeId);
+            if (stats != null) {
+                builder.field("avg_queue_size", stats.queueSize);
+                builder.timeValueField("avg_service_time_ns", "avg_service_time", (long) stats.serviceTime, TimeUnit.NANOSECONDS);
+                builder.timeValueField("avg_response_time_ns", "avg_response_time", (long) stats.responseTime, TimeUnit.NANOSECONDS);
+                builder.field("rank", String.format(Locale.ROOT, "%.1f", stats.rank(outgoing)));
+            }
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.node;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.metrics.ExponentiallyWeightedMovingAverage;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects statistics about the responses of other nodes to the search requests of this node. The statistics are used to rank
+ * nodes for adaptive replica selection, based on the ranking function of the C3 paper: nodes with a low response time, a low
+ * service time and a small search queue are preferred.
+ */
+public final class ResponseCollectorService extends AbstractComponent implements ClusterStateListener {
+
+    /**
+     * The weight parameter used for all moving averages of node statistics.
+     */
+    private static final double ALPHA = 0.3;
+
+    private final ConcurrentMap<String, NodeStatistics> nodeIdToStats = ConcurrentCollections.newConcurrentMap();
+    private final ConcurrentMap<String, AtomicLong> nodeIdToOutstandingRequests = ConcurrentCollections.newConcurrentMap();
+
+    public ResponseCollectorService(Settings settings) {
+        super(settings);
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        if (event.nodesRemoved()) {
+            for (DiscoveryNode removedNode : event.nodesDelta().removedNodes()) {
+                removeNode(removedNode.getId());
+            }
+        }
+    }
+
+    void removeNode(String nodeId) {
+        nodeIdToStats.remove(nodeId);
+        nodeIdToOutstandingRequests.remove(nodeId);
+    }
+
+    /**
+     * Records the statistics piggybacked on a search response of the given node.
+     *
+     * @param nodeId the node that executed the request
+     * @param queueSize the size of the search queue on that node
+     * @param responseTimeNanos the round-trip time of the request as seen from this node
+     * @param avgServiceTimeNanos the moving average of the execution time of requests on that node
+     */
+    public void addNodeStatistics(String nodeId, int queueSize, long responseTimeNanos, long avgServiceTimeNanos) {
+        nodeIdToStats.compute(nodeId, (id, ns) -> {
+            if (ns == null) {
+                return new NodeStatistics(nodeId, queueSize, responseTimeNanos, avgServiceTimeNanos);
+            }
+            ns.queueSize.addValue(queueSize);
+            ns.responseTime.addValue(responseTimeNanos);
+            ns.serviceTime = avgServiceTimeNanos;
+            return ns;
+        });
+    }
+
+    /**
+     * Must be called whenever a search request is sent to the given node, followed by a call to {@link #onRequestDone(String)}
+     * once the node responded or the request failed.
+     */
+    public void onRequestSent(String nodeId) {
+        nodeIdToOutstandingRequests.computeIfAbsent(nodeId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    public void onRequestDone(String nodeId) {
+        AtomicLong outstanding = nodeIdToOutstandingRequests.get(nodeId);
+        if (outstanding != null) {
+            outstanding.updateAndGet(count -> Math.max(0, count - 1));
+        }
+    }
+
+    /**
+     * Returns the number of search requests sent to the given node that didn't get a response yet.
+     */
+    public long getOutstandingRequests(String nodeId) {
+        AtomicLong outstanding = nodeIdToOutstandingRequests.get(nodeId);
+        return outstanding == null ? 0 : outstanding.get();
+    }
+
+    public Map<String, ComputedNodeStats> getAllNodeStatistics(int clientNum) {
+        Map<String, ComputedNodeStats> nodeStats = new HashMap<>(nodeIdToStats.size());
+        for (String nodeId : nodeIdToStats.keySet()) {
+            getNodeStatistics(nodeId, clientNum).ifPresent(stats -> nodeStats.put(nodeId, stats));
+        }
+        return nodeStats;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the given node, or an empty optional if no response of that node was seen yet.
+     *
+     * @param clientNum the number of nodes that might send search requests to the given node
+     */
+    public Optional<ComputedNodeStats> getNodeStatistics(String nodeId, int clientNum) {
+        NodeStatistics stats = nodeIdToStats.get(nodeId);
+        if (stats == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new ComputedNodeStats(clientNum, stats));
+    }
+
+    public AdaptiveSelectionStats getAdaptiveStats(int clientNum) {
+        Map<String, Long> outstandingRequests = new HashMap<>(nodeIdToOutstandingRequests.size());
+        for (Map.Entry<String, AtomicLong> entry : nodeIdToOutstandingRequests.entrySet()) {
+            outstandingRequests.put(entry.getKey(), entry.getValue().get());
+        }
+        return new AdaptiveSelectionStats(outstandingRequests, getAllNodeStatistics(clientNum));
+    }
+
+    /**
+     * Point-in-time statistics of a node, used to rank nodes against each other.
+     */
+    public static class ComputedNodeStats implements Writeable {
+        // We store timestamps with nanosecond precision, however, the formula specifies milliseconds, therefore we need to convert
+        // the values so the times don't unduly weight the formula
+        private static final double FACTOR = 1000000.0;
+        private static final int QUEUE_ADJUSTMENT_FACTOR = 3;
+
+        public final String nodeId;
+        public final int clientNum;
+        public final int queueSize;
+        public final double responseTime;
+        public final double serviceTime;
+
+        public ComputedNodeStats(String nodeId, int clientNum, int queueSize, double responseTime, double serviceTime) {
+            this.nodeId = nodeId;
+            this.clientNum = clientNum;
+            this.queueSize = queueSize;
+            this.responseTime = responseTime;
+            this.serviceTime = serviceTime;
+        }
+
+        ComputedNodeStats(int clientNum, NodeStatistics nodeStats) {
+            this(nodeStats.nodeId, clientNum, (int) Math.round(nodeStats.queueSize.getAverage()), nodeStats.responseTime.getAverage(),
+                nodeStats.serviceTime);
+        }
+
+        ComputedNodeStats(StreamInput in) throws IOException {
+            this.nodeId = in.readString();
+            this.clientNum = in.readInt();
+            this.queueSize = in.readInt();
+            this.responseTime = in.readDouble();
+            this.serviceTime = in.readDouble();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(this.nodeId);
+            out.writeInt(this.clientNum);
+            out.writeInt(this.queueSize);
+            out.writeDouble(this.responseTime);
+            out.writeDouble(this.serviceTime);
+        }
+
+        /**
+         * Rank this node, a lower rank is better. The rank combines the response time R, the service time S and the estimated
+         * queue size q of the node as {@code R - S + q^3 * S}, where q also accounts for the requests that all clients are
+         * expected to have outstanding against the node.
+         *
+         * @param outstandingRequests the number of search requests this node has outstanding against the ranked node
+         */
+        public double rank(long outstandingRequests) {
+            if (responseTime == 0.0 || serviceTime == 0.0) {
+                // nothing was measured yet, we prefer the node so that we can collect statistics about it
+                return 0.0;
+            }
+            final double qHatS = 1 + (outstandingRequests * clientNum) + queueSize;
+            final double rS = responseTime / FACTOR;
+            final double muBarS = FACTOR / serviceTime;
+            return (rS - (1.0 / muBarS)) + (Math.pow(qHatS, QUEUE_ADJUSTMENT_FACTOR) / muBarS);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "ComputedNodeStats[%s](nodes: %d, queue: %d, response time: %.1f, service time: %.1f)",
+                nodeId, clientNum, queueSize, responseTime, serviceTime);
+        }
+    }
+
+    /**
+     * Class encapsulating a node's exponentially weighted queue size, response time, and service time, however, this class is
+     * private and intended only to be used for the internal accounting of {@code ResponseCollectorService}.
+     */
+    private static class NodeStatistics {
+        final String nodeId;
+        final ExponentiallyWeightedMovingAverage queueSize;
+        final ExponentiallyWeightedMovingAverage responseTime;
+        volatile double serviceTime;
+
+        NodeStatistics(String nodeId, int queueSizeInitial, long responseTimeInitial, long serviceTimeInitial) {
+            this.nodeId = nodeId;
+            this.queueSize = new ExponentiallyWeightedMovingAverage(ALPHA, queueSizeInitial);
+            this.responseTime = new ExponentiallyWeightedMovingAverage(ALPHA, responseTimeInitial);
+            this.serviceTime = serviceTimeInitial;
+        }
+    }
+}
@@ -26,12 +26,14 @@ import org.elasticsearch.client.node.NodeClient;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.search.stats.SearchLatencyStats;
 import org.elasticsearch.rest.BaseRestHandler;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.action.RestActions.NodesResponseRestListener;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -75,6 +77,8 @@ public class RestNodesStatsAction extends BaseRestHandler {
         metrics.put("script", r -> r.script(true));
         metrics.put("discovery", r -> r.discovery(true));
         metrics.put("ingest", r -> r.ingest(true));
+        metrics.put("adaptive_selection", r -> r.adaptiveSelection(true));
+        metrics.put("indexing_pressure", r -> r.indexingPressure(true));
         METRICS = Collections.unmodifiableMap(metrics);
     }
 
@@ -95,6 +99,8 @@ public class RestNodesStatsAction extends BaseRestHandler {
 
         NodesStatsRequest nodesStatsRequest = new NodesStatsRequest(nodesIds);
         nodesStatsRequest.timeout(request.param("timeout"));
+        // fail early on invalid percentiles rather than while rendering the response
+        SearchLatencyStats.parsePercentiles(request.param(SearchLatencyStats.PERCENTILES_PARAM));
 
         if (metrics.size() == 1 && metrics.contains("_all")) {
             if (request.hasParam("index_metric")) {
@@ -187,7 +193,8 @@ public class RestNodesStatsAction extends BaseRestHandler {
         return channel -> client.admin().cluster().nodesStats(nodesStatsRequest, new NodesResponseRestListener<>(channel));
     }
 
-    private final Set<String> RESPONSE_PARAMS = Collections.singleton("level");
+    private final Set<String> RESPONSE_PARAMS =
+        Collections.unmodifiableSet(new HashSet<>(Arrays.asList("level", SearchLatencyStats.PERCENTILES_PARAM)));
 
     @Override
     protected Set<String> responseParams() {
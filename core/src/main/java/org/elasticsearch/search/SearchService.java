@@ -32,22 +32,29 @@ import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.ParseFieldMatcher;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.metrics.ExponentiallyWeightedMovingAverage;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.concurrent.AbstractRefCounted;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.ConcurrentMapLong;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.query.InnerHitBuilder;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
+import org.elasticsearch.index.query.MatchNoneQueryBuilder;
 import org.elasticsearch.index.query.QueryShardContext;
 import org.elasticsearch.index.shard.IndexEventListener;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.SearchOperationListener;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.script.ScriptContext;
 import org.elasticsearch.script.ScriptService;
@@ -57,6 +64,7 @@ import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.SearchContextAggregations;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.collapse.CollapseContext;
 import org.elasticsearch.search.dfs.DfsPhase;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.fetch.FetchPhase;
@@ -90,12 +98,16 @@ import org.elasticsearch.threadpool.ThreadPool.Cancellable;
 import org.elasticsearch.threadpool.ThreadPool.Names;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.elasticsearch.common.unit.TimeValue.timeValueMillis;
@@ -115,10 +127,23 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
      */
     public static final Setting<Boolean> LOW_LEVEL_CANCELLATION_SETTING =
         Setting.boolSetting("search.low_level_cancellation", false, Property.Dynamic, Property.NodeScope);
+    /**
+     * The amount of heap the doc ids and bucket ordinals recorded by a <code>breadth_first</code> aggregation may use before they are
+     * spilled to a temporary file and replayed from there. <code>-1</code>, the default, keeps everything in memory.
+     */
+    public static final Setting<ByteSizeValue> DEFERRED_COLLECTION_SPILL_THRESHOLD_SETTING =
+        Setting.byteSizeSetting("search.aggs.deferred_collection.spill_threshold", new ByteSizeValue(-1), Property.Dynamic,
+            Property.NodeScope);
 
     public static final TimeValue NO_TIMEOUT = timeValueMillis(-1);
     public static final Setting<TimeValue> DEFAULT_SEARCH_TIMEOUT_SETTING =
         Setting.timeSetting("search.default_search_timeout", NO_TIMEOUT, Property.Dynamic, Property.NodeScope);
+    /**
+     * The window of the latency histograms of the search phases. The histograms reflect the latencies of the current and the
+     * previous window, <code>0</code> keeps all the latencies since the shard or the node started.
+     */
+    public static final Setting<TimeValue> STATS_LATENCY_WINDOW_SETTING =
+        Setting.positiveTimeSetting("search.stats.latency_window", timeValueMinutes(5), Property.NodeScope);
 
 
     private final ThreadPool threadPool;
@@ -143,6 +168,8 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
     private volatile boolean lowLevelCancellation;
 
+    private volatile ByteSizeValue deferredCollectionSpillThreshold;
+
     private final Cancellable keepAliveReaper;
 
     private final AtomicLong idGenerator = new AtomicLong();
@@ -151,6 +178,12 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
     private final ParseFieldMatcher parseFieldMatcher;
 
+    /**
+     * Moving average of the query phase execution time on this node, reported back to the coordinating nodes for
+     * adaptive replica selection.
+     */
+    private final ExponentiallyWeightedMovingAverage queryPhaseServiceTime = new ExponentiallyWeightedMovingAverage(0.3, 0);
+
     public SearchService(ClusterService clusterService, IndicesService indicesService,
                          ThreadPool threadPool, ScriptService scriptService, BigArrays bigArrays, FetchPhase fetchPhase) {
         super(clusterService.getSettings());
@@ -160,7 +193,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         this.indicesService = indicesService;
         this.scriptService = scriptService;
         this.bigArrays = bigArrays;
-        this.queryPhase = new QueryPhase(settings);
+        this.queryPhase = new QueryPhase(settings, threadPool.executor(Names.SEARCH_SLICE));
         this.fetchPhase = fetchPhase;
 
         TimeValue keepAliveInterval = KEEPALIVE_INTERVAL_SETTING.get(settings);
@@ -173,6 +206,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
         lowLevelCancellation = LOW_LEVEL_CANCELLATION_SETTING.get(settings);
         clusterService.getClusterSettings().addSettingsUpdateConsumer(LOW_LEVEL_CANCELLATION_SETTING, this::setLowLevelCancellation);
+
+        deferredCollectionSpillThreshold = DEFERRED_COLLECTION_SPILL_THRESHOLD_SETTING.get(settings);
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(DEFERRED_COLLECTION_SPILL_THRESHOLD_SETTING,
+            this::setDeferredCollectionSpillThreshold);
     }
 
     private void setDefaultSearchTimeout(TimeValue defaultSearchTimeout) {
@@ -183,6 +220,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         this.lowLevelCancellation = lowLevelCancellation;
     }
 
+    private void setDeferredCollectionSpillThreshold(ByteSizeValue deferredCollectionSpillThreshold) {
+        this.deferredCollectionSpillThreshold = deferredCollectionSpillThreshold;
+    }
+
     @Override
     public void afterIndexClosed(Index index, Settings indexSettings) {
         // once an index is closed we can just clean up all the pending search context information
@@ -260,8 +301,24 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         }
     }
 
+    /**
+     * Try to load the fetch results from the cache or execute the fetch phase directly if the cache cannot be used.
+     */
+    private void loadOrExecuteFetchPhase(final ShardSearchRequest request, final SearchContext context) throws Exception {
+        if (indicesService.canCacheFetch(request, context)) {
+            indicesService.loadFetchIntoContext(request, context, fetchPhase);
+        } else {
+            fetchPhase.execute(context);
+        }
+    }
+
     public QuerySearchResultProvider executeQueryPhase(ShardSearchRequest request, SearchTask task) throws IOException {
-        final SearchContext context = createAndPutContext(request);
+        return executeQueryPhase(request, task, null);
+    }
+
+    private QuerySearchResultProvider executeQueryPhase(ShardSearchRequest request, SearchTask task, @Nullable Engine.Searcher searcher)
+        throws IOException {
+        final SearchContext context = createAndPutContext(request, searcher);
         final SearchOperationListener operationListener = context.indexShard().getSearchOperationListener();
         context.incRef();
         try {
@@ -277,9 +334,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             } else {
                 contextProcessedSuccessfully(context);
             }
-            operationListener.onQueryPhase(context, System.nanoTime() - time);
+            final long took = System.nanoTime() - time;
+            operationListener.onQueryPhase(context, took);
 
-            return context.queryResult();
+            return addNodeStatistics(context.queryResult(), took);
         } catch (Exception e) {
             // execution exception can happen while loading the cache, strip it
             if (e instanceof ExecutionException) {
@@ -338,8 +396,9 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             } else {
                 contextProcessedSuccessfully(context);
             }
-            operationListener.onQueryPhase(context, System.nanoTime() - time);
-            return context.queryResult();
+            final long took = System.nanoTime() - time;
+            operationListener.onQueryPhase(context, took);
+            return addNodeStatistics(context.queryResult(), took);
         } catch (Exception e) {
             operationListener.onFailedQueryPhase(context);
             logger.trace("Query phase failed", e);
@@ -350,6 +409,19 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         }
     }
 
+    /**
+     * Piggybacks the size of the search queue and the average query phase execution time of this node on the given result
+     */
+    private QuerySearchResult addNodeStatistics(QuerySearchResult result, long tookInNanos) {
+        queryPhaseServiceTime.addValue(tookInNanos);
+        final ExecutorService executor = threadPool.executor(Names.SEARCH);
+        if (executor instanceof ThreadPoolExecutor) {
+            result.nodeQueueSize(((ThreadPoolExecutor) executor).getQueue().size());
+        }
+        result.serviceTimeEWMA((long) queryPhaseServiceTime.getAverage());
+        return result;
+    }
+
     private boolean fetchPhaseShouldFreeContext(SearchContext context) {
         if (context.scrollContext() == null) {
             // simple search, no scroll
@@ -361,7 +433,12 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
     }
 
     public QueryFetchSearchResult executeFetchPhase(ShardSearchRequest request, SearchTask task) throws IOException {
-        final SearchContext context = createAndPutContext(request);
+        return executeFetchPhase(request, task, null);
+    }
+
+    private QueryFetchSearchResult executeFetchPhase(ShardSearchRequest request, SearchTask task, @Nullable Engine.Searcher searcher)
+        throws IOException {
+        final SearchContext context = createAndPutContext(request, searcher);
         context.incRef();
         try {
             contextProcessing(context);
@@ -380,7 +457,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             operationListener.onPreFetchPhase(context);
             try {
                 shortcutDocIdsToLoad(context);
-                fetchPhase.execute(context);
+                loadOrExecuteFetchPhase(request, context);
                 if (fetchPhaseShouldFreeContext(context)) {
                     freeContext(context.id());
                 } else {
@@ -499,7 +576,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             context.docIdsToLoad(request.docIds(), 0, request.docIdsSize());
             operationListener.onPreFetchPhase(context);
             long time = System.nanoTime();
-            fetchPhase.execute(context);
+            loadOrExecuteFetchPhase(context.request(), context);
             if (fetchPhaseShouldFreeContext(context)) {
                 freeContext(request.id());
             } else {
@@ -525,8 +602,80 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         return context;
     }
 
+    /**
+     * Acquires a searcher of the given shard that several requests can share, see
+     * {@link #executeQueryPhase(ShardSearchRequest, boolean, SearchTask, SharedSearcher)}. Requests that share a searcher see the
+     * same point-in-time view of the shard and share the cost of acquiring it. The searcher must be closed once all requests
+     * have been executed.
+     */
+    public SharedSearcher acquireSharedSearcher(ShardId shardId) {
+        final IndexShard indexShard = indicesService.indexServiceSafe(shardId.getIndex()).getShard(shardId.id());
+        indexShard.awaitShardSearchActive();
+        return new SharedSearcher(indexShard.acquireSearcher("search"));
+    }
+
+    /**
+     * Executes the query phase, or the query and fetch phase if <code>fetch</code> is set, of a request against a searcher
+     * that is shared with other requests on the same shard.
+     */
+    public QuerySearchResultProvider executeQueryPhase(ShardSearchRequest request, boolean fetch, SearchTask task,
+                                                       SharedSearcher sharedSearcher) throws IOException {
+        final Engine.Searcher searcher = sharedSearcher.acquire();
+        try {
+            return fetch ? executeFetchPhase(request, task, searcher) : executeQueryPhase(request, task, searcher);
+        } catch (Exception e) {
+            // the context releases the searcher when it is freed, but it might not have been created at all
+            searcher.close();
+            throw e;
+        }
+    }
+
+    /**
+     * A searcher that is shared by the search contexts of a batch of requests. Every context gets its own view of the searcher
+     * which releases a reference on close, the underlying searcher is closed once all views and the batch itself are released.
+     */
+    public static final class SharedSearcher extends AbstractRefCounted implements Releasable {
+
+        private final Engine.Searcher searcher;
+
+        SharedSearcher(Engine.Searcher searcher) {
+            super("shared_searcher");
+            this.searcher = searcher;
+        }
+
+        Engine.Searcher acquire() {
+            incRef();
+            final AtomicBoolean closed = new AtomicBoolean();
+            return new Engine.Searcher(searcher.source(), searcher.searcher()) {
+                @Override
+                public void close() {
+                    if (closed.compareAndSet(false, true)) {
+                        decRef();
+                    }
+                }
+            };
+        }
+
+        /**
+         * Releases the reference of the batch, the underlying searcher stays open until all search contexts released it.
+         */
+        @Override
+        public void close() {
+            decRef();
+        }
+
+        @Override
+        protected void closeInternal() {
+            searcher.close();
+        }
+    }
+
     final SearchContext createAndPutContext(ShardSearchRequest request) throws IOException {
-        SearchContext context = createContext(request, null);
+        return createAndPutContext(request, null);
+    }
+
+    private SearchContext createAndPutContext(ShardSearchRequest request, @Nullable Engine.Searcher searcher) throws IOException {
+        SearchContext context = createContext(request, searcher);
         boolean success = false;
         try {
             putContext(context);
@@ -572,6 +721,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             }
             context.keepAlive(keepAlive);
             context.lowLevelCancellation(lowLevelCancellation);
+            context.deferredCollectionSpillThreshold(deferredCollectionSpillThreshold.getBytes());
         } catch (Exception e) {
             context.close();
             throw ExceptionsHelper.convertToRuntime(e);
@@ -585,7 +735,13 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         IndexService indexService = indicesService.indexServiceSafe(request.shardId().getIndex());
         IndexShard indexShard = indexService.getShard(request.shardId().getId());
         SearchShardTarget shardTarget = new SearchShardTarget(clusterService.localNode().getId(), indexShard.shardId());
-        Engine.Searcher engineSearcher = searcher == null ? indexShard.acquireSearcher("search") : searcher;
+        final Engine.Searcher engineSearcher;
+        if (searcher == null) {
+            indexShard.awaitShardSearchActive();
+            engineSearcher = indexShard.acquireSearcher("search");
+        } else {
+            engineSearcher = searcher;
+        }
 
         final DefaultSearchContext searchContext = new DefaultSearchContext(idGenerator.incrementAndGet(), request, shardTarget,
             engineSearcher, indexService, indexShard, bigArrays, threadPool.estimatedTimeInMillisCounter(), parseFieldMatcher,
@@ -660,6 +816,8 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
     }
 
     private void processFailure(SearchContext context, Exception e) {
+        // the fetched hits won't be sent, release what backs them
+        context.fetchResult().close();
         freeContext(context.id());
         try {
             if (Lucene.isCorruptionException(e)) {
@@ -715,6 +873,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             }
         }
         context.trackScores(source.trackScores());
+        context.trackTotalHits(source.trackTotalHits());
         if (source.minScore() != null) {
             context.minimumScore(source.minScore());
         }
@@ -803,6 +962,20 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             context.sliceBuilder(source.slice());
         }
 
+        if (source.collapse() != null) {
+            final CollapseContext collapseContext = source.collapse().build(context);
+            context.collapse(collapseContext);
+            // the collapse value of each hit is needed to reduce the groups and to expand them on the coordinating node
+            final String collapseField = collapseContext.getFieldType().name();
+            if (context.docValueFieldsContext() == null) {
+                context.docValueFieldsContext(new DocValueFieldsContext(Collections.singletonList(collapseField)));
+            } else if (context.docValueFieldsContext().fields().contains(collapseField) == false) {
+                List<String> fields = new ArrayList<>(context.docValueFieldsContext().fields());
+                fields.add(collapseField);
+                context.docValueFieldsContext(new DocValueFieldsContext(fields));
+            }
+        }
+
         if (source.storedFields() != null) {
             if (source.storedFields().fetchFields() == false) {
                 if (context.version()) {
@@ -900,6 +1073,31 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         }
     }
 
+    /**
+     * Rewrites the query of the given request against the current shard and returns <code>false</code> iff the query provably can't
+     * match any document on this shard, e.g. because a range query is disjoint from the min/max values of the field on this shard.
+     * This method might return <code>true</code> even if the query won't match any document.
+     */
+    public boolean canMatch(ShardSearchRequest request) throws IOException {
+        final long startTime = System.nanoTime();
+        try (DefaultSearchContext context = createSearchContext(request, defaultSearchTimeout, null)) {
+            final SearchSourceBuilder source = context.request().source();
+            final boolean canMatch = canRewriteToMatchNone(source) == false || source.query() instanceof MatchNoneQueryBuilder == false;
+            context.indexShard().getSearchOperationListener().onCanMatchPhase(context, System.nanoTime() - startTime);
+            return canMatch;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> iff the given search source can be skipped on a shard if its query rewrites to a
+     * {@link MatchNoneQueryBuilder}. Requests without a query, with aggregations or with suggestions produce a result even if the
+     * query doesn't match any document and must therefore always be executed.
+     */
+    public static boolean canRewriteToMatchNone(SearchSourceBuilder source) {
+        return source != null && source.query() != null && source.query() instanceof MatchAllQueryBuilder == false
+            && source.aggregations() == null && source.suggest() == null;
+    }
+
     public AliasFilter buildAliasFilter(ClusterState state, String index, String... expressions) {
         return indicesService.buildAliasFilter(state, index, expressions);
     }
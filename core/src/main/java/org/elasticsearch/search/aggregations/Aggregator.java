@@ -31,6 +31,7 @@ import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 
 import java.io.IOException;
+import java.util.function.BiConsumer;
 
 /**
  * An Aggregator.
@@ -101,6 +102,13 @@ public abstract class Aggregator extends BucketCollector implements Releasable {
      */
     public abstract InternalAggregation buildEmptyAggregation();
 
+    /**
+     * Collect debug information about how this aggregator was executed, such as the strategy it picked to collect documents.
+     * This information is only reported in the profile output of the aggregation. The default implementation adds nothing.
+     */
+    public void collectDebugInfo(BiConsumer<String, Object> add) {
+    }
+
     /** Aggregation mode for sub aggregations. */
     public enum SubAggCollectionMode implements Writeable {
 
@@ -23,8 +23,16 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.SimpleFSDirectory;
+import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.packed.PackedInts;
 import org.apache.lucene.util.packed.PackedLongValues;
+import org.elasticsearch.common.io.PathUtils;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.LongHash;
 import org.elasticsearch.search.aggregations.Aggregator;
@@ -32,6 +40,7 @@ import org.elasticsearch.search.aggregations.BucketCollector;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -42,33 +51,67 @@ import java.util.List;
  * matches and then is able to replay a given subset of buckets which represent
  * the survivors from a pruning process performed by the aggregator that owns
  * this collector.
+ *
+ * Doc ids and buckets are recorded in memory, unless they take at least
+ * <code>spillThreshold</code> bytes in which case all of them are moved to a
+ * temporary file that is read back sequentially when buckets are replayed.
  */
 public class BestBucketsDeferringCollector extends DeferringBucketCollector {
-    private static class Entry {
+    /** How many docs to collect between two checks of the memory usage of the current segment. */
+    private static final int SPILL_CHECK_INTERVAL = 1 << 12;
+
+    static class Entry {
         final LeafReaderContext context;
+        final long size;
+        // both null if the entry was spilled to disk
         final PackedLongValues docDeltas;
         final PackedLongValues buckets;
 
-        public Entry(LeafReaderContext context, PackedLongValues docDeltas, PackedLongValues buckets) {
+        Entry(LeafReaderContext context, PackedLongValues docDeltas, PackedLongValues buckets) {
             this.context = context;
+            this.size = docDeltas.size();
             this.docDeltas = docDeltas;
             this.buckets = buckets;
         }
+
+        Entry(LeafReaderContext context, long size) {
+            this.context = context;
+            this.size = size;
+            this.docDeltas = null;
+            this.buckets = null;
+        }
     }
 
     final List<Entry> entries = new ArrayList<>();
     BucketCollector collector;
     final AggregationContext aggContext;
+    final long spillThreshold;
     LeafReaderContext context;
     PackedLongValues.Builder docDeltas;
     PackedLongValues.Builder buckets;
+    long bufferedBytes = 0;
     long maxBucket = -1;
     boolean finished = false;
     LongHash selectedBuckets;
+    // set once recorded docs have been spilled
+    Spill spill;
+    long spilledDocs;
 
-    /** Sole constructor. */
+    /**
+     * Build a collector that records everything in memory.
+     */
     public BestBucketsDeferringCollector(AggregationContext context) {
+        this(context, -1);
+    }
+
+    /**
+     * Build a collector that spills the recorded doc ids and buckets to a temporary file
+     * once they use <code>spillThreshold</code> bytes of heap or more, or never if
+     * <code>spillThreshold</code> is negative.
+     */
+    public BestBucketsDeferringCollector(AggregationContext context, long spillThreshold) {
         this.aggContext = context;
+        this.spillThreshold = spillThreshold;
     }
 
     @Override
@@ -87,11 +130,18 @@ public class BestBucketsDeferringCollector extends DeferringBucketCollector {
 
     private void finishLeaf() {
         if (context != null) {
-            entries.add(new Entry(context, docDeltas.build(), buckets.build()));
+            if (spill != null) {
+                entries.add(new Entry(context, spilledDocs));
+            } else {
+                Entry entry = new Entry(context, docDeltas.build(), buckets.build());
+                bufferedBytes += entry.docDeltas.ramBytesUsed() + entry.buckets.ramBytesUsed();
+                entries.add(entry);
+            }
         }
         context = null;
         docDeltas = null;
         buckets = null;
+        spilledDocs = 0;
     }
 
     @Override
@@ -99,22 +149,69 @@ public class BestBucketsDeferringCollector extends DeferringBucketCollector {
         finishLeaf();
 
         context = ctx;
-        docDeltas = PackedLongValues.packedBuilder(PackedInts.DEFAULT);
-        buckets = PackedLongValues.packedBuilder(PackedInts.DEFAULT);
+        if (spill == null && spillThreshold >= 0 && bufferedBytes >= spillThreshold) {
+            spill();
+        }
+        if (spill == null) {
+            docDeltas = PackedLongValues.packedBuilder(PackedInts.DEFAULT);
+            buckets = PackedLongValues.packedBuilder(PackedInts.DEFAULT);
+        }
 
         return new LeafBucketCollector() {
             int lastDoc = 0;
 
             @Override
             public void collect(int doc, long bucket) throws IOException {
-                docDeltas.add(doc - lastDoc);
-                buckets.add(bucket);
+                if (spill != null) {
+                    spill.output.writeVInt(doc - lastDoc);
+                    spill.output.writeVLong(bucket);
+                    spilledDocs++;
+                } else {
+                    docDeltas.add(doc - lastDoc);
+                    buckets.add(bucket);
+                    if (spillThreshold >= 0 && docDeltas.size() % SPILL_CHECK_INTERVAL == 0
+                            && bufferedBytes + docDeltas.ramBytesUsed() + buckets.ramBytesUsed() >= spillThreshold) {
+                        spill();
+                    }
+                }
                 lastDoc = doc;
                 maxBucket = Math.max(maxBucket, bucket);
             }
         };
     }
 
+    /**
+     * Move everything that has been recorded so far to a temporary file, docs
+     * that are collected later are directly written to this file.
+     */
+    private void spill() throws IOException {
+        spill = new Spill();
+        aggContext.searchContext().addReleasable(spill, SearchContext.Lifetime.PHASE);
+        for (int i = 0; i < entries.size(); ++i) {
+            Entry entry = entries.get(i);
+            write(entry.docDeltas, entry.buckets);
+            entries.set(i, new Entry(entry.context, entry.size));
+        }
+        if (docDeltas != null) {
+            // we are in the middle of a segment
+            PackedLongValues leafDocDeltas = docDeltas.build();
+            write(leafDocDeltas, buckets.build());
+            spilledDocs = leafDocDeltas.size();
+        }
+        bufferedBytes = 0;
+        docDeltas = null;
+        buckets = null;
+    }
+
+    private void write(PackedLongValues docDeltas, PackedLongValues buckets) throws IOException {
+        final PackedLongValues.Iterator docDeltaIterator = docDeltas.iterator();
+        final PackedLongValues.Iterator bucketIterator = buckets.iterator();
+        for (long i = 0, end = docDeltas.size(); i < end; ++i) {
+            spill.output.writeVInt((int) docDeltaIterator.next());
+            spill.output.writeVLong(bucketIterator.next());
+        }
+    }
+
     @Override
     public void preCollection() throws IOException {
         collector.preCollection();
@@ -123,6 +220,9 @@ public class BestBucketsDeferringCollector extends DeferringBucketCollector {
     @Override
     public void postCollection() throws IOException {
         finishLeaf();
+        if (spill != null) {
+            spill.finishWriting();
+        }
         finished = true;
     }
 
@@ -150,22 +250,30 @@ public class BestBucketsDeferringCollector extends DeferringBucketCollector {
             weight = aggContext.searchContext().searcher()
                         .createNormalizedWeight(aggContext.searchContext().query(), true);
         }
+        final IndexInput spilled = spill == null ? null : spill.openInput();
         for (Entry entry : entries) {
             final LeafBucketCollector leafCollector = collector.getLeafCollector(entry.context);
             DocIdSetIterator docIt = null;
-            if (needsScores && entry.docDeltas.size() > 0) {
+            if (needsScores && entry.size > 0) {
                 Scorer scorer = weight.scorer(entry.context);
                 // We don't need to check if the scorer is null
-                // since we are sure that there are documents to replay (entry.docDeltas it not empty).
+                // since we are sure that there are documents to replay (entry.size it not 0).
                 docIt = scorer.iterator();
                 leafCollector.setScorer(scorer);
             }
-            final PackedLongValues.Iterator docDeltaIterator = entry.docDeltas.iterator();
-            final PackedLongValues.Iterator buckets = entry.buckets.iterator();
+            final PackedLongValues.Iterator docDeltaIterator = entry.docDeltas == null ? null : entry.docDeltas.iterator();
+            final PackedLongValues.Iterator buckets = entry.buckets == null ? null : entry.buckets.iterator();
             int doc = 0;
-            for (long i = 0, end = entry.docDeltas.size(); i < end; ++i) {
-                doc += docDeltaIterator.next();
-                final long bucket = buckets.next();
+            for (long i = 0, end = entry.size; i < end; ++i) {
+                final long bucket;
+                if (docDeltaIterator == null) {
+                    // entries are spilled in order, so reading the file sequentially is enough
+                    doc += spilled.readVInt();
+                    bucket = spilled.readVLong();
+                } else {
+                    doc += docDeltaIterator.next();
+                    bucket = buckets.next();
+                }
                 final long rebasedBucket = hash.find(bucket);
                 if (rebasedBucket != -1) {
                     if (needsScores) {
@@ -180,6 +288,11 @@ public class BestBucketsDeferringCollector extends DeferringBucketCollector {
             }
         }
 
+        if (spill != null) {
+            // the recorded docs are not needed anymore
+            spill.close();
+        }
+
         collector.postCollection();
     }
 
@@ -207,4 +320,47 @@ public class BestBucketsDeferringCollector extends DeferringBucketCollector {
         };
     }
 
+    /**
+     * A temporary file that holds the recorded doc deltas and buckets of all segments.
+     */
+    static class Spill implements Releasable {
+        final Directory directory;
+        final IndexOutput output;
+        IndexInput input;
+        boolean closed = false;
+
+        Spill() throws IOException {
+            // same location as Environment#tmpFile
+            directory = new SimpleFSDirectory(PathUtils.get(System.getProperty("java.io.tmpdir")));
+            boolean success = false;
+            try {
+                output = directory.createTempOutput("agg", "deferred", IOContext.DEFAULT);
+                success = true;
+            } finally {
+                if (success == false) {
+                    IOUtils.closeWhileHandlingException(directory);
+                }
+            }
+        }
+
+        void finishWriting() throws IOException {
+            output.close();
+        }
+
+        IndexInput openInput() throws IOException {
+            input = directory.openInput(output.getName(), IOContext.READONCE);
+            return input;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            IOUtils.closeWhileHandlingException(output, input);
+            IOUtils.deleteFilesIgnoringExceptions(directory, output.getName());
+            IOUtils.closeWhileHandlingException(directory);
+        }
+    }
 }
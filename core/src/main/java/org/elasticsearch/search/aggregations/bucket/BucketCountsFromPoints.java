@@ -0,0 +1,149 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.HalfFloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PointValues;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Helpers for bucket aggregations that compute the doc counts of their buckets from the points of their field rather than
+ * by collecting every matching document. Points are organized in a tree whose cells know the range of the values they hold,
+ * so the documents of a cell that falls entirely within a bucket are counted without looking at their values. This is only
+ * correct if the aggregation would see every document that has a value for the field, exactly once.
+ */
+public final class BucketCountsFromPoints {
+
+    private BucketCountsFromPoints() {}
+
+    /**
+     * Returns the name of the field whose points the aggregation may count its buckets from, or {@code null} if it needs to
+     * collect documents. The aggregation must be a top-level aggregation without sub-aggregations on an indexed field, without
+     * a script nor a missing value, and the query must match all documents without scoring thresholds or early termination.
+     */
+    @Nullable
+    public static String pointsField(AggregationContext context, Aggregator parent, AggregatorFactories factories,
+                                     ValuesSourceConfig<?> config) {
+        if (parent != null || factories.countAggregators() > 0) {
+            return null;
+        }
+        if (config.fieldContext() == null || config.script() != null || config.missing() != null) {
+            return null;
+        }
+        if (config.fieldContext().fieldType().indexOptions() == IndexOptions.NONE) {
+            return null;
+        }
+        SearchContext searchContext = context.searchContext();
+        if (Queries.isConstantMatchAllQuery(searchContext.query()) == false
+                || searchContext.minimumScore() != null
+                || searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
+            return null;
+        }
+        return config.fieldContext().field();
+    }
+
+    /**
+     * Returns a function that decodes the packed points of the given field into the long values that the field exposes in
+     * doc values, or {@code null} if the field doesn't index such points.
+     */
+    @Nullable
+    public static ToLongFunction<byte[]> longDecoder(MappedFieldType fieldType) {
+        if (fieldType instanceof DateFieldMapper.DateFieldType) {
+            return packedValue -> LongPoint.decodeDimension(packedValue, 0);
+        } else if (fieldType instanceof NumberFieldMapper.NumberFieldType) {
+            switch (((NumberFieldMapper.NumberFieldType) fieldType).numberType()) {
+                case LONG:
+                    return packedValue -> LongPoint.decodeDimension(packedValue, 0);
+                case INTEGER:
+                case SHORT:
+                case BYTE:
+                    return packedValue -> IntPoint.decodeDimension(packedValue, 0);
+                default:
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a function that decodes the packed points of the given field into the double values that the field exposes in
+     * doc values, or {@code null} if the field doesn't index such points.
+     */
+    @Nullable
+    public static ToDoubleFunction<byte[]> doubleDecoder(MappedFieldType fieldType) {
+        if (fieldType instanceof NumberFieldMapper.NumberFieldType) {
+            switch (((NumberFieldMapper.NumberFieldType) fieldType).numberType()) {
+                case DOUBLE:
+                    return packedValue -> DoublePoint.decodeDimension(packedValue, 0);
+                case FLOAT:
+                    return packedValue -> FloatPoint.decodeDimension(packedValue, 0);
+                case HALF_FLOAT:
+                    return packedValue -> HalfFloatPoint.decodeDimension(packedValue, 0);
+                default:
+                    break;
+            }
+        }
+        ToLongFunction<byte[]> longDecoder = longDecoder(fieldType);
+        return longDecoder == null ? null : packedValue -> longDecoder.applyAsLong(packedValue);
+    }
+
+    /**
+     * Returns the points of the segment if the documents that have a value for the field can be counted from them, or
+     * {@code null} if they need to be collected. The segment may not have deleted documents and each document must have
+     * at most one value for the field.
+     */
+    @Nullable
+    public static PointValues pointValues(LeafReaderContext ctx, String field) throws IOException {
+        LeafReader reader = ctx.reader();
+        if (reader.getLiveDocs() != null) {
+            return null;
+        }
+        FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+        if (fieldInfo == null || fieldInfo.getPointDimensionCount() != 1) {
+            return null;
+        }
+        PointValues values = reader.getPointValues();
+        if (values == null || values.size(field) != values.getDocCount(field)) {
+            return null;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.DocIdSetBuilder;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.BucketCollector;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.LeafBucketCollector;
+import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the <code>size</code> smallest composite keys that sort after the <code>after</code> key of the request. Keys are
+ * held in a sorted map bounded by <code>size</code> so that the memory usage doesn't depend on the number of distinct keys
+ * of the shard, the largest key is evicted when a smaller one is found on a full map. Sub-aggregations are only collected
+ * for the keys that survive the collection: the matching documents of each segment are recorded in a doc id set, which
+ * takes at most one bit per document of the segment, and their keys are computed again when they are replayed.
+ */
+final class CompositeAggregator extends BucketsAggregator {
+    private final int size;
+    private final CompositeValuesSource[] sources;
+    private final List<String> sourceNames;
+    private final List<DocValueFormat> formats;
+    private final int[] reverseMuls;
+    private final CompositeKey afterKey;
+    private final TreeMap<CompositeKey, Slot> buckets;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private BucketCollector deferredCollectors;
+    private LeafReaderContext leafContext;
+    private DocIdSetBuilder docIdSetBuilder;
+
+    CompositeAggregator(String name, AggregatorFactories factories, AggregationContext context, Aggregator parent,
+                        List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData,
+                        int size, CompositeValuesSource[] sources, CompositeKey afterKey) throws IOException {
+        super(name, factories, context, parent, pipelineAggregators, metaData);
+        this.size = size;
+        this.sources = sources;
+        this.sourceNames = new ArrayList<>(sources.length);
+        this.formats = new ArrayList<>(sources.length);
+        this.reverseMuls = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            sourceNames.add(sources[i].name);
+            formats.add(sources[i].format);
+            reverseMuls[i] = sources[i].reverseMul;
+        }
+        this.afterKey = afterKey;
+        this.buckets = new TreeMap<>((a, b) -> CompositeKey.compare(a, b, reverseMuls));
+    }
+
+    @Override
+    public boolean needsScores() {
+        for (CompositeValuesSource source : sources) {
+            if (source.needsScores()) {
+                return true;
+            }
+        }
+        // sub-aggregations are replayed with their own scorer
+        return false;
+    }
+
+    @Override
+    protected void doPreCollection() throws IOException {
+        // sub-aggregations are replayed in doPostCollection on the documents of the keys that are still in the queue
+        deferredCollectors = BucketCollector.wrap(Arrays.asList(subAggregators));
+        collectableSubAggregators = BucketCollector.NO_OP_COLLECTOR;
+        deferredCollectors.preCollection();
+    }
+
+    @Override
+    protected LeafBucketCollector getLeafCollector(LeafReaderContext ctx, LeafBucketCollector sub) throws IOException {
+        finishLeaf();
+        final boolean recordDocs = deferredCollectors != BucketCollector.NO_OP_COLLECTOR;
+        if (recordDocs) {
+            leafContext = ctx;
+            docIdSetBuilder = new DocIdSetBuilder(ctx.reader().maxDoc());
+        }
+        final KeyIterator keys = new KeyIterator(ctx);
+        return new LeafBucketCollector() {
+            @Override
+            public void setScorer(Scorer scorer) throws IOException {
+                keys.setScorer(scorer);
+            }
+
+            @Override
+            public void collect(int doc, long bucket) throws IOException {
+                assert bucket == 0 : "composite aggregator can only be a top level aggregator";
+                if (keys.visit(doc, CompositeAggregator.this::collectKey) && recordDocs) {
+                    docIdSetBuilder.grow(1).add(doc);
+                }
+            }
+        };
+    }
+
+    /**
+     * Adds the key to the queue if it belongs to the page, and returns <code>true</code> if it was added.
+     */
+    private boolean collectKey(CompositeKey key) {
+        if (afterKey != null && CompositeKey.compare(key, afterKey, reverseMuls) <= 0) {
+            return false;
+        }
+        Slot slot = buckets.get(key);
+        if (slot == null) {
+            if (buckets.size() >= size) {
+                if (CompositeKey.compare(key, buckets.lastKey(), reverseMuls) > 0) {
+                    // the queue is full and this key sorts after all of its keys
+                    return false;
+                }
+                buckets.pollLastEntry();
+            }
+            slot = new Slot();
+            buckets.put(key.deepCopy(), slot);
+        }
+        slot.docCount++;
+        return true;
+    }
+
+    private void finishLeaf() {
+        if (leafContext != null) {
+            entries.add(new Entry(leafContext, docIdSetBuilder.build()));
+            leafContext = null;
+            docIdSetBuilder = null;
+        }
+    }
+
+    @Override
+    protected void doPostCollection() throws IOException {
+        finishLeaf();
+        long bucketOrd = 0;
+        for (Slot slot : buckets.values()) {
+            slot.bucketOrd = bucketOrd++;
+        }
+        if (deferredCollectors == BucketCollector.NO_OP_COLLECTOR) {
+            return;
+        }
+        final boolean needsScores = deferredCollectors.needsScores();
+        Weight weight = null;
+        if (needsScores) {
+            weight = context.searchContext().searcher().createNormalizedWeight(context.searchContext().query(), true);
+        }
+        for (Entry entry : entries) {
+            final DocIdSetIterator docIt = entry.docIdSet.iterator();
+            if (docIt == null) {
+                continue;
+            }
+            final LeafBucketCollector leafCollector = deferredCollectors.getLeafCollector(entry.context);
+            final KeyIterator keys = new KeyIterator(entry.context);
+            DocIdSetIterator scorerIt = null;
+            if (needsScores) {
+                Scorer scorer = weight.scorer(entry.context);
+                // recorded documents match the query so the scorer can't be null
+                scorerIt = scorer.iterator();
+                leafCollector.setScorer(scorer);
+                keys.setScorer(scorer);
+            }
+            for (int doc = docIt.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docIt.nextDoc()) {
+                if (needsScores && scorerIt.docID() < doc) {
+                    scorerIt.advance(doc);
+                    // aggregations should only be replayed on matching documents
+                    assert scorerIt.docID() == doc;
+                }
+                final int replayedDoc = doc;
+                keys.visit(doc, key -> {
+                    Slot slot = buckets.get(key);
+                    if (slot != null) {
+                        leafCollector.collect(replayedDoc, slot.bucketOrd);
+                    }
+                    return false;
+                });
+            }
+        }
+        entries.clear();
+        deferredCollectors.postCollection();
+    }
+
+    @Override
+    public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
+        assert owningBucketOrdinal == 0 : "composite aggregator can only be a top level aggregator";
+        List<InternalComposite.InternalBucket> result = new ArrayList<>(buckets.size());
+        for (Map.Entry<CompositeKey, Slot> entry : buckets.entrySet()) {
+            Slot slot = entry.getValue();
+            result.add(new InternalComposite.InternalBucket(sourceNames, formats, entry.getKey(), slot.docCount,
+                bucketAggregations(slot.bucketOrd)));
+        }
+        return new InternalComposite(name, size, sourceNames, formats, reverseMuls, result, pipelineAggregators(), metaData());
+    }
+
+    @Override
+    public InternalAggregation buildEmptyAggregation() {
+        return new InternalComposite(name, size, sourceNames, formats, reverseMuls, Collections.emptyList(),
+            pipelineAggregators(), metaData());
+    }
+
+    /**
+     * A bucket of the queue. The ordinal of the sub-aggregations is assigned once the collection is over.
+     */
+    private static final class Slot {
+        long bucketOrd = -1;
+        long docCount;
+    }
+
+    /**
+     * The documents of a segment that had at least one key in the queue when they were collected.
+     */
+    private static final class Entry {
+        final LeafReaderContext context;
+        final DocIdSet docIdSet;
+
+        Entry(LeafReaderContext context, DocIdSet docIdSet) {
+            this.context = context;
+            this.docIdSet = docIdSet;
+        }
+    }
+
+    @FunctionalInterface
+    private interface KeyConsumer {
+        /**
+         * Consumes a key that is only valid until the next call, returns <code>true</code> if the key was kept.
+         */
+        boolean accept(CompositeKey key) throws IOException;
+    }
+
+    /**
+     * Visits the composite keys of the documents of a segment.
+     */
+    private final class KeyIterator {
+        private final CompositeValuesSource.Leaf[] leaves = new CompositeValuesSource.Leaf[sources.length];
+        private final int[] counts = new int[sources.length];
+        private final int[] positions = new int[sources.length];
+        private final Comparable<?>[] values = new Comparable<?>[sources.length];
+        private final CompositeKey current = new CompositeKey(values);
+
+        KeyIterator(LeafReaderContext ctx) throws IOException {
+            for (int i = 0; i < sources.length; i++) {
+                leaves[i] = sources[i].getLeaf(ctx);
+            }
+        }
+
+        void setScorer(Scorer scorer) throws IOException {
+            for (CompositeValuesSource.Leaf leaf : leaves) {
+                leaf.setScorer(scorer);
+            }
+        }
+
+        /**
+         * Passes every combination of the values of the document to the consumer, returns <code>true</code> if the consumer
+         * kept at least one of them.
+         */
+        boolean visit(int doc, KeyConsumer consumer) throws IOException {
+            for (int i = 0; i < leaves.length; i++) {
+                counts[i] = leaves[i].setDocument(doc);
+                if (counts[i] == 0) {
+                    // documents that don't have a value for every source are ignored
+                    return false;
+                }
+                positions[i] = 0;
+                values[i] = leaves[i].valueAt(0);
+            }
+            boolean kept = false;
+            while (true) {
+                kept |= consumer.accept(current);
+                int i = leaves.length - 1;
+                while (i >= 0 && ++positions[i] == counts[i]) {
+                    positions[i] = 0;
+                    values[i] = leaves[i].valueAt(0);
+                    i--;
+                }
+                if (i < 0) {
+                    return kept;
+                }
+                values[i] = leaves[i].valueAt(positions[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.aggregations.InternalAggregation.Type;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+class CompositeAggregatorFactory extends AggregatorFactory<CompositeAggregatorFactory> {
+    private final int size;
+    private final CompositeValuesSource[] sources;
+    private final CompositeKey afterKey;
+
+    CompositeAggregatorFactory(String name, Type type, int size, CompositeValuesSource[] sources, Map<String, Object> after,
+                               AggregationContext context, AggregatorFactory<?> parent, AggregatorFactories.Builder subFactories,
+                               Map<String, Object> metaData) throws IOException {
+        super(name, type, context, parent, subFactories, metaData);
+        this.size = size;
+        this.sources = sources;
+        this.afterKey = after == null ? null : parseAfterKey(sources, after, context.searchContext().getQueryShardContext()::nowInMillis);
+    }
+
+    private static CompositeKey parseAfterKey(CompositeValuesSource[] sources, Map<String, Object> after, LongSupplier now) {
+        if (after.size() != sources.length) {
+            throw new IllegalArgumentException("[after] has " + after.size() + " value(s) but " + sources.length
+                + " source(s) are defined");
+        }
+        Comparable<?>[] values = new Comparable<?>[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            Object value = after.get(sources[i].name);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing value for [after." + sources[i].name + "]");
+            }
+            values[i] = sources[i].parseAfter(value, now);
+        }
+        return new CompositeKey(values);
+    }
+
+    @Override
+    protected Aggregator createInternal(Aggregator parent, boolean collectsFromSingleBucket, List<PipelineAggregator> pipelineAggregators,
+                                        Map<String, Object> metaData) throws IOException {
+        return new CompositeAggregator(name, factories, context, parent, pipelineAggregators, metaData, size, sources, afterKey);
+    }
+}
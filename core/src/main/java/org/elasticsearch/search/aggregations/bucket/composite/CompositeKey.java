@@ -0,0 +1,118 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The key of a composite bucket, a value per source of the aggregation.
+ */
+final class CompositeKey implements Writeable {
+    private final Comparable<?>[] values;
+
+    CompositeKey(Comparable<?>... values) {
+        this.values = values;
+    }
+
+    CompositeKey(StreamInput in) throws IOException {
+        values = new Comparable<?>[in.readVInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (Comparable<?>) in.readGenericValue();
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(values.length);
+        for (Comparable<?> value : values) {
+            out.writeGenericValue(value);
+        }
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    Comparable<?> get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns a copy of this key that doesn't share any bytes with the doc values it was read from.
+     */
+    CompositeKey deepCopy() {
+        Comparable<?>[] copy = new Comparable<?>[values.length];
+        for (int i = 0; i < values.length; i++) {
+            copy[i] = values[i] instanceof BytesRef ? BytesRef.deepCopyOf((BytesRef) values[i]) : values[i];
+        }
+        return new CompositeKey(copy);
+    }
+
+    /**
+     * Compares two keys source by source, the order of each source is reversed if its entry in <code>reverseMuls</code> is
+     * <code>-1</code>.
+     */
+    static int compare(CompositeKey first, CompositeKey second, int[] reverseMuls) {
+        assert first.values.length == second.values.length;
+        for (int i = 0; i < first.values.length; i++) {
+            int cmp = compareValues(first.values[i], second.values[i]);
+            if (cmp != 0) {
+                return cmp * reverseMuls[i];
+            }
+        }
+        return 0;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Comparable first, Comparable second) {
+        if (first.getClass() == second.getClass()) {
+            return first.compareTo(second);
+        }
+        if (first instanceof Number && second instanceof Number) {
+            // the same field can be mapped as an integer in one index and a floating point in another one
+            return Double.compare(((Number) first).doubleValue(), ((Number) second).doubleValue());
+        }
+        // a field mapped as a number in one index and as a string in another one, numbers go first
+        return first instanceof Number ? -1 : 1;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        return Arrays.equals(values, ((CompositeKey) obj).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.lucene.ScorerAware;
+import org.elasticsearch.index.fielddata.SortedBinaryDocValues;
+import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * The values of a source of the {@link CompositeAggregator} on a shard. Values are read from a {@link ValuesSource} and
+ * optionally rounded, the unique values of each document are exposed in ascending order through a {@link Leaf}.
+ */
+abstract class CompositeValuesSource {
+
+    final String name;
+    final DocValueFormat format;
+    final int reverseMul;
+
+    CompositeValuesSource(String name, DocValueFormat format, SortOrder order) {
+        this.name = name;
+        this.format = format;
+        this.reverseMul = order == SortOrder.ASC ? 1 : -1;
+    }
+
+    abstract boolean needsScores();
+
+    /**
+     * Returns the per-segment values of this source.
+     */
+    abstract Leaf getLeaf(LeafReaderContext context) throws IOException;
+
+    /**
+     * Converts the value of this source in an <code>after</code> key, either a number or a formatted string, to a
+     * value that can be compared with the values of this source.
+     */
+    abstract Comparable<?> parseAfter(Object value, LongSupplier now);
+
+    /**
+     * The values of a source on a segment.
+     */
+    abstract static class Leaf implements ScorerAware {
+        private final Object docValues;
+        private Comparable<?>[] values = new Comparable<?>[1];
+        private int count;
+
+        Leaf(Object docValues) {
+            this.docValues = docValues;
+        }
+
+        /**
+         * Loads the unique values of the given document and returns their number.
+         */
+        final int setDocument(int doc) {
+            count = 0;
+            collectValues(doc);
+            return count;
+        }
+
+        /**
+         * Returns the value at the given index of the current document. Values may be reused by the next call to
+         * {@link #setDocument(int)} and must be copied in order to be retained.
+         */
+        final Comparable<?> valueAt(int index) {
+            assert index < count;
+            return values[index];
+        }
+
+        /**
+         * Adds the unique values of the given document, in ascending order, with {@link #add(Comparable)}.
+         */
+        protected abstract void collectValues(int doc);
+
+        protected final int count() {
+            return count;
+        }
+
+        protected final void add(Comparable<?> value) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, ArrayUtil.oversize(count + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+            }
+            values[count++] = value;
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) {
+            if (docValues instanceof ScorerAware) {
+                ((ScorerAware) docValues).setScorer(scorer);
+            }
+        }
+    }
+
+    /**
+     * A source of binary values, used by terms sources on non-numeric fields.
+     */
+    static final class BytesSource extends CompositeValuesSource {
+        private final ValuesSource.Bytes valuesSource;
+
+        BytesSource(String name, DocValueFormat format, SortOrder order, ValuesSource.Bytes valuesSource) {
+            super(name, format, order);
+            this.valuesSource = valuesSource;
+        }
+
+        @Override
+        boolean needsScores() {
+            return valuesSource.needsScores();
+        }
+
+        @Override
+        Leaf getLeaf(LeafReaderContext context) throws IOException {
+            final SortedBinaryDocValues docValues = valuesSource.bytesValues(context);
+            return new Leaf(docValues) {
+                // values are copied since doc values may reuse the returned bytes
+                private BytesRefBuilder[] scratch = new BytesRefBuilder[0];
+
+                @Override
+                protected void collectValues(int doc) {
+                    docValues.setDocument(doc);
+                    final int valuesCount = docValues.count();
+                    for (int i = 0; i < valuesCount; i++) {
+                        final BytesRef value = docValues.valueAt(i);
+                        final int index = count();
+                        if (index > 0 && scratch[index - 1].get().equals(value)) {
+                            continue;
+                        }
+                        if (index == scratch.length) {
+                            scratch = Arrays.copyOf(scratch, ArrayUtil.oversize(index + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+                            for (int j = index; j < scratch.length; j++) {
+                                scratch[j] = new BytesRefBuilder();
+                            }
+                        }
+                        scratch[index].copyBytes(value);
+                        add(scratch[index].get());
+                    }
+                }
+            };
+        }
+
+        @Override
+        Comparable<?> parseAfter(Object value, LongSupplier now) {
+            return format.parseBytesRef(value.toString());
+        }
+    }
+
+    /**
+     * A source of long values, used by terms sources on integer fields and by date histogram sources.
+     */
+    static final class LongSource extends CompositeValuesSource {
+        private final ValuesSource.Numeric valuesSource;
+        private final LongUnaryOperator rounding;
+
+        LongSource(String name, DocValueFormat format, SortOrder order, ValuesSource.Numeric valuesSource, LongUnaryOperator rounding) {
+            super(name, format, order);
+            this.valuesSource = valuesSource;
+            this.rounding = rounding;
+        }
+
+        @Override
+        boolean needsScores() {
+            return valuesSource.needsScores();
+        }
+
+        @Override
+        Leaf getLeaf(LeafReaderContext context) throws IOException {
+            final SortedNumericDocValues docValues = valuesSource.longValues(context);
+            return new Leaf(docValues) {
+                @Override
+                protected void collectValues(int doc) {
+                    docValues.setDocument(doc);
+                    final int valuesCount = docValues.count();
+                    long previous = 0;
+                    for (int i = 0; i < valuesCount; i++) {
+                        // the rounding is monotonic so rounded values are still sorted
+                        final long value = rounding.applyAsLong(docValues.valueAt(i));
+                        if (i == 0 || value != previous) {
+                            add(value);
+                            previous = value;
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        Comparable<?> parseAfter(Object value, LongSupplier now) {
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return format.parseLong(value.toString(), false, now);
+        }
+    }
+
+    /**
+     * A source of double values, used by terms sources on floating point fields and by histogram sources.
+     */
+    static final class DoubleSource extends CompositeValuesSource {
+        private final ValuesSource.Numeric valuesSource;
+        private final DoubleUnaryOperator rounding;
+
+        DoubleSource(String name, DocValueFormat format, SortOrder order, ValuesSource.Numeric valuesSource, DoubleUnaryOperator rounding) {
+            super(name, format, order);
+            this.valuesSource = valuesSource;
+            this.rounding = rounding;
+        }
+
+        @Override
+        boolean needsScores() {
+            return valuesSource.needsScores();
+        }
+
+        @Override
+        Leaf getLeaf(LeafReaderContext context) throws IOException {
+            final SortedNumericDoubleValues docValues = valuesSource.doubleValues(context);
+            return new Leaf(docValues) {
+                @Override
+                protected void collectValues(int doc) {
+                    docValues.setDocument(doc);
+                    final int valuesCount = docValues.count();
+                    double previous = 0;
+                    for (int i = 0; i < valuesCount; i++) {
+                        final double value = rounding.applyAsDouble(docValues.valueAt(i));
+                        if (i == 0 || Double.compare(value, previous) != 0) {
+                            add(value);
+                            previous = value;
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        Comparable<?> parseAfter(Object value, LongSupplier now) {
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return format.parseDouble(value.toString(), false, now);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.ValueType;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
+import org.elasticsearch.search.aggregations.support.ValuesSourceType;
+import org.elasticsearch.search.sort.SortOrder;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * A source of a {@link CompositeAggregationBuilder}, the values of a field or script, optionally rounded, that make up
+ * one of the values of the composite key of the buckets.
+ */
+public abstract class CompositeValuesSourceBuilder<AB extends CompositeValuesSourceBuilder<AB>> implements Writeable, ToXContent {
+    private static final ParseField FIELD_FIELD = new ParseField("field");
+    private static final ParseField SCRIPT_FIELD = new ParseField("script");
+    private static final ParseField VALUE_TYPE_FIELD = new ParseField("value_type");
+    private static final ParseField ORDER_FIELD = new ParseField("order");
+    private static final ParseField FORMAT_FIELD = new ParseField("format");
+
+    protected final String name;
+    private String field = null;
+    private Script script = null;
+    private ValueType valueType = null;
+    private SortOrder order = SortOrder.ASC;
+    private String format = null;
+
+    protected CompositeValuesSourceBuilder(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Read from a stream.
+     */
+    protected CompositeValuesSourceBuilder(StreamInput in) throws IOException {
+        this.name = in.readString();
+        this.field = in.readOptionalString();
+        this.script = in.readOptionalWriteable(Script::new);
+        if (in.readBoolean()) {
+            this.valueType = ValueType.readFromStream(in);
+        }
+        this.order = SortOrder.readFromStream(in);
+        this.format = in.readOptionalString();
+    }
+
+    @Override
+    public final void writeTo(StreamOutput out) throws IOException {
+        out.writeString(name);
+        out.writeOptionalString(field);
+        out.writeOptionalWriteable(script);
+        out.writeBoolean(valueType != null);
+        if (valueType != null) {
+            valueType.writeTo(out);
+        }
+        order.writeTo(out);
+        out.writeOptionalString(format);
+        innerWriteTo(out);
+    }
+
+    protected abstract void innerWriteTo(StreamOutput out) throws IOException;
+
+    /**
+     * The type of this source, as used in the request.
+     */
+    protected abstract String type();
+
+    /**
+     * The name of this source, used as the key of its values in the composite keys.
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Sets the field to use for this source.
+     */
+    @SuppressWarnings("unchecked")
+    public AB field(String field) {
+        if (field == null) {
+            throw new IllegalArgumentException("[field] must not be null: [" + name + "]");
+        }
+        this.field = field;
+        return (AB) this;
+    }
+
+    /**
+     * Gets the field to use for this source.
+     */
+    public String field() {
+        return field;
+    }
+
+    /**
+     * Sets the script to use for this source.
+     */
+    @SuppressWarnings("unchecked")
+    public AB script(Script script) {
+        if (script == null) {
+            throw new IllegalArgumentException("[script] must not be null: [" + name + "]");
+        }
+        this.script = script;
+        return (AB) this;
+    }
+
+    /**
+     * Gets the script to use for this source.
+     */
+    public Script script() {
+        return script;
+    }
+
+    /**
+     * Sets the {@link ValueType} of the values of the script of this source.
+     */
+    @SuppressWarnings("unchecked")
+    public AB valueType(ValueType valueType) {
+        if (valueType == null) {
+            throw new IllegalArgumentException("[valueType] must not be null: [" + name + "]");
+        }
+        this.valueType = valueType;
+        return (AB) this;
+    }
+
+    /**
+     * Gets the {@link ValueType} of the values of the script of this source.
+     */
+    public ValueType valueType() {
+        return valueType;
+    }
+
+    /**
+     * Sets the order of the values of this source, {@link SortOrder#ASC} by default.
+     */
+    @SuppressWarnings("unchecked")
+    public AB order(SortOrder order) {
+        if (order == null) {
+            throw new IllegalArgumentException("[order] must not be null: [" + name + "]");
+        }
+        this.order = order;
+        return (AB) this;
+    }
+
+    /**
+     * Gets the order of the values of this source.
+     */
+    public SortOrder order() {
+        return order;
+    }
+
+    /**
+     * Sets the format to use to render the values of this source.
+     */
+    @SuppressWarnings("unchecked")
+    public AB format(String format) {
+        if (format == null) {
+            throw new IllegalArgumentException("[format] must not be null: [" + name + "]");
+        }
+        this.format = format;
+        return (AB) this;
+    }
+
+    /**
+     * Gets the format to use to render the values of this source.
+     */
+    public String format() {
+        return format;
+    }
+
+    /**
+     * The time zone of the values of this source, if any.
+     */
+    protected DateTimeZone timeZone() {
+        return null;
+    }
+
+    /**
+     * The type of the values read by this source.
+     */
+    protected abstract ValuesSourceType valuesSourceType();
+
+    /**
+     * The {@link ValueType} to use when none is set on this source, if any.
+     */
+    protected ValueType targetValueType() {
+        return null;
+    }
+
+    /**
+     * Creates the source on the shard of the given context.
+     */
+    final CompositeValuesSource build(AggregationContext context) throws IOException {
+        if (field == null && script == null) {
+            throw new IllegalArgumentException("[" + type() + "] source [" + name + "] requires a [field] or a [script]");
+        }
+        ValueType valueType = this.valueType != null ? this.valueType : targetValueType();
+        ValuesSourceConfig<?> config = ValuesSourceConfig.resolve(context, valueType, field, script, null, timeZone(), format,
+            valuesSourceType());
+        return innerBuild(context, config);
+    }
+
+    protected abstract CompositeValuesSource innerBuild(AggregationContext context, ValuesSourceConfig<?> config) throws IOException;
+
+    @Override
+    public final XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.startObject(name);
+        builder.startObject(type());
+        if (field != null) {
+            builder.field(FIELD_FIELD.getPreferredName(), field);
+        }
+        if (script != null) {
+            builder.field(SCRIPT_FIELD.getPreferredName(), script);
+        }
+        if (valueType != null) {
+            builder.field(VALUE_TYPE_FIELD.getPreferredName(), valueType.getPreferredName());
+        }
+        builder.field(ORDER_FIELD.getPreferredName(), order.toString());
+        if (format != null) {
+            builder.field(FORMAT_FIELD.getPreferredName(), format);
+        }
+        doXContentBody(builder, params);
+        builder.endObject();
+        builder.endObject();
+        builder.endObject();
+        return builder;
+    }
+
+    protected abstract void doXContentBody(XContentBuilder builder, Params params) throws IOException;
+
+    /**
+     * Parses the options of this source, the parser is positioned on the start of the object that holds them.
+     */
+    private void parseBody(QueryParseContext context) throws IOException {
+        XContentParser parser = context.parser();
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (context.getParseFieldMatcher().match(currentFieldName, FIELD_FIELD)) {
+                field(parser.text());
+            } else if (context.getParseFieldMatcher().match(currentFieldName, SCRIPT_FIELD)) {
+                script(Script.parse(parser, context));
+            } else if (context.getParseFieldMatcher().match(currentFieldName, VALUE_TYPE_FIELD)) {
+                valueType(ValueType.resolveForScript(parser.text()));
+            } else if (context.getParseFieldMatcher().match(currentFieldName, ORDER_FIELD)) {
+                order(SortOrder.fromString(parser.text()));
+            } else if (context.getParseFieldMatcher().match(currentFieldName, FORMAT_FIELD)) {
+                format(parser.text());
+            } else if (innerParseField(currentFieldName, token, context) == false) {
+                throw new ParsingException(parser.getTokenLocation(),
+                    "Unknown key for a " + token + " in [" + name + "]: [" + currentFieldName + "].");
+            }
+        }
+    }
+
+    /**
+     * Parses an option that is specific to this type of source and returns whether it was recognized.
+     */
+    protected abstract boolean innerParseField(String currentFieldName, XContentParser.Token token,
+                                               QueryParseContext context) throws IOException;
+
+    @Override
+    public final int hashCode() {
+        return Objects.hash(name, field, script, valueType, order, format, innerHashCode());
+    }
+
+    protected abstract int innerHashCode();
+
+    @Override
+    public final boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        CompositeValuesSourceBuilder<?> other = (CompositeValuesSourceBuilder<?>) obj;
+        return Objects.equals(name, other.name)
+            && Objects.equals(field, other.field)
+            && Objects.equals(script, other.script)
+            && Objects.equals(valueType, other.valueType)
+            && Objects.equals(order, other.order)
+            && Objects.equals(format, other.format)
+            && innerEquals(other);
+    }
+
+    protected abstract boolean innerEquals(CompositeValuesSourceBuilder<?> other);
+
+    /**
+     * Reads a source written with {@link #writeSource(CompositeValuesSourceBuilder, StreamOutput)}.
+     */
+    static CompositeValuesSourceBuilder<?> readSource(StreamInput in) throws IOException {
+        String type = in.readString();
+        switch (type) {
+            case TermsValuesSourceBuilder.TYPE:
+                return new TermsValuesSourceBuilder(in);
+            case HistogramValuesSourceBuilder.TYPE:
+                return new HistogramValuesSourceBuilder(in);
+            case DateHistogramValuesSourceBuilder.TYPE:
+                return new DateHistogramValuesSourceBuilder(in);
+            default:
+                throw new IOException("Unknown composite source type [" + type + "]");
+        }
+    }
+
+    static void writeSource(CompositeValuesSourceBuilder<?> source, StreamOutput out) throws IOException {
+        out.writeString(source.type());
+        source.writeTo(out);
+    }
+
+    /**
+     * Parses a source of the form <code>{ "name": { "type": { options } } }</code>.
+     */
+    static CompositeValuesSourceBuilder<?> fromXContent(QueryParseContext context) throws IOException {
+        XContentParser parser = context.parser();
+        ensureToken(parser, parser.currentToken(), XContentParser.Token.START_OBJECT);
+        ensureToken(parser, parser.nextToken(), XContentParser.Token.FIELD_NAME);
+        String name = parser.currentName();
+        ensureToken(parser, parser.nextToken(), XContentParser.Token.START_OBJECT);
+        ensureToken(parser, parser.nextToken(), XContentParser.Token.FIELD_NAME);
+        String type = parser.currentName();
+        ensureToken(parser, parser.nextToken(), XContentParser.Token.START_OBJECT);
+        final CompositeValuesSourceBuilder<?> source;
+        switch (type) {
+            case TermsValuesSourceBuilder.TYPE:
+                source = new TermsValuesSourceBuilder(name);
+                break;
+            case HistogramValuesSourceBuilder.TYPE:
+                source = new HistogramValuesSourceBuilder(name);
+                break;
+            case DateHistogramValuesSourceBuilder.TYPE:
+                source = new DateHistogramValuesSourceBuilder(name);
+                break;
+            default:
+                throw new ParsingException(parser.getTokenLocation(), "Unknown type [" + type + "] for source [" + name + "]");
+        }
+        source.parseBody(context);
+        ensureToken(parser, parser.nextToken(), XContentParser.Token.END_OBJECT);
+        ensureToken(parser, parser.nextToken(), XContentParser.Token.END_OBJECT);
+        return source;
+    }
+
+    private static void ensureToken(XContentParser parser, XContentParser.Token actual, XContentParser.Token expected) {
+        if (actual != expected) {
+            throw new ParsingException(parser.getTokenLocation(), "Expected [" + expected + "] but found [" + actual + "]");
+        }
+    }
+}
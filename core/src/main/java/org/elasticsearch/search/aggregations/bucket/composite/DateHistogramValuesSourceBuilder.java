@@ -0,0 +1,202 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.rounding.Rounding;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.ValueType;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
+import org.elasticsearch.search.aggregations.support.ValuesSourceType;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * A {@link CompositeValuesSourceBuilder} that rounds dates down to a calendar or fixed interval, like the
+ * <code>date_histogram</code> aggregation.
+ */
+public class DateHistogramValuesSourceBuilder extends CompositeValuesSourceBuilder<DateHistogramValuesSourceBuilder> {
+    static final String TYPE = "date_histogram";
+    private static final ParseField TIME_ZONE_FIELD = new ParseField("time_zone");
+
+    private long interval = 0;
+    private DateHistogramInterval dateHistogramInterval;
+    private DateTimeZone timeZone = null;
+
+    public DateHistogramValuesSourceBuilder(String name) {
+        super(name);
+    }
+
+    /**
+     * Read from a stream.
+     */
+    protected DateHistogramValuesSourceBuilder(StreamInput in) throws IOException {
+        super(in);
+        this.interval = in.readLong();
+        this.dateHistogramInterval = in.readOptionalWriteable(DateHistogramInterval::new);
+        if (in.readBoolean()) {
+            this.timeZone = DateTimeZone.forID(in.readString());
+        }
+    }
+
+    @Override
+    protected void innerWriteTo(StreamOutput out) throws IOException {
+        out.writeLong(interval);
+        out.writeOptionalWriteable(dateHistogramInterval);
+        out.writeBoolean(timeZone != null);
+        if (timeZone != null) {
+            out.writeString(timeZone.getID());
+        }
+    }
+
+    /**
+     * Sets the interval of the rounding in milliseconds.
+     */
+    public DateHistogramValuesSourceBuilder interval(long interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("[interval] must be 1 or greater for source [" + name + "]");
+        }
+        this.interval = interval;
+        return this;
+    }
+
+    /**
+     * Gets the interval of the rounding in milliseconds.
+     */
+    public long interval() {
+        return interval;
+    }
+
+    /**
+     * Sets the interval of the rounding, this takes precedence over {@link #interval(long)}.
+     */
+    public DateHistogramValuesSourceBuilder dateHistogramInterval(DateHistogramInterval dateHistogramInterval) {
+        if (dateHistogramInterval == null) {
+            throw new IllegalArgumentException("[dateHistogramInterval] must not be null: [" + name + "]");
+        }
+        this.dateHistogramInterval = dateHistogramInterval;
+        return this;
+    }
+
+    /**
+     * Gets the interval of the rounding.
+     */
+    public DateHistogramInterval dateHistogramInterval() {
+        return dateHistogramInterval;
+    }
+
+    /**
+     * Sets the time zone to use for the rounding.
+     */
+    public DateHistogramValuesSourceBuilder timeZone(DateTimeZone timeZone) {
+        if (timeZone == null) {
+            throw new IllegalArgumentException("[timeZone] must not be null: [" + name + "]");
+        }
+        this.timeZone = timeZone;
+        return this;
+    }
+
+    @Override
+    public DateTimeZone timeZone() {
+        return timeZone;
+    }
+
+    @Override
+    protected String type() {
+        return TYPE;
+    }
+
+    @Override
+    protected ValuesSourceType valuesSourceType() {
+        return ValuesSourceType.NUMERIC;
+    }
+
+    @Override
+    protected ValueType targetValueType() {
+        return ValueType.DATE;
+    }
+
+    @Override
+    protected CompositeValuesSource innerBuild(AggregationContext context, ValuesSourceConfig<?> config) throws IOException {
+        if (dateHistogramInterval == null && interval < 1) {
+            throw new IllegalArgumentException("[" + TYPE + "] source [" + name + "] requires an [interval]");
+        }
+        ValuesSource.Numeric valuesSource = (ValuesSource.Numeric) context.valuesSource(config, context.searchContext());
+        if (valuesSource == null) {
+            valuesSource = ValuesSource.Numeric.EMPTY;
+        }
+        Rounding rounding = DateHistogramAggregationBuilder.createRounding(dateHistogramInterval, interval, timeZone);
+        return new CompositeValuesSource.LongSource(name, config.format(), order(), valuesSource, rounding::round);
+    }
+
+    @Override
+    protected void doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        if (dateHistogramInterval == null) {
+            builder.field(Histogram.INTERVAL_FIELD.getPreferredName(), interval);
+        } else {
+            builder.field(Histogram.INTERVAL_FIELD.getPreferredName(), dateHistogramInterval.toString());
+        }
+        if (timeZone != null) {
+            builder.field(TIME_ZONE_FIELD.getPreferredName(), timeZone.getID());
+        }
+    }
+
+    @Override
+    protected boolean innerParseField(String currentFieldName, XContentParser.Token token, QueryParseContext context)
+            throws IOException {
+        XContentParser parser = context.parser();
+        if (context.getParseFieldMatcher().match(currentFieldName, Histogram.INTERVAL_FIELD)) {
+            if (token == XContentParser.Token.VALUE_NUMBER) {
+                interval(parser.longValue());
+            } else {
+                dateHistogramInterval(new DateHistogramInterval(parser.text()));
+            }
+            return true;
+        } else if (context.getParseFieldMatcher().match(currentFieldName, TIME_ZONE_FIELD)) {
+            timeZone(DateTimeZone.forID(parser.text()));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected int innerHashCode() {
+        return Objects.hash(interval, dateHistogramInterval, timeZone);
+    }
+
+    @Override
+    protected boolean innerEquals(CompositeValuesSourceBuilder<?> other) {
+        DateHistogramValuesSourceBuilder that = (DateHistogramValuesSourceBuilder) other;
+        return Objects.equals(interval, that.interval)
+            && Objects.equals(dateHistogramInterval, that.dateHistogramInterval)
+            && Objects.equals(timeZone, that.timeZone);
+    }
+}
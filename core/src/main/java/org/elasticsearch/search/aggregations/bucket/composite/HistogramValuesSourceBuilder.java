@@ -0,0 +1,128 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
+import org.elasticsearch.search.aggregations.support.ValuesSourceType;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * A {@link CompositeValuesSourceBuilder} that rounds numeric values down to the closest multiple of an interval, like the
+ * <code>histogram</code> aggregation.
+ */
+public class HistogramValuesSourceBuilder extends CompositeValuesSourceBuilder<HistogramValuesSourceBuilder> {
+    static final String TYPE = "histogram";
+
+    private double interval = 0;
+
+    public HistogramValuesSourceBuilder(String name) {
+        super(name);
+    }
+
+    /**
+     * Read from a stream.
+     */
+    protected HistogramValuesSourceBuilder(StreamInput in) throws IOException {
+        super(in);
+        this.interval = in.readDouble();
+    }
+
+    @Override
+    protected void innerWriteTo(StreamOutput out) throws IOException {
+        out.writeDouble(interval);
+    }
+
+    /**
+     * Sets the interval of the rounding, must be strictly positive.
+     */
+    public HistogramValuesSourceBuilder interval(double interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("[interval] must be greater than 0 for source [" + name + "]");
+        }
+        this.interval = interval;
+        return this;
+    }
+
+    /**
+     * Gets the interval of the rounding.
+     */
+    public double interval() {
+        return interval;
+    }
+
+    @Override
+    protected String type() {
+        return TYPE;
+    }
+
+    @Override
+    protected ValuesSourceType valuesSourceType() {
+        return ValuesSourceType.NUMERIC;
+    }
+
+    @Override
+    protected CompositeValuesSource innerBuild(AggregationContext context, ValuesSourceConfig<?> config) throws IOException {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("[" + TYPE + "] source [" + name + "] requires a positive [interval]");
+        }
+        ValuesSource.Numeric valuesSource = (ValuesSource.Numeric) context.valuesSource(config, context.searchContext());
+        if (valuesSource == null) {
+            valuesSource = ValuesSource.Numeric.EMPTY;
+        }
+        final double interval = this.interval;
+        return new CompositeValuesSource.DoubleSource(name, config.format(), order(), valuesSource,
+            value -> Math.floor(value / interval) * interval);
+    }
+
+    @Override
+    protected void doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        builder.field(Histogram.INTERVAL_FIELD.getPreferredName(), interval);
+    }
+
+    @Override
+    protected boolean innerParseField(String currentFieldName, XContentParser.Token token, QueryParseContext context)
+            throws IOException {
+        if (context.getParseFieldMatcher().match(currentFieldName, Histogram.INTERVAL_FIELD)) {
+            interval(context.parser().doubleValue());
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected int innerHashCode() {
+        return Objects.hash(interval);
+    }
+
+    @Override
+    protected boolean innerEquals(CompositeValuesSourceBuilder<?> other) {
+        return Objects.equals(interval, ((HistogramValuesSourceBuilder) other).interval);
+    }
+}
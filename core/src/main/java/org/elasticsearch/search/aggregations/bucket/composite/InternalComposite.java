@@ -0,0 +1,235 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.InternalMultiBucketAggregation;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class InternalComposite extends InternalMultiBucketAggregation<InternalComposite, InternalComposite.InternalBucket>
+        implements CompositeAggregation {
+
+    public static class InternalBucket extends InternalMultiBucketAggregation.InternalBucket implements CompositeAggregation.Bucket {
+
+        private final List<String> sourceNames;
+        private final List<DocValueFormat> formats;
+        private final CompositeKey key;
+        private final long docCount;
+        private final InternalAggregations aggregations;
+
+        InternalBucket(List<String> sourceNames, List<DocValueFormat> formats, CompositeKey key, long docCount,
+                       InternalAggregations aggregations) {
+            this.sourceNames = sourceNames;
+            this.formats = formats;
+            this.key = key;
+            this.docCount = docCount;
+            this.aggregations = aggregations;
+        }
+
+        /**
+         * Read from a stream.
+         */
+        InternalBucket(StreamInput in, List<String> sourceNames, List<DocValueFormat> formats) throws IOException {
+            this.sourceNames = sourceNames;
+            this.formats = formats;
+            this.key = new CompositeKey(in);
+            this.docCount = in.readVLong();
+            this.aggregations = InternalAggregations.readAggregations(in);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            key.writeTo(out);
+            out.writeVLong(docCount);
+            aggregations.writeTo(out);
+        }
+
+        CompositeKey compositeKey() {
+            return key;
+        }
+
+        @Override
+        public Map<String, Object> getKey() {
+            return formatKey(sourceNames, formats, key);
+        }
+
+        @Override
+        public String getKeyAsString() {
+            return getKey().toString();
+        }
+
+        @Override
+        public long getDocCount() {
+            return docCount;
+        }
+
+        @Override
+        public Aggregations getAggregations() {
+            return aggregations;
+        }
+
+        InternalBucket reduce(List<InternalBucket> buckets, ReduceContext context) {
+            long docCount = 0;
+            List<InternalAggregations> aggregationsList = new ArrayList<>(buckets.size());
+            for (InternalBucket bucket : buckets) {
+                docCount += bucket.docCount;
+                aggregationsList.add(bucket.aggregations);
+            }
+            InternalAggregations aggs = InternalAggregations.reduce(aggregationsList, context);
+            return new InternalBucket(sourceNames, formats, key, docCount, aggs);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field(CommonFields.KEY, getKey());
+            builder.field(CommonFields.DOC_COUNT, docCount);
+            aggregations.toXContentInternal(builder, params);
+            builder.endObject();
+            return builder;
+        }
+    }
+
+    private final int size;
+    private final List<String> sourceNames;
+    private final List<DocValueFormat> formats;
+    private final int[] reverseMuls;
+    private final List<InternalBucket> buckets;
+
+    InternalComposite(String name, int size, List<String> sourceNames, List<DocValueFormat> formats, int[] reverseMuls,
+                      List<InternalBucket> buckets, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) {
+        super(name, pipelineAggregators, metaData);
+        this.size = size;
+        this.sourceNames = sourceNames;
+        this.formats = formats;
+        this.reverseMuls = reverseMuls;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public InternalComposite(StreamInput in) throws IOException {
+        super(in);
+        this.size = in.readVInt();
+        this.sourceNames = in.readList(StreamInput::readString);
+        this.formats = in.readNamedWriteableList(DocValueFormat.class);
+        this.reverseMuls = in.readIntArray();
+        this.buckets = in.readList(stream -> new InternalBucket(stream, sourceNames, formats));
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeVInt(size);
+        out.writeStringList(sourceNames);
+        out.writeNamedWriteableList(formats);
+        out.writeIntArray(reverseMuls);
+        out.writeList(buckets);
+    }
+
+    @Override
+    public String getWriteableName() {
+        return CompositeAggregationBuilder.NAME;
+    }
+
+    @Override
+    public InternalComposite create(List<InternalBucket> buckets) {
+        return new InternalComposite(name, size, sourceNames, formats, reverseMuls, buckets, pipelineAggregators(), getMetaData());
+    }
+
+    @Override
+    public InternalBucket createBucket(InternalAggregations aggregations, InternalBucket prototype) {
+        return new InternalBucket(prototype.sourceNames, prototype.formats, prototype.key, prototype.docCount, aggregations);
+    }
+
+    @Override
+    public List<InternalBucket> getBuckets() {
+        return buckets;
+    }
+
+    @Override
+    public Map<String, Object> afterKey() {
+        return buckets.isEmpty() ? null : buckets.get(buckets.size() - 1).getKey();
+    }
+
+    @Override
+    public InternalAggregation doReduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
+        // every shard returns its smallest keys so the smallest keys of the union have complete counts
+        TreeMap<CompositeKey, List<InternalBucket>> reduced = new TreeMap<>((a, b) -> CompositeKey.compare(a, b, reverseMuls));
+        for (InternalAggregation aggregation : aggregations) {
+            InternalComposite composite = (InternalComposite) aggregation;
+            for (InternalBucket bucket : composite.buckets) {
+                reduced.computeIfAbsent(bucket.key, k -> new ArrayList<>(aggregations.size())).add(bucket);
+                if (reduced.size() > size) {
+                    reduced.pollLastEntry();
+                }
+            }
+        }
+        List<InternalBucket> result = new ArrayList<>(reduced.size());
+        for (List<InternalBucket> sameKeyBuckets : reduced.values()) {
+            result.add(sameKeyBuckets.get(0).reduce(sameKeyBuckets, reduceContext));
+        }
+        return new InternalComposite(name, size, sourceNames, formats, reverseMuls, result, pipelineAggregators(), getMetaData());
+    }
+
+    @Override
+    public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        Map<String, Object> afterKey = afterKey();
+        if (afterKey != null) {
+            builder.field(CompositeAggregationBuilder.AFTER_KEY_FIELD.getPreferredName(), afterKey);
+        }
+        builder.startArray(CommonFields.BUCKETS);
+        for (InternalBucket bucket : buckets) {
+            bucket.toXContent(builder, params);
+        }
+        builder.endArray();
+        return builder;
+    }
+
+    /**
+     * Renders a composite key as a map of source names to values. Binary values are formatted to strings, numbers are
+     * returned as is so that the key can be sent back as the <code>after</code> key of the next request.
+     */
+    static Map<String, Object> formatKey(List<String> sourceNames, List<DocValueFormat> formats, CompositeKey key) {
+        Map<String, Object> map = new LinkedHashMap<>(key.size());
+        for (int i = 0; i < key.size(); i++) {
+            Object value = key.get(i);
+            if (value instanceof BytesRef) {
+                value = formats.get(i).format((BytesRef) value);
+            }
+            map.put(sourceNames.get(i), value);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
+import org.elasticsearch.search.aggregations.support.ValuesSourceType;
+
+import java.io.IOException;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A {@link CompositeValuesSourceBuilder} that uses the values of a field or script as is, like the <code>terms</code>
+ * aggregation.
+ */
+public class TermsValuesSourceBuilder extends CompositeValuesSourceBuilder<TermsValuesSourceBuilder> {
+    static final String TYPE = "terms";
+
+    public TermsValuesSourceBuilder(String name) {
+        super(name);
+    }
+
+    /**
+     * Read from a stream.
+     */
+    protected TermsValuesSourceBuilder(StreamInput in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected void innerWriteTo(StreamOutput out) throws IOException {
+    }
+
+    @Override
+    protected String type() {
+        return TYPE;
+    }
+
+    @Override
+    protected ValuesSourceType valuesSourceType() {
+        return ValuesSourceType.ANY;
+    }
+
+    @Override
+    protected CompositeValuesSource innerBuild(AggregationContext context, ValuesSourceConfig<?> config) throws IOException {
+        ValuesSource valuesSource = context.valuesSource(config, context.searchContext());
+        if (valuesSource == null) {
+            valuesSource = config.valueSourceType() == ValuesSourceType.NUMERIC ?
+                ValuesSource.Numeric.EMPTY : ValuesSource.Bytes.WithOrdinals.EMPTY;
+        }
+        if (valuesSource instanceof ValuesSource.Numeric) {
+            ValuesSource.Numeric numeric = (ValuesSource.Numeric) valuesSource;
+            if (numeric.isFloatingPoint()) {
+                return new CompositeValuesSource.DoubleSource(name, config.format(), order(), numeric, DoubleUnaryOperator.identity());
+            }
+            return new CompositeValuesSource.LongSource(name, config.format(), order(), numeric, LongUnaryOperator.identity());
+        } else if (valuesSource instanceof ValuesSource.Bytes) {
+            return new CompositeValuesSource.BytesSource(name, config.format(), order(), (ValuesSource.Bytes) valuesSource);
+        }
+        throw new IllegalArgumentException("[" + TYPE + "] source [" + name + "] doesn't support values of type ["
+            + config.valueSourceType() + "]");
+    }
+
+    @Override
+    protected void doXContentBody(XContentBuilder builder, Params params) throws IOException {
+    }
+
+    @Override
+    protected boolean innerParseField(String currentFieldName, XContentParser.Token token, QueryParseContext context) {
+        return false;
+    }
+
+    @Override
+    protected int innerHashCode() {
+        return 0;
+    }
+
+    @Override
+    protected boolean innerEquals(CompositeValuesSourceBuilder<?> other) {
+        return true;
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.bucket.histogram;
 
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.rounding.DateTimeUnit;
@@ -35,6 +36,7 @@ import org.elasticsearch.search.aggregations.support.ValuesSourceAggregationBuil
 import org.elasticsearch.search.aggregations.support.ValuesSourceAggregatorFactory;
 import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
 import org.elasticsearch.search.aggregations.support.ValuesSourceType;
+import org.joda.time.DateTimeZone;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -285,6 +287,15 @@ public class DateHistogramAggregationBuilder
     }
 
     private Rounding createRounding() {
+        return createRounding(dateHistogramInterval, interval, timeZone());
+    }
+
+    /**
+     * Creates the rounding of a date histogram with the given interval, either a {@link DateHistogramInterval} or a number of
+     * milliseconds if the former is <code>null</code>, in the given time zone.
+     */
+    public static Rounding createRounding(@Nullable DateHistogramInterval dateHistogramInterval, long interval,
+                                          @Nullable DateTimeZone timeZone) {
         Rounding.Builder tzRoundingBuilder;
         if (dateHistogramInterval != null) {
             DateTimeUnit dateTimeUnit = DATE_FIELD_UNITS.get(dateHistogramInterval.toString());
@@ -292,15 +303,15 @@ public class DateHistogramAggregationBuilder
                 tzRoundingBuilder = Rounding.builder(dateTimeUnit);
             } else {
                 // the interval is a time value?
-                tzRoundingBuilder = Rounding.builder(
-                        TimeValue.parseTimeValue(dateHistogramInterval.toString(), null, getClass().getSimpleName() + ".interval"));
+                tzRoundingBuilder = Rounding.builder(TimeValue.parseTimeValue(dateHistogramInterval.toString(), null,
+                        DateHistogramAggregationBuilder.class.getSimpleName() + ".interval"));
             }
         } else {
             // the interval is an integer time value in millis?
             tzRoundingBuilder = Rounding.builder(TimeValue.timeValueMillis(interval));
         }
-        if (timeZone() != null) {
-            tzRoundingBuilder.timeZone(timeZone());
+        if (timeZone != null) {
+            tzRoundingBuilder.timeZone(timeZone);
         }
         Rounding rounding = tzRoundingBuilder.build();
         return rounding;
@@ -19,6 +19,7 @@
 package org.elasticsearch.search.aggregations.bucket.histogram;
 
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PointValues;
 import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.util.CollectionUtil;
 import org.elasticsearch.common.inject.internal.Nullable;
@@ -31,6 +32,7 @@ import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
+import org.elasticsearch.search.aggregations.bucket.BucketCountsFromPoints;
 import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
@@ -41,11 +43,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
 
 /**
  * An aggregator for date values. Every date is rounded down using a configured
  * {@link Rounding}.
  *
+ * When the aggregation may count its buckets from the points of its field (see
+ * {@link BucketCountsFromPoints}), segments are not collected but their points tree
+ * is walked instead: cells whose minimum and maximum values round to the same key
+ * contribute all their documents to that bucket at once.
+ *
  * @see Rounding
  */
 class DateHistogramAggregator extends BucketsAggregator {
@@ -62,10 +71,16 @@ class DateHistogramAggregator extends BucketsAggregator {
     private final LongHash bucketOrds;
     private long offset;
 
+    private final String pointsField;
+    private final ToLongFunction<byte[]> pointDecoder;
+    private int segmentsCountedFromPoints;
+    private int segmentsCollected;
+
     public DateHistogramAggregator(String name, AggregatorFactories factories, Rounding rounding, long offset, InternalOrder order,
             boolean keyed,
             long minDocCount, @Nullable ExtendedBounds extendedBounds, @Nullable ValuesSource.Numeric valuesSource,
-            DocValueFormat formatter, AggregationContext aggregationContext,
+            DocValueFormat formatter, @Nullable String pointsField, @Nullable ToLongFunction<byte[]> pointDecoder,
+            AggregationContext aggregationContext,
             Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
 
         super(name, factories, aggregationContext, parent, pipelineAggregators, metaData);
@@ -77,6 +92,9 @@ class DateHistogramAggregator extends BucketsAggregator {
         this.extendedBounds = extendedBounds;
         this.valuesSource = valuesSource;
         this.formatter = formatter;
+        assert (pointsField == null) == (pointDecoder == null);
+        this.pointsField = pointsField;
+        this.pointDecoder = pointDecoder;
 
         bucketOrds = new LongHash(1, aggregationContext.bigArrays());
     }
@@ -92,6 +110,17 @@ class DateHistogramAggregator extends BucketsAggregator {
         if (valuesSource == null) {
             return LeafBucketCollector.NO_OP_COLLECTOR;
         }
+        if (pointsField != null) {
+            final PointValues points = BucketCountsFromPoints.pointValues(ctx, pointsField);
+            if (points != null) {
+                PointsVisitor visitor = new PointsVisitor();
+                points.intersect(pointsField, visitor);
+                visitor.flush();
+                segmentsCountedFromPoints++;
+                return LeafBucketCollector.NO_OP_COLLECTOR;
+            }
+        }
+        segmentsCollected++;
         final SortedNumericDocValues values = valuesSource.longValues(ctx);
         return new LeafBucketCollectorBase(sub, values) {
             @Override
@@ -121,6 +150,64 @@ class DateHistogramAggregator extends BucketsAggregator {
         };
     }
 
+    private long round(long value) {
+        return rounding.round(value - offset) + offset;
+    }
+
+    private long bucketOrd(long rounded) {
+        long bucketOrd = bucketOrds.add(rounded);
+        if (bucketOrd < 0) { // already seen
+            return -1 - bucketOrd;
+        }
+        grow(bucketOrd + 1);
+        return bucketOrd;
+    }
+
+    /**
+     * Counts the documents of a segment per bucket from its points. Documents of cells that are fully
+     * contained in a bucket are only counted, and added to the bucket of the cell in a single increment.
+     */
+    private class PointsVisitor implements PointValues.IntersectVisitor {
+
+        private long cellBucketOrd = -1;
+        private int cellDocCount;
+
+        @Override
+        public void visit(int docID) {
+            cellDocCount++;
+        }
+
+        @Override
+        public void visit(int docID, byte[] packedValue) {
+            incrementBucketDocCount(bucketOrd(round(pointDecoder.applyAsLong(packedValue))), 1);
+        }
+
+        @Override
+        public PointValues.Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+            flush();
+            final long min = round(pointDecoder.applyAsLong(minPackedValue));
+            final long max = round(pointDecoder.applyAsLong(maxPackedValue));
+            if (min == max) {
+                cellBucketOrd = bucketOrd(min);
+                return PointValues.Relation.CELL_INSIDE_QUERY;
+            }
+            return PointValues.Relation.CELL_CROSSES_QUERY;
+        }
+
+        void flush() {
+            if (cellDocCount > 0) {
+                incrementBucketDocCount(cellBucketOrd, cellDocCount);
+                cellDocCount = 0;
+            }
+        }
+    }
+
+    @Override
+    public void collectDebugInfo(BiConsumer<String, Object> add) {
+        add.accept("segments_counted_from_points", segmentsCountedFromPoints);
+        add.accept("segments_collected", segmentsCollected);
+    }
+
     @Override
     public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
         assert owningBucketOrdinal == 0;
@@ -24,12 +24,14 @@ import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
 import org.elasticsearch.search.aggregations.InternalAggregation.Type;
+import org.elasticsearch.search.aggregations.bucket.BucketCountsFromPoints;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.function.ToLongFunction;
 
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
@@ -73,18 +75,26 @@ public final class DateHistogramAggregatorFactory
         if (collectsFromSingleBucket == false) {
             return asMultiBucketAggregator(this, context, parent);
         }
-        return createAggregator(valuesSource, parent, pipelineAggregators, metaData);
+        String pointsField = BucketCountsFromPoints.pointsField(context, parent, factories, config);
+        ToLongFunction<byte[]> pointDecoder = null;
+        if (pointsField != null) {
+            pointDecoder = BucketCountsFromPoints.longDecoder(config.fieldContext().fieldType());
+            if (pointDecoder == null) {
+                pointsField = null;
+            }
+        }
+        return createAggregator(valuesSource, pointsField, pointDecoder, parent, pipelineAggregators, metaData);
     }
 
-    private Aggregator createAggregator(ValuesSource.Numeric valuesSource, Aggregator parent, List<PipelineAggregator> pipelineAggregators,
-            Map<String, Object> metaData) throws IOException {
+    private Aggregator createAggregator(ValuesSource.Numeric valuesSource, String pointsField, ToLongFunction<byte[]> pointDecoder,
+            Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
         return new DateHistogramAggregator(name, factories, rounding, offset, order, keyed, minDocCount, extendedBounds, valuesSource,
-                config.format(), context, parent, pipelineAggregators, metaData);
+                config.format(), pointsField, pointDecoder, context, parent, pipelineAggregators, metaData);
     }
 
     @Override
     protected Aggregator createUnmapped(Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData)
             throws IOException {
-        return createAggregator(null, parent, pipelineAggregators, metaData);
+        return createAggregator(null, null, null, parent, pipelineAggregators, metaData);
     }
 }
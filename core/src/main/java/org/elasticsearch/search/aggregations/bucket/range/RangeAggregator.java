@@ -19,6 +19,8 @@
 package org.elasticsearch.search.aggregations.bucket.range;
 
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PointValues;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.ParseFieldMatcher;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -36,6 +38,7 @@ import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
 import org.elasticsearch.search.aggregations.NonCollectingAggregator;
+import org.elasticsearch.search.aggregations.bucket.BucketCountsFromPoints;
 import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
@@ -47,6 +50,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.ToDoubleFunction;
 
 public class RangeAggregator extends BucketsAggregator {
 
@@ -205,9 +210,26 @@ public class RangeAggregator extends BucketsAggregator {
 
     final double[] maxTo;
 
+    final String pointsField;
+    final ToDoubleFunction<byte[]> pointDecoder;
+    private int segmentsCountedFromPoints;
+    private int segmentsCollected;
+
     public RangeAggregator(String name, AggregatorFactories factories, ValuesSource.Numeric valuesSource, DocValueFormat format,
             InternalRange.Factory rangeFactory, Range[] ranges, boolean keyed, AggregationContext aggregationContext,
             Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+        this(name, factories, valuesSource, format, rangeFactory, ranges, keyed, null, null, aggregationContext, parent,
+                pipelineAggregators, metaData);
+    }
+
+    /**
+     * Creates a range aggregator that counts the documents of its ranges from the points of {@code pointsField}
+     * on segments where it is possible, see {@link BucketCountsFromPoints}.
+     */
+    public RangeAggregator(String name, AggregatorFactories factories, ValuesSource.Numeric valuesSource, DocValueFormat format,
+            InternalRange.Factory rangeFactory, Range[] ranges, boolean keyed, @Nullable String pointsField,
+            @Nullable ToDoubleFunction<byte[]> pointDecoder, AggregationContext aggregationContext,
+            Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
 
         super(name, factories, aggregationContext, parent, pipelineAggregators, metaData);
         assert valuesSource != null;
@@ -224,6 +246,9 @@ public class RangeAggregator extends BucketsAggregator {
             maxTo[i] = Math.max(this.ranges[i].to,maxTo[i-1]);
         }
 
+        assert (pointsField == null) == (pointDecoder == null);
+        this.pointsField = pointsField;
+        this.pointDecoder = pointDecoder;
     }
 
     @Override
@@ -234,6 +259,20 @@ public class RangeAggregator extends BucketsAggregator {
     @Override
     public LeafBucketCollector getLeafCollector(LeafReaderContext ctx,
             final LeafBucketCollector sub) throws IOException {
+        if (pointsField != null) {
+            final PointValues points = BucketCountsFromPoints.pointValues(ctx, pointsField);
+            if (points != null) {
+                grow(ranges.length);
+                for (int i = 0; i < ranges.length; ++i) {
+                    PointsVisitor visitor = new PointsVisitor(ranges[i], pointDecoder);
+                    points.intersect(pointsField, visitor);
+                    incrementBucketDocCount(subBucketOrdinal(0, i), visitor.docCount);
+                }
+                segmentsCountedFromPoints++;
+                return LeafBucketCollector.NO_OP_COLLECTOR;
+            }
+        }
+        segmentsCollected++;
         final SortedNumericDoubleValues values = valuesSource.doubleValues(ctx);
         return new LeafBucketCollectorBase(sub, values) {
             @Override
@@ -301,6 +340,53 @@ public class RangeAggregator extends BucketsAggregator {
         return owningBucketOrdinal * ranges.length + rangeOrd;
     }
 
+    /**
+     * Counts the documents of a segment whose value falls in a range from its points, cells that are
+     * fully contained in the range are counted without decoding their values.
+     */
+    static class PointsVisitor implements PointValues.IntersectVisitor {
+
+        private final Range range;
+        private final ToDoubleFunction<byte[]> pointDecoder;
+        int docCount;
+
+        PointsVisitor(Range range, ToDoubleFunction<byte[]> pointDecoder) {
+            this.range = range;
+            this.pointDecoder = pointDecoder;
+        }
+
+        @Override
+        public void visit(int docID) {
+            docCount++;
+        }
+
+        @Override
+        public void visit(int docID, byte[] packedValue) {
+            if (range.matches(pointDecoder.applyAsDouble(packedValue))) {
+                docCount++;
+            }
+        }
+
+        @Override
+        public PointValues.Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+            final double min = pointDecoder.applyAsDouble(minPackedValue);
+            final double max = pointDecoder.applyAsDouble(maxPackedValue);
+            if (max < range.from || min >= range.to) {
+                return PointValues.Relation.CELL_OUTSIDE_QUERY;
+            }
+            if (range.matches(min) && range.matches(max)) {
+                return PointValues.Relation.CELL_INSIDE_QUERY;
+            }
+            return PointValues.Relation.CELL_CROSSES_QUERY;
+        }
+    }
+
+    @Override
+    public void collectDebugInfo(BiConsumer<String, Object> add) {
+        add.accept("segments_counted_from_points", segmentsCountedFromPoints);
+        add.accept("segments_collected", segmentsCollected);
+    }
+
     @Override
     public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
         List<org.elasticsearch.search.aggregations.bucket.range.Range.Bucket> buckets = new ArrayList<>(ranges.length);
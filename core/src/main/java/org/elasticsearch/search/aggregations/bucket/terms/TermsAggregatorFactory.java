@@ -153,6 +153,12 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory<Values
                     }
                 }
             }
+            if (includeExclude != null && includeExclude.isPartitionBased()
+                    && (execution == ExecutionMode.GLOBAL_ORDINALS || execution == ExecutionMode.GLOBAL_ORDINALS_LOW_CARDINALITY)) {
+                // a partition only collects a fraction of the terms, dense global ordinals would still size the counts and
+                // sub-aggregations by the total number of terms of the shard so we always remap them with a hash
+                execution = ExecutionMode.GLOBAL_ORDINALS_HASH;
+            }
             SubAggCollectionMode cm = collectMode;
             if (cm == null) {
                 cm = SubAggCollectionMode.DEPTH_FIRST;
@@ -48,12 +48,15 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * An aggregator that computes approximate counts of unique values.
+ * An aggregator that computes approximate counts of unique values. When the values are pre-aggregated
+ * {@link HyperLogLogPlusPlus} sketches, as indexed by {@link org.elasticsearch.index.mapper.HllFieldMapper},
+ * they are merged into the counts directly rather than hashed.
  */
 public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue {
 
     private final int precision;
     private final ValuesSource valuesSource;
+    private final boolean sketches;
 
     // Expensive to initialize, so we only initialize it when we have an actual value source
     @Nullable
@@ -63,9 +66,18 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
 
     public CardinalityAggregator(String name, ValuesSource valuesSource, int precision,
             AggregationContext context, Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+        this(name, valuesSource, precision, false, context, parent, pipelineAggregators, metaData);
+    }
+
+    /**
+     * @param sketches whether the values of the values source are serialized sketches that need to be merged
+     */
+    public CardinalityAggregator(String name, ValuesSource valuesSource, int precision, boolean sketches, AggregationContext context,
+            Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
         super(name, context, parent, pipelineAggregators, metaData);
         this.valuesSource = valuesSource;
         this.precision = precision;
+        this.sketches = sketches;
         this.counts = valuesSource == null ? null : new HyperLogLogPlusPlus(precision, context.bigArrays(), 1);
     }
 
@@ -79,6 +91,10 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
             return new EmptyCollector();
         }
 
+        if (sketches) {
+            return new SketchCollector(counts, valuesSource.bytesValues(ctx));
+        }
+
         if (valuesSource instanceof ValuesSource.Numeric) {
             ValuesSource.Numeric source = (ValuesSource.Numeric) valuesSource;
             MurmurHash3Values hashValues = source.isFloatingPoint() ? MurmurHash3Values.hash(source.doubleValues(ctx)) : MurmurHash3Values.hash(source.longValues(ctx));
@@ -211,6 +227,37 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
 
     }
 
+    private static class SketchCollector extends Collector {
+
+        private final HyperLogLogPlusPlus counts;
+        private final SortedBinaryDocValues values;
+
+        SketchCollector(HyperLogLogPlusPlus counts, SortedBinaryDocValues values) {
+            this.counts = counts;
+            this.values = values;
+        }
+
+        @Override
+        public void collect(int doc, long bucketOrd) throws IOException {
+            values.setDocument(doc);
+            final int valueCount = values.count();
+            for (int i = 0; i < valueCount; ++i) {
+                counts.merge(bucketOrd, values.valueAt(i));
+            }
+        }
+
+        @Override
+        public void postCollect() {
+            // no-op
+        }
+
+        @Override
+        public void close() {
+            // no-op
+        }
+
+    }
+
     private static class OrdinalsCollector extends Collector {
 
         private static final long SHALLOW_FIXEDBITSET_SIZE = RamUsageEstimator.shallowSizeOfInstance(FixedBitSet.class);
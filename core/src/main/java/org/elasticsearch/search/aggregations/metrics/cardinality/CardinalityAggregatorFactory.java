@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.metrics.cardinality;
 
+import org.elasticsearch.index.mapper.HllFieldMapper;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
@@ -53,6 +54,12 @@ public class CardinalityAggregatorFactory extends ValuesSourceAggregatorFactory<
     @Override
     protected Aggregator doCreateInternal(ValuesSource valuesSource, Aggregator parent, boolean collectsFromSingleBucket,
             List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+        if (config.script() == null && config.fieldContext() != null
+                && config.fieldContext().fieldType() instanceof HllFieldMapper.HllFieldType) {
+            // sketches can only be merged into counts of the same precision, so the mapping wins over the precision threshold
+            int precision = ((HllFieldMapper.HllFieldType) config.fieldContext().fieldType()).precision();
+            return new CardinalityAggregator(name, valuesSource, precision, true, context, parent, pipelineAggregators, metaData);
+        }
         return new CardinalityAggregator(name, valuesSource, precision(), context, parent, pipelineAggregators,
                 metaData);
     }
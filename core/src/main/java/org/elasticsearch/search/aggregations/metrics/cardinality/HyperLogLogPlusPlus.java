@@ -199,7 +199,8 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     public void merge(long thisBucket, HyperLogLogPlusPlus other, long otherBucket) {
         if (p != other.p) {
-            throw new IllegalArgumentException();
+            throw new IllegalArgumentException("Cannot merge a sketch of precision [" + other.p
+                    + "] into a sketch of precision [" + p + "]");
         }
         ensureCapacity(thisBucket + 1);
         if (other.algorithm.get(otherBucket) == LINEAR_COUNTING) {
@@ -228,6 +229,52 @@ public final class HyperLogLogPlusPlus implements Releasable {
         }
     }
 
+    /**
+     * Merge a sketch that was serialized with {@link #writeTo(long, StreamOutput)} into the given bucket. The sketch is
+     * decoded straight from its bytes since this is called for every document that holds a pre-aggregated sketch.
+     */
+    public void merge(long thisBucket, BytesRef sketch) {
+        final byte[] bytes = sketch.bytes;
+        int pos = sketch.offset;
+        // the precision is written as a vInt but always fits in a single byte
+        final int precision = bytes[pos++];
+        if (p != precision) {
+            throw new IllegalArgumentException("Cannot merge a sketch of precision [" + precision
+                    + "] into a sketch of precision [" + p + "]");
+        }
+        ensureCapacity(thisBucket + 1);
+        if ((bytes[pos++] != 0) == LINEAR_COUNTING) {
+            long size = 0;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = bytes[pos++];
+                size |= (b & 0x7FL) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            for (long i = 0; i < size; ++i, pos += Integer.BYTES) {
+                final int encoded = ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16)
+                        | ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
+                if (algorithm.get(thisBucket) == LINEAR_COUNTING) {
+                    collectLcEncoded(thisBucket, encoded);
+                } else {
+                    collectHllEncoded(thisBucket, encoded);
+                }
+            }
+        } else {
+            if (algorithm.get(thisBucket) != HYPERLOGLOG) {
+                upgradeToHll(thisBucket);
+            }
+            final long thisStart = thisBucket << p;
+            for (int i = 0; i < m; ++i) {
+                final byte runLen = bytes[pos + i];
+                if (runLen > runLens.get(thisStart + i)) {
+                    runLens.set(thisStart + i, runLen);
+                }
+            }
+        }
+    }
+
     public void collect(long bucket, long hash) {
         ensureCapacity(bucket + 1);
         if (algorithm.get(bucket) == LINEAR_COUNTING) {
@@ -533,6 +580,27 @@ public final class HyperLogLogPlusPlus implements Releasable {
         }
     }
 
+    /**
+     * Checks that the stream holds exactly one sketch of the given precision, as serialized by
+     * {@link #writeTo(long, StreamOutput)}.
+     */
+    public static void validate(StreamInput in, int precision) throws IOException {
+        final int p = in.readVInt();
+        if (p != precision) {
+            throw new IllegalArgumentException("Expected a sketch of precision [" + precision + "] but got [" + p + "]");
+        }
+        final long expectedLength;
+        if (in.readBoolean() == LINEAR_COUNTING) {
+            expectedLength = in.readVLong() * Integer.BYTES;
+        } else {
+            expectedLength = 1L << p;
+        }
+        final int length = in.available();
+        if (length != expectedLength) {
+            throw new IllegalArgumentException("Expected [" + expectedLength + "] bytes of sketch data but got [" + length + "]");
+        }
+    }
+
     public static HyperLogLogPlusPlus readFrom(StreamInput in, BigArrays bigArrays) throws IOException {
         final int precision = in.readVInt();
         HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(precision, bigArrays, 1);
@@ -40,12 +40,23 @@ import java.util.Map;
 public class InternalScriptedMetric extends InternalMetricsAggregation implements ScriptedMetric {
     private final Script reduceScript;
     private final Object aggregation;
+    /**
+     * <code>true</code> if this is the result of a partial reduce phase, in which case {@link #aggregation} holds the list of the
+     * not yet reduced shard level objects. Partial results never leave the coordinating node so this flag is not serialized.
+     */
+    private final boolean partiallyReduced;
 
     public InternalScriptedMetric(String name, Object aggregation, Script reduceScript, List<PipelineAggregator> pipelineAggregators,
             Map<String, Object> metaData) {
+        this(name, aggregation, reduceScript, false, pipelineAggregators, metaData);
+    }
+
+    private InternalScriptedMetric(String name, Object aggregation, Script reduceScript, boolean partiallyReduced,
+            List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) {
         super(name, pipelineAggregators, metaData);
         this.aggregation = aggregation;
         this.reduceScript = reduceScript;
+        this.partiallyReduced = partiallyReduced;
     }
 
     /**
@@ -55,6 +66,7 @@ public class InternalScriptedMetric extends InternalMetricsAggregation implement
         super(in);
         reduceScript = in.readOptionalWriteable(Script::new);
         aggregation = in.readGenericValue();
+        partiallyReduced = false;
     }
 
     @Override
@@ -78,9 +90,18 @@ public class InternalScriptedMetric extends InternalMetricsAggregation implement
         List<Object> aggregationObjects = new ArrayList<>();
         for (InternalAggregation aggregation : aggregations) {
             InternalScriptedMetric mapReduceAggregation = (InternalScriptedMetric) aggregation;
-            aggregationObjects.add(mapReduceAggregation.aggregation());
+            if (mapReduceAggregation.partiallyReduced) {
+                aggregationObjects.addAll((List<?>) mapReduceAggregation.aggregation());
+            } else {
+                aggregationObjects.add(mapReduceAggregation.aggregation());
+            }
         }
         InternalScriptedMetric firstAggregation = ((InternalScriptedMetric) aggregations.get(0));
+        if (reduceContext.isFinalReduce() == false) {
+            // we have to keep all the shard level objects to apply the reduce script to all of them in the final reduce phase
+            return new InternalScriptedMetric(firstAggregation.getName(), aggregationObjects, firstAggregation.reduceScript, true,
+                    pipelineAggregators(), getMetaData());
+        }
         Object aggregation;
         if (firstAggregation.reduceScript != null) {
             Map<String, Object> vars = new HashMap<>();
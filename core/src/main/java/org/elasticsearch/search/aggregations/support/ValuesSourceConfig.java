@@ -18,8 +18,16 @@
  */
 package org.elasticsearch.search.aggregations.support;
 
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexGeoPointFieldData;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptContext;
 import org.elasticsearch.script.SearchScript;
 import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.internal.SearchContext;
 import org.joda.time.DateTimeZone;
 
 public class ValuesSourceConfig<VS extends ValuesSource> {
@@ -107,4 +115,91 @@ public class ValuesSourceConfig<VS extends ValuesSource> {
     public DocValueFormat format() {
         return format;
     }
+
+    /**
+     * Resolves the values source config of the given field or script, used by aggregations that read values from a field or script.
+     */
+    public static <VS extends ValuesSource> ValuesSourceConfig<VS> resolve(AggregationContext context, @Nullable ValueType valueType,
+            @Nullable String field, @Nullable Script script, @Nullable Object missing, @Nullable DateTimeZone timeZone,
+            @Nullable String format, ValuesSourceType valuesSourceType) {
+        if (field == null) {
+            if (script == null) {
+                @SuppressWarnings("unchecked")
+                ValuesSourceConfig<VS> config = new ValuesSourceConfig(ValuesSourceType.ANY);
+                config.format(resolveFormat(null, valueType));
+                return config;
+            }
+            ValuesSourceType scriptValuesSourceType = valueType != null ? valueType.getValuesSourceType() : valuesSourceType;
+            if (scriptValuesSourceType == null || scriptValuesSourceType == ValuesSourceType.ANY) {
+                // the specific value source type is undefined, but for scripts,
+                // we need to have a specific value source
+                // type to know how to handle the script values, so we fallback
+                // on Bytes
+                scriptValuesSourceType = ValuesSourceType.BYTES;
+            }
+            ValuesSourceConfig<VS> config = new ValuesSourceConfig<VS>(scriptValuesSourceType);
+            config.missing(missing);
+            config.timezone(timeZone);
+            config.format(resolveFormat(format, valueType));
+            config.script(createScript(script, context.searchContext()));
+            config.scriptValueType(valueType);
+            return config;
+        }
+
+        MappedFieldType fieldType = context.searchContext().smartNameFieldType(field);
+        if (fieldType == null) {
+            ValuesSourceType unmappedValuesSourceType = valueType != null ? valueType.getValuesSourceType() : valuesSourceType;
+            ValuesSourceConfig<VS> config = new ValuesSourceConfig<>(unmappedValuesSourceType);
+            config.missing(missing);
+            config.timezone(timeZone);
+            config.format(resolveFormat(format, valueType));
+            config.unmapped(true);
+            if (valueType != null) {
+                // todo do we really need this for unmapped?
+                config.scriptValueType(valueType);
+            }
+            return config;
+        }
+
+        IndexFieldData<?> indexFieldData = context.searchContext().fieldData().getForField(fieldType);
+
+        ValuesSourceConfig<VS> config;
+        if (valuesSourceType == ValuesSourceType.ANY) {
+            if (indexFieldData instanceof IndexNumericFieldData) {
+                config = new ValuesSourceConfig<>(ValuesSourceType.NUMERIC);
+            } else if (indexFieldData instanceof IndexGeoPointFieldData) {
+                config = new ValuesSourceConfig<>(ValuesSourceType.GEOPOINT);
+            } else {
+                config = new ValuesSourceConfig<>(ValuesSourceType.BYTES);
+            }
+        } else {
+            config = new ValuesSourceConfig(valuesSourceType);
+        }
+
+        config.fieldContext(new FieldContext(field, indexFieldData, fieldType));
+        config.missing(missing);
+        config.timezone(timeZone);
+        config.script(createScript(script, context.searchContext()));
+        config.format(fieldType.docValueFormat(format, timeZone));
+        return config;
+    }
+
+    private static SearchScript createScript(Script script, SearchContext context) {
+        if (script == null) {
+            return null;
+        } else {
+            return context.getQueryShardContext().getSearchScript(script, ScriptContext.Standard.AGGS);
+        }
+    }
+
+    private static DocValueFormat resolveFormat(@Nullable String format, @Nullable ValueType valueType) {
+        if (valueType == null) {
+            return DocValueFormat.RAW; // we can't figure it out
+        }
+        DocValueFormat valueFormat = valueType.defaultFormat;
+        if (valueFormat instanceof DocValueFormat.Decimal && format != null) {
+            valueFormat = new DocValueFormat.Decimal(format);
+        }
+        return valueFormat;
+    }
 }
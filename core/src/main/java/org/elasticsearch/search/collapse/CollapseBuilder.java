@@ -0,0 +1,215 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.collapse;
+
+import org.elasticsearch.action.support.ToXContentToBytes;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ObjectParser;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.mapper.KeywordFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.index.query.InnerHitBuilder;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.search.SearchContextException;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * A builder that enables field collapsing on search request. The top hits are collapsed on the values of a single valued
+ * <code>keyword</code> or numeric field with doc values so that only the best hit of each value is returned. Each of these
+ * hits can optionally be expanded with the top hits of its group through {@link #setInnerHits(InnerHitBuilder)}.
+ */
+public class CollapseBuilder extends ToXContentToBytes implements Writeable {
+    public static final ParseField FIELD_FIELD = new ParseField("field");
+    public static final ParseField INNER_HITS_FIELD = new ParseField("inner_hits");
+    public static final ParseField MAX_CONCURRENT_GROUP_REQUESTS_FIELD = new ParseField("max_concurrent_group_searches");
+    private static final ObjectParser<CollapseBuilder, QueryParseContext> PARSER =
+        new ObjectParser<>("collapse", CollapseBuilder::new);
+
+    static {
+        PARSER.declareString(CollapseBuilder::setField, FIELD_FIELD);
+        PARSER.declareInt(CollapseBuilder::setMaxConcurrentGroupRequests, MAX_CONCURRENT_GROUP_REQUESTS_FIELD);
+        PARSER.declareObject(CollapseBuilder::setInnerHits, (p, c) -> {
+            try {
+                return InnerHitBuilder.fromXContent(c);
+            } catch (IOException e) {
+                throw new ParsingException(p.getTokenLocation(), "Could not parse inner_hits definition", e);
+            }
+        }, INNER_HITS_FIELD);
+    }
+
+    private String field;
+    private InnerHitBuilder innerHit;
+    private int maxConcurrentGroupRequests = 0;
+
+    private CollapseBuilder() {}
+
+    /**
+     * Public constructor
+     * @param field The name of the field to collapse on
+     */
+    public CollapseBuilder(String field) {
+        Objects.requireNonNull(field, "field must be non-null");
+        this.field = field;
+    }
+
+    public CollapseBuilder(StreamInput in) throws IOException {
+        this.field = in.readString();
+        this.maxConcurrentGroupRequests = in.readVInt();
+        this.innerHit = in.readOptionalWriteable(InnerHitBuilder::new);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(field);
+        out.writeVInt(maxConcurrentGroupRequests);
+        out.writeOptionalWriteable(innerHit);
+    }
+
+    public static CollapseBuilder fromXContent(QueryParseContext context) throws IOException {
+        CollapseBuilder builder = PARSER.parse(context.parser(), new CollapseBuilder(), context);
+        if (builder.field == null) {
+            throw new ParsingException(context.parser().getTokenLocation(),
+                "[collapse] requires a [" + FIELD_FIELD.getPreferredName() + "]");
+        }
+        return builder;
+    }
+
+    // for object parser only
+    private CollapseBuilder setField(String field) {
+        if (Strings.isEmpty(field)) {
+            throw new IllegalArgumentException("field name is null or empty");
+        }
+        this.field = field;
+        return this;
+    }
+
+    public CollapseBuilder setInnerHits(InnerHitBuilder innerHit) {
+        if (innerHit != null && innerHit.getName() == null) {
+            throw new IllegalArgumentException("[inner_hits] must have a [name] when used with [collapse]");
+        }
+        this.innerHit = innerHit;
+        return this;
+    }
+
+    public CollapseBuilder setMaxConcurrentGroupRequests(int num) {
+        if (num < 1) {
+            throw new IllegalArgumentException("maxConcurrentGroupRequests must be positive");
+        }
+        this.maxConcurrentGroupRequests = num;
+        return this;
+    }
+
+    /**
+     * The name of the field to collapse against
+     */
+    public String getField() {
+        return this.field;
+    }
+
+    /**
+     * The inner hit options to expand the collapsed results
+     */
+    public InnerHitBuilder getInnerHit() {
+        return this.innerHit;
+    }
+
+    /**
+     * Returns the amount of group requests that are allowed to be ran concurrently in the inner_hits phase, <code>0</code>
+     * means that the default of the multi search api is used.
+     */
+    public int getMaxConcurrentGroupRequests() {
+        return maxConcurrentGroupRequests;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        innerToXContent(builder);
+        builder.endObject();
+        return builder;
+    }
+
+    private void innerToXContent(XContentBuilder builder) throws IOException {
+        builder.field(FIELD_FIELD.getPreferredName(), field);
+        if (maxConcurrentGroupRequests > 0) {
+            builder.field(MAX_CONCURRENT_GROUP_REQUESTS_FIELD.getPreferredName(), maxConcurrentGroupRequests);
+        }
+        if (innerHit != null) {
+            builder.field(INNER_HITS_FIELD.getPreferredName(), innerHit);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CollapseBuilder that = (CollapseBuilder) o;
+
+        if (maxConcurrentGroupRequests != that.maxConcurrentGroupRequests) return false;
+        if (!field.equals(that.field)) return false;
+        return Objects.equals(innerHit, that.innerHit);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, innerHit, maxConcurrentGroupRequests);
+    }
+
+    /**
+     * Builds the {@link CollapseContext} of the given search context and validates that collapsing can be used with the
+     * options of the request.
+     */
+    public CollapseContext build(SearchContext context) {
+        if (context.scrollContext() != null) {
+            throw new SearchContextException(context, "cannot use `collapse` in a scroll context");
+        }
+        if (context.searchAfter() != null) {
+            throw new SearchContextException(context, "cannot use `collapse` in conjunction with `search_after`");
+        }
+        if (context.rescore() != null && context.rescore().isEmpty() == false) {
+            throw new SearchContextException(context, "cannot use `collapse` in conjunction with `rescore`");
+        }
+
+        MappedFieldType fieldType = context.getQueryShardContext().fieldMapper(field);
+        if (fieldType == null) {
+            throw new SearchContextException(context, "no mapping found for `" + field + "` in order to collapse on");
+        }
+        if (fieldType instanceof KeywordFieldMapper.KeywordFieldType == false &&
+            fieldType instanceof NumberFieldMapper.NumberFieldType == false) {
+            throw new SearchContextException(context, "unknown type for collapse field `" + field +
+                "`, only keywords and numbers are accepted");
+        }
+
+        if (fieldType.hasDocValues() == false) {
+            throw new SearchContextException(context, "cannot collapse on field `" + field + "` without `doc_values`");
+        }
+        return new CollapseContext(fieldType, innerHit);
+    }
+}
@@ -26,11 +26,18 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.io.stream.ReleasableBytesStreamOutput;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lucene.search.Queries;
 import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.text.Text;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
@@ -41,20 +48,25 @@ import org.elasticsearch.index.mapper.DocumentMapper;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.ObjectMapper;
 import org.elasticsearch.index.mapper.SourceFieldMapper;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.search.fetch.subphase.InnerHitsFetchSubPhase;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
 import org.elasticsearch.search.internal.InternalSearchHit;
 import org.elasticsearch.search.internal.InternalSearchHitField;
 import org.elasticsearch.search.internal.InternalSearchHits;
 import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.SubSearchContext;
 import org.elasticsearch.search.lookup.SourceLookup;
 import org.elasticsearch.tasks.TaskCancelledException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -70,6 +82,26 @@ import static org.elasticsearch.common.xcontent.XContentFactory.contentBuilder;
  */
 public class FetchPhase implements SearchPhase {
 
+    /**
+     * Whether the hits of the top level fetch phase should be serialized in batches as soon as they are fetched
+     * rather than kept in memory until the whole result is sent.
+     */
+    public static final Setting<Boolean> INDEX_FETCH_STREAM_HITS_SETTING =
+        Setting.boolSetting("index.fetch.stream_hits", false, Property.Dynamic, Property.IndexScope);
+
+    /** The number of hits that are kept in memory when hits are streamed, sub phases see the hits of a batch together. */
+    static final int STREAM_HITS_BATCH_SIZE = 128;
+
+    /**
+     * The size of a hit without its id, source, fields, highlights and inner hits: the hit itself and the {@link Text} and
+     * {@link String} instances of its id and type.
+     */
+    private static final long HIT_SHALLOW_SIZE = RamUsageEstimator.shallowSizeOfInstance(InternalSearchHit.class)
+        + 2 * (RamUsageEstimator.shallowSizeOfInstance(Text.class) + RamUsageEstimator.shallowSizeOfInstance(String.class));
+    /** The size of a value that is referenced from a hit, not counting the data it holds. */
+    private static final long OBJECT_SHALLOW_SIZE = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+        + RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
     private final FetchSubPhase[] fetchSubPhases;
 
     public FetchPhase(List<FetchSubPhase> fetchSubPhases) {
@@ -134,41 +166,232 @@ public class FetchPhase implements SearchPhase {
             }
         }
 
-        InternalSearchHit[] hits = new InternalSearchHit[context.docIdsToLoadSize()];
-        FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
-        for (int index = 0; index < context.docIdsToLoadSize(); index++) {
-            if(context.isCancelled()) {
-                throw new TaskCancelledException("cancelled");
+        final FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
+        final int numHits = context.docIdsToLoadSize();
+        final long totalHits = context.queryResult().topDocs().totalHits;
+        final float maxScore = context.queryResult().topDocs().getMaxScore();
+        final HitsAccounting accounting = createAccounting(context);
+        boolean success = false;
+        try {
+            if (streamHits(context)) {
+                fetchAndSerializeHits(context, hitContext, fieldsVisitor, fieldNames, fieldNamePatterns, accounting, totalHits,
+                    maxScore);
+            } else {
+                InternalSearchHit[] hits = new InternalSearchHit[numHits];
+                for (int index = 0; index < numHits; index++) {
+                    hits[index] = fetchHit(context, hitContext, fieldsVisitor, fieldNames, fieldNamePatterns, index);
+                    accounting.addHit(hits[index]);
+                }
+
+                for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
+                    fetchSubPhase.hitsExecute(context, hits);
+                }
+
+                context.fetchResult().hits(new InternalSearchHits(hits, totalHits, maxScore));
             }
-            int docId = context.docIdsToLoad()[context.docIdsToLoadFrom() + index];
-            int readerIndex = ReaderUtil.subIndex(docId, context.searcher().getIndexReader().leaves());
-            LeafReaderContext subReaderContext = context.searcher().getIndexReader().leaves().get(readerIndex);
-            int subDocId = docId - subReaderContext.docBase;
-
-            final InternalSearchHit searchHit;
-            try {
-                int rootDocId = findRootDocumentIfNested(context, subReaderContext, subDocId);
-                if (rootDocId != -1) {
-                    searchHit = createNestedSearchHit(context, docId, subDocId, rootDocId, fieldNames, fieldNamePatterns, subReaderContext);
-                } else {
-                    searchHit = createSearchHit(context, fieldsVisitor, docId, subDocId, subReaderContext);
+            if (context instanceof SubSearchContext == false) {
+                // the hits stay accounted until the result has been sent
+                context.fetchResult().addReleasable(accounting);
+            }
+            success = true;
+        } finally {
+            if (success == false) {
+                accounting.close();
+            }
+        }
+    }
+
+    /**
+     * Fetches the hits and serializes them in batches into pooled pages, only a batch of hits is kept in memory. The pages are
+     * handed over to the fetch result which releases them once it has been sent.
+     */
+    private void fetchAndSerializeHits(SearchContext context, FetchSubPhase.HitContext hitContext, FieldsVisitor fieldsVisitor,
+                                       Set<String> fieldNames, List<String> fieldNamePatterns, HitsAccounting accounting,
+                                       long totalHits, float maxScore) {
+        final int numHits = context.docIdsToLoadSize();
+        final ReleasableBytesStreamOutput out = new ReleasableBytesStreamOutput(context.bigArrays());
+        boolean success = false;
+        try {
+            out.writeVLong(totalHits);
+            out.writeFloat(maxScore);
+            out.writeVInt(numHits);
+            InternalSearchHit[] batch = new InternalSearchHit[Math.min(STREAM_HITS_BATCH_SIZE, numHits)];
+            int batchSize = 0;
+            for (int index = 0; index < numHits; index++) {
+                batch[batchSize++] = fetchHit(context, hitContext, fieldsVisitor, fieldNames, fieldNamePatterns, index);
+                accounting.addHit(batch[batchSize - 1]);
+                if (batchSize == batch.length || index == numHits - 1) {
+                    InternalSearchHit[] hits = batchSize == batch.length ? batch : Arrays.copyOf(batch, batchSize);
+                    for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
+                        fetchSubPhase.hitsExecute(context, hits);
+                    }
+                    for (InternalSearchHit hit : hits) {
+                        hit.writeTo(out);
+                    }
+                    Arrays.fill(batch, null);
+                    batchSize = 0;
+                    accounting.releaseHits();
                 }
-            } catch (IOException e) {
-                throw ExceptionsHelper.convertToElastic(e);
             }
+            accounting.addBytes(out.size());
+            context.fetchResult().serializedHits(out.bytes());
+            context.fetchResult().addReleasable(out);
+            success = true;
+        } catch (IOException e) {
+            throw ExceptionsHelper.convertToElastic(e);
+        } finally {
+            if (success == false) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Fetches the hit at the given index of the documents to load and runs the hit level sub phases on it.
+     */
+    private InternalSearchHit fetchHit(SearchContext context, FetchSubPhase.HitContext hitContext, FieldsVisitor fieldsVisitor,
+                                       Set<String> fieldNames, List<String> fieldNamePatterns, int index) {
+        if(context.isCancelled()) {
+            throw new TaskCancelledException("cancelled");
+        }
+        int docId = context.docIdsToLoad()[context.docIdsToLoadFrom() + index];
+        int readerIndex = ReaderUtil.subIndex(docId, context.searcher().getIndexReader().leaves());
+        LeafReaderContext subReaderContext = context.searcher().getIndexReader().leaves().get(readerIndex);
+        int subDocId = docId - subReaderContext.docBase;
 
-            hits[index] = searchHit;
-            hitContext.reset(searchHit, subReaderContext, subDocId, context.searcher());
-            for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
-                fetchSubPhase.hitExecute(context, hitContext);
+        final InternalSearchHit searchHit;
+        try {
+            int rootDocId = findRootDocumentIfNested(context, subReaderContext, subDocId);
+            if (rootDocId != -1) {
+                searchHit = createNestedSearchHit(context, docId, subDocId, rootDocId, fieldNames, fieldNamePatterns, subReaderContext);
+            } else {
+                searchHit = createSearchHit(context, fieldsVisitor, docId, subDocId, subReaderContext);
             }
+        } catch (IOException e) {
+            throw ExceptionsHelper.convertToElastic(e);
         }
 
+        hitContext.reset(searchHit, subReaderContext, subDocId, context.searcher());
         for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
-            fetchSubPhase.hitsExecute(context, hits);
+            fetchSubPhase.hitExecute(context, hitContext);
         }
+        return searchHit;
+    }
+
+    /**
+     * Whether the hits of this context should be serialized as they are fetched. Sub contexts like the ones of inner hits
+     * and top hits always keep their hits since they are modified after the fetch phase.
+     */
+    private static boolean streamHits(SearchContext context) {
+        return context instanceof SubSearchContext == false
+            && context.indexShard().indexSettings().getValue(INDEX_FETCH_STREAM_HITS_SETTING);
+    }
 
-        context.fetchResult().hits(new InternalSearchHits(hits, context.queryResult().topDocs().totalHits, context.queryResult().topDocs().getMaxScore()));
+    /**
+     * Creates the accounting of the hits fetched by this context against the request circuit breaker. The accounted bytes
+     * are released along with the fetch result once it has been sent. Hits of sub contexts are accounted as part of their top
+     * level hit.
+     */
+    private static HitsAccounting createAccounting(SearchContext context) {
+        final CircuitBreakerService breakerService = context.bigArrays().breakerService();
+        if (context instanceof SubSearchContext || breakerService == null) {
+            return new HitsAccounting(new NoopCircuitBreaker(CircuitBreaker.REQUEST));
+        }
+        return new HitsAccounting(breakerService.getBreaker(CircuitBreaker.REQUEST));
+    }
+
+    /**
+     * Tracks the estimated size of the fetched hits in the request circuit breaker.
+     */
+    static final class HitsAccounting implements Releasable {
+        private static final String LABEL = "<fetch>";
+
+        private final CircuitBreaker breaker;
+        private long hitsBytes;
+        private long bytes;
+
+        HitsAccounting(CircuitBreaker breaker) {
+            this.breaker = breaker;
+        }
+
+        /** Accounts the estimated size of the given hit, trips the breaker if the fetched hits use too much memory. */
+        void addHit(InternalSearchHit hit) {
+            final long hitBytes = estimateSizeInBytes(hit);
+            addBytes(hitBytes);
+            hitsBytes += hitBytes;
+        }
+
+        /** Accounts the given number of bytes, trips the breaker if the fetched hits use too much memory. */
+        void addBytes(long delta) {
+            breaker.addEstimateBytesAndMaybeBreak(delta, LABEL);
+            bytes += delta;
+        }
+
+        /** Releases the accounting of the hits added so far, once they have been serialized. */
+        void releaseHits() {
+            breaker.addWithoutBreaking(-hitsBytes);
+            bytes -= hitsBytes;
+            hitsBytes = 0;
+        }
+
+        long bytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            breaker.addWithoutBreaking(-bytes);
+            bytes = 0;
+            hitsBytes = 0;
+        }
+    }
+
+    /**
+     * Estimates the memory used by the given hit, including its source, fields, highlights and inner hits.
+     */
+    static long estimateSizeInBytes(InternalSearchHit hit) {
+        long size = HIT_SHALLOW_SIZE;
+        if (hit.id() != null) {
+            size += 2L * hit.id().length();
+        }
+        BytesReference source = hit.sourceRef();
+        if (source != null) {
+            size += source.length();
+        }
+        for (SearchHitField field : hit.getFields().values()) {
+            size += OBJECT_SHALLOW_SIZE;
+            for (Object value : field.values()) {
+                size += estimateSizeInBytes(value);
+            }
+        }
+        for (HighlightField field : hit.getHighlightFields().values()) {
+            size += OBJECT_SHALLOW_SIZE;
+            if (field.fragments() != null) {
+                for (Text fragment : field.fragments()) {
+                    size += estimateSizeInBytes(fragment);
+                }
+            }
+        }
+        if (hit.getInnerHits() != null) {
+            for (SearchHits innerHits : hit.getInnerHits().values()) {
+                for (SearchHit innerHit : innerHits.getHits()) {
+                    size += estimateSizeInBytes((InternalSearchHit) innerHit);
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long estimateSizeInBytes(Object value) {
+        if (value instanceof String) {
+            return OBJECT_SHALLOW_SIZE + 2L * ((String) value).length();
+        } else if (value instanceof Text) {
+            Text text = (Text) value;
+            return OBJECT_SHALLOW_SIZE + (text.hasBytes() ? text.bytes().length() : 2L * text.string().length());
+        } else if (value instanceof BytesReference) {
+            return OBJECT_SHALLOW_SIZE + ((BytesReference) value).length();
+        }
+        return OBJECT_SHALLOW_SIZE;
     }
 
     private int findRootDocumentIfNested(SearchContext context, LeafReaderContext subReaderContext, int subDocId) throws IOException {
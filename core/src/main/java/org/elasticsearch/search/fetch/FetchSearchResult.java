@@ -19,8 +19,13 @@
 
 package org.elasticsearch.search.fetch;
 
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.internal.InternalSearchHits;
@@ -28,11 +33,15 @@ import org.elasticsearch.transport.TransportResponse;
 
 import java.io.IOException;
 
-public class FetchSearchResult extends TransportResponse implements FetchSearchResultProvider {
+public class FetchSearchResult extends TransportResponse implements FetchSearchResultProvider, Releasable {
 
     private long id;
     private SearchShardTarget shardTarget;
     private InternalSearchHits hits;
+    // the hits serialized with the current version, see FetchPhase#INDEX_FETCH_STREAM_HITS_SETTING
+    private BytesReference serializedHits;
+    // the resources backing the hits, released once the result has been sent
+    private Releasable releasable;
     // client side counter
     private transient int counter;
 
@@ -68,6 +77,42 @@ public class FetchSearchResult extends TransportResponse implements FetchSearchR
     public void hits(InternalSearchHits hits) {
         assert assertNoSearchTarget(hits);
         this.hits = hits;
+        this.serializedHits = null;
+    }
+
+    /**
+     * Sets the hits of this result in their serialized form. The hits are only deserialized if they are accessed through
+     * {@link #hits()} or if they need to be sent to a node on a different version.
+     */
+    public void serializedHits(BytesReference serializedHits) {
+        this.hits = null;
+        this.serializedHits = serializedHits;
+    }
+
+    /**
+     * Returns the hits of this result in their serialized form, or <code>null</code> if they are held as objects.
+     */
+    public BytesReference serializedHits() {
+        return serializedHits;
+    }
+
+    /**
+     * Registers resources that back the hits of this result, like the pages the hits are serialized into or their accounting
+     * in the circuit breaker. They are released by {@link #close()} once the result has been sent.
+     */
+    public void addReleasable(Releasable releasable) {
+        this.releasable = this.releasable == null ? releasable : Releasables.wrap(this.releasable, releasable);
+    }
+
+    /**
+     * Releases the resources that back the hits of this result. Serialized hits can't be read anymore once they are released,
+     * so results that are handed over to the local node rather than written to the wire must have their hits read beforehand.
+     */
+    @Override
+    public void close() {
+        Releasable toRelease = releasable;
+        releasable = null;
+        Releasables.close(toRelease);
     }
 
     private boolean assertNoSearchTarget(InternalSearchHits hits) {
@@ -78,6 +123,14 @@ public class FetchSearchResult extends TransportResponse implements FetchSearchR
     }
 
     public InternalSearchHits hits() {
+        if (hits == null && serializedHits != null) {
+            try {
+                hits = InternalSearchHits.readSearchHits(serializedHits.streamInput());
+            } catch (IOException e) {
+                throw new ElasticsearchException("failed to read serialized hits", e);
+            }
+            serializedHits = null;
+        }
         return hits;
     }
 
@@ -107,6 +160,10 @@ public class FetchSearchResult extends TransportResponse implements FetchSearchR
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
         out.writeLong(id);
-        hits.writeTo(out);
+        if (serializedHits != null && out.getVersion().equals(Version.CURRENT)) {
+            serializedHits.writeTo(out);
+        } else {
+            hits().writeTo(out);
+        }
     }
 }
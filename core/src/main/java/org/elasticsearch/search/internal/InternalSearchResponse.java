@@ -56,17 +56,26 @@ public class InternalSearchResponse implements Streamable, ToXContent {
 
     private Boolean terminatedEarly = null;
 
+    private int numReducePhases = 1;
+
     private InternalSearchResponse() {
     }
 
     public InternalSearchResponse(InternalSearchHits hits, InternalAggregations aggregations, Suggest suggest,
                                   SearchProfileShardResults profileResults, boolean timedOut, Boolean terminatedEarly) {
+        this(hits, aggregations, suggest, profileResults, timedOut, terminatedEarly, 1);
+    }
+
+    public InternalSearchResponse(InternalSearchHits hits, InternalAggregations aggregations, Suggest suggest,
+                                  SearchProfileShardResults profileResults, boolean timedOut, Boolean terminatedEarly,
+                                  int numReducePhases) {
         this.hits = hits;
         this.aggregations = aggregations;
         this.suggest = suggest;
         this.profileResults = profileResults;
         this.timedOut = timedOut;
         this.terminatedEarly = terminatedEarly;
+        this.numReducePhases = numReducePhases;
     }
 
     public boolean timedOut() {
@@ -81,6 +90,13 @@ public class InternalSearchResponse implements Streamable, ToXContent {
         return hits;
     }
 
+    /**
+     * Returns the number of reduce phases applied to obtain this search response, including the final reduce phase
+     */
+    public int getNumReducePhases() {
+        return numReducePhases;
+    }
+
     public Aggregations aggregations() {
         return aggregations;
     }
@@ -135,6 +151,11 @@ public class InternalSearchResponse implements Streamable, ToXContent {
         timedOut = in.readBoolean();
         terminatedEarly = in.readOptionalBoolean();
         profileResults = in.readOptionalWriteable(SearchProfileShardResults::new);
+        if (in.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            numReducePhases = in.readVInt();
+        } else {
+            numReducePhases = 1;
+        }
     }
 
     @Override
@@ -155,5 +176,8 @@ public class InternalSearchResponse implements Streamable, ToXContent {
         out.writeBoolean(timedOut);
         out.writeOptionalBoolean(terminatedEarly);
         out.writeOptionalWriteable(profileResults);
+        if (out.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            out.writeVInt(numReducePhases);
+        }
     }
 }
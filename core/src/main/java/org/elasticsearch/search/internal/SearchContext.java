@@ -46,6 +46,7 @@ import org.elasticsearch.index.similarity.SimilarityService;
 import org.elasticsearch.search.SearchExtBuilder;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.aggregations.SearchContextAggregations;
+import org.elasticsearch.search.collapse.CollapseContext;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.fetch.FetchPhase;
 import org.elasticsearch.search.fetch.FetchSearchResult;
@@ -235,6 +236,12 @@ public abstract class SearchContext extends AbstractRefCounted implements Releas
      */
     public abstract boolean lowLevelCancellation();
 
+    /**
+     * The number of bytes of heap that deferred (<code>breadth_first</code>) collection may use to record doc ids and bucket
+     * ordinals before spilling them to a temporary file, <code>-1</code> if they should never be spilled.
+     */
+    public abstract long deferredCollectionSpillThreshold();
+
     public abstract SearchContext minimumScore(float minimumScore);
 
     public abstract Float minimumScore();
@@ -247,10 +254,21 @@ public abstract class SearchContext extends AbstractRefCounted implements Releas
 
     public abstract boolean trackScores();
 
+    public abstract SearchContext trackTotalHits(boolean trackTotalHits);
+
+    /**
+     * Indicates whether the total number of hits must be counted accurately, which prevents the collection from terminating early.
+     */
+    public abstract boolean trackTotalHits();
+
     public abstract SearchContext searchAfter(FieldDoc searchAfter);
 
     public abstract FieldDoc searchAfter();
 
+    public abstract SearchContext collapse(CollapseContext collapse);
+
+    public abstract CollapseContext collapse();
+
     public abstract SearchContext parsedPostFilter(ParsedQuery postFilter);
 
     public abstract ParsedQuery parsedPostFilter();
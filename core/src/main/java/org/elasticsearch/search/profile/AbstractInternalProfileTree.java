@@ -165,7 +165,7 @@ public abstract class AbstractInternalProfileTree<PB extends AbstractProfileBrea
         long nodeTime = getNodeTime(timings);
         String type = getTypeFromElement(element);
         String description = getDescriptionFromElement(element);
-        return new ProfileResult(type, description, timings, childrenProfileResults, nodeTime);
+        return new ProfileResult(type, description, timings, breakdown.toDebugMap(), childrenProfileResults, nodeTime);
     }
 
     protected abstract String getTypeFromElement(E element);
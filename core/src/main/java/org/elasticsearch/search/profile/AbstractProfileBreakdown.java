@@ -92,6 +92,11 @@ public abstract class AbstractProfileBreakdown<T extends Enum<T>> {
         return Collections.unmodifiableMap(map);
     }
 
+    /** Extra information about how this node was executed, empty unless the profiled element reports some. */
+    public Map<String, Object> toDebugMap() {
+        return Collections.emptyMap();
+    }
+
     /**
      * Add <code>other</code>'s timings into this breakdown
      * @param other Another Breakdown to merge with this one
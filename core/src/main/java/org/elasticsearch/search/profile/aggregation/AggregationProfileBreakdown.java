@@ -21,10 +21,28 @@ package org.elasticsearch.search.profile.aggregation;
 
 import org.elasticsearch.search.profile.AbstractProfileBreakdown;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 public class AggregationProfileBreakdown extends AbstractProfileBreakdown<AggregationTimingType> {
 
+    private final Map<String, Object> debug = new HashMap<>();
+
     public AggregationProfileBreakdown() {
         super(AggregationTimingType.values());
     }
 
+    /**
+     * Add extra information about how the aggregation was executed.
+     */
+    public void addDebugInfo(String key, Object value) {
+        debug.put(key, value);
+    }
+
+    @Override
+    public Map<String, Object> toDebugMap() {
+        return Collections.unmodifiableMap(debug);
+    }
+
 }
@@ -98,6 +98,7 @@ public class ProfilingAggregator extends Aggregator {
     @Override
     public void postCollection() throws IOException {
         delegate.postCollection();
+        delegate.collectDebugInfo(profileBreakdown::addDebugInfo);
     }
 
 }
@@ -0,0 +1,84 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.query;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Sort;
+
+import java.io.IOException;
+
+/**
+ * A {@link Collector} that terminates the collection of a segment once <code>numHits</code> documents have been collected, provided
+ * that the documents of the segment are sorted by the given index sort. The wrapped collector must rank documents with a sort that
+ * is equal to or a prefix of the index sort so that the first <code>numHits</code> documents of each segment are its top hits.
+ *
+ * Unlike Lucene's <code>EarlyTerminatingSortingCollector</code> the search sort is not compared to the index sort here since the
+ * sort fields of a search request use field data comparators, this check is done upfront by
+ * {@link org.elasticsearch.index.IndexSortConfig#canEarlyTerminate(Sort)}.
+ */
+final class IndexSortEarlyTerminatingCollector extends FilterCollector {
+
+    private final Sort indexSort;
+    private final int numHits;
+    private boolean terminatedEarly = false;
+
+    IndexSortEarlyTerminatingCollector(Collector in, Sort indexSort, int numHits) {
+        super(in);
+        if (numHits <= 0) {
+            throw new IllegalArgumentException("numHits must be positive but was [" + numHits + "]");
+        }
+        this.indexSort = indexSort;
+        this.numHits = numHits;
+    }
+
+    @Override
+    public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+        final LeafCollector leafCollector = super.getLeafCollector(context);
+        if (indexSort.equals(context.reader().getIndexSort()) == false) {
+            // the documents of this segment are not sorted, collect all of them
+            return leafCollector;
+        }
+        return new FilterLeafCollector(leafCollector) {
+            private int numCollected;
+
+            @Override
+            public void collect(int doc) throws IOException {
+                if (++numCollected > numHits) {
+                    // all remaining documents of this segment rank after the ones that have been collected
+                    terminatedEarly = true;
+                    throw new CollectionTerminatedException();
+                }
+                super.collect(doc);
+            }
+        };
+    }
+
+    /**
+     * Returns <code>true</code> if the collection of at least one segment was terminated early.
+     */
+    boolean terminatedEarly() {
+        return terminatedEarly;
+    }
+}
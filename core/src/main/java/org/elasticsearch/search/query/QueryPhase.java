@@ -24,10 +24,13 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.queries.MinDocQuery;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.CollectionTerminatedException;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
@@ -38,14 +41,19 @@ import org.apache.lucene.search.TimeLimitingCollector;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopDocsCollector;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.grouping.CollapsingTopDocsCollector;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.MinimumScoreCollector;
 import org.elasticsearch.common.lucene.search.FilteredCollector;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.SearchService;
@@ -61,11 +69,17 @@ import org.elasticsearch.search.rescore.RescoreSearchContext;
 import org.elasticsearch.search.sort.SortAndFormats;
 import org.elasticsearch.search.suggest.SuggestPhase;
 
+import java.io.IOException;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 /**
  * Query phase of a search request, used to run the query and get back from each shard information about the matching documents
@@ -76,11 +90,21 @@ public class QueryPhase implements SearchPhase {
     private final AggregationPhase aggregationPhase;
     private final SuggestPhase suggestPhase;
     private RescorePhase rescorePhase;
+    private final Executor sliceExecutor;
 
     public QueryPhase(Settings settings) {
+        this(settings, null);
+    }
+
+    /**
+     * @param sliceExecutor the executor used to search slices of a shard concurrently or <code>null</code> if the segments of a shard
+     *                      should always be searched sequentially
+     */
+    public QueryPhase(Settings settings, @Nullable Executor sliceExecutor) {
         this.aggregationPhase = new AggregationPhase();
         this.suggestPhase = new SuggestPhase(settings);
         this.rescorePhase = new RescorePhase(settings);
+        this.sliceExecutor = sliceExecutor;
     }
 
     @Override
@@ -103,7 +127,9 @@ public class QueryPhase implements SearchPhase {
         // here to make sure it happens during the QUERY phase
         aggregationPhase.preProcess(searchContext);
 
-        boolean rescore = execute(searchContext, searchContext.searcher());
+        final int maxSlices = searchContext.indexShard() == null ? 1 :
+            searchContext.indexShard().indexSettings().getMaxConcurrentSearchSlices();
+        boolean rescore = execute(searchContext, searchContext.searcher(), sliceExecutor, maxSlices);
 
         if (rescore) { // only if we do a regular search
             rescorePhase.execute(searchContext);
@@ -136,6 +162,26 @@ public class QueryPhase implements SearchPhase {
      * @return whether the rescoring phase should be executed
      */
     static boolean execute(SearchContext searchContext, final IndexSearcher searcher) throws QueryPhaseExecutionException {
+        return execute(searchContext, searcher, null, 1);
+    }
+
+    /**
+     * Same as {@link #execute(SearchContext, IndexSearcher)} but partitions the segments of the shard into at most <code>maxSlices</code>
+     * slices that are searched concurrently on the given executor if the request allows it.
+     * @return whether the rescoring phase should be executed
+     */
+    static boolean execute(SearchContext searchContext, final IndexSearcher searcher, @Nullable Executor sliceExecutor,
+                           int maxSlices) throws QueryPhaseExecutionException {
+        return execute(searchContext, searcher, sliceExecutor, maxSlices, getEarlyTerminationSort(searchContext));
+    }
+
+    /**
+     * Same as {@link #execute(SearchContext, IndexSearcher, Executor, int)} but with the given index sort to early terminate the
+     * collection of the segments of the shard with, see {@link #getEarlyTerminationSort(SearchContext)}.
+     * @return whether the rescoring phase should be executed
+     */
+    static boolean execute(SearchContext searchContext, final IndexSearcher searcher, @Nullable Executor sliceExecutor,
+                           int maxSlices, @Nullable Sort earlyTerminationSort) throws QueryPhaseExecutionException {
         QuerySearchResult queryResult = searchContext.queryResult();
         queryResult.searchTimedOut(false);
 
@@ -154,9 +200,18 @@ public class QueryPhase implements SearchPhase {
             Collector collector;
             Callable<TopDocs> topDocsCallable;
             DocValueFormat[] sortValueFormats = new DocValueFormat[0];
+            IndexSortEarlyTerminatingCollector earlyTerminatingCollector = null;
 
             assert query == searcher.rewrite(query); // already rewritten
 
+            if (sliceExecutor != null && maxSlices > 1 && canSearchConcurrently(searchContext)) {
+                final List<List<LeafReaderContext>> slices = computeSlices(searcher.getIndexReader().leaves(), maxSlices);
+                if (slices.size() > 1) {
+                    return searchConcurrently(searchContext, searcher, query, numDocs, totalNumDocs, slices, sliceExecutor,
+                        earlyTerminationSort);
+                }
+            }
+
             if (searchContext.size() == 0) { // no matter what the value of from is
                 final TotalHitCountCollector totalHitCountCollector = new TotalHitCountCollector();
                 collector = totalHitCountCollector;
@@ -169,6 +224,25 @@ public class QueryPhase implements SearchPhase {
                         return new TopDocs(totalHitCountCollector.getTotalHits(), Lucene.EMPTY_SCORE_DOCS, 0);
                     }
                 };
+            } else if (searchContext.collapse() != null) {
+                // keep the best hit of each of the top groups of the collapse field, scroll, search_after and rescore are rejected
+                final Sort sort;
+                if (searchContext.sort() != null) {
+                    sort = searchContext.sort().sort;
+                    sortValueFormats = searchContext.sort().formats;
+                } else {
+                    sort = Sort.RELEVANCE;
+                    sortValueFormats = new DocValueFormat[] {DocValueFormat.RAW};
+                }
+                // top collectors don't like a size of 0
+                numDocs = Math.max(1, numDocs);
+                final boolean trackMaxScore = searchContext.sort() == null || searchContext.trackScores();
+                final CollapsingTopDocsCollector<?> topDocsCollector = searchContext.collapse().createTopDocs(sort, numDocs, trackMaxScore);
+                collector = topDocsCollector;
+                if (doProfile) {
+                    collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_TOP_HITS, Collections.emptyList());
+                }
+                topDocsCallable = topDocsCollector::getTopDocs;
             } else {
                 // Perhaps have a dedicated scroll phase?
                 final ScrollContext scrollContext = searchContext.scrollContext();
@@ -207,18 +281,18 @@ public class QueryPhase implements SearchPhase {
                 }
                 assert numDocs > 0;
                 if (searchContext.sort() != null) {
-                    SortAndFormats sf = searchContext.sort();
-                    topDocsCollector = TopFieldCollector.create(sf.sort, numDocs,
-                            (FieldDoc) after, true, searchContext.trackScores(), searchContext.trackScores());
-                    sortValueFormats = sf.formats;
+                    sortValueFormats = searchContext.sort().formats;
                 } else {
                     rescore = !searchContext.rescore().isEmpty();
-                    for (RescoreSearchContext rescoreContext : searchContext.rescore()) {
-                        numDocs = Math.max(rescoreContext.window(), numDocs);
-                    }
-                    topDocsCollector = TopScoreDocCollector.create(numDocs, after);
+                    numDocs = numDocsToRescore(searchContext, numDocs);
                 }
+                topDocsCollector = createTopDocsCollector(searchContext, numDocs, after);
                 collector = topDocsCollector;
+                if (earlyTerminationSort != null) {
+                    // segments are sorted by the request sort, stop collecting them once they can't produce competitive hits
+                    earlyTerminatingCollector = new IndexSortEarlyTerminatingCollector(collector, earlyTerminationSort, numDocs);
+                    collector = earlyTerminatingCollector;
+                }
                 if (doProfile) {
                     collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_TOP_HITS, Collections.emptyList());
                 }
@@ -257,58 +331,12 @@ public class QueryPhase implements SearchPhase {
 
             final boolean terminateAfterSet = searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER;
             if (terminateAfterSet) {
-                final Collector child = collector;
                 // throws Lucene.EarlyTerminationException when given count is reached
-                collector = Lucene.wrapCountBasedEarlyTerminatingCollector(collector, searchContext.terminateAfter());
-                if (doProfile) {
-                    collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_TERMINATE_AFTER_COUNT,
-                            Collections.singletonList((InternalProfileCollector) child));
-                }
-            }
-
-            if (searchContext.parsedPostFilter() != null) {
-                final Collector child = collector;
-                // this will only get applied to the actual search collector and not
-                // to any scoped collectors, also, it will only be applied to the main collector
-                // since that is where the filter should only work
-                final Weight filterWeight = searcher.createNormalizedWeight(searchContext.parsedPostFilter().query(), false);
-                collector = new FilteredCollector(collector, filterWeight);
-                if (doProfile) {
-                    collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_POST_FILTER,
-                            Collections.singletonList((InternalProfileCollector) child));
-                }
-            }
-
-            // plug in additional collectors, like aggregations
-            final List<Collector> subCollectors = new ArrayList<>();
-            subCollectors.add(collector);
-            subCollectors.addAll(searchContext.queryCollectors().values());
-            collector = MultiCollector.wrap(subCollectors);
-            if (doProfile && collector instanceof InternalProfileCollector == false) {
-                // When there is a single collector to wrap, MultiCollector returns it
-                // directly, so only wrap in the case that there are several sub collectors
-                final List<InternalProfileCollector> children = new AbstractList<InternalProfileCollector>() {
-                    @Override
-                    public InternalProfileCollector get(int index) {
-                        return (InternalProfileCollector) subCollectors.get(index);
-                    }
-                    @Override
-                    public int size() {
-                        return subCollectors.size();
-                    }
-                };
-                collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_MULTI, children);
+                collector = wrapCollector(collector, child -> Lucene.wrapCountBasedEarlyTerminatingCollector(child,
+                    searchContext.terminateAfter()), doProfile, CollectorResult.REASON_SEARCH_TERMINATE_AFTER_COUNT);
             }
 
-            // apply the minimum score after multi collector so we filter aggs as well
-            if (searchContext.minimumScore() != null) {
-                final Collector child = collector;
-                collector = new MinimumScoreCollector(collector, searchContext.minimumScore());
-                if (doProfile) {
-                    collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_MIN_SCORE,
-                            Collections.singletonList((InternalProfileCollector) child));
-                }
-            }
+            collector = wrapFilteringCollectors(searchContext, collector, createPostFilterWeight(searchContext, searcher), doProfile);
 
             if (collector.getClass() == TotalHitCountCollector.class) {
                 // Optimize counts in simple cases to return in constant time
@@ -350,25 +378,9 @@ public class QueryPhase implements SearchPhase {
                 }
             }
 
-            final boolean timeoutSet = searchContext.timeout() != null && !searchContext.timeout().equals(SearchService.NO_TIMEOUT);
-            if (timeoutSet && collector != null) { // collector might be null if no collection is actually needed
-                final Collector child = collector;
-                // TODO: change to use our own counter that uses the scheduler in ThreadPool
-                // throws TimeLimitingCollector.TimeExceededException when timeout has reached
-                collector = Lucene.wrapTimeLimitingCollector(collector, searchContext.timeEstimateCounter(), searchContext.timeout().millis());
-                if (doProfile) {
-                    collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_TIMEOUT,
-                            Collections.singletonList((InternalProfileCollector) child));
-                }
-            }
-
-            if (collector != null) {
-                final Collector child = collector;
-                collector = new CancellableCollector(searchContext.getTask()::isCancelled, searchContext.lowLevelCancellation(), collector);
-                if (doProfile) {
-                    collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_CANCELLED,
-                        Collections.singletonList((InternalProfileCollector) child));
-                }
+            final boolean timeoutSet = hasTimeout(searchContext);
+            if (collector != null) { // collector might be null if no collection is actually needed
+                collector = wrapTimeoutAndCancellation(searchContext, collector, doProfile);
             }
 
             try {
@@ -387,6 +399,9 @@ public class QueryPhase implements SearchPhase {
             } finally {
                 searchContext.clearReleasables(SearchContext.Lifetime.COLLECTION);
             }
+            if (earlyTerminatingCollector != null && earlyTerminatingCollector.terminatedEarly()) {
+                queryResult.terminatedEarly(true);
+            }
             if (terminateAfterSet && queryResult.terminatedEarly() == null) {
                 queryResult.terminatedEarly(false);
             }
@@ -405,4 +420,316 @@ public class QueryPhase implements SearchPhase {
             throw new QueryPhaseExecutionException(searchContext, "Failed to execute main query", e);
         }
     }
+
+    /**
+     * Creates the collector of the top <code>numDocs</code> docs after <code>after</code>, sorted by the sort of the request or by
+     * score if the request doesn't sort.
+     */
+    private static TopDocsCollector<?> createTopDocsCollector(SearchContext searchContext, int numDocs,
+                                                              @Nullable ScoreDoc after) throws IOException {
+        final SortAndFormats sort = searchContext.sort();
+        if (sort != null) {
+            return TopFieldCollector.create(sort.sort, numDocs, (FieldDoc) after, true, searchContext.trackScores(),
+                searchContext.trackScores());
+        }
+        return TopScoreDocCollector.create(numDocs, after);
+    }
+
+    /**
+     * Returns the number of docs to collect so that all rescore windows of the request are filled.
+     */
+    private static int numDocsToRescore(SearchContext searchContext, int numDocs) {
+        for (RescoreSearchContext rescoreContext : searchContext.rescore()) {
+            numDocs = Math.max(rescoreContext.window(), numDocs);
+        }
+        return numDocs;
+    }
+
+    @Nullable
+    private static Weight createPostFilterWeight(SearchContext searchContext, IndexSearcher searcher) throws IOException {
+        if (searchContext.parsedPostFilter() == null) {
+            return null;
+        }
+        return searcher.createNormalizedWeight(searchContext.parsedPostFilter().query(), false);
+    }
+
+    private static boolean hasTimeout(SearchContext searchContext) {
+        return searchContext.timeout() != null && !searchContext.timeout().equals(SearchService.NO_TIMEOUT);
+    }
+
+    /**
+     * Wraps the given collector with the post filter, the query collectors of the request like aggregations and the minimum score.
+     */
+    private static Collector wrapFilteringCollectors(SearchContext searchContext, Collector collector, @Nullable Weight postFilterWeight,
+                                                     boolean doProfile) {
+        if (postFilterWeight != null) {
+            // this will only get applied to the actual search collector and not
+            // to any scoped collectors, also, it will only be applied to the main collector
+            // since that is where the filter should only work
+            collector = wrapCollector(collector, child -> new FilteredCollector(child, postFilterWeight), doProfile,
+                CollectorResult.REASON_SEARCH_POST_FILTER);
+        }
+
+        // plug in additional collectors, like aggregations
+        final List<Collector> subCollectors = new ArrayList<>();
+        subCollectors.add(collector);
+        subCollectors.addAll(searchContext.queryCollectors().values());
+        collector = MultiCollector.wrap(subCollectors);
+        if (doProfile && collector instanceof InternalProfileCollector == false) {
+            // When there is a single collector to wrap, MultiCollector returns it
+            // directly, so only wrap in the case that there are several sub collectors
+            final List<InternalProfileCollector> children = new AbstractList<InternalProfileCollector>() {
+                @Override
+                public InternalProfileCollector get(int index) {
+                    return (InternalProfileCollector) subCollectors.get(index);
+                }
+                @Override
+                public int size() {
+                    return subCollectors.size();
+                }
+            };
+            collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_MULTI, children);
+        }
+
+        // apply the minimum score after multi collector so we filter aggs as well
+        if (searchContext.minimumScore() != null) {
+            collector = wrapCollector(collector, child -> new MinimumScoreCollector(child, searchContext.minimumScore()), doProfile,
+                CollectorResult.REASON_SEARCH_MIN_SCORE);
+        }
+        return collector;
+    }
+
+    /**
+     * Wraps the given collector so that the collection stops once the request timed out or got cancelled.
+     */
+    private static Collector wrapTimeoutAndCancellation(SearchContext searchContext, Collector collector, boolean doProfile) {
+        if (hasTimeout(searchContext)) {
+            // TODO: change to use our own counter that uses the scheduler in ThreadPool
+            // throws TimeLimitingCollector.TimeExceededException when timeout has reached
+            collector = wrapCollector(collector, child -> Lucene.wrapTimeLimitingCollector(child, searchContext.timeEstimateCounter(),
+                searchContext.timeout().millis()), doProfile, CollectorResult.REASON_SEARCH_TIMEOUT);
+        }
+        return wrapCollector(collector, child -> new CancellableCollector(searchContext.getTask()::isCancelled,
+            searchContext.lowLevelCancellation(), child), doProfile, CollectorResult.REASON_SEARCH_CANCELLED);
+    }
+
+    /**
+     * Wraps the given collector with the one created by the given wrapper. When profiling, the wrapping collector is profiled with
+     * the given reason, as the parent of the given collector.
+     */
+    private static Collector wrapCollector(Collector collector, Function<Collector, Collector> wrapper, boolean doProfile,
+                                           String reason) {
+        final Collector wrapped = wrapper.apply(collector);
+        if (doProfile) {
+            return new InternalProfileCollector(wrapped, reason, Collections.singletonList((InternalProfileCollector) collector));
+        }
+        return wrapped;
+    }
+
+    /**
+     * Returns the sort of the segments of the shard if the sort of the given request is equal to or a prefix of it, in which case
+     * the collection of each segment can terminate once <code>from + size</code> documents have been collected. Since the
+     * remaining matches of a segment are never visited, the total hit count becomes a lower bound, so this only applies to requests
+     * that opted out of accurate totals with <tt>track_total_hits: false</tt>. Returns <code>null</code> if the index has no sort
+     * or if the request needs to see all matching documents, like scrolls, <tt>search_after</tt> and aggregations.
+     */
+    @Nullable
+    private static Sort getEarlyTerminationSort(SearchContext searchContext) {
+        final IndexShard indexShard = searchContext.indexShard();
+        final SortAndFormats sort = searchContext.sort();
+        if (indexShard == null || sort == null || searchContext.size() == 0
+            || searchContext.trackTotalHits()
+            || searchContext.collapse() != null
+            || searchContext.request().scroll() != null
+            || searchContext.searchAfter() != null
+            || searchContext.queryCollectors().isEmpty() == false) {
+            return null;
+        }
+        if (indexShard.indexSettings().getIndexSortConfig().canEarlyTerminate(sort.sort) == false) {
+            return null;
+        }
+        return indexShard.getIndexSort();
+    }
+
+    /**
+     * Returns <code>true</code> iff the collector tree of the given request can be built once per slice and the results of the slices
+     * can be merged afterwards. This excludes aggregations and other query collectors since they are not thread-safe, as well as
+     * scrolls, field collapsing, <tt>terminate_after</tt> and profiling which all rely on a single collector seeing every document of
+     * the shard.
+     */
+    private static boolean canSearchConcurrently(SearchContext searchContext) {
+        return searchContext.size() > 0
+            && searchContext.request().scroll() == null
+            && searchContext.collapse() == null
+            && searchContext.terminateAfter() == SearchContext.DEFAULT_TERMINATE_AFTER
+            && searchContext.getProfilers() == null
+            && searchContext.queryCollectors().isEmpty();
+    }
+
+    /**
+     * Partitions the given leaves into at most <code>maxSlices</code> slices holding roughly the same number of documents. Slices are
+     * made of consecutive leaves so that merging the top docs of the slices in slice order preserves the doc id tie-breaking.
+     */
+    static List<List<LeafReaderContext>> computeSlices(List<LeafReaderContext> leaves, int maxSlices) {
+        final int numSlices = Math.min(maxSlices, leaves.size());
+        long totalDocs = 0;
+        for (LeafReaderContext leaf : leaves) {
+            totalDocs += leaf.reader().maxDoc();
+        }
+        final List<List<LeafReaderContext>> slices = new ArrayList<>(numSlices);
+        List<LeafReaderContext> current = new ArrayList<>();
+        long docs = 0;
+        for (LeafReaderContext leaf : leaves) {
+            current.add(leaf);
+            docs += leaf.reader().maxDoc();
+            // close the slice once it reached its share of the documents, the last slice takes all remaining leaves
+            if (slices.size() < numSlices - 1 && docs * numSlices >= totalDocs * (slices.size() + 1)) {
+                slices.add(current);
+                current = new ArrayList<>();
+            }
+        }
+        if (current.isEmpty() == false) {
+            slices.add(current);
+        }
+        return slices;
+    }
+
+    /**
+     * Executes the query on every slice with a dedicated collector tree and merges the top docs of all slices. The first slice is
+     * searched on the current thread, the other ones are forked to the slice executor or searched on the current thread as well if
+     * the executor rejects them.
+     * @return whether the rescoring phase should be executed
+     */
+    private static boolean searchConcurrently(SearchContext searchContext, IndexSearcher searcher, Query query, int numDocs,
+                                              int totalNumDocs, List<List<LeafReaderContext>> slices,
+                                              Executor sliceExecutor, @Nullable Sort earlyTerminationSort) throws Exception {
+        final QuerySearchResult queryResult = searchContext.queryResult();
+        final SortAndFormats sort = searchContext.sort();
+        final ScoreDoc after = searchContext.searchAfter();
+        boolean rescore = false;
+        if (totalNumDocs == 0) {
+            // top collectors don't like a size of 0
+            numDocs = 1;
+        }
+        if (sort == null) {
+            rescore = !searchContext.rescore().isEmpty();
+            numDocs = numDocsToRescore(searchContext, numDocs);
+        }
+        final Weight postFilterWeight = createPostFilterWeight(searchContext, searcher);
+
+        final TopDocsCollector<?>[] topDocsCollectors = new TopDocsCollector<?>[slices.size()];
+        final IndexSortEarlyTerminatingCollector[] earlyTerminatingCollectors = new IndexSortEarlyTerminatingCollector[slices.size()];
+        final Collector[] collectors = new Collector[slices.size()];
+        for (int i = 0; i < slices.size(); i++) {
+            // the same collector tree as a sequential search, minus what can't be searched concurrently, see canSearchConcurrently
+            topDocsCollectors[i] = createTopDocsCollector(searchContext, numDocs, after);
+            Collector collector = topDocsCollectors[i];
+            if (earlyTerminationSort != null) {
+                earlyTerminatingCollectors[i] = new IndexSortEarlyTerminatingCollector(collector, earlyTerminationSort, numDocs);
+                collector = earlyTerminatingCollectors[i];
+            }
+            collector = wrapFilteringCollectors(searchContext, collector, postFilterWeight, false);
+            collectors[i] = wrapTimeoutAndCancellation(searchContext, collector, false);
+        }
+
+        final Weight weight = searcher.createNormalizedWeight(query, collectors[0].needsScores());
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        final List<FutureTask<Void>> forkedSlices = new ArrayList<>(slices.size() - 1);
+        try {
+            for (int i = 1; i < slices.size(); i++) {
+                final List<LeafReaderContext> slice = slices.get(i);
+                final Collector collector = collectors[i];
+                final FutureTask<Void> task = new FutureTask<>(() -> {
+                    searchSlice(slice, weight, collector, timedOut);
+                    return null;
+                });
+                try {
+                    sliceExecutor.execute(task);
+                } catch (EsRejectedExecutionException e) {
+                    // the slice pool is saturated, don't fail the request but search the slice on the current thread
+                    task.run();
+                }
+                forkedSlices.add(task);
+            }
+            searchSlice(slices.get(0), weight, collectors[0], timedOut);
+            for (FutureTask<Void> task : forkedSlices) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            // make sure that no slice is still collecting once the collection releasables are cleared
+            for (FutureTask<Void> task : forkedSlices) {
+                try {
+                    task.get();
+                } catch (Exception ignored) {
+                    // the failure, if any, is propagated above
+                }
+            }
+            searchContext.clearReleasables(SearchContext.Lifetime.COLLECTION);
+        }
+        if (timedOut.get()) {
+            queryResult.searchTimedOut(true);
+        }
+        for (IndexSortEarlyTerminatingCollector earlyTerminatingCollector : earlyTerminatingCollectors) {
+            if (earlyTerminatingCollector != null && earlyTerminatingCollector.terminatedEarly()) {
+                queryResult.terminatedEarly(true);
+            }
+        }
+
+        final TopDocs topDocs;
+        if (sort != null) {
+            final TopFieldDocs[] sliceTopDocs = new TopFieldDocs[topDocsCollectors.length];
+            for (int i = 0; i < topDocsCollectors.length; i++) {
+                sliceTopDocs[i] = (TopFieldDocs) topDocsCollectors[i].topDocs();
+            }
+            topDocs = TopDocs.merge(sort.sort, numDocs, sliceTopDocs);
+        } else {
+            final TopDocs[] sliceTopDocs = new TopDocs[topDocsCollectors.length];
+            for (int i = 0; i < topDocsCollectors.length; i++) {
+                sliceTopDocs[i] = topDocsCollectors[i].topDocs();
+            }
+            topDocs = TopDocs.merge(numDocs, sliceTopDocs);
+        }
+        // TopDocs#merge sets the slice index as the shard index, reset it since these docs are shard-level docs
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            scoreDoc.shardIndex = -1;
+        }
+        queryResult.topDocs(topDocs, sort == null ? new DocValueFormat[0] : sort.formats);
+        return rescore;
+    }
+
+    /**
+     * Collects all documents of the given slice, the equivalent of {@link IndexSearcher#search(List, Weight, Collector)}.
+     */
+    private static void searchSlice(List<LeafReaderContext> slice, Weight weight, Collector collector,
+                                    AtomicBoolean timedOut) throws IOException {
+        try {
+            for (LeafReaderContext ctx : slice) {
+                final LeafCollector leafCollector;
+                try {
+                    leafCollector = collector.getLeafCollector(ctx);
+                } catch (CollectionTerminatedException e) {
+                    // there is no doc of interest in this reader context
+                    continue;
+                }
+                final BulkScorer scorer = weight.bulkScorer(ctx);
+                if (scorer != null) {
+                    try {
+                        scorer.score(leafCollector, ctx.reader().getLiveDocs());
+                    } catch (CollectionTerminatedException e) {
+                        // collection was terminated prematurely
+                    }
+                }
+            }
+        } catch (TimeLimitingCollector.TimeExceededException e) {
+            // keep what has been collected so far, like a sequential search that timed out
+            timedOut.set(true);
+        }
+    }
 }
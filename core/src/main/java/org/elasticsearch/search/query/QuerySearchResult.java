@@ -21,6 +21,7 @@ package org.elasticsearch.search.query;
 
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.TopDocs;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -50,11 +51,15 @@ public class QuerySearchResult extends QuerySearchResultProvider {
     private TopDocs topDocs;
     private DocValueFormat[] sortValueFormats;
     private InternalAggregations aggregations;
+    private boolean hasAggs;
+    private boolean hasTrimmedHits;
     private List<SiblingPipelineAggregator> pipelineAggregators;
     private Suggest suggest;
     private boolean searchTimedOut;
     private Boolean terminatedEarly = null;
     private ProfileShardResult profileShardResults;
+    private int nodeQueueSize = -1;
+    private long serviceTimeEWMA = -1;
 
     public QuerySearchResult() {
 
@@ -122,6 +127,16 @@ public class QuerySearchResult extends QuerySearchResultProvider {
         this.sortValueFormats = sortValueFormats;
     }
 
+    /**
+     * Replaces the top docs of this result with the subset of docs that can still make it into the global top docs. This is used
+     * on the coordinating node to release shard hits early during batched reduce phases. {@link #hasHits()} keeps on returning
+     * <code>true</code> if the original top docs had hits so the shard level search context is released if none of them is fetched.
+     */
+    public void trimTopDocs(TopDocs topDocs) {
+        hasTrimmedHits |= this.topDocs != null && this.topDocs.scoreDocs.length > 0;
+        this.topDocs = topDocs;
+    }
+
     public DocValueFormat[] sortValueFormats() {
         return sortValueFormats;
     }
@@ -132,6 +147,24 @@ public class QuerySearchResult extends QuerySearchResultProvider {
 
     public void aggregations(InternalAggregations aggregations) {
         this.aggregations = aggregations;
+        hasAggs = aggregations != null;
+    }
+
+    /**
+     * Returns and nulls out the aggregations for this search result. This allows to free up memory once the aggregations
+     * have been consumed by a reduce phase on the coordinating node.
+     */
+    public InternalAggregations consumeAggs() {
+        InternalAggregations aggs = aggregations;
+        aggregations = null;
+        return aggs;
+    }
+
+    /**
+     * Returns <code>true</code> iff this result carried aggregations, even if they were already consumed by {@link #consumeAggs()}
+     */
+    public boolean hasAggs() {
+        return hasAggs;
     }
 
     /**
@@ -150,6 +183,31 @@ public class QuerySearchResult extends QuerySearchResultProvider {
         this.profileShardResults = shardResults;
     }
 
+    /**
+     * Returns the size of the search queue on the node that executed this query, or <code>-1</code> if it is unknown
+     */
+    public int nodeQueueSize() {
+        return nodeQueueSize;
+    }
+
+    public QuerySearchResult nodeQueueSize(int nodeQueueSize) {
+        this.nodeQueueSize = nodeQueueSize;
+        return this;
+    }
+
+    /**
+     * Returns the moving average of the query phase execution time in nanoseconds on the node that executed this query,
+     * or <code>-1</code> if it is unknown
+     */
+    public long serviceTimeEWMA() {
+        return serviceTimeEWMA;
+    }
+
+    public QuerySearchResult serviceTimeEWMA(long serviceTimeEWMA) {
+        this.serviceTimeEWMA = serviceTimeEWMA;
+        return this;
+    }
+
     public List<SiblingPipelineAggregator> pipelineAggregators() {
         return pipelineAggregators;
     }
@@ -186,7 +244,7 @@ public class QuerySearchResult extends QuerySearchResultProvider {
 
     /** Returns true iff the result has hits */
     public boolean hasHits() {
-        return (topDocs != null && topDocs.scoreDocs.length > 0) ||
+        return (topDocs != null && topDocs.scoreDocs.length > 0) || hasTrimmedHits ||
             (suggest != null && suggest.hasScoreDocs());
     }
 
@@ -219,6 +277,7 @@ public class QuerySearchResult extends QuerySearchResultProvider {
         topDocs = readTopDocs(in);
         if (in.readBoolean()) {
             aggregations = InternalAggregations.readAggregations(in);
+            hasAggs = true;
         }
         pipelineAggregators = in.readNamedWriteableList(PipelineAggregator.class).stream().map(a -> (SiblingPipelineAggregator) a)
                 .collect(Collectors.toList());
@@ -228,6 +287,10 @@ public class QuerySearchResult extends QuerySearchResultProvider {
         searchTimedOut = in.readBoolean();
         terminatedEarly = in.readOptionalBoolean();
         profileShardResults = in.readOptionalWriteable(ProfileShardResult::new);
+        if (in.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            nodeQueueSize = in.readInt();
+            serviceTimeEWMA = in.readZLong();
+        }
     }
 
     @Override
@@ -265,5 +328,9 @@ public class QuerySearchResult extends QuerySearchResultProvider {
         out.writeBoolean(searchTimedOut);
         out.writeOptionalBoolean(terminatedEarly);
         out.writeOptionalWriteable(profileShardResults);
+        if (out.getVersion().onOrAfter(Version.V_6_0_0_alpha1_UNRELEASED)) {
+            out.writeInt(nodeQueueSize);
+            out.writeZLong(serviceTimeEWMA);
+        }
     }
 }
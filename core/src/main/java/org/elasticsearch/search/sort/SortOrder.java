@@ -51,7 +51,7 @@ public enum SortOrder implements Writeable {
         }
     };
 
-    static SortOrder readFromStream(StreamInput in) throws IOException {
+    public static SortOrder readFromStream(StreamInput in) throws IOException {
         int ordinal = in.readVInt();
         if (ordinal < 0 || ordinal >= values().length) {
             throw new IOException("Unknown SortOrder ordinal [" + ordinal + "]");
@@ -0,0 +1,141 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.lucene.search.grouping;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class CollapsingTopDocsCollectorTests extends ESTestCase {
+
+    public void testCollapseOnKeyword() throws IOException {
+        final int numDocs = randomIntBetween(10, 200);
+        final int numGroups = randomIntBetween(1, 20);
+        final Directory dir = newDirectory();
+        final RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+        // the best (lowest) sort value of each group
+        final Map<BytesRef, Long> expected = new HashMap<>();
+        for (int i = 0; i < numDocs; ++i) {
+            BytesRef group = new BytesRef(Integer.toString(randomInt(numGroups - 1)));
+            long sortValue = randomLong();
+            Document doc = new Document();
+            doc.add(new SortedDocValuesField("group", group));
+            doc.add(new NumericDocValuesField("sort", sortValue));
+            w.addDocument(doc);
+            expected.merge(group, sortValue, Math::min);
+        }
+        final IndexReader reader = w.getReader();
+        final IndexSearcher searcher = newSearcher(reader);
+        final Sort sort = new Sort(new SortField("sort", SortField.Type.LONG));
+        final int topN = randomIntBetween(1, numGroups + 5);
+        CollapsingTopDocsCollector<?> collector = CollapsingTopDocsCollector.createKeyword("group", sort, topN, false);
+        searcher.search(new MatchAllDocsQuery(), collector);
+        CollapseTopFieldDocs topDocs = collector.getTopDocs();
+        assertEquals(numDocs, topDocs.totalHits);
+        assertEquals("group", topDocs.field);
+        assertEquals(Math.min(topN, expected.size()), topDocs.scoreDocs.length);
+        assertEquals(topDocs.scoreDocs.length, topDocs.collapseValues.length);
+        Set<Object> seen = new HashSet<>();
+        Long previous = null;
+        for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+            assertTrue("duplicate group " + topDocs.collapseValues[i], seen.add(topDocs.collapseValues[i]));
+            Long sortValue = (Long) ((FieldDoc) topDocs.scoreDocs[i]).fields[0];
+            assertEquals(expected.get(topDocs.collapseValues[i]), sortValue);
+            if (previous != null) {
+                assertTrue(previous <= sortValue);
+            }
+            previous = sortValue;
+        }
+        w.close();
+        reader.close();
+        dir.close();
+    }
+
+    public void testMergeShards() throws IOException {
+        final int numShards = randomIntBetween(2, 4);
+        final int numGroups = randomIntBetween(1, 20);
+        final Sort sort = new Sort(new SortField("sort", SortField.Type.LONG));
+        final int topN = randomIntBetween(1, numGroups + 5);
+        final Map<Long, Long> expected = new HashMap<>();
+        final CollapseTopFieldDocs[] shardHits = new CollapseTopFieldDocs[numShards];
+        for (int shard = 0; shard < numShards; shard++) {
+            final Directory dir = newDirectory();
+            final RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+            final int numDocs = randomIntBetween(1, 50);
+            for (int i = 0; i < numDocs; ++i) {
+                long group = randomInt(numGroups - 1);
+                long sortValue = randomLong();
+                Document doc = new Document();
+                doc.add(new SortedNumericDocValuesField("group", group));
+                doc.add(new NumericDocValuesField("sort", sortValue));
+                w.addDocument(doc);
+                expected.merge(group, sortValue, Math::min);
+            }
+            final IndexReader reader = w.getReader();
+            CollapsingTopDocsCollector<?> collector = CollapsingTopDocsCollector.createNumeric("group", sort, topN, false);
+            newSearcher(reader).search(new MatchAllDocsQuery(), collector);
+            shardHits[shard] = collector.getTopDocs();
+            w.close();
+            reader.close();
+            dir.close();
+        }
+        CollapseTopFieldDocs merged = CollapseTopFieldDocs.merge(sort, 0, topN, shardHits);
+        assertEquals(Math.min(topN, expected.size()), merged.scoreDocs.length);
+        Set<Object> seen = new HashSet<>();
+        for (int i = 0; i < merged.scoreDocs.length; i++) {
+            assertTrue("duplicate group " + merged.collapseValues[i], seen.add(merged.collapseValues[i]));
+            assertEquals(expected.get(merged.collapseValues[i]), ((FieldDoc) merged.scoreDocs[i]).fields[0]);
+        }
+    }
+
+    public void testMultiValuedField() throws IOException {
+        final Directory dir = newDirectory();
+        final RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+        Document doc = new Document();
+        doc.add(new SortedNumericDocValuesField("group", 1));
+        doc.add(new SortedNumericDocValuesField("group", 2));
+        w.addDocument(doc);
+        final IndexReader reader = w.getReader();
+        CollapsingTopDocsCollector<?> collector = CollapsingTopDocsCollector.createNumeric("group", Sort.RELEVANCE, 10, true);
+        IllegalStateException e = expectThrows(IllegalStateException.class,
+            () -> newSearcher(reader).search(new MatchAllDocsQuery(), collector));
+        assertTrue(e.getMessage().contains("the collapse field must be single valued"));
+        w.close();
+        reader.close();
+        dir.close();
+    }
+}
@@ -21,11 +21,16 @@
 package org.elasticsearch.action.bulk;
 
 import org.elasticsearch.action.admin.indices.mapping.get.GetMappingsResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.test.ESIntegTestCase;
 
 import java.nio.charset.StandardCharsets;
 
 import static org.elasticsearch.test.StreamsUtils.copyToStringFromClasspath;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.greaterThan;
 
 public class BulkIntegrationIT extends ESIntegTestCase {
     public void testBulkIndexCreatesMapping() throws Exception {
@@ -42,4 +47,38 @@ public class BulkIntegrationIT extends ESIntegTestCase {
             }
         });
     }
+
+    /**
+     * Index requests with auto-generated ids are executed in batches, this checks that they are still executed in the order
+     * of the bulk request and that a failure only fails its own item.
+     */
+    public void testAppendOnlyItemsExecutedInOrder() throws Exception {
+        assertAcked(prepareCreate("test").setSettings(Settings.builder().put("index.number_of_shards", 1))
+            .addMapping("type", "number", "type=long"));
+        BulkRequestBuilder bulkBuilder = client().prepareBulk();
+        bulkBuilder.add(new IndexRequest("test", "type").source("number", 1));
+        bulkBuilder.add(new IndexRequest("test", "type", "1").source("number", 2));
+        bulkBuilder.add(new IndexRequest("test", "type").source("number", 3));
+        bulkBuilder.add(new DeleteRequest("test", "type", "1"));
+        bulkBuilder.add(new IndexRequest("test", "type").source("number", 4));
+        // needs a mapping update
+        bulkBuilder.add(new IndexRequest("test", "type").source("new_field", "foo"));
+        // fails to parse
+        bulkBuilder.add(new IndexRequest("test", "type").source("number", "not a number"));
+        bulkBuilder.add(new IndexRequest("test", "type").source("number", 5));
+        BulkResponse response = bulkBuilder.get();
+
+        BulkItemResponse[] items = response.getItems();
+        assertEquals(8, items.length);
+        long lastSeqNo = -1;
+        for (int i = 0; i < items.length; i++) {
+            if (i == 6) {
+                assertTrue(items[i].isFailed());
+                continue;
+            }
+            assertFalse(items[i].getFailureMessage(), items[i].isFailed());
+            assertThat(items[i].getResponse().getSeqNo(), greaterThan(lastSeqNo));
+            lastSeqNo = items[i].getResponse().getSeqNo();
+        }
+    }
 }
@@ -35,6 +35,7 @@ import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
+import org.elasticsearch.index.IndexingPressure;
 import org.elasticsearch.tasks.Task;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.test.transport.CapturingTransport;
@@ -115,6 +116,7 @@ public class TransportBulkActionTookTests extends ESTestCase {
                     actionFilters,
                     resolver,
                     null,
+                    new IndexingPressure(Settings.EMPTY),
                     expected::get) {
                 @Override
                 public void executeBulk(BulkRequest bulkRequest, ActionListener<BulkResponse> listener) {
@@ -144,6 +146,7 @@ public class TransportBulkActionTookTests extends ESTestCase {
                     actionFilters,
                     resolver,
                     null,
+                    new IndexingPressure(Settings.EMPTY),
                     System::nanoTime) {
                 @Override
                 public void executeBulk(BulkRequest bulkRequest, ActionListener<BulkResponse> listener) {
@@ -231,6 +234,7 @@ public class TransportBulkActionTookTests extends ESTestCase {
                 ActionFilters actionFilters,
                 IndexNameExpressionResolver indexNameExpressionResolver,
                 AutoCreateIndex autoCreateIndex,
+                IndexingPressure indexingPressure,
                 LongSupplier relativeTimeProvider) {
             super(
                     settings,
@@ -242,6 +246,7 @@ public class TransportBulkActionTookTests extends ESTestCase {
                     actionFilters,
                     indexNameExpressionResolver,
                     autoCreateIndex,
+                    indexingPressure,
                     relativeTimeProvider);
         }
 
@@ -0,0 +1,212 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.InnerHitBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.collapse.CollapseBuilder;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHitField;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.elasticsearch.tasks.TaskId;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class ExpandSearchPhaseTests extends ESTestCase {
+
+    public void testIsCollapseRequest() {
+        assertFalse(ExpandSearchPhase.isCollapseRequest(new SearchRequest()));
+        SearchRequest request = new SearchRequest().source(new SearchSourceBuilder().collapse(new CollapseBuilder("field")));
+        assertFalse(ExpandSearchPhase.isCollapseRequest(request));
+        request.source().collapse().setInnerHits(new InnerHitBuilder().setName("group"));
+        assertTrue(ExpandSearchPhase.isCollapseRequest(request));
+        request.scroll("1m");
+        assertFalse(ExpandSearchPhase.isCollapseRequest(request));
+    }
+
+    public void testExpandHits() {
+        final int numHits = randomIntBetween(1, 10);
+        final int maxConcurrentGroupRequests = randomIntBetween(0, 5);
+        final QueryBuilder originalQuery = randomBoolean() ? null : QueryBuilders.termQuery("foo", "bar");
+        final String innerHitName = randomAsciiOfLengthBetween(1, 10);
+        final SearchRequest request = newCollapseRequest(originalQuery, innerHitName, maxConcurrentGroupRequests);
+        final InternalSearchHit[] hits = new InternalSearchHit[numHits];
+        final InternalSearchHits[] groupHits = new InternalSearchHits[numHits];
+        final MultiSearchResponse.Item[] items = new MultiSearchResponse.Item[numHits];
+        for (int i = 0; i < numHits; i++) {
+            // the last hit has no value for the collapse field
+            hits[i] = newHit(i, i == numHits - 1 ? null : "group_" + i);
+            groupHits[i] = new InternalSearchHits(new InternalSearchHit[] {newHit(numHits + i, null)}, 1, 1.0F);
+            items[i] = new MultiSearchResponse.Item(newResponse(groupHits[i]), null);
+        }
+        final SearchResponse response = newResponse(new InternalSearchHits(hits, numHits, 1.0F));
+        final AtomicReference<SearchResponse> result = new AtomicReference<>();
+        final ExpandSearchPhase phase = newPhase(request, new MultiSearchResponse(items), (multiRequest) -> {
+            assertThat(multiRequest.maxConcurrentSearchRequests(), equalTo(maxConcurrentGroupRequests));
+            List<SearchRequest> groupRequests = multiRequest.requests();
+            assertThat(groupRequests.size(), equalTo(numHits));
+            for (int i = 0; i < numHits; i++) {
+                SearchRequest groupRequest = groupRequests.get(i);
+                assertArrayEquals(request.indices(), groupRequest.indices());
+                BoolQueryBuilder groupQuery = (BoolQueryBuilder) groupRequest.source().query();
+                if (i == numHits - 1) {
+                    assertThat(groupQuery.filter().size(), equalTo(0));
+                    assertThat(groupQuery.mustNot(), equalTo(Collections.singletonList(QueryBuilders.existsQuery("group"))));
+                } else {
+                    assertThat(groupQuery.filter(), equalTo(Collections.singletonList(QueryBuilders.termQuery("group", "group_" + i))));
+                    assertThat(groupQuery.mustNot().size(), equalTo(0));
+                }
+                if (originalQuery == null) {
+                    assertThat(groupQuery.must().size(), equalTo(0));
+                } else {
+                    assertThat(groupQuery.must(), equalTo(Collections.singletonList(originalQuery)));
+                }
+                assertThat(groupRequest.source().size(), equalTo(3));
+            }
+        }, ActionListener.wrap(result::set, e -> fail(e.getMessage())));
+
+        phase.onResponse(response);
+
+        assertThat(result.get(), sameInstance(response));
+        for (int i = 0; i < numHits; i++) {
+            assertThat(hits[i].getInnerHits().size(), equalTo(1));
+            assertThat(hits[i].getInnerHits().get(innerHitName), sameInstance(groupHits[i]));
+        }
+    }
+
+    public void testExpandNoHits() {
+        final SearchRequest request = newCollapseRequest(null, "group", 0);
+        final SearchResponse response = newResponse(InternalSearchHits.empty());
+        final AtomicReference<SearchResponse> result = new AtomicReference<>();
+        final ExpandSearchPhase phase = newPhase(request, null, (multiRequest) -> fail("no group search expected"),
+            ActionListener.wrap(result::set, e -> fail(e.getMessage())));
+
+        phase.onResponse(response);
+
+        assertThat(result.get(), sameInstance(response));
+    }
+
+    public void testFailedGroupSearch() {
+        final int numHits = randomIntBetween(1, 10);
+        final int failedHit = randomIntBetween(0, numHits - 1);
+        final SearchRequest request = newCollapseRequest(null, "group", 0);
+        final InternalSearchHit[] hits = new InternalSearchHit[numHits];
+        final MultiSearchResponse.Item[] items = new MultiSearchResponse.Item[numHits];
+        final Exception failure = new IllegalStateException("group search failed");
+        for (int i = 0; i < numHits; i++) {
+            hits[i] = newHit(i, "group_" + i);
+            items[i] = i == failedHit ? new MultiSearchResponse.Item(null, failure)
+                : new MultiSearchResponse.Item(newResponse(InternalSearchHits.empty()), null);
+        }
+        final AtomicReference<Exception> result = new AtomicReference<>();
+        final ExpandSearchPhase phase = newPhase(request, new MultiSearchResponse(items), (multiRequest) -> {},
+            ActionListener.wrap(r -> fail("expected a failure"), result::set));
+
+        phase.onResponse(newResponse(new InternalSearchHits(hits, numHits, 1.0F)));
+
+        assertThat(result.get(), sameInstance(failure));
+    }
+
+    public void testFailedMultiSearch() {
+        final SearchRequest request = newCollapseRequest(null, "group", 0);
+        final Exception failure = new IllegalStateException("multi search failed");
+        final AtomicReference<Exception> result = new AtomicReference<>();
+        final ExpandSearchPhase phase = new ExpandSearchPhase(new SearchTransportService(Settings.EMPTY, null, null) {
+            @Override
+            public void sendExecuteMultiSearch(DiscoveryNode node, MultiSearchRequest request, SearchTask task,
+                                               ActionListener<MultiSearchResponse> listener) {
+                listener.onFailure(failure);
+            }
+        }, newNode(), newTask(), request, ActionListener.wrap(r -> fail("expected a failure"), result::set));
+
+        InternalSearchHit[] hits = new InternalSearchHit[] {newHit(0, "group_0")};
+        phase.onResponse(newResponse(new InternalSearchHits(hits, 1, 1.0F)));
+
+        assertThat(result.get(), sameInstance(failure));
+    }
+
+    public void testFailedSearch() {
+        final Exception failure = new IllegalStateException("search failed");
+        final AtomicReference<Exception> result = new AtomicReference<>();
+        final ExpandSearchPhase phase = newPhase(newCollapseRequest(null, "group", 0), null,
+            (multiRequest) -> fail("no group search expected"), ActionListener.wrap(r -> fail("expected a failure"), result::set));
+
+        phase.onFailure(failure);
+
+        assertThat(result.get(), sameInstance(failure));
+    }
+
+    private static SearchRequest newCollapseRequest(QueryBuilder query, String innerHitName, int maxConcurrentGroupRequests) {
+        CollapseBuilder collapse = new CollapseBuilder("group").setInnerHits(new InnerHitBuilder().setName(innerHitName).setSize(3));
+        if (maxConcurrentGroupRequests > 0) {
+            collapse.setMaxConcurrentGroupRequests(maxConcurrentGroupRequests);
+        }
+        return new SearchRequest("index").source(new SearchSourceBuilder().query(query).collapse(collapse));
+    }
+
+    private static InternalSearchHit newHit(int docId, String collapseValue) {
+        List<Object> values = collapseValue == null ? Collections.emptyList() : Collections.singletonList(collapseValue);
+        SearchHitField field = new InternalSearchHitField("group", values);
+        return new InternalSearchHit(docId, Integer.toString(docId), new Text("type"), Collections.singletonMap("group", field));
+    }
+
+    private static SearchResponse newResponse(InternalSearchHits hits) {
+        InternalSearchResponse internalResponse = new InternalSearchResponse(hits, null, null, null, false, null);
+        return new SearchResponse(internalResponse, null, 1, 1, 0, ShardSearchFailure.EMPTY_ARRAY);
+    }
+
+    private static DiscoveryNode newNode() {
+        return new DiscoveryNode("node_1", buildNewFakeTransportAddress(), Version.CURRENT);
+    }
+
+    private static SearchTask newTask() {
+        return new SearchTask(1, "transport", SearchAction.NAME, "", TaskId.EMPTY_TASK_ID);
+    }
+
+    private static ExpandSearchPhase newPhase(SearchRequest request, MultiSearchResponse multiResponse,
+                                              Consumer<MultiSearchRequest> requestConsumer, ActionListener<SearchResponse> listener) {
+        SearchTransportService transportService = new SearchTransportService(Settings.EMPTY, null, null) {
+            @Override
+            public void sendExecuteMultiSearch(DiscoveryNode node, MultiSearchRequest multiRequest, SearchTask task,
+                                               ActionListener<MultiSearchResponse> multiListener) {
+                requestConsumer.accept(multiRequest);
+                multiListener.onResponse(multiResponse);
+            }
+        };
+        return new ExpandSearchPhase(transportService, newNode(), newTask(), request, listener);
+    }
+}
@@ -76,7 +76,7 @@ public class SearchAsyncActionTests extends ESTestCase {
         AtomicInteger contextIdGenerator = new AtomicInteger(0);
         GroupShardsIterator shardsIter = getShardsIter("idx", randomIntBetween(1, 10), randomBoolean(), primaryNode, replicaNode);
         AtomicInteger numFreedContext = new AtomicInteger();
-        SearchTransportService transportService = new SearchTransportService(Settings.EMPTY, null) {
+        SearchTransportService transportService = new SearchTransportService(Settings.EMPTY, null, null) {
             @Override
             public void sendFreeContext(DiscoveryNode node, long contextId, SearchRequest request) {
                 numFreedContext.incrementAndGet();
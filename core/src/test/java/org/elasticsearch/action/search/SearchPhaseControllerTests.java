@@ -19,14 +19,20 @@
 
 package org.elasticsearch.action.search;
 
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.grouping.CollapseTopFieldDocs;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.text.Text;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
 import org.elasticsearch.index.Index;
+import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.metrics.max.InternalMax;
 import org.elasticsearch.search.fetch.FetchSearchResult;
 import org.elasticsearch.search.fetch.FetchSearchResultProvider;
 import org.elasticsearch.search.internal.InternalSearchHit;
@@ -44,8 +50,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.equalTo;
@@ -118,6 +126,133 @@ public class SearchPhaseControllerTests extends ESTestCase {
         }
     }
 
+    public void testConsumerBatchedReduce() throws Exception {
+        int numShards = randomIntBetween(3, 50);
+        int bufferSize = randomIntBetween(2, numShards - 1);
+        int size = randomIntBetween(1, 10);
+        SearchRequest request = new SearchRequest();
+        request.setBatchedReduceSize(bufferSize);
+        SearchPhaseController.QueryPhaseResultConsumer consumer = searchPhaseController.newQueryPhaseResultConsumer(request, numShards);
+        assertNotNull(consumer);
+        AtomicArray<QuerySearchResultProvider> results = new AtomicArray<>(numShards);
+        List<ScoreDoc> allDocs = new ArrayList<>();
+        double expectedMax = Double.NEGATIVE_INFINITY;
+        for (int shardIndex = 0; shardIndex < numShards; shardIndex++) {
+            QuerySearchResult result = new QuerySearchResult(shardIndex,
+                new SearchShardTarget("node", new Index("test", "na"), shardIndex));
+            int numDocs = randomIntBetween(0, size);
+            ScoreDoc[] scoreDocs = new ScoreDoc[numDocs];
+            float score = 100f;
+            for (int i = 0; i < numDocs; i++) {
+                score -= randomIntBetween(1, 5);
+                scoreDocs[i] = new ScoreDoc(i, score, shardIndex);
+                allDocs.add(scoreDocs[i]);
+            }
+            result.topDocs(new TopDocs(numDocs, scoreDocs, numDocs == 0 ? Float.NaN : scoreDocs[0].score), new DocValueFormat[0]);
+            double max = randomDouble();
+            expectedMax = Math.max(expectedMax, max);
+            result.aggregations(new InternalAggregations(Collections.singletonList(
+                new InternalMax("max", max, DocValueFormat.RAW, Collections.emptyList(), Collections.emptyMap()))));
+            result.size(size);
+            results.set(shardIndex, result);
+            consumer.consumeResult(shardIndex, result);
+        }
+        consumer.ensureNoFailure();
+        // the partially reduced aggs take one slot of the buffer, so batches after the first one only take bufferSize - 1 shards
+        int expectedNumReducePhases = 1 + (numShards - bufferSize) / (bufferSize - 1);
+        assertEquals(expectedNumReducePhases, consumer.getNumReducePhases());
+        for (AtomicArray.Entry<QuerySearchResultProvider> entry : results.asList()) {
+            assertNull(entry.value.queryResult().aggregations());
+            assertTrue(entry.value.queryResult().hasAggs());
+        }
+        ScoreDoc[] sortedDocs = searchPhaseController.sortDocs(false, results);
+        allDocs.sort((a, b) -> {
+            int cmp = Float.compare(b.score, a.score);
+            if (cmp == 0) {
+                cmp = Integer.compare(a.shardIndex, b.shardIndex);
+            }
+            return cmp == 0 ? Integer.compare(a.doc, b.doc) : cmp;
+        });
+        assertEquals(Math.min(size, allDocs.size()), sortedDocs.length);
+        for (int i = 0; i < sortedDocs.length; i++) {
+            assertEquals(allDocs.get(i).score, sortedDocs[i].score, 0f);
+        }
+        InternalSearchResponse response = searchPhaseController.merge(false, sortedDocs, results,
+            new AtomicArray<FetchSearchResultProvider>(numShards), consumer);
+        assertEquals(expectedNumReducePhases + 1, response.getNumReducePhases());
+        InternalMax internalMax = (InternalMax) response.aggregations().asList().get(0);
+        assertEquals(expectedMax, internalMax.getValue(), 0.0d);
+        assertEquals(allDocs.size(), response.hits().getTotalHits());
+    }
+
+    public void testSortDocsCollapse() throws Exception {
+        final int numShards = randomIntBetween(2, 20);
+        final int numGroups = randomIntBetween(1, 20);
+        final int size = randomIntBetween(1, numGroups + 5);
+        final SearchRequest request = new SearchRequest();
+        request.setBatchedReduceSize(randomIntBetween(2, numShards + 1));
+        final SearchPhaseController.QueryPhaseResultConsumer consumer =
+            searchPhaseController.newQueryPhaseResultConsumer(request, numShards);
+        final AtomicArray<QuerySearchResultProvider> results = new AtomicArray<>(numShards);
+        // the best score of each group across all shards, the doc id of a hit is its group
+        final Map<Integer, Float> bestScores = new HashMap<>();
+        final SortField[] sortFields = new SortField[] {SortField.FIELD_SCORE};
+        for (int shardIndex = 0; shardIndex < numShards; shardIndex++) {
+            List<FieldDoc> shardDocs = new ArrayList<>();
+            for (int group = 0; group < numGroups; group++) {
+                if (randomBoolean()) {
+                    // unique scores so that the expected order doesn't depend on tie breaks
+                    float score = shardIndex * numGroups + group + 1;
+                    shardDocs.add(new FieldDoc(group, score, new Object[] {score}));
+                    bestScores.merge(group, score, Math::max);
+                }
+            }
+            shardDocs.sort((a, b) -> Float.compare(b.score, a.score));
+            FieldDoc[] scoreDocs = shardDocs.toArray(new FieldDoc[shardDocs.size()]);
+            Object[] collapseValues = new Object[scoreDocs.length];
+            for (int i = 0; i < scoreDocs.length; i++) {
+                collapseValues[i] = (long) scoreDocs[i].doc;
+            }
+            float maxScore = scoreDocs.length == 0 ? Float.NaN : scoreDocs[0].score;
+            QuerySearchResult result = new QuerySearchResult(shardIndex,
+                new SearchShardTarget("node", new Index("test", "na"), shardIndex));
+            result.topDocs(new CollapseTopFieldDocs("group", scoreDocs.length, scoreDocs, sortFields, collapseValues, maxScore),
+                new DocValueFormat[] {DocValueFormat.RAW});
+            result.size(size);
+            results.set(shardIndex, result);
+            if (consumer != null) {
+                consumer.consumeResult(shardIndex, result);
+            }
+        }
+        if (consumer != null) {
+            consumer.ensureNoFailure();
+        }
+        List<Float> expectedScores = new ArrayList<>(bestScores.values());
+        expectedScores.sort(Collections.reverseOrder());
+
+        ScoreDoc[] sortedDocs = searchPhaseController.sortDocs(false, results);
+
+        assertEquals(Math.min(size, bestScores.size()), sortedDocs.length);
+        Set<Integer> groups = new HashSet<>();
+        for (int i = 0; i < sortedDocs.length; i++) {
+            assertTrue("group [" + sortedDocs[i].doc + "] returned twice", groups.add(sortedDocs[i].doc));
+            assertEquals(expectedScores.get(i), sortedDocs[i].score, 0f);
+            assertEquals(bestScores.get(sortedDocs[i].doc), sortedDocs[i].score, 0f);
+        }
+    }
+
+    public void testNewConsumer() {
+        int numShards = randomIntBetween(1, 100);
+        SearchRequest request = new SearchRequest();
+        request.setBatchedReduceSize(randomIntBetween(numShards, numShards + 10));
+        assertNull(searchPhaseController.newQueryPhaseResultConsumer(request, numShards));
+        request.setBatchedReduceSize(randomIntBetween(2, Math.max(2, numShards - 1)));
+        if (request.getBatchedReduceSize() < numShards) {
+            assertNotNull(searchPhaseController.newQueryPhaseResultConsumer(request, numShards));
+        }
+        expectThrows(IllegalArgumentException.class, () -> request.setBatchedReduceSize(randomIntBetween(-10, 1)));
+    }
+
     private AtomicArray<QuerySearchResultProvider> generateQueryResults(int nShards,
                                                                         List<CompletionSuggestion> suggestions,
                                                                         int searchHitsSize) {
@@ -0,0 +1,369 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.node.ResponseCollectorService;
+import org.elasticsearch.search.fetch.QueryFetchSearchResult;
+import org.elasticsearch.search.internal.AliasFilter;
+import org.elasticsearch.search.internal.ShardSearchTransportRequest;
+import org.elasticsearch.search.query.QuerySearchResult;
+import org.elasticsearch.search.query.QuerySearchResultProvider;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskCancelledException;
+import org.elasticsearch.tasks.TaskId;
+import org.elasticsearch.tasks.TaskManager;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.VersionUtils;
+import org.elasticsearch.transport.TransportException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class ShardQueryBatchTests extends ESTestCase {
+
+    private final DiscoveryNode node1 = new DiscoveryNode("node_1", buildNewFakeTransportAddress(), Version.CURRENT);
+    private final DiscoveryNode node2 = new DiscoveryNode("node_2", buildNewFakeTransportAddress(), Version.CURRENT);
+
+    public void testGroupsRequestsPerShardCopy() {
+        RecordingSearchTransportService transportService = new RecordingSearchTransportService(null);
+        TaskManager taskManager = new TaskManager(Settings.EMPTY);
+        SearchTask parentTask = newSearchTask(taskManager);
+        ShardQueryBatch batch = new ShardQueryBatch(transportService, taskManager, "local_node", parentTask);
+        ShardId shard1 = new ShardId("index", "_na_", 0);
+        ShardId shard2 = new ShardId("index", "_na_", 1);
+
+        List<ShardSearchTransportRequest> node1Shard1 = new ArrayList<>();
+        List<ShardSearchTransportRequest> node1Shard2 = new ArrayList<>();
+        List<ShardSearchTransportRequest> node2Shard1 = new ArrayList<>();
+        int numSearches = randomIntBetween(1, 10);
+        for (int i = 0; i < numSearches; i++) {
+            SearchTask task = newSearchTask(taskManager);
+            List<ShardSearchTransportRequest> requests = new ArrayList<>();
+            requests.add(sendQuery(batch, node1, shard1, task));
+            requests.add(sendQuery(batch, node1, shard2, task));
+            requests.add(sendQuery(batch, node2, shard1, task));
+            for (ShardSearchTransportRequest request : requests) {
+                assertThat(request.getParentTask(), equalTo(new TaskId("local_node", task.getId())));
+            }
+            node1Shard1.add(requests.get(0));
+            node1Shard2.add(requests.get(1));
+            node2Shard1.add(requests.get(2));
+        }
+        assertTrue(transportService.batches.isEmpty());
+        assertTrue(transportService.directRequests.isEmpty());
+        assertTrue(batch.isOpen());
+
+        batch.flush();
+        assertFalse(batch.isOpen());
+        assertThat(transportService.batches.size(), equalTo(3));
+        for (SentBatch sent : transportService.batches) {
+            assertFalse(sent.request.fetch());
+            assertThat(sent.parentTask, sameInstance(parentTask));
+            if (sent.node == node2) {
+                assertThat(sent.request.requests(), equalTo(node2Shard1));
+            } else if (sent.request.requests().get(0).shardId().equals(shard1)) {
+                assertThat(sent.request.requests(), equalTo(node1Shard1));
+            } else {
+                assertThat(sent.request.requests(), equalTo(node1Shard2));
+            }
+        }
+
+        // requests that are sent after the flush are not batched anymore
+        sendQuery(batch, node1, shard1, newSearchTask(taskManager));
+        assertThat(transportService.batches.size(), equalTo(3));
+        assertThat(transportService.directRequests.size(), equalTo(1));
+    }
+
+    public void testRegistersChildTaskNodes() {
+        RecordingSearchTransportService transportService = new RecordingSearchTransportService(null);
+        TaskManager taskManager = new TaskManager(Settings.EMPTY);
+        ShardQueryBatch batch = new ShardQueryBatch(transportService, taskManager, "local_node", newSearchTask(taskManager));
+        ShardId shardId = new ShardId("index", "_na_", 0);
+        SearchTask task = newSearchTask(taskManager);
+        sendQuery(batch, node1, shardId, task);
+        sendQuery(batch, node2, shardId, task);
+        // the nodes that hold child tasks of the search are the ones that its cancellation is propagated to
+        Set<String> childNodes = taskManager.cancel(task, "test", nodes -> {});
+        assertThat(childNodes, containsInAnyOrder(node1.getId(), node2.getId()));
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        batch.sendExecuteQuery(node1, newRequest(shardId), task, ActionListener.wrap(r -> fail("unexpected response"), failure::set));
+        assertThat(failure.get(), instanceOf(TransportException.class));
+        assertThat(failure.get().getCause(), instanceOf(TaskCancelledException.class));
+
+        batch.flush();
+        assertThat(transportService.batches.size(), equalTo(2));
+        for (SentBatch sent : transportService.batches) {
+            assertThat(sent.request.requests().size(), equalTo(1));
+        }
+    }
+
+    public void testDispatchesResponses() {
+        RecordingSearchTransportService transportService = new RecordingSearchTransportService(null);
+        TaskManager taskManager = new TaskManager(Settings.EMPTY);
+        ShardQueryBatch batch = new ShardQueryBatch(transportService, taskManager, "local_node", newSearchTask(taskManager));
+        ShardId shardId = new ShardId("index", "_na_", 0);
+        int numRequests = randomIntBetween(1, 10);
+        List<AtomicReference<Object>> outcomes = new ArrayList<>();
+        for (int i = 0; i < numRequests; i++) {
+            AtomicReference<Object> outcome = new AtomicReference<>();
+            batch.sendExecuteFetch(node1, newRequest(shardId), newSearchTask(taskManager), ActionListener.wrap(outcome::set, outcome::set));
+            outcomes.add(outcome);
+        }
+        batch.flush();
+        assertThat(transportService.batches.size(), equalTo(1));
+        SentBatch sent = transportService.batches.get(0);
+        assertTrue(sent.request.fetch());
+
+        SearchTransportService.ShardQueryBatchResponse response = new SearchTransportService.ShardQueryBatchResponse(true, numRequests);
+        List<Object> expected = new ArrayList<>();
+        for (int i = 0; i < numRequests; i++) {
+            if (randomBoolean()) {
+                QueryFetchSearchResult result = new QueryFetchSearchResult();
+                response.set(i, result, null, i);
+                expected.add(result);
+            } else {
+                Exception failure = new IllegalArgumentException("failure " + i);
+                response.set(i, null, failure, i);
+                expected.add(failure);
+            }
+        }
+        sent.listener.onResponse(response);
+        for (int i = 0; i < numRequests; i++) {
+            assertThat(outcomes.get(i).get(), sameInstance(expected.get(i)));
+        }
+    }
+
+    public void testBatchFailureFailsAllRequests() {
+        RecordingSearchTransportService transportService = new RecordingSearchTransportService(null);
+        TaskManager taskManager = new TaskManager(Settings.EMPTY);
+        ShardQueryBatch batch = new ShardQueryBatch(transportService, taskManager, "local_node", newSearchTask(taskManager));
+        ShardId shardId = new ShardId("index", "_na_", 0);
+        int numRequests = randomIntBetween(1, 10);
+        List<AtomicReference<Exception>> failures = new ArrayList<>();
+        for (int i = 0; i < numRequests; i++) {
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            batch.sendExecuteQuery(node1, newRequest(shardId), newSearchTask(taskManager),
+                ActionListener.wrap(r -> fail("unexpected response"), failure::set));
+            failures.add(failure);
+        }
+        batch.flush();
+        Exception e = new TransportException("boom");
+        transportService.batches.get(0).listener.onFailure(e);
+        for (AtomicReference<Exception> failure : failures) {
+            assertThat(failure.get(), sameInstance(e));
+        }
+    }
+
+    public void testOldNodesAreNotBatched() {
+        RecordingSearchTransportService transportService = new RecordingSearchTransportService(null);
+        TaskManager taskManager = new TaskManager(Settings.EMPTY);
+        ShardQueryBatch batch = new ShardQueryBatch(transportService, taskManager, "local_node", newSearchTask(taskManager));
+        Version oldVersion = VersionUtils.getPreviousVersion(Version.V_6_0_0_alpha1_UNRELEASED);
+        DiscoveryNode oldNode = new DiscoveryNode("old_node", buildNewFakeTransportAddress(), oldVersion);
+        ShardId shardId = new ShardId("index", "_na_", 0);
+        sendQuery(batch, oldNode, shardId, newSearchTask(taskManager));
+        batch.sendExecuteFetch(oldNode, newRequest(shardId), newSearchTask(taskManager), ActionListener.wrap(r -> {}, e -> {}));
+        assertThat(transportService.directRequests.size(), equalTo(2));
+        batch.flush();
+        assertTrue(transportService.batches.isEmpty());
+    }
+
+    public void testCollectsNodeStatisticsPerRequest() {
+        ResponseCollectorService collector = new ResponseCollectorService(Settings.EMPTY);
+        RecordingSearchTransportService transportService = new RecordingSearchTransportService(collector);
+        TaskManager taskManager = new TaskManager(Settings.EMPTY);
+        ShardQueryBatch batch = new ShardQueryBatch(transportService, taskManager, "local_node", newSearchTask(taskManager));
+        ShardId shardId = new ShardId("index", "_na_", 0);
+        int numRequests = randomIntBetween(2, 10);
+        for (int i = 0; i < numRequests; i++) {
+            sendQuery(batch, node1, shardId, newSearchTask(taskManager));
+        }
+        assertThat(collector.getOutstandingRequests(node1.getId()), equalTo(0L));
+        batch.flush();
+        assertThat(collector.getOutstandingRequests(node1.getId()), equalTo((long) numRequests));
+
+        // each request reports its own time rather than the time of the whole batch, which took much longer
+        long tookInNanos = TimeUnit.MILLISECONDS.toNanos(randomIntBetween(1, 100));
+        SearchTransportService.ShardQueryBatchResponse response = new SearchTransportService.ShardQueryBatchResponse(false, numRequests);
+        for (int i = 0; i < numRequests; i++) {
+            QuerySearchResult result = new QuerySearchResult();
+            result.nodeQueueSize(randomIntBetween(0, 10));
+            result.serviceTimeEWMA(randomIntBetween(0, 1000));
+            response.set(i, result, null, tookInNanos);
+        }
+        response.batchTookInNanos(TimeUnit.HOURS.toNanos(1));
+        transportService.batches.get(0).listener.onResponse(response);
+        assertThat(collector.getOutstandingRequests(node1.getId()), equalTo(0L));
+        ResponseCollectorService.ComputedNodeStats stats = collector.getNodeStatistics(node1.getId(), 1).get();
+        assertThat(stats.responseTime, equalTo((double) tookInNanos));
+    }
+
+    public void testRequestSerialization() throws IOException {
+        int numRequests = randomIntBetween(1, 10);
+        List<ShardSearchTransportRequest> requests = new ArrayList<>();
+        ShardId shardId = new ShardId("index", "_na_", randomIntBetween(0, 5));
+        for (int i = 0; i < numRequests; i++) {
+            ShardSearchTransportRequest request = newRequest(shardId);
+            request.setParentTask("node", i);
+            requests.add(request);
+        }
+        SearchTransportService.ShardQueryBatchRequest request =
+            new SearchTransportService.ShardQueryBatchRequest(randomBoolean(), requests);
+        SearchTransportService.ShardQueryBatchRequest deserialized = new SearchTransportService.ShardQueryBatchRequest();
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            request.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                deserialized.readFrom(in);
+            }
+        }
+        assertThat(deserialized.fetch(), equalTo(request.fetch()));
+        assertThat(deserialized.requests().size(), equalTo(numRequests));
+        for (int i = 0; i < numRequests; i++) {
+            ShardSearchTransportRequest expected = requests.get(i);
+            ShardSearchTransportRequest actual = deserialized.requests().get(i);
+            assertThat(actual.shardId(), equalTo(expected.shardId()));
+            assertThat(actual.nowInMillis(), equalTo(expected.nowInMillis()));
+            assertThat(actual.getParentTask(), equalTo(new TaskId("node", i)));
+        }
+        assertArrayEquals(request.indices(), deserialized.indices());
+    }
+
+    public void testResponseSerialization() throws IOException {
+        int numRequests = randomIntBetween(1, 10);
+        SearchTransportService.ShardQueryBatchResponse response = new SearchTransportService.ShardQueryBatchResponse(false, numRequests);
+        for (int i = 0; i < numRequests; i++) {
+            if (randomBoolean()) {
+                QuerySearchResult result = new QuerySearchResult(randomPositiveLong(), null);
+                result.topDocs(new TopDocs(randomIntBetween(0, 100), new ScoreDoc[0], randomFloat()), null);
+                result.nodeQueueSize(randomIntBetween(0, 10));
+                result.serviceTimeEWMA(randomPositiveLong());
+                response.set(i, result, null, randomPositiveLong());
+            } else {
+                response.set(i, null, new IllegalArgumentException("failure " + i), randomPositiveLong());
+            }
+        }
+        response.batchTookInNanos(randomPositiveLong());
+
+        SearchTransportService.ShardQueryBatchResponse deserialized = new SearchTransportService.ShardQueryBatchResponse(false);
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            response.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                deserialized.readFrom(in);
+            }
+        }
+        assertThat(deserialized.size(), equalTo(numRequests));
+        assertThat(deserialized.batchTookInNanos(), equalTo(response.batchTookInNanos()));
+        for (int i = 0; i < numRequests; i++) {
+            assertThat(deserialized.tookInNanos(i), equalTo(response.tookInNanos(i)));
+            if (response.failure(i) == null) {
+                assertThat(deserialized.failure(i), nullValue());
+                QuerySearchResult expected = response.result(i).queryResult();
+                QuerySearchResult actual = deserialized.result(i).queryResult();
+                assertThat(actual.id(), equalTo(expected.id()));
+                assertThat(actual.topDocs().totalHits, equalTo(expected.topDocs().totalHits));
+                assertThat(actual.nodeQueueSize(), equalTo(expected.nodeQueueSize()));
+                assertThat(actual.serviceTimeEWMA(), equalTo(expected.serviceTimeEWMA()));
+            } else {
+                assertThat(deserialized.result(i), nullValue());
+                assertThat(deserialized.failure(i), instanceOf(IllegalArgumentException.class));
+                assertThat(deserialized.failure(i).getMessage(), equalTo(response.failure(i).getMessage()));
+            }
+        }
+    }
+
+    private static ShardSearchTransportRequest sendQuery(ShardQueryBatch batch, DiscoveryNode node, ShardId shardId, SearchTask task) {
+        ShardSearchTransportRequest request = newRequest(shardId);
+        batch.sendExecuteQuery(node, request, task, ActionListener.wrap(r -> {}, e -> {}));
+        return request;
+    }
+
+    private static ShardSearchTransportRequest newRequest(ShardId shardId) {
+        return new ShardSearchTransportRequest(new SearchRequest(shardId.getIndexName()), shardId, 1,
+            new AliasFilter(null, Strings.EMPTY_ARRAY), randomPositiveLong());
+    }
+
+    private static SearchTask newSearchTask(TaskManager taskManager) {
+        return (SearchTask) taskManager.register("transport", SearchAction.NAME, new SearchRequest());
+    }
+
+    private static final class SentBatch {
+        final DiscoveryNode node;
+        final SearchTransportService.ShardQueryBatchRequest request;
+        final Task parentTask;
+        final ActionListener<SearchTransportService.ShardQueryBatchResponse> listener;
+
+        SentBatch(DiscoveryNode node, SearchTransportService.ShardQueryBatchRequest request, Task parentTask,
+                  ActionListener<SearchTransportService.ShardQueryBatchResponse> listener) {
+            this.node = node;
+            this.request = request;
+            this.parentTask = parentTask;
+            this.listener = listener;
+        }
+    }
+
+    private static final class RecordingSearchTransportService extends SearchTransportService {
+        final List<SentBatch> batches = Collections.synchronizedList(new ArrayList<>());
+        final List<ShardSearchTransportRequest> directRequests = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingSearchTransportService(ResponseCollectorService responseCollectorService) {
+            super(Settings.EMPTY, null, responseCollectorService);
+        }
+
+        @Override
+        void sendExecuteQueryBatch(DiscoveryNode node, ShardQueryBatchRequest request, Task parentTask,
+                                   ActionListener<ShardQueryBatchResponse> listener) {
+            batches.add(new SentBatch(node, request, parentTask, listener));
+        }
+
+        @Override
+        public void sendExecuteQuery(DiscoveryNode node, ShardSearchTransportRequest request, SearchTask task,
+                                     ActionListener<QuerySearchResultProvider> listener) {
+            directRequests.add(request);
+        }
+
+        @Override
+        public void sendExecuteFetch(DiscoveryNode node, ShardSearchTransportRequest request, SearchTask task,
+                                     ActionListener<QueryFetchSearchResult> listener) {
+            directRequests.add(request);
+        }
+    }
+}
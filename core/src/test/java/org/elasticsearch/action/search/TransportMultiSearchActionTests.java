@@ -23,6 +23,7 @@ import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.support.ActionFilter;
 import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.action.support.TransportAction;
 import org.elasticsearch.cluster.ClusterName;
 import org.elasticsearch.cluster.ClusterState;
@@ -31,12 +32,15 @@ import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.tasks.TaskManager;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
 
 import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -113,6 +117,78 @@ public class TransportMultiSearchActionTests extends ESTestCase {
         }
     }
 
+    public void testCoalesceShardRequests() throws Exception {
+        Settings settings = Settings.builder()
+                .put("node.name", TransportMultiSearchActionTests.class.getSimpleName())
+                .build();
+        ActionFilters actionFilters = mock(ActionFilters.class);
+        when(actionFilters.filters()).thenReturn(new ActionFilter[0]);
+        ThreadPool threadPool = new ThreadPool(settings);
+        TaskManager taskManager = mock(TaskManager.class);
+        TransportService transportService = new TransportService(Settings.EMPTY, null, null, TransportService.NOOP_TRANSPORT_INTERCEPTOR,
+                null) {
+            @Override
+            public TaskManager getTaskManager() {
+                return taskManager;
+            }
+        };
+        ClusterService clusterService = mock(ClusterService.class);
+        when(clusterService.state()).thenReturn(ClusterState.builder(new ClusterName("test")).build());
+        when(clusterService.localNode()).thenReturn(new DiscoveryNode("local", buildNewFakeTransportAddress(), Version.CURRENT));
+        IndexNameExpressionResolver resolver = new IndexNameExpressionResolver(Settings.EMPTY);
+
+        // Record the batch that each search sees, only the searches that are started concurrently must see an open batch
+        Set<ShardQueryBatch> batches = ConcurrentCollections.newConcurrentSet();
+        AtomicInteger batchedSearches = new AtomicInteger();
+        Queue<ActionListener<SearchResponse>> pendingSearches = ConcurrentCollections.newQueue();
+        TransportAction<SearchRequest, SearchResponse> searchAction = new TransportAction<SearchRequest, SearchResponse>
+                (Settings.EMPTY, "action", threadPool, actionFilters, resolver, taskManager) {
+            @Override
+            protected void doExecute(SearchRequest request, ActionListener<SearchResponse> listener) {
+                ShardQueryBatch batch = threadPool.getThreadContext().getTransient(ShardQueryBatch.TRANSIENT_KEY);
+                if (batch != null && batch.isOpen()) {
+                    batches.add(batch);
+                    batchedSearches.incrementAndGet();
+                }
+                pendingSearches.add(listener);
+            }
+        };
+        TransportMultiSearchAction action = new TransportMultiSearchAction(threadPool, actionFilters, transportService, clusterService,
+                searchAction, mock(SearchTransportService.class), true, resolver, 10);
+
+        try {
+            int maxConcurrentSearches = randomIntBetween(2, 20);
+            int numSearchRequests = randomIntBetween(1, 64);
+            MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+            multiSearchRequest.maxConcurrentSearchRequests(maxConcurrentSearches);
+            for (int i = 0; i < numSearchRequests; i++) {
+                multiSearchRequest.add(new SearchRequest());
+            }
+
+            PlainActionFuture<MultiSearchResponse> future = new PlainActionFuture<>();
+            action.execute(multiSearchRequest, future);
+            int numConcurrentSearches = Math.min(numSearchRequests, maxConcurrentSearches);
+            assertThat(pendingSearches.size(), equalTo(numConcurrentSearches));
+            if (numConcurrentSearches > 1) {
+                assertThat(batches.size(), equalTo(1));
+                assertThat(batchedSearches.get(), equalTo(numConcurrentSearches));
+                assertFalse(batches.iterator().next().isOpen());
+            } else {
+                assertThat(batches.size(), equalTo(0));
+                assertThat(batchedSearches.get(), equalTo(0));
+            }
+
+            // the searches that are started once the first ones complete are not batched anymore
+            while (future.isDone() == false) {
+                pendingSearches.poll().onResponse(new SearchResponse());
+            }
+            assertThat(future.get().getResponses().length, equalTo(numSearchRequests));
+            assertThat(batchedSearches.get(), equalTo(numConcurrentSearches > 1 ? numConcurrentSearches : 0));
+        } finally {
+            assertTrue(ESTestCase.terminate(threadPool));
+        }
+    }
+
     public void testDefaultMaxConcurrentSearches() {
         int numDataNodes = randomIntBetween(1, 10);
         DiscoveryNodes.Builder builder = DiscoveryNodes.builder();
@@ -51,9 +51,11 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexNotFoundException;
 import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.IndexingPressure;
 import org.elasticsearch.index.engine.EngineClosedException;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardClosedException;
@@ -80,10 +82,12 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -810,6 +814,71 @@ public class TransportReplicationActionTests extends ESTestCase {
         assertEquals(ActiveShardCount.from(requestWaitForActiveShards), request.waitForActiveShards());
     }
 
+    /**
+     * test that the limits of primary requests are checked when they are received, so that requests waiting in the queue of the
+     * executor are accounted for and requests over the limit are rejected without being queued
+     */
+    public void testPrimaryLimitsAccountForQueuedRequests() throws Exception {
+        final String index = "test";
+        final ShardId shardId = new ShardId(index, "_na_", 0);
+        setState(clusterService, state(index, true, ShardRoutingState.STARTED));
+        final ShardRouting primaryShard = clusterService.state().routingTable().shardRoutingTable(shardId).primaryShard();
+        final IndexingPressure indexingPressure =
+            new IndexingPressure(Settings.builder().put(IndexingPressure.MAX_INDEXING_BYTES.getKey(), "100b").build());
+        final long requestBytes = 40;
+        final Action action = new Action(Settings.EMPTY, "testPrimaryLimitsAccountForQueuedRequests", transportService, clusterService,
+            shardStateAction, threadPool, ThreadPool.Names.BULK) {
+            @Override
+            protected Releasable checkPrimaryLimits(Request request, boolean localToCoordinatingNode) {
+                return indexingPressure.markPrimaryOperationStarted(requestBytes, localToCoordinatingNode);
+            }
+        };
+
+        // occupy all bulk threads so that the primary requests wait in the queue
+        final int numThreads = threadPool.info(ThreadPool.Names.BULK).getMax();
+        final CountDownLatch blocked = new CountDownLatch(numThreads);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        for (int i = 0; i < numThreads; i++) {
+            threadPool.executor(ThreadPool.Names.BULK).execute(() -> {
+                blocked.countDown();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+        }
+        final List<PlainActionFuture<Response>> listeners = new ArrayList<>();
+        try {
+            blocked.await();
+            for (int i = 0; i < 2; i++) {
+                PlainActionFuture<Response> listener = new PlainActionFuture<>();
+                action.new PrimaryOperationTransportHandler().messageReceived(
+                    new TransportReplicationAction.ConcreteShardRequest<>(new Request(shardId), primaryShard.allocationId().getId()),
+                    createTransportChannel(listener), maybeTask());
+                listeners.add(listener);
+            }
+            for (PlainActionFuture<Response> listener : listeners) {
+                assertFalse(listener.isDone());
+            }
+            assertThat(indexingPressure.stats().getCurrentPrimaryBytes(), equalTo(2 * requestBytes));
+
+            expectThrows(EsRejectedExecutionException.class, () -> action.new PrimaryOperationTransportHandler().messageReceived(
+                new TransportReplicationAction.ConcreteShardRequest<>(new Request(shardId), primaryShard.allocationId().getId()),
+                createTransportChannel(new PlainActionFuture<>()), maybeTask()));
+            assertThat(indexingPressure.stats().getPrimaryRejections(), equalTo(1L));
+            assertThat(indexingPressure.stats().getCurrentPrimaryBytes(), equalTo(2 * requestBytes));
+        } finally {
+            unblock.countDown();
+        }
+
+        for (PlainActionFuture<Response> listener : listeners) {
+            listener.get();
+        }
+        assertThat(indexingPressure.stats().getCurrentPrimaryBytes(), equalTo(0L));
+        assertThat(indexingPressure.stats().getTotalPrimaryBytes(), equalTo(2 * requestBytes));
+    }
+
     /** test that a primary request is rejected if it arrives at a shard with a wrong allocation id */
     public void testPrimaryActionRejectsWrongAid() throws Exception {
         final String index = "test";
@@ -995,10 +1064,17 @@ public class TransportReplicationActionTests extends ESTestCase {
                ClusterService clusterService,
                ShardStateAction shardStateAction,
                ThreadPool threadPool) {
+            this(settings, actionName, transportService, clusterService, shardStateAction, threadPool, ThreadPool.Names.SAME);
+        }
+
+        Action(Settings settings, String actionName, TransportService transportService,
+               ClusterService clusterService,
+               ShardStateAction shardStateAction,
+               ThreadPool threadPool, String executor) {
             super(settings, actionName, transportService, clusterService, mockIndicesService(clusterService), threadPool,
                 shardStateAction,
                 new ActionFilters(new HashSet<>()), new IndexNameExpressionResolver(Settings.EMPTY),
-                Request::new, Request::new, ThreadPool.Names.SAME);
+                Request::new, Request::new, executor);
         }
 
         @Override
@@ -21,13 +21,16 @@ package org.elasticsearch.cluster.routing;
 import org.apache.lucene.util.IOUtils;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.support.replication.ClusterStateCreationUtils;
+import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.routing.allocation.decider.AwarenessAllocationDecider;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.node.ResponseCollectorService;
 import org.elasticsearch.test.ClusterServiceUtils;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.threadpool.TestThreadPool;
@@ -45,6 +48,7 @@ import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.object.HasToString.hasToString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
 
 public class OperationRoutingTests extends ESTestCase{
 
@@ -291,4 +295,42 @@ public class OperationRoutingTests extends ESTestCase{
         }
     }
 
+    public void testAdaptiveReplicaSelection() throws Exception {
+        final int numShards = randomIntBetween(1, 5);
+        final ClusterState state = ClusterStateCreationUtils.stateWithAssignedPrimariesAndOneReplica("test", numShards);
+        final IndexShardRoutingTable shardRoutingTable = state.routingTable().index("test").shard(0);
+        final String fastNode = shardRoutingTable.primaryShard().currentNodeId();
+        final String slowNode = shardRoutingTable.replicaShards().get(0).currentNodeId();
+        final OperationRouting opRouting =
+            new OperationRouting(Settings.EMPTY, new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS));
+        opRouting.setUseAdaptiveReplicaSelection(true);
+        final ResponseCollectorService collector = new ResponseCollectorService(Settings.EMPTY);
+
+        // without statistics, all copies are candidates
+        GroupShardsIterator groupIterator = opRouting.searchShards(state, new String[]{"test"}, null, null, collector);
+        assertThat(groupIterator.size(), equalTo(numShards));
+        for (ShardIterator shardIterator : groupIterator) {
+            assertThat(shardIterator.size(), equalTo(2));
+        }
+
+        collector.addNodeStatistics(fastNode, 1, TimeValue.timeValueMillis(10).nanos(), TimeValue.timeValueMillis(5).nanos());
+        collector.addNodeStatistics(slowNode, 20, TimeValue.timeValueMillis(200).nanos(), TimeValue.timeValueMillis(150).nanos());
+        groupIterator = opRouting.searchShards(state, new String[]{"test"}, null, null, collector);
+        for (ShardIterator shardIterator : groupIterator) {
+            assertThat(shardIterator.nextOrNull().currentNodeId(), equalTo(fastNode));
+            assertThat(shardIterator.nextOrNull().currentNodeId(), equalTo(slowNode));
+        }
+
+        // the statistics of the node that lost are moved towards the ones of the winner so it gets a chance again eventually
+        final int clientNum = state.nodes().getSize();
+        final double slowRank = collector.getNodeStatistics(slowNode, clientNum).get().rank(0);
+        opRouting.searchShards(state, new String[]{"test"}, null, null, collector);
+        assertThat(collector.getNodeStatistics(slowNode, clientNum).get().rank(0), lessThan(slowRank));
+
+        // a preference disables adaptive replica selection
+        groupIterator = opRouting.searchShards(state, new String[]{"test"}, null, "_only_nodes:" + slowNode, collector);
+        for (ShardIterator shardIterator : groupIterator) {
+            assertThat(shardIterator.nextOrNull().currentNodeId(), equalTo(slowNode));
+        }
+    }
 }
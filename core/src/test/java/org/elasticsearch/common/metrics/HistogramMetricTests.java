@@ -0,0 +1,81 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.equalTo;
+
+public class HistogramMetricTests extends ESTestCase {
+
+    public void testRecordsLatenciesInMicros() {
+        HistogramMetric metric = new HistogramMetric();
+        for (int i = 1; i <= 100; i++) {
+            metric.inc(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        Histogram histogram = metric.snapshot();
+        assertThat(histogram.getTotalCount(), equalTo(100L));
+        assertEquals(50_000, histogram.getValueAtPercentile(50), 500);
+        assertEquals(99_000, histogram.getValueAtPercentile(99), 1000);
+        assertEquals(100_000, histogram.getMaxValue(), 1000);
+
+        // snapshots are copies
+        metric.inc(TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(histogram.getTotalCount(), equalTo(100L));
+        assertThat(metric.snapshot().getTotalCount(), equalTo(101L));
+
+        metric.clear();
+        assertThat(metric.snapshot().getTotalCount(), equalTo(0L));
+    }
+
+    public void testWindows() {
+        final AtomicLong clock = new AtomicLong(randomLong());
+        final long window = TimeUnit.MINUTES.toNanos(1);
+        HistogramMetric metric = new HistogramMetric(window, clock::get);
+        metric.inc(1000);
+        metric.inc(1000);
+        assertThat(metric.snapshot().getTotalCount(), equalTo(2L));
+
+        // the previous window is still reported
+        clock.addAndGet(window);
+        metric.inc(1000);
+        assertThat(metric.snapshot().getTotalCount(), equalTo(3L));
+
+        // the first window is dropped
+        clock.addAndGet(window);
+        assertThat(metric.snapshot().getTotalCount(), equalTo(1L));
+        metric.inc(1000);
+        assertThat(metric.snapshot().getTotalCount(), equalTo(2L));
+
+        // nothing was recorded during the last window
+        clock.addAndGet(2 * window);
+        assertThat(metric.snapshot().getTotalCount(), equalTo(0L));
+    }
+
+    public void testInvalidWindow() {
+        final long window = -randomIntBetween(1, 100);
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> new HistogramMetric(window, System::nanoTime));
+        assertThat(e.getMessage(), equalTo("window must be positive or 0 but was [" + window + "]"));
+    }
+}
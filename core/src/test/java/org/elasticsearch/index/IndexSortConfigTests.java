@@ -0,0 +1,164 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index;
+
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSelector;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.search.SortedSetSortField;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.fieldcomparator.BytesRefFieldComparatorSource;
+import org.elasticsearch.index.fielddata.fieldcomparator.LongValuesComparatorSource;
+import org.elasticsearch.index.mapper.KeywordFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.index.mapper.TextFieldMapper;
+import org.elasticsearch.search.MultiValueMode;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.elasticsearch.index.IndexSettingsTests.newIndexMeta;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+public class IndexSortConfigTests extends ESTestCase {
+
+    private static IndexSettings indexSettings(Settings settings) {
+        return new IndexSettings(newIndexMeta("test", settings), Settings.EMPTY);
+    }
+
+    private static Map<String, MappedFieldType> fieldTypes() {
+        Map<String, MappedFieldType> fieldTypes = new HashMap<>();
+        MappedFieldType timestamp = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.LONG);
+        timestamp.setName("timestamp");
+        fieldTypes.put("timestamp", timestamp);
+        MappedFieldType user = new KeywordFieldMapper.KeywordFieldType();
+        user.setName("user");
+        user.setHasDocValues(true);
+        fieldTypes.put("user", user);
+        MappedFieldType message = new TextFieldMapper.TextFieldType();
+        message.setName("message");
+        fieldTypes.put("message", message);
+        return fieldTypes;
+    }
+
+    public void testNoIndexSort() {
+        IndexSortConfig config = indexSettings(Settings.EMPTY).getIndexSortConfig();
+        assertFalse(config.hasIndexSort());
+        assertNull(config.buildIndexSort(fieldTypes()::get));
+        assertFalse(config.canEarlyTerminate(new Sort(new SortField("timestamp", SortField.Type.LONG))));
+    }
+
+    public void testBuildIndexSort() {
+        Settings settings = Settings.builder()
+            .putArray("index.sort.field", "timestamp", "user")
+            .putArray("index.sort.order", "desc", "asc")
+            .build();
+        IndexSortConfig config = indexSettings(settings).getIndexSortConfig();
+        assertTrue(config.hasIndexSort());
+        Sort sort = config.buildIndexSort(fieldTypes()::get);
+        assertThat(sort.getSort().length, equalTo(2));
+
+        SortedNumericSortField timestamp = (SortedNumericSortField) sort.getSort()[0];
+        assertThat(timestamp.getField(), equalTo("timestamp"));
+        assertTrue(timestamp.getReverse());
+        assertThat(timestamp.getSelector(), equalTo(SortedNumericSelector.Type.MAX));
+        // missing values are sorted last
+        assertThat(timestamp.getMissingValue(), equalTo(Long.MIN_VALUE));
+
+        SortedSetSortField user = (SortedSetSortField) sort.getSort()[1];
+        assertThat(user.getField(), equalTo("user"));
+        assertFalse(user.getReverse());
+        assertThat(user.getMissingValue(), equalTo(SortField.STRING_LAST));
+    }
+
+    public void testInvalidIndexSort() {
+        Settings unmapped = Settings.builder().put("index.sort.field", "unknown").build();
+        IllegalArgumentException exc = expectThrows(IllegalArgumentException.class,
+            () -> indexSettings(unmapped).getIndexSortConfig().buildIndexSort(fieldTypes()::get));
+        assertThat(exc.getMessage(), containsString("unknown index sort field:[unknown]"));
+
+        Settings noDocValues = Settings.builder().put("index.sort.field", "message").build();
+        exc = expectThrows(IllegalArgumentException.class,
+            () -> indexSettings(noDocValues).getIndexSortConfig().buildIndexSort(fieldTypes()::get));
+        assertThat(exc.getMessage(), containsString("docvalues not found for index sort field:[message]"));
+
+        Settings sizeMismatch = Settings.builder()
+            .putArray("index.sort.field", "timestamp", "user")
+            .put("index.sort.order", "desc")
+            .build();
+        exc = expectThrows(IllegalArgumentException.class, () -> indexSettings(sizeMismatch));
+        assertThat(exc.getMessage(), containsString("size mismatch"));
+
+        Settings invalidMode = Settings.builder()
+            .put("index.sort.field", "timestamp")
+            .put("index.sort.mode", "avg")
+            .build();
+        exc = expectThrows(IllegalArgumentException.class, () -> indexSettings(invalidMode));
+        assertThat(exc.getMessage(), containsString("Illegal index sort mode:[AVG]"));
+
+        Settings invalidMissing = Settings.builder()
+            .put("index.sort.field", "timestamp")
+            .put("index.sort.missing", "0")
+            .build();
+        exc = expectThrows(IllegalArgumentException.class, () -> indexSettings(invalidMissing));
+        assertThat(exc.getMessage(), containsString("Illegal missing value:[0]"));
+    }
+
+    public void testCanEarlyTerminate() {
+        Settings settings = Settings.builder()
+            .putArray("index.sort.field", "timestamp", "user")
+            .putArray("index.sort.order", "desc", "asc")
+            .build();
+        IndexSortConfig config = indexSettings(settings).getIndexSortConfig();
+
+        SortField timestampDesc = new SortField("timestamp",
+            new LongValuesComparatorSource(null, null, MultiValueMode.MAX, null), true);
+        SortField userAsc = new SortField("user",
+            new BytesRefFieldComparatorSource(null, "_last", MultiValueMode.MIN, null), false);
+        assertTrue(config.canEarlyTerminate(new Sort(timestampDesc)));
+        assertTrue(config.canEarlyTerminate(new Sort(timestampDesc, userAsc)));
+
+        // not a prefix of the index sort
+        assertFalse(config.canEarlyTerminate(new Sort(userAsc)));
+        assertFalse(config.canEarlyTerminate(new Sort(timestampDesc, userAsc, SortField.FIELD_DOC)));
+        // different order
+        assertFalse(config.canEarlyTerminate(new Sort(new SortField("timestamp",
+            new LongValuesComparatorSource(null, null, MultiValueMode.MAX, null), false))));
+        // different sort mode
+        assertFalse(config.canEarlyTerminate(new Sort(new SortField("timestamp",
+            new LongValuesComparatorSource(null, null, MultiValueMode.MIN, null), true))));
+        // different missing value
+        assertFalse(config.canEarlyTerminate(new Sort(new SortField("timestamp",
+            new LongValuesComparatorSource(null, "_first", MultiValueMode.MAX, null), true))));
+        assertFalse(config.canEarlyTerminate(new Sort(new SortField("timestamp",
+            new LongValuesComparatorSource(null, 42L, MultiValueMode.MAX, null), true))));
+        // sorting on nested documents
+        assertFalse(config.canEarlyTerminate(new Sort(new SortField("timestamp",
+            new LongValuesComparatorSource(null, null, MultiValueMode.MAX, new IndexFieldData.XFieldComparatorSource.Nested(null, null)),
+            true))));
+        // plain lucene sort fields
+        assertFalse(config.canEarlyTerminate(new Sort(new SortField("timestamp", SortField.Type.LONG, true))));
+    }
+}
@@ -20,6 +20,8 @@
 package org.elasticsearch.index.codec;
 
 import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.compressing.CompressionMode;
+import org.apache.lucene.codecs.compressing.Decompressor;
 import org.apache.lucene.codecs.lucene50.Lucene50Codec;
 import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
 import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat.Mode;
@@ -27,18 +29,29 @@ import org.apache.lucene.codecs.lucene53.Lucene53Codec;
 import org.apache.lucene.codecs.lucene54.Lucene54Codec;
 import org.apache.lucene.codecs.lucene62.Lucene62Codec;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LuceneTestCase.SuppressCodecs;
 import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.IndexAnalyzers;
 import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.UidFieldMapper;
+import org.elasticsearch.index.mapper.VersionFieldMapper;
 import org.elasticsearch.index.similarity.SimilarityService;
 import org.elasticsearch.indices.mapper.MapperRegistry;
 import org.elasticsearch.test.ESTestCase;
@@ -47,6 +60,7 @@ import org.elasticsearch.test.IndexSettingsModule;
 import java.io.IOException;
 import java.util.Collections;
 
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 
 @SuppressCodecs("*") // we test against default codec so never get a random one here!
@@ -71,6 +85,96 @@ public class CodecTests extends ESTestCase {
         assertCompressionEquals(Mode.BEST_COMPRESSION, codec);
     }
 
+    public void testDictionaryCompression() throws Exception {
+        Codec codec = createCodecService().codec("dictionary_compression");
+        assertThat(codec, instanceOf(DictionaryCompressionCodec.class));
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig(null);
+        iwc.setCodec(codec);
+        IndexWriter iw = new IndexWriter(dir, iwc);
+        int numDocs = randomIntBetween(1, 5000);
+        String[] sources = new String[numDocs];
+        for (int i = 0; i < numDocs; i++) {
+            sources[i] = "{\"@timestamp\":\"2017-01-01T00:00:" + i + "Z\",\"level\":\"" + randomFrom("INFO", "WARN", "ERROR")
+                + "\",\"message\":\"" + randomAsciiOfLengthBetween(0, 200) + "\"}";
+            Document doc = new Document();
+            doc.add(new StoredField("_source", new BytesRef(sources[i])));
+            iw.addDocument(doc);
+        }
+        iw.forceMerge(1);
+        iw.commit();
+        iw.close();
+        DirectoryReader ir = DirectoryReader.open(dir);
+        SegmentReader sr = (SegmentReader) ir.leaves().get(0).reader();
+        assertEquals(DictionaryCompressionCodec.CODEC_NAME, sr.getSegmentInfo().info.getCodec().getName());
+        for (int i = 0; i < numDocs; i++) {
+            assertEquals(sources[i], ir.document(i).getBinaryValue("_source").utf8ToString());
+        }
+        ir.close();
+        dir.close();
+    }
+
+    public void testDeflateWithPresetDictRoundTrip() throws Exception {
+        CompressionMode mode = new DeflateWithPresetDictCompressionMode(6);
+        byte[] bytes = new byte[randomIntBetween(0, 2 * DictionaryCompressionCodec.CHUNK_SIZE)];
+        for (int i = 0; i < bytes.length; i++) {
+            // a small alphabet so that the dictionary actually helps
+            bytes[i] = (byte) randomIntBetween('a', 'e');
+        }
+        ByteArrayDataOutput out = new ByteArrayDataOutput(new byte[bytes.length * 2 + 64]);
+        mode.newCompressor().compress(bytes, 0, bytes.length, out);
+        int compressedLength = out.getPosition();
+        Decompressor decompressor = mode.newDecompressor();
+        for (int iter = 0; iter < 20; iter++) {
+            int offset = randomIntBetween(0, bytes.length);
+            int length = randomIntBetween(0, bytes.length - offset);
+            BytesRef result = new BytesRef();
+            decompressor.decompress(new ByteArrayDataInput(out.getBytes(), 0, compressedLength), bytes.length, offset, length, result);
+            assertEquals(new BytesRef(bytes, offset, length), result);
+        }
+    }
+
+    public void testUidBloomFilter() throws Exception {
+        Codec codec = createCodecService(Settings.builder().put(CodecService.INDEX_UID_BLOOM_FILTER_SETTING.getKey(), true).build())
+            .codec("default");
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig(null);
+        iwc.setCodec(codec);
+        IndexWriter iw = new IndexWriter(dir, iwc);
+        int numDocs = randomIntBetween(1, 100);
+        for (int i = 0; i < numDocs; i++) {
+            Document doc = new Document();
+            doc.add(new StringField(UidFieldMapper.NAME, "type#" + i, Field.Store.NO));
+            doc.add(new NumericDocValuesField(VersionFieldMapper.NAME, i + 1));
+            iw.addDocument(doc);
+        }
+        iw.forceMerge(1);
+        iw.commit();
+        iw.close();
+        DirectoryReader ir = DirectoryReader.open(dir);
+        assertEquals(1, ir.leaves().size());
+        assertThat(ir.leaves().get(0).reader().fields().terms(UidFieldMapper.NAME),
+            instanceOf(BloomFilterPostingsFormat.BloomFilteredTerms.class));
+
+        Versions.BloomFilterStats stats = new Versions.BloomFilterStats();
+        for (int i = 0; i < numDocs; i++) {
+            assertEquals(i + 1, Versions.loadVersion(ir, new Term(UidFieldMapper.NAME, "type#" + i), stats));
+        }
+        // there are no false negatives
+        assertEquals(0, stats.hits());
+        assertEquals(numDocs, stats.misses());
+
+        int numMissingDocs = randomIntBetween(100, 1000);
+        for (int i = 0; i < numMissingDocs; i++) {
+            assertEquals(Versions.NOT_FOUND, Versions.loadVersion(ir, new Term(UidFieldMapper.NAME, "missing#" + i), stats));
+        }
+        assertEquals(numDocs + numMissingDocs, stats.hits() + stats.misses());
+        // the filter is sized for about one percent of false positives
+        assertThat(stats.hits(), greaterThan(numMissingDocs / 2L));
+        ir.close();
+        dir.close();
+    }
+
     // write some docs with it, inspect .si to see this was the used compression
     private void assertCompressionEquals(Mode expected, Codec actual) throws Exception {
         Directory dir = newDirectory();
@@ -90,10 +194,15 @@ public class CodecTests extends ESTestCase {
     }
 
     private static CodecService createCodecService() throws IOException {
+        return createCodecService(Settings.EMPTY);
+    }
+
+    private static CodecService createCodecService(Settings indexSettings) throws IOException {
         Settings nodeSettings = Settings.builder()
                 .put(Environment.PATH_HOME_SETTING.getKey(), createTempDir())
                 .build();
-        IndexSettings settings = IndexSettingsModule.newIndexSettings("_na", nodeSettings);
+        IndexSettings settings = IndexSettingsModule.newIndexSettings("_na",
+            Settings.builder().put(nodeSettings).put(indexSettings).build());
         SimilarityService similarityService = new SimilarityService(settings, Collections.emptyMap());
         IndexAnalyzers indexAnalyzers = createTestAnalysis(settings, nodeSettings).indexAnalyzers;
         MapperRegistry mapperRegistry = new MapperRegistry(Collections.emptyMap(), Collections.emptyMap());
@@ -138,6 +138,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -146,6 +147,7 @@ import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -240,7 +242,7 @@ public class InternalEngineTests extends ESTestCase {
             config.getStore(), config.getDeletionPolicy(), config.getMergePolicy(), analyzer, config.getSimilarity(),
             new CodecService(null, logger), config.getEventListener(), config.getTranslogRecoveryPerformer(), config.getQueryCache(),
             config.getQueryCachingPolicy(), config.getTranslogConfig(), config.getFlushMergesAfter(), config.getRefreshListeners(),
-            config.getMaxUnsafeAutoIdTimestamp());
+            config.getMaxUnsafeAutoIdTimestamp(), config.getIndexSort());
     }
 
     @Override
@@ -358,7 +360,7 @@ public class InternalEngineTests extends ESTestCase {
                 mergePolicy, iwc.getAnalyzer(), iwc.getSimilarity(), new CodecService(null, logger), listener,
                 new TranslogHandler(shardId.getIndexName(), logger), IndexSearcher.getDefaultQueryCache(),
                 IndexSearcher.getDefaultQueryCachingPolicy(), translogConfig, TimeValue.timeValueMinutes(5), refreshListener,
-            maxUnsafeAutoIdTimestamp);
+            maxUnsafeAutoIdTimestamp, null);
 
         return config;
     }
@@ -2280,7 +2282,11 @@ public class InternalEngineTests extends ESTestCase {
         public final AtomicInteger recoveredOps = new AtomicInteger(0);
 
         public TranslogHandler(String indexName, Logger logger) {
-            super(new ShardId("test", "_na_", 0), null, logger);
+            this(indexName, logger, 1, null);
+        }
+
+        public TranslogHandler(String indexName, Logger logger, int replayThreads, Executor replayExecutor) {
+            super(new ShardId("test", "_na_", 0), null, logger, replayThreads, replayExecutor);
             Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT).build();
             Index index = new Index(indexName, "_na_");
             IndexSettings indexSettings = IndexSettingsModule.newIndexSettings(index, settings);
@@ -2304,6 +2310,98 @@ public class InternalEngineTests extends ESTestCase {
         }
     }
 
+    public void testParallelTranslogReplay() throws IOException {
+        final int numDocs = randomIntBetween(1, 20);
+        final Map<String, Long> expectedVersions = new HashMap<>();
+        final int numOps = scaledRandomIntBetween(numDocs, 500);
+        for (int i = 0; i < numOps; i++) {
+            final String id = Integer.toString(randomInt(numDocs - 1));
+            final String uid = "test#" + id;
+            if (expectedVersions.containsKey(id) && rarely()) {
+                engine.delete(new Engine.Delete("test", id, newUid(uid)));
+                expectedVersions.remove(id);
+            } else {
+                ParsedDocument doc = testParsedDocument(uid, id, "test", null, testDocument(), new BytesArray("{}"), null);
+                Engine.IndexResult result = engine.index(new Engine.Index(newUid(uid), doc));
+                expectedVersions.put(id, result.getVersion());
+            }
+        }
+        EngineConfig config = engine.config();
+        engine.close();
+
+        final int replayThreads = randomIntBetween(2, 4);
+        TranslogHandler handler = new TranslogHandler(shardId.getIndexName(), logger, replayThreads, threadPool.generic());
+        engine = new InternalEngine(new EngineConfig(EngineConfig.OpenMode.OPEN_INDEX_AND_TRANSLOG, config.getShardId(),
+            config.getThreadPool(), config.getIndexSettings(), config.getWarmer(), config.getStore(), config.getDeletionPolicy(),
+            config.getMergePolicy(), config.getAnalyzer(), config.getSimilarity(), new CodecService(null, logger),
+            config.getEventListener(), handler, config.getQueryCache(), config.getQueryCachingPolicy(), config.getTranslogConfig(),
+            config.getFlushMergesAfter(), config.getRefreshListeners(), config.getMaxUnsafeAutoIdTimestamp(), config.getIndexSort()));
+        engine.recoverFromTranslog();
+        assertEquals(numOps, handler.recoveredOps.get());
+
+        engine.refresh("test");
+        try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+            TopDocs topDocs = searcher.searcher().search(new MatchAllDocsQuery(), numDocs);
+            assertThat(topDocs.totalHits, equalTo(expectedVersions.size()));
+        }
+        for (int i = 0; i < numDocs; i++) {
+            final String id = Integer.toString(i);
+            try (Engine.GetResult get = engine.get(new Engine.Get(true, newUid("test#" + id)))) {
+                if (expectedVersions.containsKey(id)) {
+                    assertTrue("doc [" + id + "] should exist", get.exists());
+                    assertThat(get.version(), equalTo(expectedVersions.get(id)));
+                } else {
+                    assertFalse("doc [" + id + "] should be deleted", get.exists());
+                }
+            }
+        }
+    }
+
+    public void testParallelTranslogReplayWithPendingClose() throws Exception {
+        final int numOps = scaledRandomIntBetween(10, 200);
+        for (int i = 0; i < numOps; i++) {
+            final String id = Integer.toString(i);
+            ParsedDocument doc = testParsedDocument("test#" + id, id, "test", null, testDocument(), new BytesArray("{}"), null);
+            engine.index(new Engine.Index(newUid("test#" + id), doc));
+        }
+        EngineConfig config = engine.config();
+        engine.close();
+
+        final AtomicBoolean closing = new AtomicBoolean();
+        final AtomicReference<Thread> closer = new AtomicReference<>();
+        TranslogHandler handler = new TranslogHandler(shardId.getIndexName(), logger, randomIntBetween(2, 4), threadPool.generic()) {
+            @Override
+            protected void index(Engine engine, Engine.Index engineIndex) {
+                if (closing.compareAndSet(false, true)) {
+                    // make sure that the close waits for the write lock while the workers keep replaying
+                    closer.set(new Thread(() -> {
+                        try {
+                            engine.close();
+                        } catch (IOException e) {
+                            throw new AssertionError(e);
+                        }
+                    }));
+                    closer.get().start();
+                    try {
+                        assertBusy(() -> assertTrue(engine.rwl.hasQueuedThreads()));
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                super.index(engine, engineIndex);
+            }
+        };
+        engine = new InternalEngine(new EngineConfig(EngineConfig.OpenMode.OPEN_INDEX_AND_TRANSLOG, config.getShardId(),
+            config.getThreadPool(), config.getIndexSettings(), config.getWarmer(), config.getStore(), config.getDeletionPolicy(),
+            config.getMergePolicy(), config.getAnalyzer(), config.getSimilarity(), new CodecService(null, logger),
+            config.getEventListener(), handler, config.getQueryCache(), config.getQueryCachingPolicy(), config.getTranslogConfig(),
+            config.getFlushMergesAfter(), config.getRefreshListeners(), config.getMaxUnsafeAutoIdTimestamp(), config.getIndexSort()));
+        engine.recoverFromTranslog();
+        assertEquals(numOps, handler.recoveredOps.get());
+        closer.get().join();
+        assertTrue(engine.isClosed.get());
+    }
+
     public void testRecoverFromForeignTranslog() throws IOException {
         final int numDocs = randomIntBetween(1, 10);
         for (int i = 0; i < numDocs; i++) {
@@ -2336,7 +2434,7 @@ public class InternalEngineTests extends ESTestCase {
                 config.getIndexSettings(), null, store, createSnapshotDeletionPolicy(), newMergePolicy(), config.getAnalyzer(),
                 config.getSimilarity(), new CodecService(null, logger), config.getEventListener(), config.getTranslogRecoveryPerformer(),
                 IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy(), translogConfig,
-                TimeValue.timeValueMinutes(5), config.getRefreshListeners(), IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP);
+                TimeValue.timeValueMinutes(5), config.getRefreshListeners(), IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP, null);
 
         try {
             InternalEngine internalEngine = new InternalEngine(brokenConfig);
@@ -2720,6 +2818,39 @@ public class InternalEngineTests extends ESTestCase {
         assertTrue(engine.indexWriterHasDeletions());
     }
 
+    public void testIndexAppendOnlyBatch() throws IOException {
+        final int numDocs = randomIntBetween(2, 100);
+        final List<Engine.Index> operations = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            final ParsedDocument doc = testParsedDocument(Integer.toString(i), Integer.toString(i), "test", null,
+                testDocumentWithTextField(), new BytesArray("{}".getBytes(Charset.defaultCharset())), null);
+            operations.add(new Engine.Index(newUid(Integer.toString(i)), doc, SequenceNumbersService.UNASSIGNED_SEQ_NO,
+                Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(), i, false));
+        }
+        // a retry within the batch is performed on its own and must not lead to a duplicate, no matter its position
+        final Engine.Index original = operations.get(randomIntBetween(0, numDocs - 1));
+        operations.add(randomIntBetween(0, operations.size()), new Engine.Index(original.uid(), original.parsedDoc(),
+            SequenceNumbersService.UNASSIGNED_SEQ_NO, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(),
+            original.getAutoGeneratedIdTimestamp(), true));
+
+        final List<Engine.IndexResult> results = engine.index(operations);
+        assertEquals(operations.size(), results.size());
+        final Set<Long> seqNos = new HashSet<>();
+        for (Engine.IndexResult result : results) {
+            assertFalse(result.hasFailure());
+            assertEquals(1L, result.getVersion());
+            assertNotNull(result.getTranslogLocation());
+            assertTrue(seqNos.add(result.getSeqNo()));
+        }
+        assertEquals(operations.size(), engine.getTranslog().totalOperations());
+        assertEquals(0, engine.getNumVersionLookups());
+        engine.refresh("test");
+        try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+            TopDocs topDocs = searcher.searcher().search(new MatchAllDocsQuery(), 10);
+            assertEquals(numDocs, topDocs.totalHits);
+        }
+    }
+
     public void testEngineMaxTimestampIsInitialized() throws IOException {
         try (Store store = createStore();
              Engine engine = new InternalEngine(config(defaultSettings, store, createTempDir(), NoMergePolicy.INSTANCE,
@@ -19,15 +19,29 @@
 
 package org.elasticsearch.index.engine;
 
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.RamUsageTester;
 import org.apache.lucene.util.TestUtil;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.index.mapper.UidFieldMapper;
 import org.elasticsearch.test.ESTestCase;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class LiveVersionMapTests extends ESTestCase {
 
     public void testRamBytesUsed() throws Exception {
-        LiveVersionMap map = new LiveVersionMap();
+        assertRamBytesUsed(new LiveVersionMap());
+    }
+
+    public void testPagedRamBytesUsed() throws Exception {
+        assertRamBytesUsed(new LiveVersionMap(true));
+    }
+
+    private void assertRamBytesUsed(LiveVersionMap map) throws Exception {
         for (int i = 0; i < 100000; ++i) {
             BytesRefBuilder uid = new BytesRefBuilder();
             uid.copyChars(TestUtil.randomSimpleString(random(), 10, 20));
@@ -55,4 +69,43 @@ public class LiveVersionMapTests extends ESTestCase {
         assertEquals(actualRamBytesUsed, estimatedRamBytesUsed, actualRamBytesUsed / 4);
     }
 
+    public void testPutAndGet() throws Exception {
+        LiveVersionMap map = new LiveVersionMap(randomBoolean());
+        Map<BytesRef, VersionValue> expected = new HashMap<>();
+        int numOps = scaledRandomIntBetween(100, 2000);
+        for (int i = 0; i < numOps; i++) {
+            BytesRef uid = new BytesRef(Integer.toString(randomIntBetween(0, numOps / 2)));
+            VersionValue version = randomBoolean() ? new VersionValue(randomPositiveLong())
+                : new DeleteVersionValue(randomPositiveLong(), randomPositiveLong());
+            map.putUnderLock(uid, version);
+            expected.put(uid, version);
+            if (rarely()) {
+                map.beforeRefresh();
+                if (randomBoolean()) {
+                    map.afterRefresh(true);
+                    // only the tombstones are left
+                    expected.values().removeIf(value -> value.delete() == false);
+                }
+            }
+        }
+        for (Map.Entry<BytesRef, VersionValue> entry : expected.entrySet()) {
+            VersionValue value = map.getUnderLock(new Term(UidFieldMapper.NAME, entry.getKey()));
+            assertNotNull(value);
+            assertEquals(entry.getValue().version(), value.version());
+            assertEquals(entry.getValue().delete(), value.delete());
+            final long version = map.getVersionUnderLock(new Term(UidFieldMapper.NAME, entry.getKey()));
+            if (value.delete()) {
+                assertEquals(entry.getValue().time(), value.time());
+                assertSame(entry.getValue(), map.getTombstoneUnderLock(entry.getKey()));
+                assertEquals(LiveVersionMap.DELETED, version);
+            } else {
+                assertNull(map.getTombstoneUnderLock(entry.getKey()));
+                assertEquals(value.version(), version);
+            }
+        }
+        BytesRef missing = new BytesRef(Integer.toString(numOps));
+        assertNull(map.getUnderLock(new Term(UidFieldMapper.NAME, missing)));
+        assertEquals(Versions.NOT_FOUND, map.getVersionUnderLock(new Term(UidFieldMapper.NAME, missing)));
+    }
+
 }
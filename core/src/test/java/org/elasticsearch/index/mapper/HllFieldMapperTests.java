@@ -0,0 +1,125 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.mapper;
+
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.IndexableField;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.CompressedXContent;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Before;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.containsString;
+
+public class HllFieldMapperTests extends ESSingleNodeTestCase {
+
+    IndexService indexService;
+    DocumentMapperParser parser;
+
+    @Before
+    public void before() {
+        indexService = createIndex("test");
+        parser = indexService.mapperService().documentMapperParser();
+    }
+
+    private static byte[] sketch(int precision, int numValues) throws IOException {
+        try (HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(precision, BigArrays.NON_RECYCLING_INSTANCE, 1);
+             BytesStreamOutput out = new BytesStreamOutput()) {
+            for (int i = 0; i < numValues; i++) {
+                counts.collect(0, randomLong());
+            }
+            counts.writeTo(0, out);
+            return BytesReference.toBytes(out.bytes());
+        }
+    }
+
+    public void testDefaults() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties").startObject("field").field("type", "hll").endObject().endObject()
+                .endObject().endObject().string();
+
+        DocumentMapper mapper = parser.parse("type", new CompressedXContent(mapping));
+        assertEquals(mapping, mapper.mappingSource().toString());
+        HllFieldMapper fieldMapper = (HllFieldMapper) mapper.mappers().smartNameFieldMapper("field");
+        assertEquals(HyperLogLogPlusPlus.DEFAULT_PRECISION, fieldMapper.fieldType().precision());
+
+        ParsedDocument doc = mapper.parse("test", "type", "1", XContentFactory.jsonBuilder()
+                .startObject()
+                .field("field", sketch(HyperLogLogPlusPlus.DEFAULT_PRECISION, randomIntBetween(1, 10000)))
+                .endObject()
+                .bytes());
+
+        IndexableField[] fields = doc.rootDoc().getFields("field");
+        assertEquals(1, fields.length);
+        assertEquals(DocValuesType.BINARY, fields[0].fieldType().docValuesType());
+        assertFalse(fields[0].fieldType().stored());
+    }
+
+    public void testPrecision() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties").startObject("field").field("type", "hll").field("precision", 10).endObject().endObject()
+                .endObject().endObject().string();
+
+        DocumentMapper mapper = parser.parse("type", new CompressedXContent(mapping));
+        assertEquals(mapping, mapper.mappingSource().toString());
+
+        ParsedDocument doc = mapper.parse("test", "type", "1", XContentFactory.jsonBuilder()
+                .startObject()
+                .field("field", sketch(10, randomIntBetween(1, 10000)))
+                .endObject()
+                .bytes());
+        assertEquals(1, doc.rootDoc().getFields("field").length);
+
+        MapperParsingException e = expectThrows(MapperParsingException.class, () -> mapper.parse("test", "type", "1",
+                XContentFactory.jsonBuilder().startObject().field("field", sketch(12, 1)).endObject().bytes()));
+        assertThat(e.getCause().getMessage(), containsString("Expected a sketch of precision [10] but got [12]"));
+    }
+
+    public void testInvalidPrecision() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties").startObject("field").field("type", "hll").field("precision", 30).endObject().endObject()
+                .endObject().endObject().string();
+
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                () -> parser.parse("type", new CompressedXContent(mapping)));
+        assertThat(e.getMessage(), containsString("[precision] must be between 4 and 18 but was [30]"));
+    }
+
+    public void testMalformedSketch() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties").startObject("field").field("type", "hll").endObject().endObject()
+                .endObject().endObject().string();
+
+        DocumentMapper mapper = parser.parse("type", new CompressedXContent(mapping));
+        byte[] sketch = sketch(HyperLogLogPlusPlus.DEFAULT_PRECISION, 100000);
+        byte[] value = Arrays.copyOf(sketch, sketch.length - 1);
+        MapperParsingException e = expectThrows(MapperParsingException.class, () -> mapper.parse("test", "type", "1",
+                XContentFactory.jsonBuilder().startObject().field("field", value).endObject().bytes()));
+        assertThat(e.getCause().getMessage(), containsString("bytes of sketch data"));
+    }
+}
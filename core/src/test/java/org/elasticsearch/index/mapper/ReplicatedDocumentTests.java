@@ -0,0 +1,151 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.mapper;
+
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.IndexableFieldType;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.CompressedXContent;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.lucene.all.AllField;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+
+public class ReplicatedDocumentTests extends ESSingleNodeTestCase {
+
+    public void testSerialization() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+            .startObject("text").field("type", "text").field("boost", 2f).endObject()
+            .startObject("keyword").field("type", "keyword").endObject()
+            .startObject("long").field("type", "long").field("store", true).endObject()
+            .startObject("double").field("type", "double").endObject()
+            .startObject("ip").field("type", "ip").endObject()
+            .startObject("nested").field("type", "nested").startObject("properties")
+                .startObject("field").field("type", "keyword").endObject()
+            .endObject().endObject()
+            .endObject().endObject().endObject();
+        MapperService mapperService = createIndex("test", Settings.EMPTY, "type", mapping).mapperService();
+        BytesReference source = XContentFactory.jsonBuilder().startObject()
+            .field("text", "some text to analyze")
+            .field("keyword", "value")
+            .array("long", 1L, randomLong())
+            .field("double", randomDouble())
+            .field("ip", "192.168.0.1")
+            .startArray("nested")
+                .startObject().field("field", "value1").endObject()
+                .startObject().field("field", "value2").endObject()
+            .endArray()
+            .endObject().bytes();
+        ParsedDocument doc = mapperService.documentMapper("type").parse("test", "type", "1", source);
+        assertThat(doc.docs().size(), equalTo(3));
+
+        ReplicatedDocument replicatedDocument = ReplicatedDocument.of(doc);
+        assertNotNull(replicatedDocument);
+        BytesStreamOutput out = new BytesStreamOutput();
+        replicatedDocument.writeTo(out);
+        StreamInput in = out.bytes().streamInput();
+        ReplicatedDocument read = new ReplicatedDocument(in, source);
+        assertEquals(0, in.available());
+        assertTrue(read.isMapped(mapperService));
+
+        ParsedDocument readDoc = read.toParsedDocument(SourceToParse.source(SourceToParse.Origin.REPLICA, "test", "type", "1", source));
+        assertEquals(doc.uid(), readDoc.uid());
+        assertSame(source, readDoc.source());
+        assertNotNull(readDoc.version());
+        assertNotNull(readDoc.seqNo());
+        assertSame(readDoc.version(), readDoc.rootDoc().getField(VersionFieldMapper.NAME));
+        assertThat(readDoc.docs().size(), equalTo(doc.docs().size()));
+        for (int i = 0; i < doc.docs().size(); i++) {
+            ParseContext.Document expected = doc.docs().get(i);
+            ParseContext.Document actual = readDoc.docs().get(i);
+            assertThat(actual.getFields().size(), equalTo(expected.getFields().size()));
+            for (int j = 0; j < expected.getFields().size(); j++) {
+                assertFieldEquals(expected.getFields().get(j), actual.getFields().get(j));
+            }
+        }
+    }
+
+    public void testUnmappedFields() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+            .startObject("field").field("type", "text").endObject()
+            .endObject().endObject().endObject().string();
+        MapperService mapperService = createIndex("test").mapperService();
+        // the mapping is not merged into the mapper service, like when the mapping update didn't reach the replica yet
+        DocumentMapper docMapper = mapperService.documentMapperParser().parse("type", new CompressedXContent(mapping));
+        ParsedDocument doc = docMapper.parse("test", "type", "1", XContentFactory.jsonBuilder().startObject()
+            .field("field", "value")
+            .endObject().bytes());
+
+        ReplicatedDocument replicatedDocument = ReplicatedDocument.of(doc);
+        assertNotNull(replicatedDocument);
+        assertFalse(serialize(replicatedDocument, doc.source()).isMapped(mapperService));
+    }
+
+    public void testFieldsWithCustomTokens() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+            .startObject("suggest").field("type", "completion").endObject()
+            .endObject().endObject().endObject();
+        MapperService mapperService = createIndex("test", Settings.EMPTY, "type", mapping).mapperService();
+        ParsedDocument doc = mapperService.documentMapper("type").parse("test", "type", "1", XContentFactory.jsonBuilder().startObject()
+            .field("suggest", "suggestion")
+            .endObject().bytes());
+
+        assertNull(ReplicatedDocument.of(doc));
+    }
+
+    private static ReplicatedDocument serialize(ReplicatedDocument replicatedDocument, BytesReference source) throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput();
+        replicatedDocument.writeTo(out);
+        return new ReplicatedDocument(out.bytes().streamInput(), source);
+    }
+
+    private static void assertFieldEquals(IndexableField expected, IndexableField actual) {
+        assertEquals(expected.name(), actual.name());
+        assertEquals(expected.boost(), actual.boost(), 0f);
+        assertEquals(expected.stringValue(), actual.stringValue());
+        assertEquals(expected.binaryValue(), actual.binaryValue());
+        assertEquals(expected.numericValue(), actual.numericValue());
+        if (expected instanceof AllField) {
+            assertThat(actual, instanceOf(AllField.class));
+            assertEquals(((AllField) expected).getEntryBoost(), ((AllField) actual).getEntryBoost(), 0f);
+        }
+        IndexableFieldType expectedType = expected.fieldType();
+        IndexableFieldType actualType = actual.fieldType();
+        assertEquals(expectedType.stored(), actualType.stored());
+        assertEquals(expectedType.tokenized(), actualType.tokenized());
+        assertEquals(expectedType.storeTermVectors(), actualType.storeTermVectors());
+        assertEquals(expectedType.storeTermVectorOffsets(), actualType.storeTermVectorOffsets());
+        assertEquals(expectedType.storeTermVectorPositions(), actualType.storeTermVectorPositions());
+        assertEquals(expectedType.storeTermVectorPayloads(), actualType.storeTermVectorPayloads());
+        assertEquals(expectedType.omitNorms(), actualType.omitNorms());
+        assertEquals(expectedType.indexOptions(), actualType.indexOptions());
+        assertEquals(expectedType.docValuesType(), actualType.docValuesType());
+        assertEquals(expectedType.pointDimensionCount(), actualType.pointDimensionCount());
+        assertEquals(expectedType.pointNumBytes(), actualType.pointNumBytes());
+    }
+}
@@ -142,4 +142,10 @@ public class ConstantScoreQueryBuilderTests extends AbstractQueryTestCase<Consta
         checkWarningHeaders("query malformed, empty clause found at [1:40]");
     }
 
+    public void testRewriteToMatchNone() throws IOException {
+        ConstantScoreQueryBuilder constantScoreQueryBuilder =
+            new ConstantScoreQueryBuilder(new WrapperQueryBuilder(new MatchNoneQueryBuilder().toString()));
+        QueryBuilder rewrite = constantScoreQueryBuilder.rewrite(createShardContext());
+        assertEquals(new MatchNoneQueryBuilder(), rewrite);
+    }
 }
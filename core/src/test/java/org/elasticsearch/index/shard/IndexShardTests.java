@@ -58,10 +58,12 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.env.NodeEnvironment;
+import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.EngineException;
 import org.elasticsearch.index.fielddata.FieldDataStats;
@@ -1246,6 +1248,98 @@ public class IndexShardTests extends IndexShardTestCase {
         closeShards(shard);
     }
 
+    public void testScheduledRefresh() throws IOException {
+        IndexShard shard = newStartedShard();
+        assertFalse(shard.isSearchIdle());
+        indexDoc(shard, "test", "0");
+        assertTrue(shard.scheduledRefresh());
+        assertEquals(0, shard.refreshStats().getSkipped());
+        try (Engine.Searcher searcher = shard.acquireSearcher("test")) {
+            assertEquals(1, searcher.reader().numDocs());
+        }
+        closeShards(shard);
+    }
+
+    public void testScheduledRefreshSkipsSearchIdleShards() throws Exception {
+        Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexSettings.INDEX_SEARCH_IDLE_AFTER.getKey(), TimeValue.ZERO)
+            .build();
+        IndexMetaData metaData = IndexMetaData.builder("test")
+            .putMapping("test", "{ \"properties\": { \"foo\":  { \"type\": \"text\"}}}")
+            .settings(settings)
+            .primaryTerm(0, 1).build();
+        IndexShard primary = newShard(new ShardId(metaData.getIndex(), 0), true, "n1", metaData, null);
+        recoveryShardFromStore(primary);
+        assertTrue(primary.isSearchIdle());
+
+        indexDoc(primary, "test", "0", "{\"foo\" : \"bar\"}");
+        assertFalse(primary.scheduledRefresh());
+        assertEquals(1, primary.refreshStats().getSkipped());
+        try (Engine.Searcher searcher = primary.acquireSearcher("test")) {
+            assertEquals(0, searcher.reader().numDocs());
+        }
+
+        // the next search refreshes the shard
+        primary.awaitShardSearchActive();
+        try (Engine.Searcher searcher = primary.acquireSearcher("test")) {
+            assertEquals(1, searcher.reader().numDocs());
+        }
+        assertFalse(primary.scheduledRefresh());
+        assertEquals(1, primary.refreshStats().getSkipped());
+
+        // refresh listeners are never kept waiting
+        indexDoc(primary, "test", "1", "{\"foo\" : \"baz\"}");
+        AtomicBoolean refreshed = new AtomicBoolean();
+        primary.addRefreshListener(primary.getEngine().getTranslog().getLastWriteLocation(), forcedRefresh -> refreshed.set(true));
+        assertTrue(primary.scheduledRefresh());
+        assertBusy(() -> assertTrue(refreshed.get()));
+        closeShards(primary);
+    }
+
+    public void testConcurrentSearchesWaitForSearchIdleRefresh() throws Exception {
+        Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexSettings.INDEX_SEARCH_IDLE_AFTER.getKey(), TimeValue.ZERO)
+            .build();
+        IndexMetaData metaData = IndexMetaData.builder("test")
+            .putMapping("test", "{ \"properties\": { \"foo\":  { \"type\": \"text\"}}}")
+            .settings(settings)
+            .primaryTerm(0, 1).build();
+        IndexShard primary = newShard(new ShardId(metaData.getIndex(), 0), true, "n1", metaData, null);
+        recoveryShardFromStore(primary);
+        indexDoc(primary, "test", "0", "{\"foo\" : \"bar\"}");
+        assertFalse(primary.scheduledRefresh());
+        final long refreshes = primary.refreshStats().getTotal();
+
+        final Thread[] searches = new Thread[randomIntBetween(2, 8)];
+        final CyclicBarrier barrier = new CyclicBarrier(searches.length);
+        final AtomicInteger visibleDocs = new AtomicInteger();
+        for (int i = 0; i < searches.length; i++) {
+            searches[i] = new Thread(() -> {
+                try {
+                    barrier.await();
+                    primary.awaitShardSearchActive();
+                    try (Engine.Searcher searcher = primary.acquireSearcher("test")) {
+                        visibleDocs.addAndGet(searcher.reader().numDocs());
+                    }
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            });
+            searches[i].start();
+        }
+        for (Thread search : searches) {
+            search.join();
+        }
+        // every search sees the document, only the first one refreshed the shard
+        assertEquals(searches.length, visibleDocs.get());
+        assertEquals(refreshes + 1, primary.refreshStats().getTotal());
+        closeShards(primary);
+    }
+
     public void testShardActiveDuringPeerRecovery() throws IOException {
         Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
             .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 1)
@@ -91,6 +91,7 @@ import java.util.stream.Collectors;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 @LuceneTestCase.SuppressFileSystems("ExtrasFS")
 public class TranslogTests extends ESTestCase {
@@ -252,6 +253,33 @@ public class TranslogTests extends ESTestCase {
         assertThat(snapshot.totalOperations(), equalTo(0));
     }
 
+    public void testAddMultipleOperations() throws IOException {
+        ArrayList<Translog.Operation> ops = new ArrayList<>();
+        final int numOps = randomIntBetween(1, 20);
+        for (int i = 0; i < numOps; i++) {
+            if (randomBoolean()) {
+                ops.add(new Translog.Index("test", Integer.toString(i), new byte[]{(byte) i}));
+            } else {
+                ops.add(new Translog.Delete(newUid(Integer.toString(i))));
+            }
+        }
+        final List<Translog.Location> locations = translog.add(ops);
+        assertThat(locations.size(), equalTo(numOps));
+        for (int i = 1; i < numOps; i++) {
+            // the operations are written back to back
+            assertThat(locations.get(i).generation, equalTo(locations.get(i - 1).generation));
+            assertThat(locations.get(i).translogLocation, equalTo(locations.get(i - 1).translogLocation + locations.get(i - 1).size));
+        }
+        Translog.Snapshot snapshot = translog.newSnapshot();
+        assertThat(snapshot, SnapshotMatchers.equalsTo(ops));
+        assertThat(snapshot.totalOperations(), equalTo(ops.size()));
+
+        addToTranslogAndList(translog, ops, new Translog.Index("test", "last", new byte[]{1}));
+        snapshot = translog.newSnapshot();
+        assertThat(snapshot, SnapshotMatchers.equalsTo(ops));
+        assertThat(snapshot.totalOperations(), equalTo(ops.size()));
+    }
+
     protected TranslogStats stats() throws IOException {
         // force flushing and updating of stats
         translog.sync();
@@ -315,7 +343,9 @@ public class TranslogTests extends ESTestCase {
             builder.startObject();
             copy.toXContent(builder, ToXContent.EMPTY_PARAMS);
             builder.endObject();
-            assertEquals("{\"translog\":{\"operations\":6,\"size_in_bytes\":413}}", builder.string());
+            assertEquals("{\"translog\":{\"operations\":6,\"size_in_bytes\":413,\"sync\":{\"total\":" + copy.getSyncCount()
+                + ",\"operations\":" + copy.getSyncedOperations() + ",\"total_time_in_millis\":" + copy.getSyncTimeInMillis()
+                + ",\"total_wait_time_in_millis\":" + copy.getSyncWaitTimeInMillis() + "}}}", builder.string());
         }
 
         try {
@@ -809,6 +839,54 @@ public class TranslogTests extends ESTestCase {
         }
     }
 
+    public void testConcurrentSyncsAreGroupCommitted() throws Throwable {
+        final int opsPerThread = randomIntBetween(10, 100);
+        final int threadCount = 2 + randomInt(5);
+        final CyclicBarrier barrier = new CyclicBarrier(threadCount);
+        final Thread[] threads = new Thread[threadCount];
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        for (int i = 0; i < threadCount; i++) {
+            final int threadId = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (int op = 0; op < opsPerThread; op++) {
+                        final String id = threadId + "_" + op;
+                        final Translog.Location location =
+                            translog.add(new Translog.Index("test", id, id.getBytes(Charset.forName("UTF-8"))));
+                        translog.ensureSynced(location);
+                        assertFalse("the location must be synced: " + location, translog.ensureSynced(location));
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        final int totalOperations = threadCount * opsPerThread;
+        assertFalse(translog.syncNeeded());
+        final TranslogStats stats = translog.stats();
+        assertThat(stats.estimatedNumberOfOperations(), equalTo((long) totalOperations));
+        // every operation is synced by exactly one fsync, but an fsync may cover many operations
+        assertThat(stats.getSyncedOperations(), equalTo((long) totalOperations));
+        assertThat(stats.getSyncCount(), greaterThan(0L));
+        assertThat(stats.getSyncCount(), lessThanOrEqualTo((long) totalOperations));
+
+        final Set<String> ids = new HashSet<>();
+        final Translog.Snapshot snapshot = translog.newSnapshot();
+        Translog.Operation op;
+        while ((op = snapshot.next()) != null) {
+            assertTrue(ids.add(((Translog.Index) op).id()));
+        }
+        assertThat(ids.size(), equalTo(totalOperations));
+    }
+
     public void testLocationComparison() throws IOException {
         List<Translog.Location> locations = new ArrayList<>();
         int translogOperations = randomIntBetween(10, 100);
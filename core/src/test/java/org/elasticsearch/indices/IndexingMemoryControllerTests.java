@@ -43,6 +43,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -50,6 +51,8 @@ import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class IndexingMemoryControllerTests extends ESSingleNodeTestCase {
 
@@ -64,6 +67,15 @@ public class IndexingMemoryControllerTests extends ESSingleNodeTestCase {
         // Shards that are currently throttled
         final Set<IndexShard> throttled = new HashSet<>();
 
+        // How many bytes each shard indexed so far
+        final Map<IndexShard, Long> indexedBytes = new HashMap<>();
+
+        // The share of the indexing buffer each shard was apportioned
+        final Map<IndexShard, Long> indexBufferShares = new HashMap<>();
+
+        // Every check happens one second after the previous one
+        long timeInNanos = 0;
+
         public MockController(Settings settings) {
             super(Settings.builder()
                             .put("indices.memory.interval", "200h") // disable it
@@ -74,6 +86,7 @@ public class IndexingMemoryControllerTests extends ESSingleNodeTestCase {
         public void deleteShard(IndexShard shard) {
             indexBufferRAMBytesUsed.remove(shard);
             writingBytes.remove(shard);
+            indexedBytes.remove(shard);
         }
 
         @Override
@@ -96,6 +109,22 @@ public class IndexingMemoryControllerTests extends ESSingleNodeTestCase {
             }
         }
 
+        @Override
+        protected long getShardIndexedBytes(IndexShard shard) {
+            return indexedBytes.getOrDefault(shard, 0L);
+        }
+
+        @Override
+        protected void setIndexBufferShare(IndexShard shard, long shareInBytes) {
+            indexBufferShares.put(shard, shareInBytes);
+        }
+
+        @Override
+        protected long currentTimeInNanos() {
+            timeInNanos += TimeUnit.SECONDS.toNanos(1);
+            return timeInNanos;
+        }
+
         @Override
         protected void checkIdle(IndexShard shard, long inactiveTimeNS) {
         }
@@ -155,6 +184,7 @@ public class IndexingMemoryControllerTests extends ESSingleNodeTestCase {
             // Each doc we index takes up a megabyte!
             bytes += 1024*1024;
             indexBufferRAMBytesUsed.put(shard, bytes);
+            indexedBytes.put(shard, indexedBytes.getOrDefault(shard, 0L) + 1024*1024);
             forceCheck();
         }
 
@@ -235,6 +265,43 @@ public class IndexingMemoryControllerTests extends ESSingleNodeTestCase {
         controller.assertBuffer(shard1, 0);
     }
 
+    public void testRateAwareWritesShardsOverTheirShare() {
+        createIndex("test", Settings.builder().put("index.number_of_shards", 2).put("index.number_of_replicas", 0).build());
+        IndicesService indicesService = getInstanceFromNode(IndicesService.class);
+        IndexService test = indicesService.indexService(resolveIndex("test"));
+
+        MockController controller = new MockController(Settings.builder()
+                                                       .put("indices.memory.index_buffer_size", "10mb")
+                                                       .put("indices.memory.rate_aware", true)
+                                                       .build());
+
+        IndexShard shard0 = test.getShard(0);
+        IndexShard shard1 = test.getShard(1);
+
+        // shard1 indexes for a while and then stops
+        controller.simulateIndexing(shard1);
+        controller.simulateIndexing(shard1);
+        controller.simulateIndexing(shard1);
+        assertEquals(10 * 1024 * 1024, controller.indexBufferShares.get(shard1).longValue());
+
+        // shard0 now takes all the indexing load, so it gets most of the buffer
+        for (int i = 0; i < 6; i++) {
+            controller.simulateIndexing(shard0);
+        }
+        assertThat(controller.indexBufferShares.get(shard0), greaterThan(controller.indexBufferShares.get(shard1)));
+        assertThat(controller.indexBufferShares.get(shard0) + controller.indexBufferShares.get(shard1),
+            lessThanOrEqualTo(10L * 1024 * 1024));
+        controller.assertBuffer(shard0, 6);
+        controller.assertBuffer(shard1, 3);
+
+        // crosses 90% of the budget: the idle shard1 exceeds its share and is written although shard0 uses more heap
+        controller.simulateIndexing(shard0);
+        controller.assertBuffer(shard0, 7);
+        controller.assertBuffer(shard1, 0);
+        controller.assertWriting(shard1, 3);
+        controller.assertNotThrottled(shard0);
+    }
+
     public void testMinBufferSizes() {
         MockController controller = new MockController(Settings.builder()
                                                        .put("indices.memory.index_buffer_size", "0.001%")
@@ -23,11 +23,15 @@ import org.elasticsearch.action.admin.indices.alias.Alias;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.cache.request.RequestCacheStats;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram.Bucket;
+import org.elasticsearch.search.fetch.FetchPhase;
+import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.test.ESIntegTestCase;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -495,4 +499,46 @@ public class IndicesRequestCacheIT extends ESIntegTestCase {
             equalTo(2L));
     }
 
+    public void testCacheHits() throws Exception {
+        assertAcked(client().admin().indices().prepareCreate("index").addMapping("type", "s", "type=integer")
+                .setSettings(IndicesRequestCache.INDEX_CACHE_REQUEST_HITS_ENABLED_SETTING.getKey(), true,
+                        FetchPhase.INDEX_FETCH_STREAM_HITS_SETTING.getKey(), randomBoolean(),
+                        IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1,
+                        IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .get());
+        indexRandom(true, client().prepareIndex("index", "type", "1").setSource("s", 1),
+                client().prepareIndex("index", "type", "2").setSource("s", 2),
+                client().prepareIndex("index", "type", "3").setSource("s", 3));
+        ensureSearchable("index");
+
+        final SearchResponse r1 = client().prepareSearch("index").setSize(2).addSort("s", SortOrder.DESC).get();
+        assertSearchResponse(r1);
+        RequestCacheStats stats = client().admin().indices().prepareStats("index").setRequestCache(true).get().getTotal()
+            .getRequestCache();
+        // the query and the fetch results are held in the hits cache
+        assertThat(stats.getMemorySizeInBytes(), equalTo(0L));
+        assertThat(stats.getHitsCache().getMemorySizeInBytes(), greaterThan(0L));
+        assertThat(stats.getHitsCache().getHitCount(), equalTo(0L));
+        assertThat(stats.getHitsCache().getMissCount(), equalTo(2L));
+
+        final SearchResponse r2 = client().prepareSearch("index").setSize(2).addSort("s", SortOrder.DESC).get();
+        assertSearchResponse(r2);
+        stats = client().admin().indices().prepareStats("index").setRequestCache(true).get().getTotal().getRequestCache();
+        assertThat(stats.getHitsCache().getHitCount(), equalTo(2L));
+        assertThat(stats.getHitsCache().getMissCount(), equalTo(2L));
+        assertThat(r2.getHits().getHits().length, equalTo(2));
+        for (int i = 0; i < 2; i++) {
+            assertEquals(r1.getHits().getAt(i).getId(), r2.getHits().getAt(i).getId());
+            assertEquals(r1.getHits().getAt(i).getSourceAsString(), r2.getHits().getAt(i).getSourceAsString());
+        }
+
+        // requests with hits are not cached if the index didn't opt in
+        assertAcked(client().admin().indices().prepareUpdateSettings("index")
+            .setSettings(Settings.builder().put(IndicesRequestCache.INDEX_CACHE_REQUEST_HITS_ENABLED_SETTING.getKey(), false)));
+        assertSearchResponse(client().prepareSearch("index").setSize(1).get());
+        stats = client().admin().indices().prepareStats("index").setRequestCache(true).get().getTotal().getRequestCache();
+        assertThat(stats.getHitsCache().getMissCount(), equalTo(2L));
+        assertThat(stats.getMissCount(), equalTo(0L));
+    }
+
 }
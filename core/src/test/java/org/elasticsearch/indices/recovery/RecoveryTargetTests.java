@@ -419,6 +419,7 @@ public class RecoveryTargetTests extends ESTestCase {
             assertThat(translog.recoveredOperations(), equalTo(ops));
             assertThat(translog.totalOperations(), equalTo(totalOps));
             assertThat(translog.recoveredPercent(), equalTo(100.f));
+            assertThat(translog.recoveredOperationsPerSecond(), greaterThanOrEqualTo(0.0));
             assertThat(streamer.lastRead().recoveredOperations(), greaterThanOrEqualTo(0));
             assertThat(streamer.lastRead().recoveredOperations(), lessThanOrEqualTo(ops));
             assertThat(streamer.lastRead().totalOperations(), lessThanOrEqualTo(totalOps));
@@ -0,0 +1,127 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.node;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+public class ResponseCollectorServiceTests extends ESTestCase {
+
+    public void testNodeStats() {
+        final ResponseCollectorService collector = new ResponseCollectorService(Settings.EMPTY);
+        assertFalse(collector.getNodeStatistics("node1", 1).isPresent());
+
+        collector.addNodeStatistics("node1", 1, 100, 10);
+        ResponseCollectorService.ComputedNodeStats stats = collector.getNodeStatistics("node1", 1).get();
+        assertThat(stats.nodeId, equalTo("node1"));
+        assertThat(stats.queueSize, equalTo(1));
+        assertEquals(100, stats.responseTime, 0.01);
+        assertEquals(10, stats.serviceTime, 0.01);
+
+        // queue size and response time are moving averages, the service time is already averaged by the remote node
+        collector.addNodeStatistics("node1", 11, 200, 20);
+        stats = collector.getNodeStatistics("node1", 1).get();
+        assertThat(stats.queueSize, equalTo(4));
+        assertEquals(130, stats.responseTime, 0.01);
+        assertEquals(20, stats.serviceTime, 0.01);
+
+        collector.addNodeStatistics("node2", 1, 100, 10);
+        Map<String, ResponseCollectorService.ComputedNodeStats> allStats = collector.getAllNodeStatistics(1);
+        assertThat(allStats.size(), equalTo(2));
+
+        collector.removeNode("node1");
+        assertFalse(collector.getNodeStatistics("node1", 1).isPresent());
+        assertTrue(collector.getNodeStatistics("node2", 1).isPresent());
+    }
+
+    public void testOutstandingRequests() throws Exception {
+        final ResponseCollectorService collector = new ResponseCollectorService(Settings.EMPTY);
+        assertThat(collector.getOutstandingRequests("node1"), equalTo(0L));
+        final int numThreads = randomIntBetween(2, 8);
+        final int numRequests = randomIntBetween(1, 100);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                for (int j = 0; j < numRequests; j++) {
+                    collector.onRequestSent("node1");
+                }
+            });
+            threads[i].start();
+        }
+        latch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(collector.getOutstandingRequests("node1"), equalTo((long) numThreads * numRequests));
+        for (int i = 0; i < numThreads * numRequests; i++) {
+            collector.onRequestDone("node1");
+        }
+        assertThat(collector.getOutstandingRequests("node1"), equalTo(0L));
+        // responses for requests we don't know about never make the count negative
+        collector.onRequestDone("node1");
+        collector.onRequestDone("node2");
+        assertThat(collector.getOutstandingRequests("node1"), equalTo(0L));
+        assertThat(collector.getOutstandingRequests("node2"), equalTo(0L));
+    }
+
+    public void testRank() {
+        final ResponseCollectorService collector = new ResponseCollectorService(Settings.EMPTY);
+        collector.addNodeStatistics("fast", 1, TimeValue.timeValueMillis(10).nanos(), TimeValue.timeValueMillis(5).nanos());
+        collector.addNodeStatistics("slow", 1, TimeValue.timeValueMillis(100).nanos(), TimeValue.timeValueMillis(50).nanos());
+        collector.addNodeStatistics("busy", 50, TimeValue.timeValueMillis(10).nanos(), TimeValue.timeValueMillis(5).nanos());
+        final double fast = collector.getNodeStatistics("fast", 3).get().rank(0);
+        final double slow = collector.getNodeStatistics("slow", 3).get().rank(0);
+        final double busy = collector.getNodeStatistics("busy", 3).get().rank(0);
+        assertThat(fast, lessThan(slow));
+        assertThat(fast, lessThan(busy));
+        // outstanding requests of other clients make a node look busier
+        assertThat(collector.getNodeStatistics("fast", 3).get().rank(10), greaterThan(fast));
+
+        // nodes that haven't been measured are preferred
+        ResponseCollectorService.ComputedNodeStats unmeasured = new ResponseCollectorService.ComputedNodeStats("new", 3, 0, 0, 0);
+        assertThat(unmeasured.rank(0), lessThan(fast));
+    }
+
+    public void testAdaptiveStats() {
+        final ResponseCollectorService collector = new ResponseCollectorService(Settings.EMPTY);
+        collector.addNodeStatistics("node1", 1, 100, 10);
+        collector.onRequestSent("node1");
+        collector.onRequestSent("node2");
+        AdaptiveSelectionStats stats = collector.getAdaptiveStats(2);
+        assertThat(stats.getOutgoingConnections().get("node1"), equalTo(1L));
+        assertThat(stats.getOutgoingConnections().get("node2"), equalTo(1L));
+        assertThat(stats.getComputedStats().size(), equalTo(1));
+        assertThat(stats.getRanks().get("node1"), equalTo(stats.getComputedStats().get("node1").rank(1)));
+    }
+}
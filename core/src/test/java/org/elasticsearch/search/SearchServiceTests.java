@@ -36,14 +36,19 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryRewriteContext;
 import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.plugins.SearchPlugin;
+import org.elasticsearch.search.aggregations.bucket.global.GlobalAggregationBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.QueryFetchSearchResult;
 import org.elasticsearch.search.fetch.ShardFetchRequest;
 import org.elasticsearch.search.internal.AliasFilter;
 import org.elasticsearch.search.internal.SearchContext;
@@ -52,6 +57,8 @@ import org.elasticsearch.search.query.QuerySearchResultProvider;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -63,6 +70,7 @@ import static java.util.Collections.singletonList;
 import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 
@@ -190,7 +198,7 @@ public class SearchServiceTests extends ESSingleNodeTestCase {
                     IntArrayList intCursors = new IntArrayList(1);
                     intCursors.add(0);
                     ShardFetchRequest req = new ShardFetchRequest(querySearchResultProvider.id(), intCursors, null /* not a scroll */);
-                    service.executeFetchPhase(req, new SearchTask(123L, "", "", "", null));
+                    service.executeFetchPhase(req, new SearchTask(123L, "", "", "", null)).close();
                 } catch (AlreadyClosedException ex) {
                     throw ex;
                 } catch (IllegalStateException ex) {
@@ -240,6 +248,79 @@ public class SearchServiceTests extends ESSingleNodeTestCase {
         assertThat(context.timeout(), equalTo(TimeValue.timeValueSeconds(seconds)));
     }
 
+    public void testCanMatch() throws IOException {
+        createIndex("index");
+        client().prepareIndex("index", "type", "1").setSource("date", "2017-01-01").setRefreshPolicy(IMMEDIATE).get();
+        final SearchService service = getInstanceFromNode(SearchService.class);
+        final IndicesService indicesService = getInstanceFromNode(IndicesService.class);
+        final IndexService indexService = indicesService.indexServiceSafe(resolveIndex("index"));
+        final IndexShard indexShard = indexService.getShard(0);
+        assertTrue(service.canMatch(new ShardSearchLocalRequest(indexShard.shardId(), 1, SearchType.QUERY_THEN_FETCH,
+            new SearchSourceBuilder().query(new RangeQueryBuilder("date").gte("2016-01-01").lte("2018-01-01")),
+            Strings.EMPTY_ARRAY, false, new AliasFilter(null, Strings.EMPTY_ARRAY))));
+        assertFalse(service.canMatch(new ShardSearchLocalRequest(indexShard.shardId(), 1, SearchType.QUERY_THEN_FETCH,
+            new SearchSourceBuilder().query(new RangeQueryBuilder("date").gte("2010-01-01").lte("2011-01-01")),
+            Strings.EMPTY_ARRAY, false, new AliasFilter(null, Strings.EMPTY_ARRAY))));
+        // aggregations must always be executed even if the query doesn't match
+        assertTrue(service.canMatch(new ShardSearchLocalRequest(indexShard.shardId(), 1, SearchType.QUERY_THEN_FETCH,
+            new SearchSourceBuilder().query(new RangeQueryBuilder("date").gte("2010-01-01").lte("2011-01-01"))
+                .aggregation(new GlobalAggregationBuilder("global")),
+            Strings.EMPTY_ARRAY, false, new AliasFilter(null, Strings.EMPTY_ARRAY))));
+    }
+
+    public void testExecuteQueryPhaseOnSharedSearcher() throws IOException {
+        createIndex("index");
+        client().prepareIndex("index", "type", "1").setSource("field", "value").setRefreshPolicy(IMMEDIATE).get();
+        final SearchService service = getInstanceFromNode(SearchService.class);
+        final IndicesService indicesService = getInstanceFromNode(IndicesService.class);
+        final IndexService indexService = indicesService.indexServiceSafe(resolveIndex("index"));
+        final IndexShard indexShard = indexService.getShard(0);
+        final int activeContexts = service.getActiveContexts();
+        final int activeRefs = indexShard.store().refCount();
+
+        final List<ShardSearchLocalRequest> requests = new ArrayList<>();
+        for (QueryBuilder query : Arrays.asList(new TermQueryBuilder("field", "value"), new FailOnRewriteQueryBuilder(),
+                new TermQueryBuilder("field", "other_value"))) {
+            requests.add(new ShardSearchLocalRequest(indexShard.shardId(), 1, SearchType.QUERY_AND_FETCH,
+                new SearchSourceBuilder().query(query), Strings.EMPTY_ARRAY, false, new AliasFilter(null, Strings.EMPTY_ARRAY)));
+        }
+        final List<QuerySearchResultProvider> results = new ArrayList<>();
+        final List<Exception> failures = new ArrayList<>();
+        try (SearchService.SharedSearcher searcher = service.acquireSharedSearcher(indexShard.shardId())) {
+            for (ShardSearchLocalRequest request : requests) {
+                try {
+                    results.add(service.executeQueryPhase(request, true, new SearchTask(123L, "", "", "", null), searcher));
+                    failures.add(null);
+                } catch (Exception e) {
+                    results.add(null);
+                    failures.add(e);
+                }
+            }
+        }
+
+        assertEquals(3, results.size());
+        assertNull(failures.get(0));
+        assertEquals(1, results.get(0).queryResult().topDocs().totalHits);
+        assertEquals(1, ((QueryFetchSearchResult) results.get(0)).fetchResult().hits().hits().length);
+        // a failing request doesn't affect the other requests of the batch
+        assertNull(results.get(1));
+        assertThat(failures.get(1), instanceOf(IllegalStateException.class));
+        assertNull(failures.get(2));
+        assertEquals(0, results.get(2).queryResult().topDocs().totalHits);
+        // the contexts are freed after the fetch phase and the shared searcher is released
+        assertEquals(activeContexts, service.getActiveContexts());
+        assertEquals(activeRefs, indexShard.store().refCount());
+    }
+
+    public void testCanRewriteToMatchNone() {
+        assertFalse(SearchService.canRewriteToMatchNone(null));
+        assertFalse(SearchService.canRewriteToMatchNone(new SearchSourceBuilder()));
+        assertFalse(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new MatchAllQueryBuilder())));
+        assertFalse(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new TermQueryBuilder("foo", "bar"))
+            .aggregation(new GlobalAggregationBuilder("global"))));
+        assertTrue(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new TermQueryBuilder("foo", "bar"))));
+    }
+
     public static class FailOnRewriteQueryPlugin extends Plugin implements SearchPlugin {
         @Override
         public List<QuerySpec<?>> getQueries() {
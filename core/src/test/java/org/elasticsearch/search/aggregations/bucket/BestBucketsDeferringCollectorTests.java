@@ -0,0 +1,199 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.search.aggregations.BucketCollector;
+import org.elasticsearch.search.aggregations.LeafBucketCollector;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.TestSearchContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class BestBucketsDeferringCollectorTests extends ESTestCase {
+
+    private static final int NUM_BUCKETS = 7;
+
+    /**
+     * The first segment is fully buffered when the threshold is reached, so its entry is moved to the temporary file
+     * when the collector moves to the second segment.
+     */
+    public void testSpillAfterFullSegment() throws IOException {
+        final int firstSegmentDocs = randomIntBetween(1, 4000);
+        try (Directory directory = newDirectory()) {
+            indexSegments(directory, firstSegmentDocs, randomIntBetween(1, 4000));
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                final List<LeafReaderContext> leaves = reader.leaves();
+                assertThat(leaves.size(), equalTo(2));
+                final BestBucketsDeferringCollector inMemory = newCollector(-1);
+                final List<String> expected = preCollection(inMemory);
+                collect(inMemory, leaves);
+                replay(inMemory);
+                assertThat(inMemory.spill, nullValue());
+
+                // the in-memory size of the first segment once it is fully recorded
+                final BestBucketsDeferringCollector sizing = newCollector(-1);
+                preCollection(sizing);
+                collect(sizing, leaves.subList(0, 1));
+                sizing.getLeafCollector(leaves.get(1));
+                final long threshold = sizing.bufferedBytes;
+
+                final BestBucketsDeferringCollector spilled = newCollector(threshold);
+                final List<String> actual = preCollection(spilled);
+                collect(spilled, leaves.subList(0, 1));
+                assertThat("the first segment must not spill while it is collected", spilled.spill, nullValue());
+                collect(spilled, leaves.subList(1, 2));
+                assertThat(spilled.spill, notNullValue());
+                replay(spilled);
+                assertThat(spilled.entries.size(), equalTo(2));
+                for (int i = 0; i < leaves.size(); i++) {
+                    assertThat(spilled.entries.get(i).docDeltas, nullValue());
+                    assertThat(spilled.entries.get(i).size, equalTo((long) leaves.get(i).reader().maxDoc()));
+                }
+                assertThat(actual, equalTo(expected));
+            }
+        }
+    }
+
+    /**
+     * The threshold is reached at the first memory check in the middle of the first segment, the docs of this segment that
+     * are recorded before and after the spill must all be replayed.
+     */
+    public void testSpillInTheMiddleOfASegment() throws IOException {
+        final int firstSegmentDocs = randomIntBetween(4097, 10000);
+        try (Directory directory = newDirectory()) {
+            indexSegments(directory, firstSegmentDocs, randomIntBetween(1, 10000));
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                final List<LeafReaderContext> leaves = reader.leaves();
+                assertThat(leaves.size(), equalTo(2));
+                final BestBucketsDeferringCollector inMemory = newCollector(-1);
+                final List<String> expected = preCollection(inMemory);
+                collect(inMemory, leaves);
+                replay(inMemory);
+
+                // the builders take a few kilobytes as soon as they are created, so this is reached at the first check
+                final BestBucketsDeferringCollector spilled = newCollector(randomIntBetween(1, 1024));
+                final List<String> actual = preCollection(spilled);
+                final LeafBucketCollector leafCollector = spilled.getLeafCollector(leaves.get(0));
+                for (int doc = 0; doc < 4095; doc++) {
+                    leafCollector.collect(doc, doc % NUM_BUCKETS);
+                }
+                assertThat(spilled.spill, nullValue());
+                leafCollector.collect(4095, 4095 % NUM_BUCKETS);
+                assertThat(spilled.spill, notNullValue());
+                assertThat(spilled.spilledDocs, equalTo(4096L));
+                for (int doc = 4096; doc < firstSegmentDocs; doc++) {
+                    leafCollector.collect(doc, doc % NUM_BUCKETS);
+                }
+                collect(spilled, leaves.subList(1, 2));
+                replay(spilled);
+                assertThat(spilled.entries.size(), equalTo(2));
+                for (int i = 0; i < leaves.size(); i++) {
+                    assertThat(spilled.entries.get(i).docDeltas, nullValue());
+                    assertThat(spilled.entries.get(i).size, equalTo((long) leaves.get(i).reader().maxDoc()));
+                }
+                assertThat(actual, equalTo(expected));
+            }
+        }
+    }
+
+    private static void indexSegments(Directory directory, int... numDocs) throws IOException {
+        IndexWriterConfig iwc = new IndexWriterConfig(null);
+        iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+        try (IndexWriter writer = new IndexWriter(directory, iwc)) {
+            for (int segmentDocs : numDocs) {
+                for (int i = 0; i < segmentDocs; i++) {
+                    writer.addDocument(new Document());
+                }
+                writer.commit();
+            }
+        }
+    }
+
+    private static BestBucketsDeferringCollector newCollector(long spillThreshold) {
+        SearchContext searchContext = new TestSearchContext(null);
+        return new BestBucketsDeferringCollector(new AggregationContext(searchContext), spillThreshold);
+    }
+
+    private static void collect(BestBucketsDeferringCollector collector, List<LeafReaderContext> leaves) throws IOException {
+        for (LeafReaderContext ctx : leaves) {
+            LeafBucketCollector leafCollector = collector.getLeafCollector(ctx);
+            for (int doc = 0; doc < ctx.reader().maxDoc(); doc++) {
+                leafCollector.collect(doc, doc % NUM_BUCKETS);
+            }
+        }
+    }
+
+    /**
+     * Sets a deferred collector that records the replayed doc and bucket pairs in the returned list.
+     */
+    private static List<String> preCollection(BestBucketsDeferringCollector collector) throws IOException {
+        final List<String> replayed = new ArrayList<>();
+        collector.setDeferredCollector(Collections.singletonList(new BucketCollector() {
+            @Override
+            public LeafBucketCollector getLeafCollector(LeafReaderContext ctx) throws IOException {
+                return new LeafBucketCollector() {
+                    @Override
+                    public void collect(int doc, long bucket) throws IOException {
+                        replayed.add((ctx.docBase + doc) + "/" + bucket);
+                    }
+                };
+            }
+
+            @Override
+            public void preCollection() throws IOException {
+            }
+
+            @Override
+            public void postCollection() throws IOException {
+            }
+
+            @Override
+            public boolean needsScores() {
+                return false;
+            }
+        }));
+        collector.preCollection();
+        return replayed;
+    }
+
+    /**
+     * Replays all buckets but one.
+     */
+    private static void replay(BestBucketsDeferringCollector collector) throws IOException {
+        collector.postCollection();
+        collector.prepareSelectedBuckets(0, 2, 3, 4, 5, 6);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.DateHistogramValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.HistogramValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESIntegTestCase;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.composite;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.global;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.sum;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+@ESIntegTestCase.SuiteScopeTestCase
+public class CompositeIT extends ESIntegTestCase {
+
+    private static final String[] TAGS = new String[] {"a", "b", "c", "d", "e", "f", "g"};
+
+    // expected doc counts and sums of "value", keyed by tag then by histogram bucket of "value"
+    private static Map<String, Map<Long, long[]>> expected;
+    // expected doc counts and sums of "value", keyed by day of "date"
+    private static Map<Long, long[]> expectedDays;
+
+    @Override
+    public void setupSuiteScopeCluster() throws Exception {
+        assertAcked(prepareCreate("idx").addMapping("type", "tag", "type=keyword", "value", "type=long", "date", "type=date"));
+        expected = new TreeMap<>();
+        expectedDays = new TreeMap<>();
+        List<IndexRequestBuilder> builders = new ArrayList<>();
+        int numDocs = randomIntBetween(50, 200);
+        for (int i = 0; i < numDocs; i++) {
+            String[] tags = randomSubsetOf(randomIntBetween(1, 3), TAGS).toArray(new String[0]);
+            long value = randomIntBetween(0, 100);
+            for (String tag : tags) {
+                long[] stats = expected.computeIfAbsent(tag, k -> new TreeMap<>()).computeIfAbsent(value / 10 * 10, k -> new long[2]);
+                stats[0]++;
+                stats[1] += value;
+            }
+            long day = new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC).getMillis() + TimeUnit.DAYS.toMillis(randomIntBetween(0, 40));
+            long date = day + randomIntBetween(0, (int) TimeUnit.DAYS.toMillis(1) - 1);
+            long[] dayStats = expectedDays.computeIfAbsent(day, k -> new long[2]);
+            dayStats[0]++;
+            dayStats[1] += value;
+            builders.add(client().prepareIndex("idx", "type", Integer.toString(i))
+                .setSource(jsonBuilder().startObject().array("tag", tags).field("value", value).field("date", date).endObject()));
+        }
+        indexRandom(true, builders);
+        ensureSearchable();
+    }
+
+    private static List<CompositeValuesSourceBuilder<?>> sources(SortOrder tagOrder) {
+        return Arrays.asList(
+            new TermsValuesSourceBuilder("tag").field("tag").order(tagOrder),
+            new HistogramValuesSourceBuilder("histo").field("value").interval(10));
+    }
+
+    public void testPaginate() throws Exception {
+        SortOrder tagOrder = randomFrom(SortOrder.values());
+        List<String> expectedKeys = new ArrayList<>();
+        List<long[]> expectedStats = new ArrayList<>();
+        List<String> tags = new ArrayList<>(expected.keySet());
+        if (tagOrder == SortOrder.DESC) {
+            Collections.reverse(tags);
+        }
+        for (String tag : tags) {
+            for (Map.Entry<Long, long[]> entry : expected.get(tag).entrySet()) {
+                expectedKeys.add(tag + "/" + (double) entry.getKey());
+                expectedStats.add(entry.getValue());
+            }
+        }
+
+        int size = randomIntBetween(1, 10);
+        Map<String, Object> after = null;
+        int index = 0;
+        while (true) {
+            CompositeAggregationBuilder builder = composite("composite", sources(tagOrder)).size(size)
+                .subAggregation(sum("sum").field("value"));
+            if (after != null) {
+                builder.aggregateAfter(after);
+            }
+            SearchResponse response = client().prepareSearch("idx").setSize(0).addAggregation(builder).get();
+            assertSearchResponse(response);
+            CompositeAggregation composite = response.getAggregations().get("composite");
+            if (composite.getBuckets().isEmpty()) {
+                assertThat(composite.afterKey(), nullValue());
+                break;
+            }
+            assertThat(composite.getBuckets().size(), equalTo(Math.min(size, expectedKeys.size() - index)));
+            for (CompositeAggregation.Bucket bucket : composite.getBuckets()) {
+                Map<String, Object> key = bucket.getKey();
+                assertThat(key.get("tag") + "/" + key.get("histo"), equalTo(expectedKeys.get(index)));
+                assertThat(bucket.getDocCount(), equalTo(expectedStats.get(index)[0]));
+                Sum sum = bucket.getAggregations().get("sum");
+                assertThat((long) sum.getValue(), equalTo(expectedStats.get(index)[1]));
+                index++;
+            }
+            after = composite.afterKey();
+        }
+        assertThat(index, equalTo(expectedKeys.size()));
+    }
+
+    public void testPaginateDateHistogram() throws Exception {
+        SortOrder order = randomFrom(SortOrder.values());
+        List<Long> expectedKeys = new ArrayList<>(expectedDays.keySet());
+        if (order == SortOrder.DESC) {
+            Collections.reverse(expectedKeys);
+        }
+
+        int size = randomIntBetween(1, 5);
+        Map<String, Object> after = null;
+        int index = 0;
+        int pages = 0;
+        while (true) {
+            CompositeAggregationBuilder builder = composite("composite", Collections.singletonList(
+                new DateHistogramValuesSourceBuilder("day").field("date").dateHistogramInterval(DateHistogramInterval.DAY).order(order)))
+                .size(size)
+                .subAggregation(sum("sum").field("value"));
+            if (after != null) {
+                builder.aggregateAfter(after);
+            }
+            SearchResponse response = client().prepareSearch("idx").setSize(0).addAggregation(builder).get();
+            assertSearchResponse(response);
+            CompositeAggregation composite = response.getAggregations().get("composite");
+            if (composite.getBuckets().isEmpty()) {
+                assertThat(composite.afterKey(), nullValue());
+                break;
+            }
+            pages++;
+            assertThat(composite.getBuckets().size(), equalTo(Math.min(size, expectedKeys.size() - index)));
+            for (CompositeAggregation.Bucket bucket : composite.getBuckets()) {
+                long day = expectedKeys.get(index);
+                assertThat(bucket.getKey().get("day"), equalTo(day));
+                assertThat(bucket.getDocCount(), equalTo(expectedDays.get(day)[0]));
+                Sum sum = bucket.getAggregations().get("sum");
+                assertThat((long) sum.getValue(), equalTo(expectedDays.get(day)[1]));
+                index++;
+            }
+            after = composite.afterKey();
+        }
+        assertThat(index, equalTo(expectedKeys.size()));
+        assertThat(pages, equalTo((expectedKeys.size() + size - 1) / size));
+    }
+
+    public void testMissingAfterValue() throws Exception {
+        Map<String, Object> after = new HashMap<>();
+        after.put("tag", "a");
+        after.put("other", 10);
+        SearchPhaseExecutionException e = expectThrows(SearchPhaseExecutionException.class, () -> client().prepareSearch("idx")
+            .addAggregation(composite("composite", sources(SortOrder.ASC)).aggregateAfter(after)).get());
+        assertThat(e.toString(), containsString("Missing value for [after.histo]"));
+    }
+
+    public void testCannotBeNested() throws Exception {
+        SearchPhaseExecutionException e = expectThrows(SearchPhaseExecutionException.class, () -> client().prepareSearch("idx")
+            .addAggregation(global("global").subAggregation(composite("composite", sources(SortOrder.ASC)))).get());
+        assertThat(e.toString(), containsString("[composite] aggregation cannot be used with a parent aggregation"));
+    }
+}
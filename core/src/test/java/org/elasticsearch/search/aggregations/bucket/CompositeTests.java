@@ -0,0 +1,124 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.elasticsearch.script.Script;
+import org.elasticsearch.search.aggregations.BaseAggregationTestCase;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.DateHistogramValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.HistogramValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.sort.SortOrder;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CompositeTests extends BaseAggregationTestCase<CompositeAggregationBuilder> {
+
+    @Override
+    protected CompositeAggregationBuilder createTestAggregatorBuilder() {
+        int numSources = randomIntBetween(1, 5);
+        List<CompositeValuesSourceBuilder<?>> sources = new ArrayList<>(numSources);
+        for (int i = 0; i < numSources; i++) {
+            String name = "source" + i;
+            switch (randomInt(2)) {
+                case 0:
+                    sources.add(randomTermsSource(name));
+                    break;
+                case 1:
+                    sources.add(randomHistogramSource(name));
+                    break;
+                default:
+                    sources.add(randomDateHistogramSource(name));
+                    break;
+            }
+        }
+        CompositeAggregationBuilder builder = new CompositeAggregationBuilder(randomAsciiOfLength(10), sources);
+        if (randomBoolean()) {
+            builder.size(randomIntBetween(1, 100));
+        }
+        if (randomBoolean()) {
+            Map<String, Object> after = new HashMap<>();
+            for (CompositeValuesSourceBuilder<?> source : sources) {
+                after.put(source.name(), randomAsciiOfLength(5));
+            }
+            builder.aggregateAfter(after);
+        }
+        return builder;
+    }
+
+    private static TermsValuesSourceBuilder randomTermsSource(String name) {
+        TermsValuesSourceBuilder source = new TermsValuesSourceBuilder(name);
+        if (randomBoolean()) {
+            source.field(randomFrom(STRING_FIELD_NAME, INT_FIELD_NAME));
+        } else {
+            source.script(new Script(randomAsciiOfLength(10)));
+        }
+        if (randomBoolean()) {
+            source.order(randomFrom(SortOrder.values()));
+        }
+        return source;
+    }
+
+    private static HistogramValuesSourceBuilder randomHistogramSource(String name) {
+        HistogramValuesSourceBuilder source = new HistogramValuesSourceBuilder(name);
+        source.field(INT_FIELD_NAME);
+        source.interval(randomDoubleBetween(1, 1000, true));
+        if (randomBoolean()) {
+            source.format("###.##");
+        }
+        if (randomBoolean()) {
+            source.order(randomFrom(SortOrder.values()));
+        }
+        return source;
+    }
+
+    private static DateHistogramValuesSourceBuilder randomDateHistogramSource(String name) {
+        DateHistogramValuesSourceBuilder source = new DateHistogramValuesSourceBuilder(name);
+        source.field(DATE_FIELD_NAME);
+        if (randomBoolean()) {
+            source.interval(randomIntBetween(1, 100000));
+        } else {
+            source.dateHistogramInterval(randomFrom(DateHistogramInterval.DAY, DateHistogramInterval.MONTH,
+                DateHistogramInterval.hours(randomIntBetween(1, 24))));
+        }
+        if (randomBoolean()) {
+            source.timeZone(randomFrom(DateTimeZone.UTC, DateTimeZone.forOffsetHours(randomIntBetween(-12, 12))));
+        }
+        if (randomBoolean()) {
+            source.order(randomFrom(SortOrder.values()));
+        }
+        return source;
+    }
+
+    public void testDuplicateSourceNames() {
+        List<CompositeValuesSourceBuilder<?>> sources = new ArrayList<>();
+        sources.add(new TermsValuesSourceBuilder("name").field(STRING_FIELD_NAME));
+        sources.add(new HistogramValuesSourceBuilder("name").field(INT_FIELD_NAME).interval(10));
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> new CompositeAggregationBuilder("composite", sources));
+        assertEquals("Composite source names must be unique, found duplicates: [name]", e.getMessage());
+    }
+}
@@ -35,6 +35,8 @@ import org.elasticsearch.search.aggregations.bucket.histogram.ExtendedBounds;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram.Bucket;
 import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.elasticsearch.search.profile.ProfileResult;
+import org.elasticsearch.search.profile.ProfileShardResult;
 import org.elasticsearch.test.ESIntegTestCase;
 import org.hamcrest.Matchers;
 import org.joda.time.DateTime;
@@ -65,6 +67,7 @@ import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSear
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.core.IsNull.notNullValue;
 
@@ -1234,4 +1237,51 @@ public class DateHistogramIT extends ESIntegTestCase {
         assertThat(client().admin().indices().prepareStats("cache_test_idx").setRequestCache(true).get().getTotal().getRequestCache()
                 .getMissCount(), equalTo(1L));
     }
+
+    /**
+     * A top-level date histogram under a match_all query counts its buckets from the points of the field, make sure it
+     * returns the same buckets as when it collects the documents that match an equivalent query.
+     */
+    public void testCountsFromPointsMatchCollectedCounts() throws Exception {
+        assertAcked(prepareCreate("points_idx").addMapping("type", "d", "type=date")
+                .setSettings(Settings.builder().put("number_of_shards", 1).put("number_of_replicas", 0)));
+        List<IndexRequestBuilder> builders = new ArrayList<>();
+        int numDocs = randomIntBetween(100, 1000);
+        for (int i = 0; i < numDocs; i++) {
+            builders.add(client().prepareIndex("points_idx", "type")
+                    .setSource("d", date(randomIntBetween(1, 12), randomIntBetween(1, 28))));
+        }
+        // no dummy documents, their deletions would make the segments fall back to collecting documents
+        indexRandom(true, false, builders);
+        forceMerge();
+        refresh();
+
+        DateHistogramInterval interval = randomFrom(DateHistogramInterval.DAY, DateHistogramInterval.WEEK, DateHistogramInterval.MONTH);
+        DateTimeZone timeZone = randomFrom(DateTimeZone.UTC, DateTimeZone.forID("Europe/Paris"), DateTimeZone.forID("America/New_York"));
+        SearchResponse fromPoints = client().prepareSearch("points_idx").setSize(0).setQuery(matchAllQuery()).setProfile(true)
+                .addAggregation(dateHistogram("histo").field("d").dateHistogramInterval(interval).timeZone(timeZone)).get();
+        assertSearchResponse(fromPoints);
+        for (ProfileShardResult profileShardResult : fromPoints.getProfileResults().values()) {
+            List<ProfileResult> aggProfileResults = profileShardResult.getAggregationProfileResults().getProfileResults();
+            assertThat(aggProfileResults.size(), equalTo(1));
+            Map<String, Object> debug = aggProfileResults.get(0).getDebugInfo();
+            assertThat((Integer) debug.get("segments_counted_from_points"), greaterThan(0));
+            assertThat(debug.get("segments_collected"), equalTo(0));
+        }
+        SearchResponse collected = client().prepareSearch("points_idx").setSize(0).setQuery(QueryBuilders.existsQuery("d"))
+                .addAggregation(dateHistogram("histo").field("d").dateHistogramInterval(interval).timeZone(timeZone)).get();
+        assertSearchResponse(collected);
+
+        Histogram expected = collected.getAggregations().get("histo");
+        Histogram actual = fromPoints.getAggregations().get("histo");
+        assertThat(actual.getBuckets().size(), equalTo(expected.getBuckets().size()));
+        long totalDocCount = 0;
+        for (int i = 0; i < expected.getBuckets().size(); i++) {
+            assertThat(actual.getBuckets().get(i).getKey(), equalTo(expected.getBuckets().get(i).getKey()));
+            assertThat(actual.getBuckets().get(i).getDocCount(), equalTo(expected.getBuckets().get(i).getDocCount()));
+            totalDocCount += actual.getBuckets().get(i).getDocCount();
+        }
+        assertThat(totalDocCount, equalTo((long) numDocs));
+        internalCluster().wipeIndices("points_idx");
+    }
 }
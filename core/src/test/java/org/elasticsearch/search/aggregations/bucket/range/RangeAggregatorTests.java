@@ -0,0 +1,105 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations.bucket.range;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+public class RangeAggregatorTests extends ESTestCase {
+
+    private void doTestPointsVisitor(boolean doublePoints) throws Exception {
+        final int numRanges = randomIntBetween(1, 5);
+        final RangeAggregator.Range[] ranges = new RangeAggregator.Range[numRanges];
+        for (int i = 0; i < numRanges; ++i) {
+            Double from = randomBoolean() ? null : (double) randomIntBetween(0, 50);
+            Double to = randomBoolean() ? null : (double) randomIntBetween(0, 50);
+            ranges[i] = new RangeAggregator.Range(Integer.toString(i), from, to);
+        }
+
+        // values are drawn from a small domain so that many of them sit exactly on the bounds of the ranges
+        final List<Long> values = new ArrayList<>();
+        for (RangeAggregator.Range range : ranges) {
+            for (double bound : new double[] {range.from, range.to}) {
+                if (Double.isInfinite(bound) == false) {
+                    values.add((long) bound);
+                }
+            }
+        }
+        final int numDocs = randomIntBetween(100, 3000);
+        for (int i = 0; i < numDocs; ++i) {
+            values.add((long) randomIntBetween(-5, 55));
+        }
+
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        IndexWriter w = new IndexWriter(dir, iwc);
+        for (long value : values) {
+            Document doc = new Document();
+            doc.add(doublePoints ? new DoublePoint("field", value) : new LongPoint("field", value));
+            w.addDocument(doc);
+            if (rarely()) {
+                w.commit();
+            }
+        }
+        final DirectoryReader reader = DirectoryReader.open(w);
+        final ToDoubleFunction<byte[]> decoder = doublePoints ? packedValue -> DoublePoint.decodeDimension(packedValue, 0)
+            : packedValue -> LongPoint.decodeDimension(packedValue, 0);
+
+        for (RangeAggregator.Range range : ranges) {
+            int expected = 0;
+            for (long value : values) {
+                if (range.matches(value)) {
+                    expected++;
+                }
+            }
+            int actual = 0;
+            for (LeafReaderContext ctx : reader.leaves()) {
+                PointValues points = ctx.reader().getPointValues();
+                RangeAggregator.PointsVisitor visitor = new RangeAggregator.PointsVisitor(range, decoder);
+                points.intersect("field", visitor);
+                actual += visitor.docCount;
+            }
+            assertEquals(range.toString(), expected, actual);
+        }
+        reader.close();
+        w.close();
+        dir.close();
+    }
+
+    public void testPointsVisitorLongPoints() throws Exception {
+        doTestPointsVisitor(false);
+    }
+
+    public void testPointsVisitorDoublePoints() throws Exception {
+        doTestPointsVisitor(true);
+    }
+}
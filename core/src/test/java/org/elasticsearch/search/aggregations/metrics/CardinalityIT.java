@@ -19,9 +19,13 @@
 
 package org.elasticsearch.search.aggregations.metrics;
 
+import com.carrotsearch.hppc.BitMixer;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.index.fielddata.ScriptDocValues;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.script.MockScriptPlugin;
@@ -31,11 +35,14 @@ import org.elasticsearch.search.aggregations.Aggregator.SubAggCollectionMode;
 import org.elasticsearch.search.aggregations.bucket.global.Global;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.metrics.cardinality.Cardinality;
+import org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus;
 import org.elasticsearch.test.ESIntegTestCase;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -487,4 +494,36 @@ public class CardinalityIT extends ESIntegTestCase {
         assertThat(client().admin().indices().prepareStats("cache_test_idx").setRequestCache(true).get().getTotal().getRequestCache()
                 .getMissCount(), equalTo(1L));
     }
+
+    public void testPreAggregatedSketches() throws Exception {
+        final int precision = randomIntBetween(HyperLogLogPlusPlus.MIN_PRECISION, HyperLogLogPlusPlus.MAX_PRECISION);
+        assertAcked(prepareCreate("sketch_idx").addMapping("type", "sketch", "type=hll,precision=" + precision));
+        List<IndexRequestBuilder> builders = new ArrayList<>();
+        try (HyperLogLogPlusPlus expected = new HyperLogLogPlusPlus(precision, BigArrays.NON_RECYCLING_INSTANCE, 1)) {
+            int numDocs = randomIntBetween(1, 50);
+            for (int i = 0; i < numDocs; i++) {
+                try (HyperLogLogPlusPlus sketch = new HyperLogLogPlusPlus(precision, BigArrays.NON_RECYCLING_INSTANCE, 1);
+                     BytesStreamOutput out = new BytesStreamOutput()) {
+                    int numValues = randomBoolean() ? randomIntBetween(1, 10) : randomIntBetween(1, 10000);
+                    for (int j = 0; j < numValues; j++) {
+                        long hash = BitMixer.mix64(randomInt(100000));
+                        sketch.collect(0, hash);
+                        expected.collect(0, hash);
+                    }
+                    sketch.writeTo(0, out);
+                    builders.add(client().prepareIndex("sketch_idx", "type")
+                            .setSource(jsonBuilder().startObject().field("sketch", BytesReference.toBytes(out.bytes())).endObject()));
+                }
+            }
+            indexRandom(true, builders);
+
+            // the precision threshold is ignored in favor of the precision of the sketches
+            SearchResponse response = client().prepareSearch("sketch_idx").setSize(0)
+                    .addAggregation(cardinality("cardinality").field("sketch").precisionThreshold(randomIntBetween(0, 40000)))
+                    .get();
+            assertSearchResponse(response);
+            Cardinality count = response.getAggregations().get("cardinality");
+            assertThat(count.getValue(), equalTo(expected.cardinality(0)));
+        }
+    }
 }
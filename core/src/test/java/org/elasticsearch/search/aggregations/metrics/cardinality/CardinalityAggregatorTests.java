@@ -0,0 +1,110 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.cardinality;
+
+import com.carrotsearch.hppc.BitMixer;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.LeafBucketCollector;
+import org.elasticsearch.search.aggregations.SearchContextAggregations;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+
+import java.io.IOException;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.cardinality;
+import static org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus.MIN_PRECISION;
+
+public class CardinalityAggregatorTests extends ESSingleNodeTestCase {
+
+    /**
+     * Merges a mix of linear counting and hyperloglog sketches into several buckets through the aggregator and checks that the
+     * counts of each bucket match the counts of a sketch that collected the same hashes.
+     */
+    public void testMergePreAggregatedSketches() throws IOException {
+        // low precisions keep the sketches small, sketches with more than 3072 distinct values always use hyperloglog
+        final int precision = randomIntBetween(MIN_PRECISION, 14);
+        final IndexService indexService = createIndex("test", Settings.builder().put("index.number_of_shards", 1).build(), "type",
+            "sketch", "type=hll,precision=" + precision, "bucket", "type=long");
+        final int numBuckets = randomIntBetween(1, 5);
+        final int numDocs = randomIntBetween(2, 50);
+        try (HyperLogLogPlusPlus expected = new HyperLogLogPlusPlus(precision, BigArrays.NON_RECYCLING_INSTANCE, numBuckets)) {
+            for (int i = 0; i < numDocs; i++) {
+                // the first two documents make sure that both kinds of sketches are merged
+                final boolean linearCounting = i == 0 || (i > 1 && randomBoolean());
+                final int numValues = linearCounting ? randomIntBetween(1, 10) : randomIntBetween(5000, 10000);
+                final long bucket = randomInt(numBuckets - 1);
+                try (HyperLogLogPlusPlus sketch = new HyperLogLogPlusPlus(precision, BigArrays.NON_RECYCLING_INSTANCE, 1);
+                     BytesStreamOutput out = new BytesStreamOutput()) {
+                    for (int j = 0; j < numValues; j++) {
+                        final long hash = BitMixer.mix64(randomLong());
+                        sketch.collect(0, hash);
+                        expected.collect(bucket, hash);
+                    }
+                    sketch.writeTo(0, out);
+                    client().prepareIndex("test", "type", Integer.toString(i)).setSource(jsonBuilder().startObject()
+                        .field("sketch", BytesReference.toBytes(out.bytes()))
+                        .field("bucket", bucket)
+                        .endObject()).get();
+                }
+                if (rarely()) {
+                    client().admin().indices().prepareRefresh("test").get();
+                }
+            }
+            client().admin().indices().prepareRefresh("test").get();
+
+            SearchContext searchContext = createSearchContext(indexService);
+            AggregationContext context = new AggregationContext(searchContext);
+            AggregatorFactories factories = AggregatorFactories.builder()
+                .addAggregator(cardinality("cardinality").field("sketch").precisionThreshold(randomIntBetween(0, 40000)))
+                .build(context, null);
+            searchContext.aggregations(new SearchContextAggregations(factories));
+            Aggregator aggregator = factories.createTopLevelAggregators()[0];
+            aggregator.preCollection();
+            try (Engine.Searcher searcher = indexService.getShard(0).acquireSearcher("test")) {
+                for (LeafReaderContext ctx : searcher.reader().leaves()) {
+                    LeafBucketCollector collector = aggregator.getLeafCollector(ctx);
+                    SortedNumericDocValues buckets = DocValues.getSortedNumeric(ctx.reader(), "bucket");
+                    for (int doc = 0; doc < ctx.reader().maxDoc(); doc++) {
+                        buckets.setDocument(doc);
+                        collector.collect(doc, buckets.valueAt(0));
+                    }
+                }
+            }
+            aggregator.postCollection();
+            for (int bucket = 0; bucket < numBuckets; bucket++) {
+                InternalCardinality result = (InternalCardinality) aggregator.buildAggregation(bucket);
+                assertEquals(expected.cardinality(bucket), result.getValue());
+            }
+            aggregator.close();
+        }
+    }
+}
@@ -21,9 +21,13 @@ package org.elasticsearch.search.aggregations.metrics.cardinality;
 
 import com.carrotsearch.hppc.BitMixer;
 import com.carrotsearch.hppc.IntHashSet;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.test.ESTestCase;
 
+import java.io.IOException;
+
 import static org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus.MAX_PRECISION;
 import static org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus.MIN_PRECISION;
 import static org.hamcrest.Matchers.closeTo;
@@ -101,6 +105,49 @@ public class HyperLogLogPlusPlusTests extends ESTestCase {
         }
     }
 
+    public void testMergeSerialized() throws IOException {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus single = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 0);
+        final HyperLogLogPlusPlus merged = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 0);
+        final int numSketches = randomIntBetween(1, 20);
+        for (int i = 0; i < numSketches; ++i) {
+            // small sketches stay in linear counting mode while large ones are upgraded to hll
+            final HyperLogLogPlusPlus sketch = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+            final int numValues = randomBoolean() ? randomIntBetween(1, 10) : randomIntBetween(1, 100000);
+            for (int j = 0; j < numValues; ++j) {
+                final long hash = BitMixer.mix64(randomInt(1000000));
+                single.collect(0, hash);
+                sketch.collect(0, hash);
+            }
+            try (BytesStreamOutput out = new BytesStreamOutput()) {
+                sketch.writeTo(0, out);
+                HyperLogLogPlusPlus.validate(out.bytes().streamInput(), p);
+                // the sketch doesn't have to start at the beginning of the array
+                final BytesRef bytes = out.bytes().toBytesRef();
+                final int offset = randomIntBetween(0, 10);
+                final byte[] shifted = new byte[offset + bytes.length + randomIntBetween(0, 10)];
+                System.arraycopy(bytes.bytes, bytes.offset, shifted, offset, bytes.length);
+                merged.merge(0, new BytesRef(shifted, offset, bytes.length));
+            }
+            assertEquals(single.cardinality(0), merged.cardinality(0));
+        }
+    }
+
+    public void testValidate() throws IOException {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION - 1);
+        final HyperLogLogPlusPlus sketch = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        sketch.collect(0, BitMixer.mix64(randomInt()));
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            sketch.writeTo(0, out);
+            IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                    () -> HyperLogLogPlusPlus.validate(out.bytes().streamInput(), p + 1));
+            assertEquals("Expected a sketch of precision [" + (p + 1) + "] but got [" + p + "]", e.getMessage());
+            out.writeByte((byte) 0);
+            e = expectThrows(IllegalArgumentException.class, () -> HyperLogLogPlusPlus.validate(out.bytes().streamInput(), p));
+            assertEquals("Expected [4] bytes of sketch data but got [5]", e.getMessage());
+        }
+    }
+
     public void testFakeHashes() {
         // hashes with lots of leading zeros trigger different paths in the code that we try to go through here
         final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
@@ -0,0 +1,129 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.collapse;
+
+import org.elasticsearch.common.ParseFieldMatcher;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.InnerHitBuilder;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.indices.query.IndicesQueriesRegistry;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.elasticsearch.test.EqualsHashCodeTestUtils.checkEqualsAndHashCode;
+import static org.hamcrest.Matchers.containsString;
+
+public class CollapseBuilderTests extends ESTestCase {
+
+    private static CollapseBuilder randomCollapseBuilder() {
+        CollapseBuilder builder = new CollapseBuilder(randomAsciiOfLengthBetween(1, 10));
+        if (randomBoolean()) {
+            builder.setMaxConcurrentGroupRequests(randomIntBetween(1, 48));
+        }
+        if (randomBoolean()) {
+            builder.setInnerHits(randomInnerHit());
+        }
+        return builder;
+    }
+
+    private static InnerHitBuilder randomInnerHit() {
+        return new InnerHitBuilder()
+            .setName(randomAsciiOfLengthBetween(1, 10))
+            .setFrom(randomIntBetween(0, 10))
+            .setSize(randomIntBetween(1, 10));
+    }
+
+    private static CollapseBuilder serializedCopy(CollapseBuilder original) throws IOException {
+        return copyWriteable(original, new NamedWriteableRegistry(Collections.emptyList()), CollapseBuilder::new);
+    }
+
+    private static CollapseBuilder mutate(CollapseBuilder original) throws IOException {
+        CollapseBuilder mutation = serializedCopy(original);
+        switch (randomIntBetween(0, 2)) {
+            case 0:
+                CollapseBuilder renamed = new CollapseBuilder(original.getField() + "_xyz");
+                renamed.setInnerHits(original.getInnerHit());
+                if (original.getMaxConcurrentGroupRequests() > 0) {
+                    renamed.setMaxConcurrentGroupRequests(original.getMaxConcurrentGroupRequests());
+                }
+                return renamed;
+            case 1:
+                mutation.setMaxConcurrentGroupRequests(original.getMaxConcurrentGroupRequests() + 1);
+                return mutation;
+            case 2:
+            default:
+                InnerHitBuilder innerHit = randomInnerHit();
+                innerHit.setName(innerHit.getName() + (original.getInnerHit() == null ? "" : original.getInnerHit().getName()));
+                mutation.setInnerHits(innerHit);
+                return mutation;
+        }
+    }
+
+    public void testSerialization() throws Exception {
+        CollapseBuilder original = randomCollapseBuilder();
+        CollapseBuilder deserialized = serializedCopy(original);
+        assertEquals(deserialized, original);
+        assertEquals(deserialized.hashCode(), original.hashCode());
+        assertNotSame(deserialized, original);
+    }
+
+    public void testEqualsAndHashcode() throws Exception {
+        checkEqualsAndHashCode(randomCollapseBuilder(), CollapseBuilderTests::serializedCopy, CollapseBuilderTests::mutate);
+    }
+
+    public void testFromXContent() throws Exception {
+        CollapseBuilder collapseBuilder = randomCollapseBuilder();
+        XContentBuilder builder = XContentFactory.contentBuilder(randomFrom(XContentType.values()));
+        if (randomBoolean()) {
+            builder.prettyPrint();
+        }
+        collapseBuilder.toXContent(builder, XContentBuilder.EMPTY_PARAMS);
+        XContentParser parser = XContentHelper.createParser(shuffleXContent(builder).bytes());
+        QueryParseContext context = new QueryParseContext(new IndicesQueriesRegistry(), parser, ParseFieldMatcher.STRICT);
+        CollapseBuilder secondCollapseBuilder = CollapseBuilder.fromXContent(context);
+        assertNotSame(collapseBuilder, secondCollapseBuilder);
+        assertEquals(collapseBuilder, secondCollapseBuilder);
+        assertEquals(collapseBuilder.hashCode(), secondCollapseBuilder.hashCode());
+    }
+
+    public void testMissingField() throws Exception {
+        XContentParser parser = XContentHelper.createParser(XContentFactory.jsonBuilder()
+            .startObject().field("max_concurrent_group_searches", 3).endObject().bytes());
+        QueryParseContext context = new QueryParseContext(new IndicesQueriesRegistry(), parser, ParseFieldMatcher.STRICT);
+        ParsingException e = expectThrows(ParsingException.class, () -> CollapseBuilder.fromXContent(context));
+        assertThat(e.getMessage(), containsString("[collapse] requires a [field]"));
+    }
+
+    public void testInvalidArguments() throws Exception {
+        CollapseBuilder builder = new CollapseBuilder("field");
+        Exception e = expectThrows(IllegalArgumentException.class, () -> builder.setMaxConcurrentGroupRequests(0));
+        assertThat(e.getMessage(), containsString("must be positive"));
+        e = expectThrows(IllegalArgumentException.class, () -> builder.setInnerHits(new InnerHitBuilder()));
+        assertThat(e.getMessage(), containsString("must have a [name]"));
+    }
+}
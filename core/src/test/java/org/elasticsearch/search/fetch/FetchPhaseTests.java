@@ -0,0 +1,155 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.fetch;
+
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.ReleasableBytesStreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.MockBigArrays;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHitField;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class FetchPhaseTests extends ESTestCase {
+
+    public void testEstimateSizeInBytes() {
+        InternalSearchHit hit = new InternalSearchHit(1, "1", new Text("type"), null);
+        long emptySize = FetchPhase.estimateSizeInBytes(hit);
+
+        hit.sourceRef(new BytesArray(new byte[1024]));
+        long sourceSize = FetchPhase.estimateSizeInBytes(hit);
+        assertThat(sourceSize - emptySize, greaterThan(1024L));
+
+        Map<String, SearchHitField> fields = Collections.singletonMap("field",
+            new InternalSearchHitField("field", Collections.singletonList(randomAsciiOfLength(100))));
+        hit.fields(fields);
+        long fieldsSize = FetchPhase.estimateSizeInBytes(hit);
+        assertThat(fieldsSize - sourceSize, greaterThan(200L));
+
+        hit.highlightFields(Collections.singletonMap("field",
+            new HighlightField("field", new Text[] {new Text(randomAsciiOfLength(100))})));
+        assertThat(FetchPhase.estimateSizeInBytes(hit) - fieldsSize, greaterThan(200L));
+    }
+
+    public void testHitsAccounting() {
+        MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(10, ByteSizeUnit.KB), 1.0, logger);
+        InternalSearchHit hit = new InternalSearchHit(1, "1", new Text("type"), null);
+        hit.sourceRef(new BytesArray(new byte[1024]));
+        long hitSize = FetchPhase.estimateSizeInBytes(hit);
+
+        FetchPhase.HitsAccounting accounting = new FetchPhase.HitsAccounting(breaker);
+        accounting.addHit(hit);
+        accounting.addHit(hit);
+        assertThat(breaker.getUsed(), equalTo(2 * hitSize));
+        accounting.releaseHits();
+        assertThat(breaker.getUsed(), equalTo(0L));
+
+        accounting.addBytes(100);
+        accounting.addHit(hit);
+        assertThat(accounting.bytes(), equalTo(100 + hitSize));
+        CircuitBreakingException e = expectThrows(CircuitBreakingException.class, () -> {
+            for (int i = 0; i < 10; i++) {
+                accounting.addHit(hit);
+            }
+        });
+        assertThat(e.getByteLimit(), equalTo(10240L));
+        accounting.close();
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    public void testSerializedHits() throws Exception {
+        InternalSearchHit[] hits = randomHits();
+        InternalSearchHits searchHits = new InternalSearchHits(hits, 100, 1.0f);
+        BytesStreamOutput serializedHits = new BytesStreamOutput();
+        searchHits.writeTo(serializedHits);
+
+        FetchSearchResult result = new FetchSearchResult(1, null);
+        result.serializedHits(serializedHits.bytes());
+        BytesStreamOutput out = new BytesStreamOutput();
+        result.writeTo(out);
+        FetchSearchResult read = FetchSearchResult.readFetchSearchResult(out.bytes().streamInput());
+        assertThat(read.id(), equalTo(1L));
+        assertThat(read.hits().totalHits(), equalTo(100L));
+        assertThat(read.hits().internalHits().length, equalTo(hits.length));
+        for (int i = 0; i < hits.length; i++) {
+            assertThat(read.hits().getAt(i).id(), equalTo(Integer.toString(i)));
+            assertThat(read.hits().getAt(i).sourceAsString(), equalTo("{\"field\":" + i + "}"));
+        }
+
+        // the hits are deserialized on access
+        assertThat(result.hits().internalHits().length, equalTo(hits.length));
+    }
+
+    public void testCloseReleasesSerializedHits() throws Exception {
+        MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(10, ByteSizeUnit.KB), 1.0, logger);
+        BigArrays bigArrays = new MockBigArrays(Settings.EMPTY, new NoneCircuitBreakerService());
+        InternalSearchHit[] hits = randomHits();
+        ReleasableBytesStreamOutput serializedHits = new ReleasableBytesStreamOutput(bigArrays);
+        new InternalSearchHits(hits, 100, 1.0f).writeTo(serializedHits);
+        FetchPhase.HitsAccounting accounting = new FetchPhase.HitsAccounting(breaker);
+        accounting.addBytes(serializedHits.size());
+
+        FetchSearchResult result = new FetchSearchResult(1, null);
+        result.serializedHits(serializedHits.bytes());
+        result.addReleasable(serializedHits);
+        result.addReleasable(accounting);
+        BytesStreamOutput out = new BytesStreamOutput();
+        result.writeTo(out);
+        // the hits are accounted until the result has been sent
+        assertThat(breaker.getUsed(), greaterThan(0L));
+        result.close();
+        assertThat(breaker.getUsed(), equalTo(0L));
+        // closing twice doesn't release twice, the pages are checked for leaks after the test
+        result.close();
+        assertThat(breaker.getUsed(), equalTo(0L));
+
+        FetchSearchResult read = FetchSearchResult.readFetchSearchResult(out.bytes().streamInput());
+        assertThat(read.hits().internalHits().length, equalTo(hits.length));
+        for (int i = 0; i < hits.length; i++) {
+            assertThat(read.hits().getAt(i).sourceAsString(), equalTo("{\"field\":" + i + "}"));
+        }
+    }
+
+    private static InternalSearchHit[] randomHits() {
+        InternalSearchHit[] hits = new InternalSearchHit[randomIntBetween(1, 10)];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = new InternalSearchHit(i, Integer.toString(i), new Text("type"), null);
+            hits[i].sourceRef(new BytesArray("{\"field\":" + i + "}"));
+        }
+        return hits;
+    }
+}
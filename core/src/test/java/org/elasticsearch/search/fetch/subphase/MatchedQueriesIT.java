@@ -19,12 +19,19 @@
 
 package org.elasticsearch.search.fetch.subphase;
 
+import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.fetch.FetchPhase;
 import org.elasticsearch.test.ESIntegTestCase;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 import static org.elasticsearch.index.query.QueryBuilders.constantScoreQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
@@ -34,6 +41,7 @@ import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
 import static org.elasticsearch.index.query.QueryBuilders.wrapperQuery;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItemInArray;
@@ -333,4 +341,31 @@ public class MatchedQueriesIT extends ESIntegTestCase {
             assertThat(searchResponse.getHits().getAt(0).getMatchedQueries()[0], equalTo("abc"));
         }
     }
+
+    public void testMatchedQueriesWithStreamedHits() throws Exception {
+        assertAcked(prepareCreate("test").setSettings(Settings.builder()
+            .put(FetchPhase.INDEX_FETCH_STREAM_HITS_SETTING.getKey(), true)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)));
+        int numDocs = randomIntBetween(FetchPhase.STREAM_HITS_BATCH_SIZE, 3 * FetchPhase.STREAM_HITS_BATCH_SIZE);
+        List<IndexRequestBuilder> docs = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            docs.add(client().prepareIndex("test", "type1", Integer.toString(i)).setSource("number", i));
+        }
+        indexRandom(true, docs);
+
+        SearchResponse searchResponse = client().prepareSearch()
+            .setQuery(boolQuery()
+                .should(rangeQuery("number").lt(numDocs / 2).queryName("low"))
+                .should(rangeQuery("number").gte(numDocs / 2).queryName("high")))
+            .setSize(numDocs)
+            .get();
+        assertHitCount(searchResponse, numDocs);
+        assertThat(searchResponse.getHits().getHits().length, equalTo(numDocs));
+        for (SearchHit hit : searchResponse.getHits()) {
+            int number = Integer.parseInt(hit.id());
+            assertThat(hit.sourceAsMap().get("number"), equalTo(number));
+            assertThat(hit.matchedQueries().length, equalTo(1));
+            assertThat(hit.matchedQueries(), hasItemInArray(number < numDocs / 2 ? "low" : "high"));
+        }
+    }
 }
@@ -22,6 +22,7 @@ package org.elasticsearch.search.profile.aggregation;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.search.aggregations.Aggregator.SubAggCollectionMode;
+import org.elasticsearch.search.aggregations.bucket.range.RangeAggregator;
 import org.elasticsearch.search.aggregations.bucket.sampler.DiversifiedOrdinalsSamplerAggregator;
 import org.elasticsearch.search.aggregations.bucket.terms.GlobalOrdinalsStringTermsAggregator;
 import org.elasticsearch.search.aggregations.metrics.avg.AvgAggregator;
@@ -42,6 +43,7 @@ import static org.elasticsearch.search.aggregations.AggregationBuilders.avg;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.diversifiedSampler;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.histogram;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.max;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.range;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
@@ -528,4 +530,24 @@ public class AggregationProfilerIT extends ESIntegTestCase {
         assertThat(profileResults, notNullValue());
         assertThat(profileResults.size(), equalTo(0));
     }
+
+    public void testCollectionPathProfile() {
+        SearchResponse response = client().prepareSearch("idx").setProfile(true)
+                .addAggregation(range("range").field(NUMBER_FIELD).addRange(0, 5).addRange(3, 10)).get();
+        assertSearchResponse(response);
+        Map<String, ProfileShardResult> profileResults = response.getProfileResults();
+        assertThat(profileResults, notNullValue());
+        assertThat(profileResults.size(), equalTo(getNumShards("idx").numPrimaries));
+        for (ProfileShardResult profileShardResult : profileResults.values()) {
+            List<ProfileResult> aggProfileResultsList = profileShardResult.getAggregationProfileResults().getProfileResults();
+            assertThat(aggProfileResultsList.size(), equalTo(1));
+            ProfileResult rangeAggResult = aggProfileResultsList.get(0);
+            assertThat(rangeAggResult.getQueryName(), equalTo(RangeAggregator.class.getName()));
+            Map<String, Object> debug = rangeAggResult.getDebugInfo();
+            assertThat(debug.get("segments_counted_from_points"), notNullValue());
+            assertThat(debug.get("segments_collected"), notNullValue());
+            int segments = (Integer) debug.get("segments_counted_from_points") + (Integer) debug.get("segments_collected");
+            assertThat(segments, greaterThan(0));
+        }
+    }
 }
@@ -21,8 +21,12 @@ package org.elasticsearch.search.query;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiReader;
@@ -33,21 +37,43 @@ import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Counter;
 import org.elasticsearch.action.search.SearchTask;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.EsThreadPoolExecutor;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.index.query.ParsedQuery;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.internal.AliasFilter;
+import org.elasticsearch.search.internal.ShardSearchLocalRequest;
+import org.elasticsearch.search.sort.SortAndFormats;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.test.TestSearchContext;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class QueryPhaseTests extends ESTestCase {
 
@@ -169,4 +195,194 @@ public class QueryPhaseTests extends ESTestCase {
         assertTrue(collected.get());
     }
 
+    public void testComputeSlices() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numSegments = randomIntBetween(1, 10);
+        for (int i = 0; i < numSegments; ++i) {
+            final int numDocs = randomIntBetween(1, 20);
+            for (int j = 0; j < numDocs; ++j) {
+                w.addDocument(new Document());
+            }
+            w.commit();
+        }
+        final IndexReader reader = w.getReader();
+        final List<LeafReaderContext> leaves = reader.leaves();
+        final int maxSlices = randomIntBetween(1, 12);
+        final List<List<LeafReaderContext>> slices = QueryPhase.computeSlices(leaves, maxSlices);
+        assertTrue(slices.size() >= 1);
+        assertTrue(slices.size() <= Math.min(maxSlices, leaves.size()));
+        // slices must be non-empty and hold all leaves in order
+        final List<LeafReaderContext> flattened = new ArrayList<>();
+        for (List<LeafReaderContext> slice : slices) {
+            assertFalse(slice.isEmpty());
+            flattened.addAll(slice);
+        }
+        assertEquals(leaves, flattened);
+        reader.close();
+        w.close();
+        dir.close();
+    }
+
+    public void testIndexSortEarlyTermination() throws Exception {
+        final Sort sort = new Sort(new SortedNumericSortField("rank", SortField.Type.LONG, true));
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setIndexSort(sort).setMergePolicy(NoMergePolicy.INSTANCE);
+        IndexWriter w = new IndexWriter(dir, iwc);
+        final int numSegments = randomIntBetween(1, 5);
+        for (int i = 0; i < numSegments; ++i) {
+            final int numDocs = randomIntBetween(20, 50);
+            for (int j = 0; j < numDocs; ++j) {
+                Document doc = new Document();
+                doc.add(new SortedNumericDocValuesField("rank", randomLong()));
+                w.addDocument(doc);
+            }
+            w.commit();
+        }
+        final IndexReader reader = DirectoryReader.open(w);
+        final IndexSearcher searcher = new IndexSearcher(reader);
+        final int numHits = randomIntBetween(1, 10);
+
+        final TopFieldCollector expectedCollector = TopFieldCollector.create(sort, numHits, true, false, false);
+        searcher.search(new MatchAllDocsQuery(), expectedCollector);
+        final TopDocs expected = expectedCollector.topDocs();
+
+        final TopFieldCollector topDocsCollector = TopFieldCollector.create(sort, numHits, true, false, false);
+        final IndexSortEarlyTerminatingCollector collector = new IndexSortEarlyTerminatingCollector(topDocsCollector, sort, numHits);
+        searcher.search(new MatchAllDocsQuery(), collector);
+        final TopDocs topDocs = topDocsCollector.topDocs();
+        assertTrue(collector.terminatedEarly());
+        assertEquals(numHits * reader.leaves().size(), topDocs.totalHits);
+        assertEquals(expected.scoreDocs.length, topDocs.scoreDocs.length);
+        for (int i = 0; i < expected.scoreDocs.length; i++) {
+            assertEquals(expected.scoreDocs[i].doc, topDocs.scoreDocs[i].doc);
+        }
+
+        // segments that are not sorted by the expected sort are fully collected
+        final Sort otherSort = new Sort(new SortedNumericSortField("rank", SortField.Type.LONG, false));
+        final TopFieldCollector otherCollector = TopFieldCollector.create(otherSort, numHits, true, false, false);
+        final IndexSortEarlyTerminatingCollector notTerminating = new IndexSortEarlyTerminatingCollector(otherCollector, otherSort,
+            numHits);
+        searcher.search(new MatchAllDocsQuery(), notTerminating);
+        assertFalse(notTerminating.terminatedEarly());
+        assertEquals(reader.numDocs(), otherCollector.topDocs().totalHits);
+        reader.close();
+        w.close();
+        dir.close();
+    }
+
+    public void testConcurrentSearchMatchesSequentialSearch() throws Exception {
+        final Sort indexSort = new Sort(new SortedNumericSortField("rank", SortField.Type.LONG, true));
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setIndexSort(indexSort).setMergePolicy(NoMergePolicy.INSTANCE);
+        IndexWriter w = new IndexWriter(dir, iwc);
+        final int numSegments = randomIntBetween(2, 6);
+        for (int i = 0; i < numSegments; ++i) {
+            final int numDocs = randomIntBetween(10, 50);
+            for (int j = 0; j < numDocs; ++j) {
+                Document doc = new Document();
+                doc.add(new SortedNumericDocValuesField("rank", randomIntBetween(0, 100)));
+                doc.add(new TextField("text", String.join(" ", Collections.nCopies(randomIntBetween(1, 5), "foo")), Store.NO));
+                doc.add(new StringField("tag", randomFrom("a", "b"), Store.NO));
+                w.addDocument(doc);
+            }
+            w.commit();
+        }
+        final IndexReader reader = DirectoryReader.open(w);
+        final IndexSearcher searcher = new IndexSearcher(reader);
+        final Query query = new TermQuery(new Term("text", "foo"));
+        final float maxScore = searcher.search(query, 1).getMaxScore();
+        final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        final EsThreadPoolExecutor executor = EsExecutors.newFixed(getTestName(), randomIntBetween(1, 4), randomIntBetween(0, 10),
+            EsExecutors.daemonThreadFactory("test"), threadContext);
+        try {
+            final int iters = scaledRandomIntBetween(10, 50);
+            for (int iter = 0; iter < iters; iter++) {
+                final int size = randomIntBetween(1, 20);
+                final SortAndFormats sort = randomBoolean() ? null : new SortAndFormats(
+                    new Sort(new SortedNumericSortField("rank", SortField.Type.LONG, randomBoolean())),
+                    new DocValueFormat[] {DocValueFormat.RAW});
+                final boolean trackScores = randomBoolean();
+                final Query postFilter = randomBoolean() ? null : new TermQuery(new Term("tag", "a"));
+                final Float minScore = randomBoolean() ? null : randomFloat() * maxScore;
+                final boolean timeout = rarely();
+                // segments are only early terminated if the request sorts by the index sort
+                final Sort earlyTerminationSort = sort != null && sort.sort.equals(indexSort) && randomBoolean() ? indexSort : null;
+
+                final TestSearchContext sequential = newSearchContext(query, size, sort, trackScores, postFilter, minScore, timeout);
+                QueryPhase.execute(sequential, searcher, null, 1, earlyTerminationSort);
+                final TestSearchContext concurrent = newSearchContext(query, size, sort, trackScores, postFilter, minScore, timeout);
+                QueryPhase.execute(concurrent, searcher, executor, randomIntBetween(2, numSegments), earlyTerminationSort);
+
+                final TopDocs expected = sequential.queryResult().topDocs();
+                final TopDocs actual = concurrent.queryResult().topDocs();
+                assertEquals(expected.totalHits, actual.totalHits);
+                assertEquals(expected.getMaxScore(), actual.getMaxScore(), 0f);
+                assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+                for (int i = 0; i < expected.scoreDocs.length; i++) {
+                    assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+                    assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+                    assertEquals(-1, actual.scoreDocs[i].shardIndex);
+                    if (sort != null) {
+                        assertArrayEquals(((FieldDoc) expected.scoreDocs[i]).fields, ((FieldDoc) actual.scoreDocs[i]).fields);
+                    }
+                }
+                assertEquals(timeout, sequential.queryResult().searchTimedOut());
+                assertEquals(timeout, concurrent.queryResult().searchTimedOut());
+                assertEquals(sequential.queryResult().terminatedEarly(), concurrent.queryResult().terminatedEarly());
+            }
+        } finally {
+            ThreadPool.terminate(executor, 10, TimeUnit.SECONDS);
+        }
+        reader.close();
+        w.close();
+        dir.close();
+    }
+
+    /**
+     * Creates a context that searches the given query. If <code>timeout</code> is set, the search times out as soon as it starts.
+     */
+    private static TestSearchContext newSearchContext(Query query, int size, SortAndFormats sort, boolean trackScores,
+                                                      Query postFilter, Float minScore, boolean timeout) {
+        final TestSearchContext context;
+        if (timeout) {
+            final Counter counter = new Counter() {
+                private final AtomicLong ticks = new AtomicLong();
+
+                @Override
+                public long addAndGet(long delta) {
+                    return ticks.addAndGet(delta);
+                }
+
+                @Override
+                public long get() {
+                    // every read is past the zero timeout of the test context
+                    return ticks.addAndGet(1000);
+                }
+            };
+            context = new TestSearchContext(null) {
+                @Override
+                public Counter timeEstimateCounter() {
+                    return counter;
+                }
+            };
+        } else {
+            context = new TestSearchContext(null);
+        }
+        context.parsedQuery(new ParsedQuery(query));
+        context.setSize(size);
+        context.sort(sort);
+        context.trackScores(trackScores);
+        if (postFilter != null) {
+            context.parsedPostFilter(new ParsedQuery(postFilter));
+        }
+        if (minScore != null) {
+            context.minimumScore(minScore);
+        }
+        context.setRequest(new ShardSearchLocalRequest(new ShardId("index", "_na_", 0), Strings.EMPTY_ARRAY, 0L,
+            new AliasFilter(null, Strings.EMPTY_ARRAY)));
+        context.setTask(new SearchTask(123L, "", "", "", null));
+        return context;
+    }
 }
@@ -30,6 +30,7 @@ import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.rescore.QueryRescorerBuilder;
+import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.test.ESIntegTestCase;
 
 import java.util.ArrayList;
@@ -49,7 +50,9 @@ import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcke
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertFailures;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchHits;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThan;
 
 public class SimpleSearchIT extends ESIntegTestCase {
     public void testSearchNullIndex() {
@@ -286,6 +289,39 @@ public class SimpleSearchIT extends ESIntegTestCase {
         assertFalse(searchResponse.isTerminatedEarly());
     }
 
+    public void testIndexSortEarlyTerminationRequiresTrackTotalHitsDisabled() throws Exception {
+        assertAcked(prepareCreate("test")
+            .setSettings(Settings.builder()
+                .put(SETTING_NUMBER_OF_SHARDS, 1)
+                .put(SETTING_NUMBER_OF_REPLICAS, 0)
+                .put(IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.getKey(), -1)
+                .put("index.sort.field", "rank"))
+            .addMapping("type", "rank", "type=long"));
+        final int numDocs = randomIntBetween(10, 50);
+        for (int i = 0; i < numDocs; i++) {
+            client().prepareIndex("test", "type", Integer.toString(i)).setSource("rank", i).get();
+        }
+        refresh();
+
+        // the total hit count is accurate by default, so every document is collected
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .addSort("rank", SortOrder.ASC)
+            .setSize(2)
+            .get();
+        assertHitCount(searchResponse, numDocs);
+        assertNotEquals(Boolean.TRUE, searchResponse.isTerminatedEarly());
+        assertSearchHits(searchResponse, "0", "1");
+
+        searchResponse = client().prepareSearch("test")
+            .addSort("rank", SortOrder.ASC)
+            .setSize(2)
+            .setTrackTotalHits(false)
+            .get();
+        assertTrue(searchResponse.isTerminatedEarly());
+        assertThat(searchResponse.getHits().getTotalHits(), lessThan((long) numDocs));
+        assertSearchHits(searchResponse, "0", "1");
+    }
+
     public void testInsaneFromAndSize() throws Exception {
         createIndex("idx");
         indexRandom(true, client().prepareIndex("idx", "type").setSource("{}"));
@@ -30,6 +30,7 @@ import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.search.stats.SearchLatencyStats;
 import org.elasticsearch.index.search.stats.SearchStats.Stats;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.script.MockScriptPlugin;
@@ -136,6 +137,12 @@ public class SearchStatsIT extends ESIntegTestCase {
         assertThat(indicesStats.getTotal().getSearch().getTotal().getFetchCount(), greaterThan(0L));
         assertThat(indicesStats.getTotal().getSearch().getTotal().getFetchTimeInMillis(), greaterThan(0L));
         assertThat(indicesStats.getTotal().getSearch().getGroupStats(), nullValue());
+        SearchLatencyStats latency = indicesStats.getTotal().getSearch().getLatency();
+        assertThat(latency, notNullValue());
+        assertThat(latency.getHistogram(SearchLatencyStats.QUERY).getTotalCount(), greaterThan(0L));
+        assertThat(latency.getHistogram(SearchLatencyStats.FETCH).getTotalCount(), greaterThan(0L));
+        // the reduce phase is only tracked by the coordinating nodes
+        assertThat(latency.getHistogram(SearchLatencyStats.REDUCE), nullValue());
 
         indicesStats = client().admin().indices().prepareStats().setGroups("group1").execute().actionGet();
         assertThat(indicesStats.getTotal().getSearch().getGroupStats(), notNullValue());
@@ -147,7 +154,9 @@ public class SearchStatsIT extends ESIntegTestCase {
 
         Set<String> nodeIdsWithIndex = nodeIdsWithIndex("test1", "test2");
         int num = 0;
+        long reduceCount = 0;
         for (NodeStats stat : nodeStats.getNodes()) {
+            reduceCount += stat.getIndices().getSearch().getLatency().getHistogram(SearchLatencyStats.REDUCE).getTotalCount();
             Stats total = stat.getIndices().getSearch().getTotal();
             if (nodeIdsWithIndex.contains(stat.getNode().getId())) {
                 assertThat(total.getQueryCount(), greaterThan(0L));
@@ -160,6 +169,7 @@ public class SearchStatsIT extends ESIntegTestCase {
         }
 
         assertThat(num, greaterThan(0));
+        assertThat(reduceCount, greaterThanOrEqualTo((long) iters));
 
     }
 
@@ -19,12 +19,23 @@
 
 package org.elasticsearch.search.stats;
 
+import org.HdrHistogram.Histogram;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.metrics.HistogramMetric;
+import org.elasticsearch.index.search.stats.SearchLatencyStats;
 import org.elasticsearch.index.search.stats.SearchStats;
 import org.elasticsearch.index.search.stats.SearchStats.Stats;
 import org.elasticsearch.test.ESTestCase;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 
 public class SearchStatsUnitTests extends ESTestCase {
     // https://github.com/elastic/elasticsearch/issues/7644
@@ -52,6 +63,52 @@ public class SearchStatsUnitTests extends ESTestCase {
         assertStats(groupStats1.get("group1"), 3);
     }
 
+    public void testLatencyStats() throws Exception {
+        HistogramMetric query = new HistogramMetric();
+        HistogramMetric fetch = new HistogramMetric();
+        for (int i = 1; i <= 100; i++) {
+            query.inc(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        fetch.inc(TimeUnit.MILLISECONDS.toNanos(1));
+        Map<String, HistogramMetric> metrics = new HashMap<>();
+        metrics.put(SearchLatencyStats.QUERY, query);
+        metrics.put(SearchLatencyStats.FETCH, fetch);
+        SearchLatencyStats shardLatency = SearchLatencyStats.fromMetrics(metrics);
+
+        SearchStats searchStats1 = new SearchStats(new Stats(1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1), 0, null, shardLatency);
+        SearchStats searchStats2 = new SearchStats(new Stats(1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1), 0, null);
+        searchStats2.add(searchStats1);
+        searchStats2.add(searchStats1);
+        searchStats2.addLatency(SearchLatencyStats.fromMetrics(Collections.singletonMap(SearchLatencyStats.REDUCE, fetch)));
+        assertThat(searchStats2.getLatency().getHistogram(SearchLatencyStats.QUERY).getTotalCount(), equalTo(200L));
+        assertThat(searchStats2.getLatency().getHistogram(SearchLatencyStats.FETCH).getTotalCount(), equalTo(2L));
+        assertThat(searchStats2.getLatency().getHistogram(SearchLatencyStats.REDUCE).getTotalCount(), equalTo(1L));
+        // the merged stats are copies
+        assertThat(shardLatency.getHistogram(SearchLatencyStats.QUERY).getTotalCount(), equalTo(100L));
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        searchStats2.writeTo(out);
+        SearchStats read = SearchStats.readSearchStats(out.bytes().streamInput());
+        Histogram queryLatency = read.getLatency().getHistogram(SearchLatencyStats.QUERY);
+        assertThat(queryLatency.getTotalCount(), equalTo(200L));
+        assertEquals(99_000, queryLatency.getValueAtPercentile(99), 1000);
+
+        out = new BytesStreamOutput();
+        out.setVersion(Version.V_5_0_0);
+        searchStats2.writeTo(out);
+        StreamInput in = out.bytes().streamInput();
+        in.setVersion(Version.V_5_0_0);
+        assertThat(SearchStats.readSearchStats(in).getLatency(), nullValue());
+    }
+
+    public void testParsePercentiles() {
+        assertArrayEquals(new double[] { 50, 99.9 }, SearchLatencyStats.parsePercentiles("50, 99.9"), 0);
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> SearchLatencyStats.parsePercentiles("50,foo"));
+        assertThat(e.getMessage(), equalTo("[latency_percentiles] must be a list of numbers but got [50,foo]"));
+        e = expectThrows(IllegalArgumentException.class, () -> SearchLatencyStats.parsePercentiles("101"));
+        assertThat(e.getMessage(), equalTo("[latency_percentiles] must be between 0 and 100 but got [101]"));
+    }
+
     private void assertStats(Stats stats, long equalTo) {
         assertEquals(equalTo, stats.getQueryCount());
         assertEquals(equalTo, stats.getQueryTimeInMillis());
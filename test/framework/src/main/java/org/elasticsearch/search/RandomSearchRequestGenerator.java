@@ -128,6 +128,9 @@ public class RandomSearchRequestGenerator {
         if (randomBoolean()) {
             builder.trackScores(randomBoolean());
         }
+        if (randomBoolean()) {
+            builder.trackTotalHits(randomBoolean());
+        }
         if (randomBoolean()) {
             builder.minScore(randomFloat() * 1000);
         }